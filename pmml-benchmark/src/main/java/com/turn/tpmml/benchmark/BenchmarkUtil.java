@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.benchmark;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.evaluator.RegressionModelEvaluator;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.RegressionModelManager;
+
+public class BenchmarkUtil {
+
+	private BenchmarkUtil() {
+	}
+
+	/**
+	 * @return The evaluator of the regression model <code>y = 1 + 2 * x1 + 3 * x2</code>.
+	 */
+	public static RegressionModelEvaluator prepareRegressionModel() throws ModelManagerException {
+		RegressionModelManager regressionModelManager = new RegressionModelManager();
+		regressionModelManager.createRegressionModel();
+
+		FieldName x1 = new FieldName("x1");
+		regressionModelManager.addField(x1, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName x2 = new FieldName("x2");
+		regressionModelManager.addField(x2, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName y = new FieldName("y");
+		regressionModelManager.addField(y, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.PREDICTED);
+
+		regressionModelManager.addRegressionTable(1d);
+		regressionModelManager.addNumericPredictor(x1, 2d);
+		regressionModelManager.addNumericPredictor(x2, 3d);
+
+		return new RegressionModelEvaluator(regressionModelManager);
+	}
+
+	/**
+	 * @return The value of the argument, or the default value if there are not enough arguments.
+	 */
+	public static int getArgument(String[] args, int index, int defaultValue) {
+		return (args.length > index ? Integer.parseInt(args[index]) : defaultValue);
+	}
+}
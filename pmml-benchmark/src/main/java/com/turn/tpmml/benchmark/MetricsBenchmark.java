@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.benchmark;
+
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.evaluator.DefaultMetricsRegistry;
+import com.turn.tpmml.evaluator.EvaluationException;
+import com.turn.tpmml.evaluator.EvaluationMetrics;
+import com.turn.tpmml.evaluator.Evaluator;
+import com.turn.tpmml.evaluator.RegressionModelEvaluator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measures the cost of reporting evaluation stages to a {@link DefaultMetricsRegistry}.
+ *
+ * <pre>
+ * mvn -P benchmark install -DskipTests
+ * mvn -P benchmark -pl pmml-benchmark exec:java \
+ *   -Dexec.mainClass=com.turn.tpmml.benchmark.MetricsBenchmark -Dexec.args="[evaluations] [sample interval]"
+ * </pre>
+ *
+ * The same model is evaluated without and with a registry, in alternating rounds. The registry
+ * measures one evaluation in every sample interval, and counts the others. Every round is
+ * warmed up before it is timed, and the best of several rounds is reported.
+ */
+public class MetricsBenchmark {
+
+	private MetricsBenchmark() {
+	}
+
+	public static void main(String... args) throws Exception {
+		int size = BenchmarkUtil.getArgument(args, 0, 1000000);
+		int sampleInterval =
+				BenchmarkUtil.getArgument(args, 1, EvaluationMetrics.DEFAULT_SAMPLE_INTERVAL);
+
+		RegressionModelEvaluator evaluator = BenchmarkUtil.prepareRegressionModel();
+
+		RegressionModelEvaluator measuredEvaluator = BenchmarkUtil.prepareRegressionModel();
+		measuredEvaluator.setMetricsRegistry(new DefaultMetricsRegistry(sampleInterval),
+				"regression");
+
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x1"), 1d);
+		parameters.put(new FieldName("x2"), 1d);
+
+		for (int i = 0; i < WARMUP_RUNS; i++) {
+			evaluate(evaluator, parameters, size);
+			evaluate(measuredEvaluator, parameters, size);
+		}
+
+		long best = Long.MAX_VALUE;
+		long measuredBest = Long.MAX_VALUE;
+
+		for (int i = 0; i < MEASURED_RUNS; i++) {
+			best = Math.min(best, evaluate(evaluator, parameters, size));
+			measuredBest = Math.min(measuredBest, evaluate(measuredEvaluator, parameters, size));
+		}
+
+		System.out.println(String.format("Evaluations: %d, sample interval: %d", size,
+				sampleInterval));
+		System.out.println(String.format("Without metrics: %8.1f ns/evaluation",
+				(double) best / size));
+		System.out.println(String.format("With metrics:    %8.1f ns/evaluation",
+				(double) measuredBest / size));
+		System.out.println(String.format("Overhead:        %8.1f %%",
+				100d * (measuredBest - best) / best));
+	}
+
+	/**
+	 * @return The duration in nanoseconds.
+	 */
+	private static long evaluate(Evaluator evaluator, Map<FieldName, ?> parameters, int size)
+			throws EvaluationException {
+		long begin = System.nanoTime();
+
+		for (int i = 0; i < size; i++) {
+			evaluator.evaluate(parameters);
+		}
+
+		return System.nanoTime() - begin;
+	}
+
+	private static final int WARMUP_RUNS = 5;
+
+	private static final int MEASURED_RUNS = 10;
+}
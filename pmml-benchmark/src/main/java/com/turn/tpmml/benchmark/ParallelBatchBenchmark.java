@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.benchmark;
+
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.evaluator.ColumnarInput;
+import com.turn.tpmml.evaluator.ColumnarOutput;
+import com.turn.tpmml.evaluator.ParallelBatchEvaluator;
+import com.turn.tpmml.evaluator.RegressionModelEvaluator;
+
+import java.util.Random;
+
+import jsr166y.ForkJoinPool;
+
+/**
+ * Measures how the throughput of {@link ParallelBatchEvaluator} scales with the number of
+ * workers.
+ *
+ * <pre>
+ * mvn -P benchmark install -DskipTests
+ * mvn -P benchmark -pl pmml-benchmark exec:java \
+ *   -Dexec.mainClass=com.turn.tpmml.benchmark.ParallelBatchBenchmark \
+ *   -Dexec.args="[rows] [chunk size]"
+ * </pre>
+ *
+ * The input is scored with 1, 2, 4 ... workers, up to twice the number of processors. Every
+ * configuration is warmed up before it is timed, and the best of several runs is reported.
+ */
+public class ParallelBatchBenchmark {
+
+	private ParallelBatchBenchmark() {
+	}
+
+	public static void main(String... args) throws Exception {
+		int size = BenchmarkUtil.getArgument(args, 0, 1000000);
+		int chunkSize = BenchmarkUtil.getArgument(args, 1, 1024);
+
+		RegressionModelEvaluator evaluator = BenchmarkUtil.prepareRegressionModel();
+		evaluator.freeze();
+
+		ColumnarInput input = createInput(size);
+
+		int processors = (Runtime.getRuntime()).availableProcessors();
+
+		System.out.println("Rows: " + size + ", chunk size: " + chunkSize + ", processors: " +
+				processors);
+
+		double baseline = 0d;
+
+		for (int parallelism = 1; parallelism <= 2 * processors; parallelism *= 2) {
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+			try {
+				ParallelBatchEvaluator parallelEvaluator =
+						new ParallelBatchEvaluator(evaluator, pool);
+				parallelEvaluator.setChunkSize(chunkSize);
+
+				for (int i = 0; i < WARMUP_RUNS; i++) {
+					parallelEvaluator.evaluateBatch(input, new ColumnarOutput(size));
+				}
+
+				long best = Long.MAX_VALUE;
+
+				for (int i = 0; i < MEASURED_RUNS; i++) {
+					ColumnarOutput output = new ColumnarOutput(size);
+
+					long begin = System.nanoTime();
+
+					parallelEvaluator.evaluateBatch(input, output);
+
+					best = Math.min(best, System.nanoTime() - begin);
+				}
+
+				double rowsPerSecond = size / (best / 1e9d);
+				if (parallelism == 1) {
+					baseline = rowsPerSecond;
+				}
+
+				System.out.println(String.format("Workers: %2d, rows/s: %12.0f, speedup: %5.2f",
+						parallelism, rowsPerSecond, rowsPerSecond / baseline));
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * The values of <code>x2</code> are boxed, so that rows are evaluated one by one, the same
+	 * way as for models that do not have a columnar evaluation.
+	 */
+	private static ColumnarInput createInput(int size) {
+		Random random = new Random(size);
+
+		double[] x1Values = new double[size];
+		Object[] x2Values = new Object[size];
+
+		for (int i = 0; i < size; i++) {
+			x1Values[i] = random.nextDouble();
+			x2Values[i] = Double.valueOf(random.nextDouble());
+		}
+
+		ColumnarInput input = new ColumnarInput(size);
+		input.putColumn(new FieldName("x1"), x1Values);
+		input.putColumn(new FieldName("x2"), x2Values);
+
+		return input;
+	}
+
+	private static final int WARMUP_RUNS = 5;
+
+	private static final int MEASURED_RUNS = 10;
+}
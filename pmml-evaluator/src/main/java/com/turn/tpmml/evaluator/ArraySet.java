@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Array;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable membership index over the elements of an {@link Array}.
+ *
+ * String elements are kept in a hash set. The elements of INT and REAL arrays are additionally
+ * parsed to sorted primitive arrays, which are searched by binary search. Membership tests do not
+ * box or format the value.
+ *
+ * Membership is decided the same way as in {@link ArrayUtil#contains(Array, Object)}.
+ */
+public class ArraySet {
+
+	private Array.Type type = null;
+
+	private Set<String> stringValues = null;
+
+	private int[] intValues = null;
+
+	private float[] floatValues = null;
+
+	private double[] doubleValues = null;
+
+	private ArraySet() {
+	}
+
+	public Array.Type getType() {
+		return this.type;
+	}
+
+	public boolean contains(Object value) throws EvaluationException {
+
+		if (value instanceof String) {
+			return this.stringValues.contains(value);
+		} else
+
+		if (value instanceof Integer) {
+			int intValue = ((Integer) value).intValue();
+
+			if ((Array.Type.REAL).equals(this.type)) {
+				return Arrays.binarySearch(this.doubleValues, intValue) > -1;
+			}
+
+			return Arrays.binarySearch(this.intValues, intValue) > -1;
+		}
+
+		ArrayUtil.validateDataType(value);
+
+		if ((Array.Type.STRING).equals(this.type)) {
+			return this.stringValues.contains(ParameterUtil.toString(value));
+		} // End if
+
+		if (value instanceof Float) {
+			return Arrays.binarySearch(this.floatValues, ((Float) value).floatValue()) > -1;
+		}
+
+		return Arrays.binarySearch(this.doubleValues, ((Double) value).doubleValue()) > -1;
+	}
+
+	/**
+	 * @return The number of distinct String elements.
+	 */
+	public int size() {
+		return this.stringValues.size();
+	}
+
+	public static ArraySet create(Array array) throws EvaluationException {
+		List<String> values = ArrayUtil.getContent(array);
+
+		ArraySet result = new ArraySet();
+		result.type = array.getType();
+		result.stringValues = new HashSet<String>(values);
+
+		int[] intValues = new int[values.size()];
+		int intCount = 0;
+
+		float[] floatValues = new float[values.size()];
+		int floatCount = 0;
+
+		double[] doubleValues = new double[values.size()];
+		int doubleCount = 0;
+
+		boolean numeric = !(Array.Type.STRING).equals(result.type);
+
+		for (String value : values) {
+			Integer intValue = ArrayUtil.parseInt(value);
+
+			// Integer values are looked up by their String representation in String arrays
+			if (intValue != null && (numeric || value.equals(intValue.toString()))) {
+				intValues[intCount++] = intValue.intValue();
+			} // End if
+
+			if (!numeric) {
+				continue;
+			}
+
+			try {
+				floatValues[floatCount] = Float.parseFloat(value);
+				floatCount++;
+			} catch (NumberFormatException nfe) {
+				// Ignored
+			}
+
+			try {
+				doubleValues[doubleCount] = Double.parseDouble(value);
+				doubleCount++;
+			} catch (NumberFormatException nfe) {
+				// Ignored
+			}
+		}
+
+		result.intValues = sort(Arrays.copyOf(intValues, intCount));
+		result.floatValues = sort(Arrays.copyOf(floatValues, floatCount));
+		result.doubleValues = sort(Arrays.copyOf(doubleValues, doubleCount));
+
+		return result;
+	}
+
+	private static int[] sort(int[] values) {
+		Arrays.sort(values);
+
+		return values;
+	}
+
+	private static float[] sort(float[] values) {
+		Arrays.sort(values);
+
+		return values;
+	}
+
+	private static double[] sort(double[] values) {
+		Arrays.sort(values);
+
+		return values;
+	}
+}
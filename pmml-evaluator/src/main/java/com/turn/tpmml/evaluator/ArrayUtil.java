@@ -16,23 +16,65 @@ public class ArrayUtil {
 	}
 
 	public static Boolean isIn(Array array, Object value) throws EvaluationException {
-		List<String> values = getContent(array);
+		boolean result = contains(array, value);
 
-		validateDataType(value);
+		return Boolean.valueOf(result);
+	}
 
-		boolean result = values.contains(ParameterUtil.toString(value));
+	public static Boolean isNotIn(Array array, Object value) throws EvaluationException {
+		boolean result = !contains(array, value);
 
 		return Boolean.valueOf(result);
 	}
 
-	public static Boolean isNotIn(Array array, Object value) throws EvaluationException {
+	/**
+	 * String values are matched against the elements of the array by text. Numeric values are
+	 * matched against the elements of INT and REAL arrays by number, and against the elements of
+	 * STRING arrays by their String representation.
+	 *
+	 * @see ArraySet
+	 */
+	public static boolean contains(Array array, Object value) throws EvaluationException {
 		List<String> values = getContent(array);
 
 		validateDataType(value);
 
-		boolean result = !values.contains(ParameterUtil.toString(value));
+		Array.Type type = array.getType();
 
-		return Boolean.valueOf(result);
+		if ((value instanceof String) || (Array.Type.STRING).equals(type)) {
+			return values.contains(ParameterUtil.toString(value));
+		}
+
+		for (String string : values) {
+
+			if (equals(type, string, (Number) value)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean equals(Array.Type type, String string, Number value) {
+
+		try {
+			if (value instanceof Integer) {
+
+				if ((Array.Type.REAL).equals(type)) {
+					return Double.compare(Double.parseDouble(string), value.intValue()) == 0;
+				}
+
+				return Integer.parseInt(string) == value.intValue();
+			} else
+
+			if (value instanceof Float) {
+				return Float.compare(Float.parseFloat(string), value.floatValue()) == 0;
+			}
+
+			return Double.compare(Double.parseDouble(string), value.doubleValue()) == 0;
+		} catch (NumberFormatException nfe) {
+			return false;
+		}
 	}
 
 	public static List<String> getContent(Array array) throws EvaluationException {
@@ -150,15 +192,24 @@ public class ArrayUtil {
 		return result;
 	}
 
-	private static void validateDataType(Object value) throws EvaluationException {
+	static Integer parseInt(String string) {
+
+		try {
+			return Integer.valueOf(string);
+		} catch (NumberFormatException nfe) {
+			return null;
+		}
+	}
+
+	static void validateDataType(Object value) throws EvaluationException {
 		DataType dataType = ParameterUtil.getDataType(value);
 
 		switch (dataType) {
 		case STRING:
 		case INTEGER:
-			break;
 		case FLOAT:
 		case DOUBLE:
+			break;
 		default:
 			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION, dataType.name());
 		}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.manager.ModelManager;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A slot-backed context that is reused for all rows of a {@link ColumnarInput}.
+ *
+ * The slots of the plan are bound to the columns of the input once. Moving to the next row copies
+ * the values of the row directly to their slots, and forgets all memoized derived field values.
+ * The parameters of the context are a live view of the current row.
+ */
+class BatchEvaluationContext extends ModelManagerEvaluationContext {
+
+	private RowMap rowMap = null;
+
+	/**
+	 * The slots that are loaded from the input, and their columns. The column is
+	 * <code>null</code> if the input does not contain the field.
+	 */
+	private int[] slots = null;
+
+	private Object[] columns = null;
+
+	private int offset = 0;
+
+	public BatchEvaluationContext(ModelManager<?> modelManager, EvaluationPlan plan,
+			ColumnarInput input) {
+		super(modelManager, plan, new RowMap(input));
+
+		this.rowMap = (RowMap) getParameters();
+		this.offset = input.getOffset();
+
+		int count = 0;
+
+		int[] slots = new int[plan.size()];
+		Object[] columns = new Object[plan.size()];
+
+		for (int slot = 0; slot < plan.size(); slot++) {
+
+			if (plan.getDerivedField(slot) == null) {
+				slots[count] = slot;
+				columns[count] = input.getColumn(plan.getName(slot));
+
+				count++;
+			}
+		}
+
+		this.slots = new int[count];
+		System.arraycopy(slots, 0, this.slots, 0, count);
+
+		this.columns = new Object[count];
+		System.arraycopy(columns, 0, this.columns, 0, count);
+	}
+
+	/**
+	 * Moves to a row.
+	 */
+	public void setRow(int row) {
+		this.rowMap.setRow(row);
+
+		for (int i = 0; i < this.slots.length; i++) {
+			putValue(this.slots[i], ColumnarInput.getValue(this.columns[i], this.offset + row));
+		}
+
+		clearDerivedValues();
+	}
+
+	@Override
+	public BatchEvaluationContext clone() {
+		return (BatchEvaluationContext) super.clone();
+	}
+
+	/**
+	 * A view of the current row. Values that are put into the map (eg. by a model chain) are
+	 * kept until the next row.
+	 */
+	private static class RowMap extends AbstractMap<FieldName, Object> {
+
+		private ColumnarInput input = null;
+
+		private int row = 0;
+
+		private Map<FieldName, Object> overrides = new HashMap<FieldName, Object>();
+
+		private RowMap(ColumnarInput input) {
+			this.input = input;
+		}
+
+		private void setRow(int row) {
+			this.row = row;
+
+			if (!this.overrides.isEmpty()) {
+				this.overrides.clear();
+			}
+		}
+
+		@Override
+		public Object get(Object key) {
+
+			if (this.overrides.containsKey(key)) {
+				return this.overrides.get(key);
+			} // End if
+
+			if (key instanceof FieldName) {
+				return this.input.getValue((FieldName) key, this.row);
+			}
+
+			return null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return this.overrides.containsKey(key) || (this.input.getFields()).contains(key);
+		}
+
+		@Override
+		public Object put(FieldName key, Object value) {
+			Object result = get(key);
+
+			this.overrides.put(key, value);
+
+			return result;
+		}
+
+		@Override
+		public Set<Map.Entry<FieldName, Object>> entrySet() {
+			Map<FieldName, Object> result = new LinkedHashMap<FieldName, Object>();
+
+			// An empty input does not have a current row
+			if (this.row < this.input.getSize()) {
+
+				for (FieldName name : this.input.getFields()) {
+					result.put(name, this.input.getValue(name, this.row));
+				}
+			}
+
+			result.putAll(this.overrides);
+
+			return result.entrySet();
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The input of a batch evaluation, in column-major layout. There is one array per
+ * {@link Evaluator#getActiveFields() active field}, and all arrays have the same length.
+ *
+ * Primitive arrays hold values that are never missing. Missing values are represented as
+ * <code>null</code> elements of object arrays. Like in {@link Evaluator#evaluate(Map)}, the values
+ * are expected to have been {@link Evaluator#prepare(FieldName, Object) prepared} already.
+ *
+ * @see CompiledEvaluator#evaluateBatch(ColumnarInput, ColumnarOutput)
+ */
+public class ColumnarInput {
+
+	private int size = 0;
+
+	/**
+	 * The index of the first row of a {@link #slice(int, int) slice} in the arrays.
+	 */
+	private int offset = 0;
+
+	private Map<FieldName, Object> columns = new LinkedHashMap<FieldName, Object>();
+
+	/**
+	 * @param size The number of rows.
+	 */
+	public ColumnarInput(int size) {
+
+		if (size < 0) {
+			throw new IllegalArgumentException("Negative size: " + size);
+		}
+
+		this.size = size;
+	}
+
+	public int getSize() {
+		return this.size;
+	}
+
+	int getOffset() {
+		return this.offset;
+	}
+
+	public Set<FieldName> getFields() {
+		return Collections.unmodifiableSet(this.columns.keySet());
+	}
+
+	public void putColumn(FieldName name, double[] values) {
+		checkLength(values.length);
+
+		this.columns.put(name, values);
+	}
+
+	public void putColumn(FieldName name, float[] values) {
+		checkLength(values.length);
+
+		this.columns.put(name, values);
+	}
+
+	public void putColumn(FieldName name, int[] values) {
+		checkLength(values.length);
+
+		this.columns.put(name, values);
+	}
+
+	public void putColumn(FieldName name, Object[] values) {
+		checkLength(values.length);
+
+		this.columns.put(name, values);
+	}
+
+	/**
+	 * @return The array of the field, or <code>null</code>.
+	 */
+	public Object getColumn(FieldName name) {
+		return this.columns.get(name);
+	}
+
+	/**
+	 * @return The value of the field in the row, or <code>null</code> if it is missing. Values of
+	 *         primitive arrays are boxed. Evaluators that read primitive columns directly use
+	 *         {@link #getColumn(FieldName)} instead.
+	 */
+	public Object getValue(FieldName name, int row) {
+		return getValue(getColumn(name), this.offset + row);
+	}
+
+	/**
+	 * Creates a read-only view of a range of rows. The view shares the arrays of this input.
+	 *
+	 * @param begin The first row, inclusive.
+	 * @param end The last row, exclusive.
+	 */
+	ColumnarInput slice(int begin, int end) {
+		checkRange(begin, end, this.size);
+
+		ColumnarInput result = new ColumnarInput(end - begin);
+		result.offset = this.offset + begin;
+		result.columns = Collections.unmodifiableMap(this.columns);
+
+		return result;
+	}
+
+	private void checkLength(int length) {
+
+		if (length != this.size) {
+			throw new IllegalArgumentException("Wrong number of rows: expected " + this.size +
+					", got " + length);
+		}
+	}
+
+	static void checkRange(int begin, int end, int size) {
+
+		if (begin < 0 || begin > end || end > size) {
+			throw new IndexOutOfBoundsException("Invalid range [" + begin + ", " + end +
+					") of " + size + " rows");
+		}
+	}
+
+	/**
+	 * @param row The index of the row in the array.
+	 */
+	static Object getValue(Object column, int row) {
+
+		if (column instanceof double[]) {
+			return Double.valueOf(((double[]) column)[row]);
+		} else
+
+		if (column instanceof float[]) {
+			return Float.valueOf(((float[]) column)[row]);
+		} else
+
+		if (column instanceof int[]) {
+			return Integer.valueOf(((int[]) column)[row]);
+		} else
+
+		if (column instanceof Object[]) {
+			return ((Object[]) column)[row];
+		}
+
+		return null;
+	}
+}
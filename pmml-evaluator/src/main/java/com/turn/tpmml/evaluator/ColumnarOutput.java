@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.manager.IPMMLResult;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.PMMLResult;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The output of a batch evaluation, in column-major layout. There is one array per
+ * {@link Evaluator#getPredictedFields() predicted field} and {@link Evaluator#getOutputFields()
+ * output field}, which holds the same values as the corresponding entries of the
+ * {@link Evaluator#evaluate(java.util.Map) evaluation result}. The element of a row is
+ * <code>null</code> if the evaluation did not produce a value for the field.
+ *
+ * @see CompiledEvaluator#evaluateBatch(ColumnarInput, ColumnarOutput)
+ */
+public class ColumnarOutput {
+
+	private int size = 0;
+
+	/**
+	 * The index of the first row of a {@link #slice(int, int) slice} in the arrays.
+	 */
+	private int offset = 0;
+
+	/**
+	 * The length of the arrays.
+	 */
+	private int capacity = 0;
+
+	private Map<FieldName, Object[]> columns = new LinkedHashMap<FieldName, Object[]>();
+
+	/**
+	 * @param size The number of rows.
+	 */
+	public ColumnarOutput(int size) {
+
+		if (size < 0) {
+			throw new IllegalArgumentException("Negative size: " + size);
+		}
+
+		this.size = size;
+		this.capacity = size;
+	}
+
+	public int getSize() {
+		return this.size;
+	}
+
+	public Set<FieldName> getFields() {
+		return Collections.unmodifiableSet(this.columns.keySet());
+	}
+
+	/**
+	 * @return The array of the field, or <code>null</code>.
+	 */
+	public Object[] getColumn(FieldName name) {
+		return this.columns.get(name);
+	}
+
+	/**
+	 * Creates a view of a range of rows. The view shares the arrays of this output.
+	 *
+	 * The arrays must be {@link #prepare(Evaluator, ColumnarInput) allocated} before the view is
+	 * shared with other threads. After that, views of disjoint ranges can be filled concurrently.
+	 *
+	 * @param begin The first row, inclusive.
+	 * @param end The last row, exclusive.
+	 */
+	ColumnarOutput slice(int begin, int end) {
+		ColumnarInput.checkRange(begin, end, this.size);
+
+		ColumnarOutput result = new ColumnarOutput(end - begin);
+		result.offset = this.offset + begin;
+		result.capacity = this.capacity;
+		result.columns = this.columns;
+
+		return result;
+	}
+
+	/**
+	 * Allocates the arrays of an evaluator, unless they have been allocated already.
+	 */
+	void prepare(Evaluator evaluator, ColumnarInput input) throws EvaluationException {
+
+		if (input.getSize() > this.size) {
+			throw new EvaluationException("Wrong number of rows: expected at least " +
+					input.getSize() + ", got " + this.size);
+		}
+
+		try {
+			prepare(evaluator.getPredictedFields());
+			prepare(evaluator.getOutputFields());
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+	}
+
+	private void prepare(List<FieldName> names) {
+
+		for (FieldName name : names) {
+
+			if (!this.columns.containsKey(name)) {
+				this.columns.put(name, new Object[this.capacity]);
+			}
+		}
+	}
+
+	/**
+	 * Copies the values of an evaluation result to a row.
+	 *
+	 * @param result The evaluation result, or <code>null</code>.
+	 */
+	void put(int row, IPMMLResult result) throws EvaluationException {
+		Set<Map.Entry<FieldName, Object[]>> entries = this.columns.entrySet();
+
+		for (Map.Entry<FieldName, Object[]> entry : entries) {
+			Object[] column = entry.getValue();
+
+			column[this.offset + row] = getValue(result, entry.getKey());
+		}
+	}
+
+	/**
+	 * Sets the value of a field in a row, and clears the same row of all other fields.
+	 */
+	void put(int row, FieldName name, Object value) {
+		Set<Map.Entry<FieldName, Object[]>> entries = this.columns.entrySet();
+
+		for (Map.Entry<FieldName, Object[]> entry : entries) {
+			Object[] column = entry.getValue();
+
+			column[this.offset + row] = ((entry.getKey()).equals(name) ? value : null);
+		}
+	}
+
+	/**
+	 * Copies a column of values to the first rows of a field, and clears the same rows of all
+	 * other fields.
+	 */
+	void putColumn(FieldName name, double[] values) {
+		Set<Map.Entry<FieldName, Object[]>> entries = this.columns.entrySet();
+
+		for (Map.Entry<FieldName, Object[]> entry : entries) {
+			Object[] column = entry.getValue();
+
+			if ((entry.getKey()).equals(name)) {
+
+				for (int row = 0; row < values.length; row++) {
+					column[this.offset + row] = Double.valueOf(values[row]);
+				}
+			} else {
+				Arrays.fill(column, this.offset, this.offset + values.length, null);
+			}
+		}
+	}
+
+	private static Object getValue(IPMMLResult result, FieldName name)
+			throws EvaluationException {
+
+		if (result == null) {
+			return null;
+		} // End if
+
+		if (result instanceof PMMLResult && !((PMMLResult) result).containsKey(name)) {
+			return null;
+		}
+
+		try {
+			return result.getValue(name);
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+	}
+}
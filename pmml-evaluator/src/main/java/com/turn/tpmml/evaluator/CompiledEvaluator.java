@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.manager.IPMMLResult;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.PMMLManager;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An {@link Evaluator} that compiles its model into an evaluation plan. All evaluators that are
+ * created by {@link ModelEvaluatorFactory} implement this interface.
+ *
+ * The methods of this interface are kept apart from {@link Evaluator}, so that existing
+ * implementations of {@link Evaluator} keep compiling.
+ *
+ * <pre>
+ * CompiledEvaluator evaluator =
+ *  (CompiledEvaluator)pmmlManager.getModelManager(null, ModelEvaluatorFactory.getInstance());
+ * evaluator.freeze();
+ * </pre>
+ */
+public interface CompiledEvaluator extends Evaluator {
+
+	/**
+	 * Evaluates only the specified output fields, and the output fields and derived fields that
+	 * they depend on. The predicted fields are always evaluated.
+	 * 
+	 * The values of the selected output fields are the same as with {@link #evaluate(Map)}.
+	 * 
+	 * @param parameters Map of {@link #getActiveFields() active field} values.
+	 * @param outputFields The names of {@link #getOutputFields() output fields}, or
+	 *            <code>null</code> to evaluate all output fields.
+	 * 
+	 * @throws EvaluationException If the evaluation fails
+	 * 
+	 * @see ModelManagerEvaluationContext#setOutputFields(Set)
+	 */
+	IPMMLResult evaluate(Map<FieldName, ?> parameters, Set<FieldName> outputFields)
+			throws EvaluationException;
+
+	/**
+	 * Evaluates all rows of a batch.
+	 * 
+	 * The evaluation plan and the context are set up once per batch, and every row is copied
+	 * directly from the input arrays to the slots of the context. The results are the same as
+	 * evaluating every row separately with {@link #evaluate(Map)}.
+	 * 
+	 * Regression models and compiled tree models without output fields have inner loops of their
+	 * own, which do not create a result per row. All other models, including neural networks,
+	 * scorecards and mining models, are evaluated row by row, and create a result per row.
+	 * 
+	 * @param input Arrays of {@link #getActiveFields() active field} values.
+	 * @param output Arrays of {@link #getPredictedFields() predicted field} and
+	 *            {@link #getOutputFields() output field} values. Arrays that do not exist yet are
+	 *            allocated.
+	 * 
+	 * @throws EvaluationException If the evaluation of any row fails
+	 */
+	void evaluateBatch(ColumnarInput input, ColumnarOutput output) throws EvaluationException;
+
+	/**
+	 * Evaluates the current parameters of a caller-owned context, and passes the values of the
+	 * {@link #getPredictedFields() predicted fields} and {@link #getOutputFields() output fields}
+	 * to a caller-owned sink.
+	 * 
+	 * The results are the same as with {@link #evaluate(Map)}. The context saves the argument map
+	 * and the lookup of every field by name, but not every model scores without creating objects:
+	 * <ul>
+	 * <li>Regression models and compiled tree models without output fields, or without selected
+	 * output fields, do not create any objects in the steady state.
+	 * <li>All other models, including neural networks, scorecards, mining models and interpreted
+	 * tree models, create a regular result per evaluation, the same way as
+	 * {@link #evaluate(Map)}, and pass its values to the sink.
+	 * </ul>
+	 * 
+	 * @param context The context, which must have been created for this evaluator.
+	 * 
+	 * @return <code>true</code> if the evaluation produced a result, <code>false</code> otherwise
+	 *         (in which case the sink is not called).
+	 * 
+	 * @throws EvaluationException If the evaluation fails
+	 * 
+	 * @see ReusableEvaluationContext#reset(Map)
+	 */
+	boolean evaluate(ReusableEvaluationContext context, ResultSink sink)
+			throws EvaluationException;
+
+	/**
+	 * Compiles this model completely, and forbids further modifications.
+	 * 
+	 * The evaluation methods of a frozen evaluator keep all per-evaluation state in local
+	 * variables and in the evaluation context. A single frozen instance can be shared by any number
+	 * of threads, without synchronization.
+	 * 
+	 * <pre>
+	 * Evaluator evaluator = ...;
+	 * evaluator.freeze();
+	 * // Publish the evaluator to the worker threads
+	 * </pre>
+	 * 
+	 * @throws ModelManagerException If the model cannot be compiled
+	 * 
+	 * @see PMMLManager#freeze()
+	 */
+	void freeze() throws ModelManagerException;
+
+	/**
+	 * Reports the evaluation stages of this model to a metrics registry. The evaluators of
+	 * segments are not registered, unless segment metrics are enabled on the evaluator of the
+	 * mining model.
+	 * 
+	 * The registry must be set before the evaluator is {@link #freeze() frozen} and shared with
+	 * other threads. Evaluators that are created by a
+	 * {@link ModelEvaluatorFactory#setMetricsRegistry(MetricsRegistry) factory with a registry}
+	 * are registered already.
+	 * 
+	 * @param metricsRegistry The registry, or <code>null</code> to stop reporting.
+	 * @param name The name of this model.
+	 * 
+	 * @throws IllegalStateException If the evaluator is frozen
+	 * 
+	 * @see EvaluationStage
+	 */
+	void setMetricsRegistry(MetricsRegistry metricsRegistry, String name);
+}
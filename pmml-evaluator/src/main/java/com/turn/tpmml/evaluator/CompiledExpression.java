@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Expression;
+
+/**
+ * An immutable form of an {@link Expression}, whose constants have been parsed, whose functions
+ * have been resolved and whose fields have been bound to the slots of an {@link EvaluationPlan}.
+ *
+ * Compiled expressions are thread-safe, and can be shared between evaluations.
+ *
+ * @see ExpressionCompiler
+ */
+public abstract class CompiledExpression {
+
+	private Expression expression = null;
+
+	CompiledExpression(Expression expression) {
+		this.expression = expression;
+	}
+
+	/**
+	 * @return The same value as {@link ExpressionUtil#evaluate(Expression, EvaluationContext)}.
+	 */
+	public abstract Object evaluate(EvaluationContext context) throws EvaluationException;
+
+	/**
+	 * Evaluates this expression to a primitive value. Expressions of continuous functions pass
+	 * their intermediate results to each other without boxing them.
+	 *
+	 * @return The value, or <code>NaN</code> if the value is missing or is not a Double. A
+	 *         <code>NaN</code> value may also be a regular result, which
+	 *         {@link #evaluate(EvaluationContext)} tells apart.
+	 */
+	public double evaluateDouble(EvaluationContext context) throws EvaluationException {
+		Object value = evaluate(context);
+
+		if (value instanceof Double) {
+			return ((Double) value).doubleValue();
+		}
+
+		return Double.NaN;
+	}
+
+	/**
+	 * @return The source expression.
+	 */
+	public Expression getExpression() {
+		return this.expression;
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+
+/**
+ * A field reference that has been bound to the slot of an {@link EvaluationPlan}.
+ *
+ * Contexts that are not backed by the same plan are served by a lookup by name.
+ */
+class CompiledField {
+
+	private FieldName name = null;
+
+	private EvaluationPlan plan = null;
+
+	private int slot = -1;
+
+	CompiledField(FieldName name, EvaluationPlan plan) {
+		this.name = name;
+
+		if (plan != null) {
+			this.plan = plan;
+			this.slot = plan.getSlot(name);
+		}
+	}
+
+	public Object evaluate(EvaluationContext context) throws EvaluationException {
+
+		if (this.slot > -1 && context.getPlan() == this.plan) {
+			return ExpressionUtil.evaluate(this.slot, context);
+		}
+
+		return ExpressionUtil.evaluate(this.name, context);
+	}
+
+	public FieldName getName() {
+		return this.name;
+	}
+
+	public int getSlot() {
+		return this.slot;
+	}
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataField;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.DerivedField;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.Node;
+import com.turn.tpmml.Predicate;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.manager.ModelManager;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A {@link Node} whose predicate has been compiled, together with its compiled child nodes.
+ *
+ * Child nodes are kept in document order, unless they have been {@link #reorder reordered}.
+ *
+ * @see PredicateCompiler
+ */
+class CompiledNode {
+
+	private Node node = null;
+
+	private int index = -1;
+
+	private int size = 0;
+
+	private CompiledPredicate predicate = null;
+
+	private CompiledNode[] children = null;
+
+	private CompiledNode defaultChild = null;
+
+	private CompiledNode defaultSibling = null;
+
+	private CompiledNode(Node node, EvaluationPlan plan, int index) {
+		this.node = node;
+		this.index = index;
+
+		Predicate predicate = node.getPredicate();
+		if (predicate != null) {
+			this.predicate = PredicateCompiler.compile(predicate, plan);
+		}
+
+		List<Node> nodes = node.getNodes();
+
+		this.size = 1;
+
+		this.children = new CompiledNode[nodes.size()];
+		for (int i = 0; i < this.children.length; i++) {
+			this.children[i] = new CompiledNode(nodes.get(i), plan, index + this.size);
+
+			this.size += this.children[i].size;
+		}
+
+		resolveDefaultChildren();
+	}
+
+	private CompiledNode(CompiledNode node, CompiledNode[] children) {
+		this.node = node.node;
+		this.index = node.index;
+		this.size = node.size;
+		this.predicate = node.predicate;
+		this.children = children;
+
+		resolveDefaultChildren();
+	}
+
+	/**
+	 * Resolves the <code>defaultChild</code> attributes of this node and its child nodes to
+	 * direct references, so that they are not looked up by id during evaluation.
+	 */
+	private void resolveDefaultChildren() {
+		this.defaultChild = findChild(this.node.getDefaultChild());
+
+		for (int i = 0; i < this.children.length; i++) {
+			CompiledNode child = this.children[i];
+
+			child.defaultSibling = findChild((child.node).getDefaultChild());
+		}
+	}
+
+	private CompiledNode findChild(String id) {
+
+		if (id == null) {
+			return null;
+		}
+
+		for (int i = 0; i < this.children.length; i++) {
+			CompiledNode child = this.children[i];
+
+			if (id.equals((child.node).getId())) {
+				return child;
+			}
+		}
+
+		return null;
+	}
+
+	public Node getNode() {
+		return this.node;
+	}
+
+	/**
+	 * @return The position of the node in the document order of the tree.
+	 *
+	 * @see NodeStatistics
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * @return The number of nodes in the subtree of this node, including this node.
+	 */
+	public int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * @return The compiled predicate, or <code>null</code> if the node does not have a predicate.
+	 */
+	public CompiledPredicate getPredicate() {
+		return this.predicate;
+	}
+
+	public CompiledNode[] getChildren() {
+		return this.children;
+	}
+
+	public boolean hasChildren() {
+		return this.children.length > 0;
+	}
+
+	/**
+	 * @return The child node that the <code>defaultChild</code> attribute of this node refers to,
+	 *         or <code>null</code>.
+	 */
+	public CompiledNode getDefaultChild() {
+		return this.defaultChild;
+	}
+
+	/**
+	 * @return The sibling node that the <code>defaultChild</code> attribute of this node refers
+	 *         to, or <code>null</code>.
+	 *
+	 * @see TreeModelEvaluator
+	 */
+	public CompiledNode getDefaultSibling() {
+		return this.defaultSibling;
+	}
+
+	/**
+	 * Reorders child nodes by their hit counts, so that the most frequent child is tested first.
+	 *
+	 * Children are tested in order until the first one whose predicate is <code>true</code>.
+	 * Reordering must not change the result, so only the runs of consecutive children whose
+	 * predicates are provably disjoint are reordered. Every other child keeps its position.
+	 *
+	 * Predicates are disjoint if they are {@link SimplePredicate comparisons} of the same field,
+	 * whose ranges do not overlap in the order of the data type of the field. Such predicates are
+	 * all unknown when the field value is missing, so the missing value strategy sees the same
+	 * outcome as well.
+	 *
+	 * @return A reordered copy of this node. The tree that this node belongs to is not modified.
+	 */
+	CompiledNode reorder(final NodeStatistics statistics, ModelManager<?> modelManager,
+			EvaluationPlan plan) {
+		CompiledNode[] children = new CompiledNode[this.children.length];
+
+		Range[] ranges = new Range[children.length];
+
+		for (int i = 0; i < children.length; i++) {
+			children[i] = (this.children[i]).reorder(statistics, modelManager, plan);
+
+			ranges[i] = Range.create(children[i], modelManager, plan);
+		}
+
+		Comparator<CompiledNode> comparator = new Comparator<CompiledNode>() {
+
+			public int compare(CompiledNode left, CompiledNode right) {
+				long leftCount = statistics.getCount(left.index);
+				long rightCount = statistics.getCount(right.index);
+
+				return (leftCount > rightCount ? -1 : (leftCount == rightCount ? 0 : 1));
+			}
+		};
+
+		for (int begin = 0; begin < children.length; ) {
+			int end = begin + 1;
+
+			while (end < children.length && Range.isDisjoint(ranges, begin, end)) {
+				end++;
+			}
+
+			// The sort is stable, so children with equal counts keep their document order
+			Arrays.sort(children, begin, end, comparator);
+
+			begin = end;
+		}
+
+		return new CompiledNode(this, children);
+	}
+
+	static CompiledNode compile(Node root, EvaluationPlan plan) {
+		return new CompiledNode(root, plan, 0);
+	}
+
+	/**
+	 * The range of field values that a {@link SimplePredicate} is <code>true</code> for.
+	 */
+	private static class Range {
+
+		private FieldName field = null;
+
+		private DataType dataType = null;
+
+		/**
+		 * The lower bound, or <code>null</code> if the range is not bounded from below.
+		 */
+		private String lower = null;
+
+		private boolean lowerClosed = false;
+
+		/**
+		 * The upper bound, or <code>null</code> if the range is not bounded from above.
+		 */
+		private String upper = null;
+
+		private boolean upperClosed = false;
+
+		/**
+		 * @return The range, or <code>null</code> if the predicate of the node is not a simple
+		 *         comparison.
+		 */
+		static Range create(CompiledNode node, ModelManager<?> modelManager,
+				EvaluationPlan plan) {
+			CompiledPredicate predicate = node.getPredicate();
+			if (predicate == null || !(predicate.getPredicate() instanceof SimplePredicate)) {
+				return null;
+			}
+
+			SimplePredicate simplePredicate = (SimplePredicate) predicate.getPredicate();
+
+			String value = simplePredicate.getValue();
+			if (value == null) {
+				return null;
+			}
+
+			Range range = new Range();
+			range.field = simplePredicate.getField();
+			range.dataType = getDataType(range.field, modelManager, plan);
+
+			switch (simplePredicate.getOperator()) {
+			case EQUAL:
+				range.lower = value;
+				range.lowerClosed = true;
+				range.upper = value;
+				range.upperClosed = true;
+				break;
+			case LESS_THAN:
+				range.upper = value;
+				break;
+			case LESS_OR_EQUAL:
+				range.upper = value;
+				range.upperClosed = true;
+				break;
+			case GREATER_THAN:
+				range.lower = value;
+				break;
+			case GREATER_OR_EQUAL:
+				range.lower = value;
+				range.lowerClosed = true;
+				break;
+			default:
+				return null;
+			}
+
+			return range;
+		}
+
+		/**
+		 * @return <code>true</code> if the range at the specified position is disjoint with all
+		 *         ranges between the begin position (inclusive) and it.
+		 */
+		static boolean isDisjoint(Range[] ranges, int begin, int index) {
+
+			for (int i = begin; i < index; i++) {
+
+				if (!isDisjoint(ranges[i], ranges[index])) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		static boolean isDisjoint(Range left, Range right) {
+
+			if (left == null || right == null) {
+				return false;
+			}
+
+			if (!(left.field).equals(right.field) || left.dataType != right.dataType) {
+				return false;
+			}
+
+			return isBelow(left, right) || isBelow(right, left);
+		}
+
+		/**
+		 * @return <code>true</code> if every value of the left range is smaller than every value
+		 *         of the right range.
+		 */
+		private static boolean isBelow(Range left, Range right) {
+
+			if (left.upper == null || right.lower == null) {
+				return false;
+			}
+
+			Integer order = compare(left.dataType, left.upper, right.lower);
+			if (order == null) {
+				return false;
+			}
+
+			return order.intValue() < 0 ||
+					(order.intValue() == 0 && !(left.upperClosed && right.lowerClosed));
+		}
+
+		/**
+		 * Compares two constants the same way as {@link TypedValue} compares field values with
+		 * them.
+		 *
+		 * @param dataType The data type of the field, or <code>null</code> if it is not known. In
+		 *            that case the constants must be ordered the same way for every data type.
+		 *
+		 * @return The order of the constants, or <code>null</code> if it can not be proven.
+		 */
+		private static Integer compare(DataType dataType, String left, String right) {
+
+			if (dataType == null) {
+				Integer order = compare(DataType.STRING, left, right);
+
+				DataType[] dataTypes = {DataType.INTEGER, DataType.FLOAT, DataType.DOUBLE};
+				for (DataType numericType : dataTypes) {
+					Integer numericOrder = compare(numericType, left, right);
+
+					// Constants that can not be parsed to a numeric data type fail the same way
+					if (numericOrder == null && isParseable(numericType, left) ==
+							isParseable(numericType, right)) {
+						continue;
+					}
+
+					if (order == null || !order.equals(numericOrder)) {
+						return null;
+					}
+				}
+
+				return order;
+			}
+
+			try {
+				switch (dataType) {
+				case STRING:
+					return Integer.valueOf(signum(left.compareTo(right)));
+				case INTEGER:
+					return Integer.valueOf(signum((Integer.valueOf(left)).compareTo(
+							Integer.valueOf(right))));
+				case FLOAT:
+					return Integer.valueOf(signum(Float.compare(Float.parseFloat(left),
+							Float.parseFloat(right))));
+				case DOUBLE:
+					return Integer.valueOf(signum(Double.compare(Double.parseDouble(left),
+							Double.parseDouble(right))));
+				default:
+					return null;
+				}
+			} catch (NumberFormatException nfe) {
+				return null;
+			}
+		}
+
+		private static boolean isParseable(DataType dataType, String string) {
+			return compare(dataType, string, string) != null;
+		}
+
+		private static int signum(int value) {
+			return (value < 0 ? -1 : (value == 0 ? 0 : 1));
+		}
+
+		/**
+		 * @return The data type of the field, or <code>null</code> if it is not known.
+		 */
+		private static DataType getDataType(FieldName name, ModelManager<?> modelManager,
+				EvaluationPlan plan) {
+			int slot = plan.getSlot(name);
+
+			if (slot > -1) {
+				DerivedField derivedField = plan.getDerivedField(slot);
+
+				if (derivedField != null) {
+					return derivedField.getDataType();
+				}
+			}
+
+			DataField dataField = modelManager.getDataField(name);
+			if (dataField != null) {
+				return dataField.getDataType();
+			}
+
+			return null;
+		}
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.LinearNorm;
+import com.turn.tpmml.NormContinuous;
+import com.turn.tpmml.OutlierTreatmentMethodType;
+import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
+
+import java.util.List;
+
+/**
+ * A precompiled form of {@link NormalizationUtil#normalize(NormContinuous, double)} and
+ * {@link NormalizationUtil#denormalize(NormContinuous, double)}.
+ *
+ * The {@link LinearNorm LinearNorms} are copied to primitive breakpoint arrays, and the ranges of
+ * every linear segment are computed once, when the normalization is created. The segment of a
+ * value is found by binary search. The interpolation is the same arithmetic expression as that of
+ * {@link NormalizationUtil}, so that the results are equal to the last bit.
+ *
+ * Compiled normalizations are immutable and thread-safe.
+ */
+public class CompiledNormContinuous {
+
+	private NormContinuous normContinuous = null;
+
+	private double[] orig = null;
+
+	private double[] norm = null;
+
+	/**
+	 * The width of the segment between breakpoints <code>i</code> and <code>i + 1</code>, in
+	 * original values.
+	 */
+	private double[] origRanges = null;
+
+	/**
+	 * The width of the segment between breakpoints <code>i</code> and <code>i + 1</code>, in
+	 * normalized values.
+	 */
+	private double[] normRanges = null;
+
+	private boolean normAscending = false;
+
+	private OutlierTreatmentMethodType outliers = null;
+
+	private Double mapMissingTo = null;
+
+	private CompiledNormContinuous() {
+	}
+
+	/**
+	 * @return The same value as {@link NormalizationUtil#normalize(NormContinuous, double)}.
+	 */
+	public double normalize(double value) throws EvaluationException {
+		double[] orig = this.orig;
+
+		int last = orig.length - 1;
+
+		int segment;
+
+		if (value >= orig[0] && value <= orig[last]) {
+			segment = segment(orig, true, value);
+		} else {
+
+			switch (this.outliers) {
+			case AS_MISSING_VALUES:
+				if (this.mapMissingTo == null) {
+					throw new EvaluationException(
+							"There is no map available for the missing values.");
+				}
+				return this.mapMissingTo.doubleValue();
+			case AS_IS:
+				segment = (value < orig[0] ? 0 : last - 1);
+				break;
+			case AS_EXTREME_VALUES:
+				return (value < orig[0] ? this.norm[0] : this.norm[last]);
+			default:
+				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+						this.outliers.name());
+			}
+		}
+
+		return this.norm[segment] +
+				(value - orig[segment]) / this.origRanges[segment] * this.normRanges[segment];
+	}
+
+	/**
+	 * @return The same value as {@link NormalizationUtil#denormalize(NormContinuous, double)}.
+	 */
+	public double denormalize(double value) {
+		int segment = segment(this.norm, this.normAscending, value);
+
+		return (value - this.norm[segment]) / this.normRanges[segment] * this.origRanges[segment] +
+				this.orig[segment];
+	}
+
+	public NormContinuous getNormContinuous() {
+		return this.normContinuous;
+	}
+
+	public Double getMapMissingTo() {
+		return this.mapMissingTo;
+	}
+
+	public static CompiledNormContinuous create(NormContinuous normContinuous)
+			throws EvaluationException {
+		List<LinearNorm> linearNorms = normContinuous.getLinearNorms();
+
+		int count = linearNorms.size();
+		if (count < 2) {
+			throw new EvaluationException("Too few LinearNorms: " + count);
+		}
+
+		OutlierTreatmentMethodType outliers = normContinuous.getOutliers();
+		switch (outliers) {
+		case AS_IS:
+		case AS_MISSING_VALUES:
+		case AS_EXTREME_VALUES:
+			break;
+		default:
+			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION, outliers.name());
+		}
+
+		double[] orig = new double[count];
+		double[] norm = new double[count];
+
+		for (int i = 0; i < count; i++) {
+			LinearNorm linearNorm = linearNorms.get(i);
+
+			orig[i] = linearNorm.getOrig();
+			norm[i] = linearNorm.getNorm();
+		}
+
+		double[] origRanges = new double[count - 1];
+		double[] normRanges = new double[count - 1];
+
+		for (int i = 0; i < count - 1; i++) {
+			origRanges[i] = orig[i + 1] - orig[i];
+			normRanges[i] = norm[i + 1] - norm[i];
+		}
+
+		// Binary search is only valid for ascending breakpoints
+		if (!isAscending(orig)) {
+			throw new EvaluationException("LinearNorms are not in ascending order");
+		}
+
+		CompiledNormContinuous result = new CompiledNormContinuous();
+		result.normContinuous = normContinuous;
+		result.orig = orig;
+		result.norm = norm;
+		result.origRanges = origRanges;
+		result.normRanges = normRanges;
+		result.normAscending = isAscending(norm);
+		result.outliers = outliers;
+		result.mapMissingTo = normContinuous.getMapMissingTo();
+
+		return result;
+	}
+
+	/**
+	 * Selects a segment the same way as the linear scan of {@link NormalizationUtil}: the segment
+	 * ends at the first inner breakpoint that is greater than the value (or is not comparable to
+	 * it), or at the last breakpoint if there is no such inner breakpoint.
+	 *
+	 * @return The index of the first breakpoint of the segment.
+	 */
+	private static int segment(double[] breakpoints, boolean ascending, double value) {
+		int low = 1;
+		int high = breakpoints.length - 1;
+
+		if (ascending) {
+
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+
+				if (value >= breakpoints[middle]) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+		} else {
+
+			while (low < high && value >= breakpoints[low]) {
+				low++;
+			}
+		}
+
+		return low - 1;
+	}
+
+	private static boolean isAscending(double[] values) {
+
+		for (int i = 1; i < values.length; i++) {
+
+			if (!(values[i - 1] <= values[i])) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
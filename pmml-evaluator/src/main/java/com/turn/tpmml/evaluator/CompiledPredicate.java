@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Predicate;
+
+/**
+ * An immutable form of a {@link Predicate}, whose constants have been parsed and whose fields
+ * have been bound to the slots of an {@link EvaluationPlan}.
+ *
+ * Compiled predicates are thread-safe, and can be shared between evaluations.
+ *
+ * @see PredicateCompiler
+ */
+public abstract class CompiledPredicate {
+
+	private Predicate predicate = null;
+
+	CompiledPredicate(Predicate predicate) {
+		this.predicate = predicate;
+	}
+
+	/**
+	 * @return <code>true</code>, <code>false</code> or <code>null</code> (ie. unknown). The same
+	 *         as {@link PredicateUtil#evaluate(Predicate, EvaluationContext)}.
+	 */
+	public abstract Boolean evaluate(EvaluationContext context) throws EvaluationException;
+
+	/**
+	 * @return The source predicate.
+	 */
+	public Predicate getPredicate() {
+		return this.predicate;
+	}
+}
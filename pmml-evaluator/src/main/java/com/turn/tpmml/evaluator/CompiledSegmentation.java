@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Segment;
+import com.turn.tpmml.manager.MiningModelManager;
+import com.turn.tpmml.manager.ModelManagerException;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The compiled predicates and the evaluators of the segments of a mining model.
+ *
+ * The predicates of all segments are compiled together with the evaluation plan of the mining
+ * model, and the evaluators of all segments are created together, on first use. The caches are
+ * built completely before they are published through volatile fields, and are never modified
+ * afterwards, so that a shared evaluator can be used by several threads. Segments are added
+ * through {@link MiningModelManager#addSegment}, which
+ * {@link MiningModelManager#invalidateIndexes() invalidates} the caches.
+ *
+ * @see MiningModelEvaluator
+ * @see MiningModelEvaluator2
+ */
+class CompiledSegmentation<E extends MiningModelManager & ModelEvaluator> {
+
+	private static final ModelEvaluatorFactory EVALUATOR_FACTORY = ModelEvaluatorFactory
+			.getInstance();
+
+	private E evaluator = null;
+
+	private MetricsRegistry metricsRegistry = null;
+
+	private String metricsName = null;
+
+	private boolean segmentMetrics = false;
+
+	private volatile Map<Segment, ModelEvaluator> segmentEvaluators = null;
+
+	private volatile Map<Segment, CompiledPredicate> segmentPredicates = null;
+
+	/**
+	 * @param evaluator The evaluator of the mining model.
+	 */
+	CompiledSegmentation(E evaluator) {
+		this.evaluator = evaluator;
+	}
+
+	/**
+	 * @throws EvaluationException If the segment does not belong to the segmentation.
+	 */
+	public CompiledPredicate getPredicate(Segment segment) throws EvaluationException {
+		CompiledPredicate predicate = (getOrCreateSegmentPredicates()).get(segment);
+
+		if (predicate == null) {
+			throw new EvaluationException("The segment does not belong to the segmentation");
+		}
+
+		return predicate;
+	}
+
+	/**
+	 * @throws EvaluationException If the segment does not belong to the segmentation, or if the
+	 *             model of any segment is not supported.
+	 */
+	public ModelEvaluator getEvaluator(Segment segment) throws EvaluationException {
+		ModelEvaluator evaluator = (getOrCreateSegmentEvaluators()).get(segment);
+
+		if (evaluator == null) {
+			throw new EvaluationException("The segment does not belong to the segmentation");
+		}
+
+		return evaluator;
+	}
+
+	/**
+	 * Compiles the predicates and creates the evaluators of all segments, and freezes the
+	 * evaluators.
+	 */
+	public void freeze() throws ModelManagerException {
+		getOrCreateSegmentPredicates();
+
+		Collection<ModelEvaluator> segmentEvaluators = (getOrCreateSegmentEvaluators()).values();
+		for (ModelEvaluator segmentEvaluator : segmentEvaluators) {
+			segmentEvaluator.freeze();
+		}
+	}
+
+	/**
+	 * Discards the compiled predicates and the evaluators of segments. The metrics settings are
+	 * kept, and apply to the evaluators that are created next.
+	 */
+	public void invalidate() {
+		this.segmentEvaluators = null;
+		this.segmentPredicates = null;
+	}
+
+	/**
+	 * Registers or unregisters the evaluators of segments that have been created so far.
+	 *
+	 * @see #setSegmentMetrics(boolean)
+	 */
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry, String name) {
+		this.metricsRegistry = metricsRegistry;
+		this.metricsName = name;
+
+		Map<Segment, ModelEvaluator> segmentEvaluators = this.segmentEvaluators;
+		if (segmentEvaluators == null) {
+			return;
+		}
+
+		List<Segment> segments;
+		try {
+			segments = this.evaluator.getSegments();
+		} catch (ModelManagerException e) {
+			// Ignored. There are no segment evaluators without a segmentation
+			return;
+		}
+
+		for (int i = 0; i < segments.size(); i++) {
+			Segment segment = segments.get(i);
+
+			ModelEvaluator segmentEvaluator = segmentEvaluators.get(segment);
+			if (segmentEvaluator != null) {
+				registerSegmentEvaluator(segment, i, segmentEvaluator);
+			}
+		}
+	}
+
+	public boolean getSegmentMetrics() {
+		return this.segmentMetrics;
+	}
+
+	/**
+	 * @see MiningModelEvaluator2#setSegmentMetrics(boolean)
+	 */
+	public void setSegmentMetrics(boolean segmentMetrics) {
+		this.segmentMetrics = segmentMetrics;
+
+		setMetricsRegistry(this.metricsRegistry, this.metricsName);
+	}
+
+	private void registerSegmentEvaluator(Segment segment, int index,
+			ModelEvaluator segmentEvaluator) {
+		MetricsRegistry metricsRegistry = this.metricsRegistry;
+
+		if (metricsRegistry == null || !this.segmentMetrics) {
+			segmentEvaluator.setMetricsRegistry(null, null);
+
+			return;
+		}
+
+		segmentEvaluator.setMetricsRegistry(metricsRegistry,
+				EvaluatorUtil.getSegmentName(this.metricsName, segment, index));
+	}
+
+	private Map<Segment, ModelEvaluator> getOrCreateSegmentEvaluators()
+			throws EvaluationException {
+
+		Map<Segment, ModelEvaluator> segmentEvaluators = this.segmentEvaluators;
+
+		if (segmentEvaluators == null) {
+			segmentEvaluators = new IdentityHashMap<Segment, ModelEvaluator>();
+
+			List<Segment> segments = getSegments();
+			for (int i = 0; i < segments.size(); i++) {
+				Segment segment = segments.get(i);
+
+				ModelEvaluator segmentEvaluator = createSegmentEvaluator(segment);
+
+				registerSegmentEvaluator(segment, i, segmentEvaluator);
+
+				segmentEvaluators.put(segment, segmentEvaluator);
+			}
+
+			this.segmentEvaluators = segmentEvaluators;
+		}
+
+		return segmentEvaluators;
+	}
+
+	private Map<Segment, CompiledPredicate> getOrCreateSegmentPredicates()
+			throws EvaluationException {
+
+		Map<Segment, CompiledPredicate> segmentPredicates = this.segmentPredicates;
+
+		if (segmentPredicates == null) {
+			segmentPredicates = new IdentityHashMap<Segment, CompiledPredicate>();
+
+			EvaluationPlan plan = this.evaluator.getOrCreateEvaluationPlan();
+
+			List<Segment> segments = getSegments();
+			for (Segment segment : segments) {
+				segmentPredicates.put(segment, PredicateCompiler.compile(segment.getPredicate(),
+						plan));
+			}
+
+			this.segmentPredicates = segmentPredicates;
+		}
+
+		return segmentPredicates;
+	}
+
+	private List<Segment> getSegments() throws EvaluationException {
+
+		try {
+			return this.evaluator.getSegments();
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+	}
+
+	private ModelEvaluator createSegmentEvaluator(Segment segment) throws EvaluationException {
+
+		try {
+			return (ModelEvaluator) EVALUATOR_FACTORY.getModelManager(this.evaluator.getPmml(),
+					segment.getModel());
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+	}
+}
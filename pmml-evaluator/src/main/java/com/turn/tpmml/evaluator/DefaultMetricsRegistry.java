@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A metrics registry that keeps {@link EvaluationMetrics} in memory, one per model name.
+ */
+public class DefaultMetricsRegistry implements MetricsRegistry {
+
+	private ConcurrentMap<String, EvaluationMetrics> metrics =
+			new ConcurrentHashMap<String, EvaluationMetrics>();
+
+	private int sampleInterval = EvaluationMetrics.DEFAULT_SAMPLE_INTERVAL;
+
+	public DefaultMetricsRegistry() {
+	}
+
+	/**
+	 * @param sampleInterval The sample interval of the metrics of every model.
+	 *
+	 * @see EvaluationMetrics#EvaluationMetrics(int)
+	 */
+	public DefaultMetricsRegistry(int sampleInterval) {
+
+		if (sampleInterval < 1) {
+			throw new IllegalArgumentException("Invalid sample interval: " + sampleInterval);
+		}
+
+		this.sampleInterval = sampleInterval;
+	}
+
+	public EvaluationMetrics getListener(String name) {
+		EvaluationMetrics result = this.metrics.get(name);
+
+		if (result == null) {
+			EvaluationMetrics metrics = new EvaluationMetrics(this.sampleInterval);
+
+			result = this.metrics.putIfAbsent(name, metrics);
+			if (result == null) {
+				result = metrics;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The metrics of the model, or <code>null</code> if no evaluator of the model has been
+	 *         registered.
+	 */
+	public EvaluationMetrics getMetrics(String name) {
+		return this.metrics.get(name);
+	}
+
+	/**
+	 * @return Read-only view of the metrics of all registered models by their names.
+	 */
+	public Map<String, EvaluationMetrics> getMetrics() {
+		return Collections.unmodifiableMap(this.metrics);
+	}
+}
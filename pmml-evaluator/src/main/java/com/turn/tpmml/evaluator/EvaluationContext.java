@@ -6,6 +6,8 @@ package com.turn.tpmml.evaluator;
 import com.turn.tpmml.DerivedField;
 import com.turn.tpmml.FieldName;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -14,10 +16,93 @@ public abstract class EvaluationContext implements Cloneable {
 
 	private Map<FieldName, ?> parameters = null;
 
+	private EvaluationPlan plan = null;
+
+	/**
+	 * Values of the slots that depend only on the PMML document.
+	 *
+	 * @see EvaluationPlan#getGlobalCount()
+	 */
+	private Frame global = null;
+
+	/**
+	 * Values of the slots that are specific to the model.
+	 */
+	private Frame local = null;
+
+	/**
+	 * Whether the stages of the current model stage are measured, or only counted.
+	 */
+	private boolean measured = false;
+
+	/**
+	 * The number of derived fields that are being computed, one inside the other.
+	 */
+	private int transformationDepth = 0;
+
+	/**
+	 * The number and the total time of the outermost derived fields that have been computed
+	 * since the model stage began.
+	 */
+	private int transformationCount = 0;
+
+	private long transformationNanos = 0L;
+
+	/**
+	 * The time of the output stage, if it has been evaluated since the model stage began.
+	 */
+	private long outputNanos = 0L;
+
 	public EvaluationContext(Map<FieldName, ?> parameters) {
 		setParameters(parameters);
 	}
 
+	/**
+	 * Creates a slot-backed context. Parameters that are known to the plan are copied to their
+	 * slots once, so that subsequent field lookups are plain array accesses.
+	 */
+	public EvaluationContext(EvaluationPlan plan, Map<FieldName, ?> parameters) {
+		setParameters(parameters);
+		setPlan(plan);
+
+		this.global = new Frame(plan.getGlobalCount());
+		this.local = new Frame(plan.size() - plan.getGlobalCount(), this.global);
+
+		load(0, plan.size());
+	}
+
+	/**
+	 * Creates a slot-backed context for a model that is evaluated as a part of the evaluation of
+	 * an enclosing model (eg. a {@link com.turn.tpmml.Segment Segment} of a
+	 * {@link com.turn.tpmml.MiningModel MiningModel}).
+	 *
+	 * The parameters are shared with the parent context. If both contexts have been compiled
+	 * against the same PMML document, then the values of data fields and the memoized values of
+	 * the derived fields of the TransformationDictionary are shared as well. Clearing the derived
+	 * field values of either context then clears the memoized values of both contexts, including
+	 * the values of the derived fields of the LocalTransformations.
+	 *
+	 * Otherwise, this context works on a copy of the parameters, which is taken when it is
+	 * created.
+	 */
+	public EvaluationContext(EvaluationPlan plan, EvaluationContext parent) {
+		setParameters(parent.getParameters());
+		setPlan(plan);
+
+		EvaluationPlan parentPlan = parent.getPlan();
+		if (parentPlan != null && plan.isGlobalCompatible(parentPlan)) {
+			this.global = parent.global;
+			this.local = new Frame(plan.size() - plan.getGlobalCount(), this.global);
+
+			load(plan.getGlobalCount(), plan.size());
+		} else {
+			this.global = new Frame(plan.getGlobalCount());
+			this.local = new Frame(plan.size() - plan.getGlobalCount(), this.global);
+
+			load(0, plan.size());
+		}
+	}
+
 	public abstract DerivedField resolve(FieldName name) throws EvaluationException;
 
 	@Override
@@ -30,13 +115,39 @@ public abstract class EvaluationContext implements Cloneable {
 					getParameters());
 			result.setParameters(parameters);
 
+			if (getPlan() != null) {
+				result.global = this.global.clone();
+				result.local = this.local.clone();
+				result.local.parent = result.global;
+			}
+
 			return result;
 		} catch (CloneNotSupportedException cnse) {
 			throw new AssertionError(cnse);
 		}
 	}
 
+	/**
+	 * @return The slot of the field, or <code>-1</code> if this context is not slot-backed or the
+	 *         field is not known to its plan.
+	 *
+	 * @see #getPlan()
+	 */
+	public int getSlot(FieldName name) {
+		EvaluationPlan plan = getPlan();
+		if (plan == null) {
+			return -1;
+		}
+
+		return plan.getSlot(name);
+	}
+
 	public Object getParameter(FieldName name) {
+		int slot = getSlot(name);
+		if (slot > -1) {
+			return getValue(slot);
+		}
+
 		Map<FieldName, ?> parameters = getParameters();
 
 		return parameters.get(name);
@@ -48,6 +159,117 @@ public abstract class EvaluationContext implements Cloneable {
 		Map<FieldName, Object> parameters = (Map<FieldName, Object>) getParameters();
 
 		parameters.put(name, value);
+
+		if (getPlan() != null) {
+			int slot = getSlot(name);
+			if (slot > -1) {
+				putValue(slot, value);
+			}
+
+			// The new value may change the value of any derived field
+			clearDerivedValues();
+		}
+	}
+
+	/**
+	 * Synchronizes slots with the parameters after the latter have been modified directly.
+	 */
+	void reload() {
+		EvaluationPlan plan = getPlan();
+
+		if (plan != null) {
+			Map<FieldName, ?> parameters = getParameters();
+
+			// Unlike iterating over the parameters, looking up every slot does not create objects
+			for (int slot = 0; slot < plan.size(); slot++) {
+
+				if (plan.getDerivedField(slot) == null) {
+					putValue(slot, parameters.get(plan.getName(slot)));
+				}
+			}
+
+			clearDerivedValues();
+		}
+	}
+
+	/**
+	 * Gets the raw value of a slot. Derived fields are not evaluated.
+	 *
+	 * @see ExpressionUtil#evaluate(int, EvaluationContext)
+	 */
+	public Object getValue(int slot) {
+		int globalCount = this.global.values.length;
+
+		if (slot < globalCount) {
+			return this.global.values[slot];
+		}
+
+		return this.local.values[slot - globalCount];
+	}
+
+	void putValue(int slot, Object value) {
+		int globalCount = this.global.values.length;
+
+		if (slot < globalCount) {
+			this.global.values[slot] = value;
+		} else {
+			this.local.values[slot - globalCount] = value;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the value of the derived field in the slot has already been
+	 *         computed during the current evaluation, <code>false</code> otherwise.
+	 */
+	boolean isComputed(int slot) {
+		int globalCount = this.global.values.length;
+
+		if (slot < globalCount) {
+			return this.global.isComputed(slot);
+		}
+
+		return this.local.isComputed(slot - globalCount);
+	}
+
+	/**
+	 * Memoizes the value of the derived field in the slot.
+	 */
+	void putComputedValue(int slot, Object value) {
+		int globalCount = this.global.values.length;
+
+		if (slot < globalCount) {
+			this.global.putComputedValue(slot, value);
+		} else {
+			this.local.putComputedValue(slot - globalCount, value);
+		}
+	}
+
+	/**
+	 * Forgets all memoized derived field values. This is a constant-time operation.
+	 *
+	 * The memoized values of the contexts that share the values of data fields with this context
+	 * are forgotten as well.
+	 *
+	 * @see #EvaluationContext(EvaluationPlan, EvaluationContext)
+	 */
+	public void clearDerivedValues() {
+
+		if (getPlan() != null) {
+			this.global.clear();
+			this.local.clear();
+		}
+	}
+
+	/**
+	 * Forgets the memoized values of the derived fields that are specific to the model.
+	 *
+	 * @see #clearDerivedValues()
+	 */
+	void clearLocalDerivedValues() {
+
+		if (getPlan() != null) {
+			this.local.clear();
+		}
 	}
 
 	public Map<FieldName, ?> getParameters() {
@@ -57,4 +279,211 @@ public abstract class EvaluationContext implements Cloneable {
 	void setParameters(Map<FieldName, ?> parameters) {
 		this.parameters = parameters;
 	}
+
+	/**
+	 * @return The listener of the model that is being evaluated, or <code>null</code>.
+	 */
+	public EvaluationListener getEvaluationListener() {
+		return null;
+	}
+
+	/**
+	 * Forgets the times of the stages that have been evaluated as a part of the previous model
+	 * stage.
+	 *
+	 * @param measured <code>true</code> if the stages of the next model stage are measured,
+	 *            <code>false</code> if they are only counted.
+	 *
+	 * @see EvaluatorUtil#beginModel(EvaluationListener, EvaluationContext)
+	 */
+	void resetStages(boolean measured) {
+		this.measured = measured;
+		this.transformationDepth = 0;
+		this.transformationCount = 0;
+		this.transformationNanos = 0L;
+		this.outputNanos = 0L;
+	}
+
+	boolean isMeasured() {
+		return this.measured;
+	}
+
+	/**
+	 * @return The start time of a derived field, or {@link EvaluatorUtil#UNMEASURED} if the
+	 *         model stage is not measured, or if the derived field is computed as a part of
+	 *         another derived field.
+	 *
+	 * @see #endTransformation(EvaluationListener, long)
+	 */
+	long beginTransformation(EvaluationListener listener) {
+
+		if (listener == null) {
+			return EvaluatorUtil.UNMEASURED;
+		}
+
+		this.transformationDepth++;
+
+		if (this.transformationDepth == 1 && this.measured) {
+			return System.nanoTime();
+		}
+
+		return EvaluatorUtil.UNMEASURED;
+	}
+
+	void endTransformation(EvaluationListener listener, long begin) {
+
+		if (listener == null) {
+			return;
+		}
+
+		this.transformationDepth--;
+
+		if (this.transformationDepth == 0) {
+			this.transformationCount++;
+
+			if (begin != EvaluatorUtil.UNMEASURED) {
+				this.transformationNanos += (System.nanoTime() - begin);
+			}
+		}
+	}
+
+	int getTransformationCount() {
+		return this.transformationCount;
+	}
+
+	long getTransformationNanos() {
+		return this.transformationNanos;
+	}
+
+	long getOutputNanos() {
+		return this.outputNanos;
+	}
+
+	void setOutputNanos(long outputNanos) {
+		this.outputNanos = outputNanos;
+	}
+
+	/**
+	 * @return The plan of a slot-backed context, or <code>null</code>.
+	 */
+	public EvaluationPlan getPlan() {
+		return this.plan;
+	}
+
+	private void setPlan(EvaluationPlan plan) {
+		this.plan = plan;
+	}
+
+	/**
+	 * Copies the values of the parameters to the slots in the range. The parameters are
+	 * {@link EvaluationPlan#getParameterSlot(FieldName) resolved} in iteration order, which means
+	 * that the keys that the evaluator has handed out are never hashed.
+	 */
+	private void load(int begin, int end) {
+		EvaluationPlan plan = getPlan();
+
+		boolean empty = true;
+
+		for (int slot = begin; slot < end; slot++) {
+
+			if (plan.getDerivedField(slot) == null) {
+				putValue(slot, null);
+
+				empty = false;
+			}
+		}
+
+		// Eg. the local slots of a segment that does not have output fields
+		if (empty) {
+			return;
+		}
+
+		Map<FieldName, ?> parameters = getParameters();
+
+		Collection<? extends Map.Entry<FieldName, ?>> entries = parameters.entrySet();
+		for (Map.Entry<FieldName, ?> entry : entries) {
+			int slot = plan.getParameterSlot(entry.getKey());
+
+			if (slot >= begin && slot < end) {
+				putValue(slot, entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Slot storage. A derived field value is valid only if its stamp equals to the current
+	 * generation, which allows all values to be invalidated at once.
+	 *
+	 * The values of a local frame depend on the values of a global frame, which may be shared
+	 * with other contexts. The local frame is cleared whenever the global frame has been cleared.
+	 */
+	private static class Frame implements Cloneable {
+
+		private Object[] values = null;
+
+		private int[] stamps = null;
+
+		private int generation = 1;
+
+		private Frame parent = null;
+
+		/**
+		 * The generation of the parent frame that the values of this frame were computed in.
+		 */
+		private int parentGeneration = 0;
+
+		private Frame(int size) {
+			this.values = new Object[size];
+			this.stamps = new int[size];
+		}
+
+		private Frame(int size, Frame parent) {
+			this(size);
+
+			this.parent = parent;
+			this.parentGeneration = parent.generation;
+		}
+
+		private boolean isComputed(int index) {
+			Frame parent = this.parent;
+
+			if (parent != null && parent.generation != this.parentGeneration) {
+				clear();
+
+				this.parentGeneration = parent.generation;
+			}
+
+			return this.stamps[index] == this.generation;
+		}
+
+		private void putComputedValue(int index, Object value) {
+			this.values[index] = value;
+			this.stamps[index] = this.generation;
+		}
+
+		private void clear() {
+			this.generation++;
+
+			// Start over when the counter wraps around
+			if (this.generation == 0) {
+				Arrays.fill(this.stamps, 0);
+
+				this.generation = 1;
+			}
+		}
+
+		@Override
+		public Frame clone() {
+			try {
+				Frame result = (Frame) super.clone();
+
+				result.values = this.values.clone();
+				result.stamps = this.stamps.clone();
+
+				return result;
+			} catch (CloneNotSupportedException cnse) {
+				throw new AssertionError(cnse);
+			}
+		}
+	}
 }
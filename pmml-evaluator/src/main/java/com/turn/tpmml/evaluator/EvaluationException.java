@@ -10,6 +10,12 @@ public class EvaluationException extends ModelManagerException {
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * <code>true</code> if the failure has been reported to a listener.
+	 *
+	 * @see EvaluatorUtil#fail(EvaluationListener, EvaluationStage, EvaluationException)
+	 */
+	private transient boolean reported = false;
 
 	public EvaluationException(String message) {
 		super(TPMMLCause.GENERAL, message);
@@ -22,4 +28,12 @@ public class EvaluationException extends ModelManagerException {
 	public EvaluationException(TPMMLException e) {
 		super(e);
 	}
+
+	boolean isReported() {
+		return this.reported;
+	}
+
+	void setReported(boolean reported) {
+		this.reported = reported;
+	}
 }
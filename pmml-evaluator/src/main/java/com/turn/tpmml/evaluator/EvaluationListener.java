@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+/**
+ * Receives the outcome of every evaluation stage of a model.
+ *
+ * Every evaluation of a stage is counted, but only the durations of sampled evaluations are
+ * measured, so that the clock is not read for every record. The listener decides which
+ * evaluations are sampled.
+ *
+ * The listener is called on the evaluating thread, possibly by many threads at the same time.
+ * Implementations must be thread-safe, and should not block.
+ *
+ * @see MetricsRegistry
+ * @see EvaluationMetrics
+ */
+public interface EvaluationListener {
+
+	/**
+	 * Counts an evaluation of a stage.
+	 *
+	 * @return <code>true</code> if the duration of the evaluation is to be measured, and reported
+	 *         to {@link #evaluated(EvaluationStage, long)}, <code>false</code> otherwise. The
+	 *         stages that are evaluated as a part of a model stage are measured if and only if
+	 *         the model stage is.
+	 */
+	boolean begin(EvaluationStage stage);
+
+	/**
+	 * Reports the duration of a measured evaluation of a stage.
+	 *
+	 * @param nanos The duration of the stage in nanoseconds.
+	 */
+	void evaluated(EvaluationStage stage, long nanos);
+
+	void failed(EvaluationStage stage, EvaluationException exception);
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataField;
+import com.turn.tpmml.DerivedField;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.LocalTransformations;
+import com.turn.tpmml.MiningField;
+import com.turn.tpmml.Model;
+import com.turn.tpmml.Node;
+import com.turn.tpmml.Output;
+import com.turn.tpmml.OutputField;
+import com.turn.tpmml.PMML;
+import com.turn.tpmml.TransformationDictionary;
+import com.turn.tpmml.TreeModel;
+import com.turn.tpmml.manager.ModelManager;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled field layout of a {@link ModelManager}.
+ *
+ * Every {@link DataField}, {@link DerivedField} and {@link OutputField} that is visible to the
+ * model is given a fixed integer slot. Slots are laid out in the following order:
+ * <ol>
+ * <li>{@link DataField DataFields} of the DataDictionary
+ * <li>{@link DerivedField DerivedFields} of the TransformationDictionary
+ * <li>{@link DerivedField DerivedFields} of the LocalTransformations
+ * <li>{@link OutputField OutputFields} of the Output
+ * </ol>
+ *
+ * The first two groups depend only on the {@link PMML} document, which means that all models of
+ * the same document agree on their "global" slots.
+ *
+ * A field name is resolved to a slot once, when the plan is compiled. Evaluation code that holds
+ * on to slots never has to hash a {@link FieldName} or scan a list of fields.
+ *
+ * The expressions of derived fields, the {@link FieldPreparer preparers} of data fields and the
+ * {@link OutputPlan Output element} are compiled together with the plan.
+ *
+ * @see EvaluationContext
+ */
+public class EvaluationPlan {
+
+	private PMML pmml = null;
+
+	private Map<FieldName, Integer> slots = null;
+
+	private Map<FieldName, Integer> parameterSlots = null;
+
+	private FieldName[] names = null;
+
+	private DerivedField[] derivedFields = null;
+
+	private CompiledExpression[] expressions = null;
+
+	private FieldPreparer[] fieldPreparers = null;
+
+	private OutputPlan outputPlan = null;
+
+	/**
+	 * The root node of the tree, if the model is a tree model.
+	 */
+	private Node root = null;
+
+	private Map<String, Integer> classIndexes = null;
+
+	private int dataFieldCount = 0;
+
+	private int globalCount = 0;
+
+	private int outputOffset = 0;
+
+	private EvaluationPlan() {
+	}
+
+	/**
+	 * @return The slot of the field, or <code>-1</code> if the field is not known to this plan.
+	 */
+	public int getSlot(FieldName name) {
+		Integer slot = this.slots.get(name);
+		if (slot == null) {
+			return -1;
+		}
+
+		return slot.intValue();
+	}
+
+	/**
+	 * Resolves the name of a parameter to the slot that its value is copied to.
+	 *
+	 * Names that are the same instances as the names of the DataDictionary or the MiningSchema
+	 * (eg. the names that {@link Evaluator#getActiveFields()} returns) are resolved by identity,
+	 * without hashing the name. Other names are resolved by {@link #getSlot(FieldName)}.
+	 *
+	 * @return The slot, or <code>-1</code> if the field is not known to this plan, or if it is a
+	 *         derived field.
+	 */
+	int getParameterSlot(FieldName name) {
+		Integer slot = this.parameterSlots.get(name);
+		if (slot != null) {
+			return slot.intValue();
+		}
+
+		int result = getSlot(name);
+		if (result < 0 || this.derivedFields[result] != null) {
+			return -1;
+		}
+
+		return result;
+	}
+
+	public FieldName getName(int slot) {
+		return this.names[slot];
+	}
+
+	/**
+	 * @return The definition of the derived field in the slot, or <code>null</code> if the slot
+	 *         belongs to a data field or to an output field.
+	 */
+	public DerivedField getDerivedField(int slot) {
+		return this.derivedFields[slot];
+	}
+
+	/**
+	 * @return The compiled expression of the derived field in the slot, or <code>null</code> if the
+	 *         slot belongs to a data field or to an output field.
+	 *
+	 * @see ExpressionCompiler#compile(DerivedField, EvaluationPlan)
+	 */
+	public CompiledExpression getExpression(int slot) {
+		return this.expressions[slot];
+	}
+
+	/**
+	 * @return The preparer of the data field in the slot, or <code>null</code> if the slot does not
+	 *         belong to a data field.
+	 */
+	public FieldPreparer getFieldPreparer(int slot) {
+
+		if (slot < 0 || slot >= this.dataFieldCount) {
+			return null;
+		}
+
+		return this.fieldPreparers[slot];
+	}
+
+	public FieldPreparer getFieldPreparer(FieldName name) {
+		return getFieldPreparer(getSlot(name));
+	}
+
+	/**
+	 * @return The compiled Output element of the model.
+	 */
+	OutputPlan getOutputPlan() {
+		return this.outputPlan;
+	}
+
+	/**
+	 * @return The class index table of the tree, or <code>null</code> if the model is not a tree
+	 *         model. The table is shared by all compiled forms of the tree and by the Output
+	 *         element, so that class indexes can be resolved when the plan is compiled.
+	 *
+	 * @see NodeClassificationMap#getClassIndexes()
+	 */
+	Map<String, Integer> getClassIndexes() {
+		return this.classIndexes;
+	}
+
+	/**
+	 * @return The class index table of the tree that the root node belongs to.
+	 */
+	Map<String, Integer> getClassIndexes(Node root) {
+
+		if (this.root != null && this.root == root) {
+			return this.classIndexes;
+		}
+
+		return NodeClassificationMap.createClassIndexes(root);
+	}
+
+	public boolean isDataField(int slot) {
+		return slot < this.dataFieldCount;
+	}
+
+	public boolean isOutputField(int slot) {
+		return slot >= this.outputOffset;
+	}
+
+	/**
+	 * @return The number of slots.
+	 */
+	public int size() {
+		return this.names.length;
+	}
+
+	public int getDataFieldCount() {
+		return this.dataFieldCount;
+	}
+
+	/**
+	 * @return The number of slots that depend only on the {@link PMML} document.
+	 */
+	public int getGlobalCount() {
+		return this.globalCount;
+	}
+
+	/**
+	 * @return The slot of the first output field.
+	 */
+	public int getOutputOffset() {
+		return this.outputOffset;
+	}
+
+	/**
+	 * @return <code>true</code> if the other plan has been compiled against the same {@link PMML}
+	 *         document, and therefore agrees with this plan on all "global" slots.
+	 */
+	public boolean isGlobalCompatible(EvaluationPlan that) {
+		return (this.pmml == that.pmml) && (this.globalCount == that.globalCount);
+	}
+
+	/**
+	 * @return Read-only mapping from field names to slots.
+	 */
+	public Map<FieldName, Integer> getSlots() {
+		return this.slots;
+	}
+
+	/**
+	 * Resolves the slots of the specified fields.
+	 *
+	 * @throws EvaluationException If some field is not known to this plan.
+	 */
+	public int[] getSlots(List<FieldName> names) throws EvaluationException {
+		int[] result = new int[names.size()];
+
+		for (int i = 0; i < result.length; i++) {
+			FieldName name = names.get(i);
+
+			int slot = getSlot(name);
+			if (slot < 0) {
+				throw new EvaluationException(TPMMLCause.MISSING_PARAMETER, name.getValue());
+			}
+
+			result[i] = slot;
+		}
+
+		return result;
+	}
+
+	public static EvaluationPlan compile(ModelManager<?> modelManager) throws EvaluationException {
+		EvaluationPlan plan = new EvaluationPlan();
+		plan.pmml = modelManager.getPmml();
+
+		List<FieldName> names = new ArrayList<FieldName>();
+		List<DerivedField> derivedFields = new ArrayList<DerivedField>();
+
+		List<DataField> dataFields = (modelManager.getDataDictionary()).getDataFields();
+		for (DataField dataField : dataFields) {
+			names.add(dataField.getName());
+			derivedFields.add(null);
+		}
+
+		plan.dataFieldCount = names.size();
+
+		try {
+			plan.fieldPreparers = new FieldPreparer[plan.dataFieldCount];
+			for (int i = 0; i < plan.fieldPreparers.length; i++) {
+				DataField dataField = dataFields.get(i);
+
+				MiningField miningField = modelManager.getMiningField(dataField.getName());
+
+				plan.fieldPreparers[i] = createFieldPreparer(dataField, miningField);
+			}
+
+			// Optional elements are read without creating them, so that compiling a plan does
+			// not modify the PMML document
+			TransformationDictionary transformationDictionary =
+					(plan.pmml).getTransformationDictionary();
+			if (transformationDictionary != null) {
+
+				for (DerivedField derivedField : transformationDictionary.getDerivedFields()) {
+					names.add(derivedField.getName());
+					derivedFields.add(derivedField);
+				}
+			}
+
+			plan.globalCount = names.size();
+
+			Model model = modelManager.getModel();
+
+			LocalTransformations localTransformations = model.getLocalTransformations();
+			if (localTransformations != null) {
+
+				for (DerivedField derivedField : localTransformations.getDerivedFields()) {
+					names.add(derivedField.getName());
+					derivedFields.add(derivedField);
+				}
+			}
+
+			plan.outputOffset = names.size();
+
+			for (OutputField outputField : getOutputFields(model)) {
+				names.add(outputField.getName());
+				derivedFields.add(null);
+			}
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		// Later definitions shadow earlier ones, the same way ModelManager#resolve(FieldName)
+		// prefers LocalTransformations over the TransformationDictionary
+		Map<FieldName, Integer> slots = new HashMap<FieldName, Integer>(2 * names.size());
+		for (int i = 0; i < names.size(); i++) {
+			FieldName name = names.get(i);
+
+			if (i >= plan.outputOffset) {
+				Integer slot = slots.get(name);
+
+				// Derived fields take precedence over output fields
+				if (slot != null && derivedFields.get(slot.intValue()) != null) {
+					continue;
+				}
+			}
+
+			slots.put(name, Integer.valueOf(i));
+		}
+
+		plan.slots = Collections.unmodifiableMap(slots);
+
+		// The names of the DataDictionary and of the MiningSchema are the keys that callers get
+		// from the evaluator (eg. Evaluator#getActiveFields())
+		Map<FieldName, Integer> parameterSlots = new IdentityHashMap<FieldName, Integer>();
+		for (int i = 0; i < plan.dataFieldCount; i++) {
+			FieldName name = names.get(i);
+
+			if (i == (slots.get(name)).intValue()) {
+				parameterSlots.put(name, Integer.valueOf(i));
+			}
+		}
+
+		try {
+			List<MiningField> miningFields = (modelManager.getMiningSchema()).getMiningFields();
+			for (MiningField miningField : miningFields) {
+				FieldName name = miningField.getName();
+
+				Integer slot = slots.get(name);
+				if (slot != null && slot.intValue() < plan.dataFieldCount) {
+					parameterSlots.put(name, slot);
+				}
+			}
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		plan.parameterSlots = parameterSlots;
+		plan.names = names.toArray(new FieldName[names.size()]);
+		plan.derivedFields = derivedFields.toArray(new DerivedField[derivedFields.size()]);
+
+		// Expressions are bound to slots, which means that they have to be compiled last
+		plan.expressions = new CompiledExpression[plan.derivedFields.length];
+		for (int i = 0; i < plan.expressions.length; i++) {
+			DerivedField derivedField = plan.derivedFields[i];
+
+			if (derivedField != null) {
+				plan.expressions[i] = ExpressionCompiler.compile(derivedField, plan);
+			}
+		}
+
+		try {
+			Model model = modelManager.getModel();
+
+			if (model instanceof TreeModel) {
+				plan.root = ((TreeModel) model).getNode();
+			}
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		if (plan.root != null) {
+			plan.classIndexes = NodeClassificationMap.createClassIndexes(plan.root);
+		}
+
+		plan.outputPlan = OutputPlan.compile(modelManager, plan);
+
+		return plan;
+	}
+
+	/**
+	 * @return The output fields of the model, or an empty list if it does not have an Output
+	 *         element.
+	 */
+	static List<OutputField> getOutputFields(Model model) {
+		Output output = model.getOutput();
+		if (output == null) {
+			return Collections.emptyList();
+		}
+
+		return output.getOutputFields();
+	}
+
+	/**
+	 * @return The preparer, or <code>null</code> if the field declares values that can not be
+	 *         parsed. Such fields are left to {@link ParameterUtil}, which fails the same way as
+	 *         before when they are prepared.
+	 */
+	private static FieldPreparer createFieldPreparer(DataField dataField, MiningField miningField) {
+
+		try {
+			return FieldPreparer.create(dataField, miningField);
+		} catch (EvaluationException ee) {
+			// Ignored
+		} catch (NumberFormatException nfe) {
+			// Ignored
+		}
+
+		return null;
+	}
+}
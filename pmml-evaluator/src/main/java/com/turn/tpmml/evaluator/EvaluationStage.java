@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+/**
+ * The stages of an evaluation that are reported to an {@link EvaluationListener}.
+ *
+ * Every stage is reported once per evaluation of a model, and stages do not overlap. The derived
+ * fields and the output are computed as a part of the evaluation of a model, and their time is
+ * left out of the time of the model stage. A failure is reported once, by the stage where it
+ * started.
+ */
+public enum EvaluationStage {
+	/**
+	 * The preparation of an input value.
+	 *
+	 * @see Evaluator#prepare(com.turn.tpmml.FieldName, Object)
+	 */
+	PREPARE,
+
+	/**
+	 * The computation of all derived fields of an evaluation, including the derived fields that
+	 * they depend on.
+	 */
+	TRANSFORMATIONS,
+
+	/**
+	 * The evaluation of a model, apart from its transformations and its output.
+	 */
+	MODEL,
+
+	/**
+	 * The evaluation of the Output element of a model.
+	 */
+	OUTPUT,
+	;
+}
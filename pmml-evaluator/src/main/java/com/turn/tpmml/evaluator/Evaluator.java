@@ -64,6 +64,7 @@ import java.util.Map;
  * }
  * </pre>
  * 
+ * @see CompiledEvaluator
  * @see EvaluatorUtil
  */
 public interface Evaluator extends Consumer {
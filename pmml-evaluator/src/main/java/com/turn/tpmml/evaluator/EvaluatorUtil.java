@@ -4,10 +4,17 @@
 package com.turn.tpmml.evaluator;
 
 import com.turn.tpmml.FieldName;
+import com.turn.tpmml.Segment;
+import com.turn.tpmml.manager.IPMMLResult;
+import com.turn.tpmml.manager.ModelManager;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.PMMLResult;
 
 import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 
 public class EvaluatorUtil {
@@ -88,4 +95,335 @@ public class EvaluatorUtil {
 
 		return result;
 	}
+
+	/**
+	 * Compiles the evaluation plan of a new evaluator.
+	 * 
+	 * @return The plan, or <code>null</code> if the model cannot be compiled yet (eg. it is still
+	 *         being built). The plan is then compiled on first use, which reports the error.
+	 * 
+	 * @see ModelEvaluator#getOrCreateEvaluationPlan()
+	 */
+	static EvaluationPlan compileEvaluationPlan(ModelManager<?> modelManager) {
+
+		try {
+			return EvaluationPlan.compile(modelManager);
+		} catch (EvaluationException ee) {
+			return null;
+		}
+	}
+
+	/**
+	 * Evaluates the model of an evaluator, and reports the evaluation to its listener.
+	 * 
+	 * @see ModelEvaluator#evaluateModel(ModelManagerEvaluationContext)
+	 */
+	static IPMMLResult evaluate(ModelEvaluator evaluator, ModelManagerEvaluationContext context)
+			throws EvaluationException {
+		EvaluationListener listener = evaluator.getEvaluationListener();
+
+		long begin = beginModel(listener, context);
+
+		try {
+			IPMMLResult result = evaluator.evaluateModel(context);
+
+			endModel(listener, context, begin);
+
+			return result;
+		} catch (EvaluationException ee) {
+			throw fail(listener, EvaluationStage.MODEL, ee);
+		}
+	}
+
+	/**
+	 * Evaluates the model of an evaluator, and only the selected output fields.
+	 * 
+	 * @see CompiledEvaluator#evaluate(Map, Set)
+	 */
+	static IPMMLResult evaluate(ModelEvaluator evaluator, Map<FieldName, ?> parameters,
+			Set<FieldName> outputFields) throws EvaluationException {
+		ModelManagerEvaluationContext context = new ModelManagerEvaluationContext(
+				(ModelManager<?>) evaluator, evaluator.getOrCreateEvaluationPlan(), parameters);
+		context.setOutputFields(outputFields);
+
+		return evaluate(evaluator, context);
+	}
+
+	/**
+	 * Evaluates the model of an evaluator in a caller-owned context, and passes the result to a
+	 * sink. This is the sink evaluation of every model that does not have one of its own.
+	 * 
+	 * @see CompiledEvaluator#evaluate(ReusableEvaluationContext, ResultSink)
+	 */
+	static boolean evaluate(ModelEvaluator evaluator, ReusableEvaluationContext context,
+			ResultSink sink) throws EvaluationException {
+		context.checkModelManager(evaluator);
+
+		return forward(evaluator, evaluate(evaluator, context), sink);
+	}
+
+	/**
+	 * Evaluates the rows of a batch one by one, in a context that is reused for all rows. This is
+	 * the evaluation strategy of every model that does not have a columnar one of its own.
+	 * 
+	 * @see CompiledEvaluator#evaluateBatch(ColumnarInput, ColumnarOutput)
+	 */
+	static void evaluateBatch(ModelEvaluator evaluator, ColumnarInput input,
+			ColumnarOutput output) throws EvaluationException {
+		BatchEvaluationContext context = new BatchEvaluationContext((ModelManager<?>) evaluator,
+				evaluator.getOrCreateEvaluationPlan(), input);
+
+		output.prepare(evaluator, input);
+
+		for (int row = 0; row < input.getSize(); row++) {
+			context.setRow(row);
+
+			output.put(row, evaluate(evaluator, context));
+		}
+	}
+
+	/**
+	 * Prepares an input value, and reports the preparation to the listener of the evaluator.
+	 * 
+	 * @see Evaluator#prepare(FieldName, Object)
+	 */
+	static Object prepare(ModelEvaluator evaluator, FieldName name, Object value)
+			throws EvaluationException {
+		EvaluationListener listener = evaluator.getEvaluationListener();
+
+		long begin = begin(listener, EvaluationStage.PREPARE);
+
+		try {
+			Object result = prepareValue(evaluator, name, value);
+
+			end(listener, EvaluationStage.PREPARE, begin);
+
+			return result;
+		} catch (EvaluationException ee) {
+			throw fail(listener, EvaluationStage.PREPARE, ee);
+		}
+	}
+
+	private static Object prepareValue(ModelEvaluator evaluator, FieldName name, Object value)
+			throws EvaluationException {
+		EvaluationPlan plan = evaluator.getOrCreateEvaluationPlan();
+
+		FieldPreparer fieldPreparer = plan.getFieldPreparer(name);
+		if (fieldPreparer != null) {
+			return fieldPreparer.prepare(value);
+		}
+
+		try {
+			return ParameterUtil.prepare(evaluator.getDataField(name),
+					evaluator.getMiningField(name), value);
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+	}
+
+	/**
+	 * Counts a stage that is not a part of a model stage.
+	 * 
+	 * @param listener The listener, or <code>null</code>.
+	 * 
+	 * @return The start time of the stage, or {@link #UNMEASURED} if there is no listener, or if
+	 *         the listener does not sample the stage.
+	 */
+	static long begin(EvaluationListener listener, EvaluationStage stage) {
+
+		if (listener == null || !listener.begin(stage)) {
+			return UNMEASURED;
+		}
+
+		return System.nanoTime();
+	}
+
+	/**
+	 * @see #begin(EvaluationListener, EvaluationStage)
+	 */
+	static void end(EvaluationListener listener, EvaluationStage stage, long begin) {
+
+		if (begin == UNMEASURED) {
+			return;
+		}
+
+		listener.evaluated(stage, System.nanoTime() - begin);
+	}
+
+	/**
+	 * Counts the model stage, and decides whether the stages that it encloses are measured.
+	 * 
+	 * @return The start time of the model stage, or {@link #UNMEASURED}.
+	 * 
+	 * @see #endModel(EvaluationListener, EvaluationContext, long)
+	 */
+	static long beginModel(EvaluationListener listener, EvaluationContext context) {
+
+		if (listener == null) {
+			return UNMEASURED;
+		}
+
+		boolean measured = listener.begin(EvaluationStage.MODEL);
+
+		context.resetStages(measured);
+
+		return (measured ? System.nanoTime() : UNMEASURED);
+	}
+
+	/**
+	 * Reports the model stage, together with the derived fields that were computed as a part of
+	 * it. The time of the model stage does not include the time of the derived fields and of the
+	 * output, which are reported as stages of their own.
+	 */
+	static void endModel(EvaluationListener listener, EvaluationContext context, long begin) {
+
+		if (listener == null) {
+			return;
+		}
+
+		if (context.getTransformationCount() > 0) {
+			listener.begin(EvaluationStage.TRANSFORMATIONS);
+		}
+
+		if (begin == UNMEASURED) {
+			return;
+		}
+
+		long nanos = System.nanoTime() - begin;
+
+		long transformationNanos = context.getTransformationNanos();
+		if (context.getTransformationCount() > 0) {
+			listener.evaluated(EvaluationStage.TRANSFORMATIONS, transformationNanos);
+		}
+
+		listener.evaluated(EvaluationStage.MODEL,
+				nanos - transformationNanos - context.getOutputNanos());
+	}
+
+	/**
+	 * Counts the output stage, which is measured if the enclosing model stage is.
+	 * 
+	 * @return The start time of the output stage, or {@link #UNMEASURED}.
+	 * 
+	 * @see #endOutput(EvaluationListener, EvaluationContext, long)
+	 */
+	static long beginOutput(EvaluationListener listener, EvaluationContext context) {
+
+		if (listener == null) {
+			return UNMEASURED;
+		}
+
+		listener.begin(EvaluationStage.OUTPUT);
+
+		return (context.isMeasured() ? System.nanoTime() : UNMEASURED);
+	}
+
+	/**
+	 * Reports the output stage, whose time is then left out of the time of the model stage.
+	 */
+	static void endOutput(EvaluationListener listener, EvaluationContext context, long begin) {
+
+		if (begin == UNMEASURED) {
+			return;
+		}
+
+		long nanos = System.nanoTime() - begin;
+
+		listener.evaluated(EvaluationStage.OUTPUT, nanos);
+
+		context.setOutputNanos(context.getOutputNanos() + nanos);
+	}
+
+	/**
+	 * Reports a failure to the listener of the stage where it started. The stages that enclose
+	 * it rethrow the same exception, and do not report it again.
+	 * 
+	 * @return The exception, which is to be rethrown by the caller.
+	 */
+	static EvaluationException fail(EvaluationListener listener, EvaluationStage stage,
+			EvaluationException exception) {
+
+		if (listener != null && !exception.isReported()) {
+			listener.failed(stage, exception);
+
+			exception.setReported(true);
+		}
+
+		return exception;
+	}
+
+	/**
+	 * @return The listener of the model, or <code>null</code> if there is no registry.
+	 * 
+	 * @see CompiledEvaluator#setMetricsRegistry(MetricsRegistry, String)
+	 */
+	static EvaluationListener getListener(MetricsRegistry metricsRegistry, String name) {
+
+		if (metricsRegistry == null) {
+			return null;
+		}
+
+		return metricsRegistry.getListener(name);
+	}
+
+	/**
+	 * @param index The position of the segment in the segmentation.
+	 * 
+	 * @return The name of a segment model, which is made of the name of the enclosing model and
+	 *         the id of the segment, or its position if it does not have an id.
+	 * 
+	 * @see MetricsRegistry#getListener(String)
+	 */
+	static String getSegmentName(String name, Segment segment, int index) {
+		String id = segment.getId();
+		if (id == null) {
+			id = String.valueOf(index + 1);
+		}
+
+		return name + "/" + id;
+	}
+
+	/**
+	 * Passes the values of the {@link Evaluator#getPredictedFields() predicted fields} and
+	 * {@link Evaluator#getOutputFields() output fields} of an evaluation result to a sink.
+	 * 
+	 * @param result The evaluation result, or <code>null</code>.
+	 * 
+	 * @return <code>true</code> if there was a result, <code>false</code> otherwise.
+	 */
+	static boolean forward(Evaluator evaluator, IPMMLResult result, ResultSink sink)
+			throws EvaluationException {
+
+		if (result == null) {
+			return false;
+		}
+
+		try {
+			forward(evaluator.getPredictedFields(), result, sink);
+			forward(evaluator.getOutputFields(), result, sink);
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		return true;
+	}
+
+	private static void forward(List<FieldName> names, IPMMLResult result, ResultSink sink)
+			throws ModelManagerException {
+
+		for (int i = 0; i < names.size(); i++) {
+			FieldName name = names.get(i);
+
+			if (result instanceof PMMLResult && !((PMMLResult) result).containsKey(name)) {
+				continue;
+			}
+
+			sink.put(name, result.getValue(name));
+		}
+	}
+
+	/**
+	 * The start time of a stage that is not measured.
+	 */
+	static final long UNMEASURED = Long.MIN_VALUE;
 }
@@ -0,0 +1,691 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Apply;
+import com.turn.tpmml.Constant;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.DerivedField;
+import com.turn.tpmml.Discretize;
+import com.turn.tpmml.DiscretizeBin;
+import com.turn.tpmml.Expression;
+import com.turn.tpmml.FieldColumnPair;
+import com.turn.tpmml.FieldRef;
+import com.turn.tpmml.InlineTable;
+import com.turn.tpmml.Interval;
+import com.turn.tpmml.MapValues;
+import com.turn.tpmml.NormContinuous;
+import com.turn.tpmml.NormDiscrete;
+import com.turn.tpmml.evaluator.FunctionUtil.AggregateFunction;
+import com.turn.tpmml.evaluator.FunctionUtil.BinaryFunction;
+import com.turn.tpmml.evaluator.FunctionUtil.DoubleBinaryFunction;
+import com.turn.tpmml.evaluator.FunctionUtil.DoubleUnaryFunction;
+import com.turn.tpmml.evaluator.FunctionUtil.Function;
+import com.turn.tpmml.evaluator.FunctionUtil.TernaryFunction;
+import com.turn.tpmml.evaluator.FunctionUtil.UnaryFunction;
+import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles {@link Expression expressions} to {@link CompiledExpression compiled expressions}.
+ *
+ * A compiled expression evaluates to the same value as the source expression does in
+ * {@link ExpressionUtil}. The difference is that all the work that does not depend on field
+ * values is done once, at compile time:
+ * <ul>
+ * <li>Constants and the result values of {@link Discretize} and {@link MapValues} are parsed to
+ * their data types.
+ * <li>The bins of {@link Discretize} elements are indexed by {@link IntervalIndex}, and the
+ * tables of {@link MapValues} elements by {@link TableIndex}.
+ * <li>The functions of {@link Apply} elements are resolved. Functions that take one, two or three
+ * arguments are invoked without allocating an argument list. Nested continuous functions of
+ * Double values are computed on primitive values, and only the outermost result is boxed.
+ * <li>Field references are bound to the slots of an {@link EvaluationPlan}.
+ * </ul>
+ *
+ * Expressions that can not be compiled are left to the interpreter, which fails the same way as
+ * before when they are evaluated.
+ *
+ * A compiled expression keeps the functions that were registered when it was compiled. Functions
+ * that are registered or replaced later are only seen by the expressions that are compiled after
+ * that (eg. after {@link com.turn.tpmml.manager.ModelManager#invalidateIndexes()}). Functions that
+ * were not registered at compile time are looked up every time that they are called.
+ *
+ * @see FunctionUtil#putFunction(String, Function)
+ */
+public class ExpressionCompiler {
+
+	private ExpressionCompiler() {
+	}
+
+	/**
+	 * Compiles the expression of a derived field, including the cast to its data type.
+	 *
+	 * @param plan The plan to bind field references to. Could be <code>null</code>.
+	 *
+	 * @see ExpressionUtil#evaluate(DerivedField, EvaluationContext)
+	 */
+	public static CompiledExpression compile(DerivedField derivedField, EvaluationPlan plan) {
+		CompiledExpression expression = compile(derivedField.getExpression(), plan);
+
+		DataType dataType = derivedField.getDataType();
+		if (dataType != null) {
+			return new CastExpression(expression, dataType);
+		}
+
+		return expression;
+	}
+
+	/**
+	 * @param plan The plan to bind field references to. Could be <code>null</code>.
+	 */
+	public static CompiledExpression compile(Expression expression, EvaluationPlan plan) {
+
+		try {
+			if (expression instanceof Constant) {
+				return compileConstant((Constant) expression);
+			} else
+
+			if (expression instanceof FieldRef) {
+				return new FieldRefExpression((FieldRef) expression, plan);
+			} else
+
+			if (expression instanceof NormContinuous) {
+				return new NormContinuousExpression((NormContinuous) expression, plan);
+			} else
+
+			if (expression instanceof NormDiscrete) {
+				return new NormDiscreteExpression((NormDiscrete) expression, plan);
+			} else
+
+			if (expression instanceof Discretize) {
+				return new DiscretizeExpression((Discretize) expression, plan);
+			} else
+
+			if (expression instanceof MapValues) {
+				return new MapValuesExpression((MapValues) expression, plan);
+			} else
+
+			if (expression instanceof Apply) {
+				return compileApply((Apply) expression, plan);
+			}
+		} catch (EvaluationException ee) {
+			// Ignored
+		} catch (NumberFormatException nfe) {
+			// Ignored
+		}
+
+		return new InterpretedExpression(expression);
+	}
+
+	private static CompiledExpression compileConstant(Constant constant)
+			throws EvaluationException {
+		return new ConstantExpression(constant,
+				ExpressionUtil.evaluateConstant(constant, null));
+	}
+
+	private static CompiledExpression compileApply(Apply apply, EvaluationPlan plan) {
+		List<Expression> expressions = apply.getExpressions();
+
+		CompiledExpression[] arguments = new CompiledExpression[expressions.size()];
+		for (int i = 0; i < arguments.length; i++) {
+			arguments[i] = compile(expressions.get(i), plan);
+		}
+
+		Function function = FunctionUtil.getFunction(apply.getFunction());
+
+		switch (arguments.length) {
+		case 1:
+			if (function instanceof UnaryFunction) {
+				return new UnaryApplyExpression(apply, (UnaryFunction) function, arguments);
+			}
+			break;
+		case 2:
+			if (function instanceof BinaryFunction) {
+				return new BinaryApplyExpression(apply, (BinaryFunction) function, arguments);
+			}
+			break;
+		case 3:
+			if (function instanceof TernaryFunction) {
+				return new TernaryApplyExpression(apply, (TernaryFunction) function, arguments);
+			}
+			break;
+		default:
+			break;
+		}
+
+		return new GenericApplyExpression(apply, function, arguments);
+	}
+
+	private static Object parseSafely(DataType dataType, String value)
+			throws EvaluationException {
+
+		if (value != null) {
+
+			if (dataType != null) {
+				return ParameterUtil.parse(dataType, value);
+			}
+		}
+
+		return value;
+	}
+
+	private static class InterpretedExpression extends CompiledExpression {
+
+		private InterpretedExpression(Expression expression) {
+			super(expression);
+		}
+
+		@Override
+		public Object evaluate(EvaluationContext context) throws EvaluationException {
+			return ExpressionUtil.evaluate(getExpression(), context);
+		}
+	}
+
+	private static class CastExpression extends CompiledExpression {
+
+		private CompiledExpression expression = null;
+
+		private DataType dataType = null;
+
+		private CastExpression(CompiledExpression expression, DataType dataType) {
+			super(expression.getExpression());
+
+			this.expression = expression;
+			this.dataType = dataType;
+		}
+
+		@Override
+		public Object evaluate(EvaluationContext context) throws EvaluationException {
+			return ParameterUtil.cast(this.dataType, this.expression.evaluate(context));
+		}
+	}
+
+	private static class ConstantExpression extends CompiledExpression {
+
+		private Object value = null;
+
+		private ConstantExpression(Constant constant, Object value) {
+			super(constant);
+
+			this.value = value;
+		}
+
+		@Override
+		public Object evaluate(EvaluationContext context) {
+			return this.value;
+		}
+	}
+
+	private static class FieldRefExpression extends CompiledExpression {
+
+		private CompiledField field = null;
+
+		private String mapMissingTo = null;
+
+		private FieldRefExpression(FieldRef fieldRef, EvaluationPlan plan) {
+			super(fieldRef);
+
+			this.field = new CompiledField(fieldRef.getField(), plan);
+			this.mapMissingTo = fieldRef.getMapMissingTo();
+		}
+
+		@Override
+		public Object evaluate(EvaluationContext context) throws EvaluationException {
+			Object value = this.field.evaluate(context);
+			if (value == null) {
+				return this.mapMissingTo;
+			}
+
+			return value;
+		}
+	}
+
+	private static class NormContinuousExpression extends CompiledExpression {
+
+		private CompiledField field = null;
+
+		private CompiledNormContinuous normalization = null;
+
+		private NormContinuousExpression(NormContinuous normContinuous, EvaluationPlan plan)
+				throws EvaluationException {
+			super(normContinuous);
+
+			this.field = new CompiledField(normContinuous.getField(), plan);
+			this.normalization = CompiledNormContinuous.create(normContinuous);
+		}
+
+		@Override
+		public Object evaluate(EvaluationContext context) throws EvaluationException {
+			Number value = (Number) this.field.evaluate(context);
+			if (value == null) {
+				return this.normalization.getMapMissingTo();
+			}
+
+			return this.normalization.normalize(value.doubleValue());
+		}
+	}
+
+	private static class NormDiscreteExpression extends CompiledExpression {
+
+		private CompiledField field = null;
+
+		private TypedValue value = null;
+
+		private Double mapMissingTo = null;
+
+		private NormDiscreteExpression(NormDiscrete normDiscrete, EvaluationPlan plan) {
+			super(normDiscrete);
+
+			this.field = new CompiledField(normDiscrete.getField(), plan);
+			this.value = new TypedValue(normDiscrete.getValue());
+			this.mapMissingTo = normDiscrete.getMapMissingTo();
+		}
+
+		@Override
+		public Object evaluate(EvaluationContext context) throws EvaluationException {
+			Object value = this.field.evaluate(context);
+			if (value == null) {
+				return this.mapMissingTo;
+			}
+
+			return (this.value.equalTo(value) ? ONE : ZERO);
+		}
+
+		private static final Double ONE = Double.valueOf(1.0);
+
+		private static final Double ZERO = Double.valueOf(0.0);
+	}
+
+	private static class DiscretizeExpression extends CompiledExpression {
+
+		private CompiledField field = null;
+
+		private IntervalIndex index = null;
+
+		private Object[] binValues = null;
+
+		private Object defaultValue = null;
+
+		private Object mapMissingTo = null;
+
+		private DiscretizeExpression(Discretize discretize, EvaluationPlan plan)
+				throws EvaluationException {
+			super(discretize);
+
+			DataType dataType = discretize.getDataType();
+
+			this.field = new CompiledField(discretize.getField(), plan);
+
+			List<DiscretizeBin> bins = discretize.getDiscretizeBins();
+
+			List<Interval> intervals = new ArrayList<Interval>(bins.size());
+
+			this.binValues = new Object[bins.size()];
+
+			for (int i = 0; i < this.binValues.length; i++) {
+				DiscretizeBin bin = bins.get(i);
+
+				intervals.add(bin.getInterval());
+				this.binValues[i] = parseSafely(dataType, bin.getBinValue());
+			}
+
+			this.index = IntervalIndex.create(intervals);
+
+			this.defaultValue = parseSafely(dataType, discretize.getDefaultValue());
+			this.mapMissingTo = parseSafely(dataType, discretize.getMapMissingTo());
+		}
+
+		@Override
+		public Object evaluate(EvaluationContext context) throws EvaluationException {
+			Object value = this.field.evaluate(context);
+			if (value == null) {
+				return this.mapMissingTo;
+			}
+
+			double doubleValue;
+
+			if (value instanceof Number) {
+				doubleValue = ((Number) value).doubleValue();
+			} else {
+				doubleValue = (ParameterUtil.toDouble(value)).doubleValue();
+			}
+
+			int index = this.index.indexOf(doubleValue);
+			if (index > -1) {
+				return this.binValues[index];
+			}
+
+			return this.defaultValue;
+		}
+	}
+
+	private static class MapValuesExpression extends CompiledExpression {
+
+		private CompiledField[] fields = null;
+
+		private TableIndex index = null;
+
+		private Object defaultValue = null;
+
+		private Object mapMissingTo = null;
+
+		private MapValuesExpression(MapValues mapValues, EvaluationPlan plan)
+				throws EvaluationException {
+			super(mapValues);
+
+			DataType dataType = mapValues.getDataType();
+
+			List<FieldColumnPair> fieldColumnPairs = mapValues.getFieldColumnPairs();
+
+			this.fields = new CompiledField[fieldColumnPairs.size()];
+
+			String[] columns = new String[fieldColumnPairs.size()];
+
+			for (int i = 0; i < this.fields.length; i++) {
+				FieldColumnPair fieldColumnPair = fieldColumnPairs.get(i);
+
+				this.fields[i] = new CompiledField(fieldColumnPair.getField(), plan);
+				columns[i] = fieldColumnPair.getColumn();
+			}
+
+			InlineTable table = mapValues.getInlineTable();
+			if (table != null) {
+				this.index =
+						TableIndex.create(table, columns, mapValues.getOutputColumn(), dataType);
+			} else
+
+			if (mapValues.getTableLocator() != null) {
+				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+						(mapValues.getTableLocator()).toString());
+			}
+
+			this.defaultValue = parseSafely(dataType, mapValues.getDefaultValue());
+			this.mapMissingTo = parseSafely(dataType, mapValues.getMapMissingTo());
+		}
+
+		@Override
+		public Object evaluate(EvaluationContext context) throws EvaluationException {
+			CompiledField[] fields = this.fields;
+
+			Object result;
+
+			switch (fields.length) {
+			case 1:
+				{
+					Object value = fields[0].evaluate(context);
+					if (value == null) {
+						return this.mapMissingTo;
+					}
+
+					result = lookup(value);
+				}
+				break;
+			case 2:
+				{
+					Object left = fields[0].evaluate(context);
+					if (left == null) {
+						return this.mapMissingTo;
+					}
+
+					Object right = fields[1].evaluate(context);
+					if (right == null) {
+						return this.mapMissingTo;
+					}
+
+					result = lookup(left, right);
+				}
+				break;
+			default:
+				{
+					Object[] values = new Object[fields.length];
+
+					for (int i = 0; i < fields.length; i++) {
+						values[i] = fields[i].evaluate(context);
+
+						if (values[i] == null) {
+							return this.mapMissingTo;
+						}
+					}
+
+					result = lookup(values);
+				}
+				break;
+			}
+
+			if (result == null) {
+				return this.defaultValue;
+			}
+
+			return result;
+		}
+
+		private Object lookup(Object value) throws EvaluationException {
+			return (this.index != null ? this.index.get(value) : null);
+		}
+
+		private Object lookup(Object left, Object right) throws EvaluationException {
+			return (this.index != null ? this.index.get(left, right) : null);
+		}
+
+		private Object lookup(Object[] values) throws EvaluationException {
+			return (this.index != null ? this.index.get(values) : null);
+		}
+	}
+
+	private abstract static class ApplyExpression extends CompiledExpression {
+
+		private String mapMissingTo = null;
+
+		private ApplyExpression(Apply apply) {
+			super(apply);
+
+			this.mapMissingTo = apply.getMapMissingTo();
+		}
+
+		public abstract Object apply(EvaluationContext context) throws EvaluationException;
+
+		@Override
+		public Object evaluate(EvaluationContext context) throws EvaluationException {
+			Object result = apply(context);
+			if (result == null) {
+				return this.mapMissingTo;
+			}
+
+			return result;
+		}
+	}
+
+	private static class UnaryApplyExpression extends ApplyExpression {
+
+		private UnaryFunction function = null;
+
+		private DoubleUnaryFunction doubleFunction = null;
+
+		private CompiledExpression argument = null;
+
+		private UnaryApplyExpression(Apply apply, UnaryFunction function,
+				CompiledExpression[] arguments) {
+			super(apply);
+
+			this.function = function;
+			if (function instanceof DoubleUnaryFunction) {
+				this.doubleFunction = (DoubleUnaryFunction) function;
+			}
+			this.argument = arguments[0];
+		}
+
+		/**
+		 * The argument is evaluated once. Double values are passed to the primitive function, and
+		 * every other value, or a <code>NaN</code> result, to the regular function.
+		 */
+		@Override
+		public Object apply(EvaluationContext context) throws EvaluationException {
+			Object value = this.argument.evaluate(context);
+
+			if (this.doubleFunction != null && value instanceof Double) {
+				double result = this.doubleFunction.evaluate(((Double) value).doubleValue());
+
+				if (!Double.isNaN(result)) {
+					return Double.valueOf(result);
+				}
+			}
+
+			return this.function.evaluate(value);
+		}
+
+		@Override
+		public double evaluateDouble(EvaluationContext context) throws EvaluationException {
+
+			if (this.doubleFunction == null) {
+				return super.evaluateDouble(context);
+			}
+
+			double value = this.argument.evaluateDouble(context);
+			if (Double.isNaN(value)) {
+				return Double.NaN;
+			}
+
+			return this.doubleFunction.evaluate(value);
+		}
+	}
+
+	private static class BinaryApplyExpression extends ApplyExpression {
+
+		private BinaryFunction function = null;
+
+		private DoubleBinaryFunction doubleFunction = null;
+
+		private CompiledExpression left = null;
+
+		private CompiledExpression right = null;
+
+		private BinaryApplyExpression(Apply apply, BinaryFunction function,
+				CompiledExpression[] arguments) {
+			super(apply);
+
+			this.function = function;
+			if (function instanceof DoubleBinaryFunction) {
+				this.doubleFunction = (DoubleBinaryFunction) function;
+			}
+			this.left = arguments[0];
+			this.right = arguments[1];
+		}
+
+		/**
+		 * The arguments are evaluated once. Double values are passed to the primitive function,
+		 * and every other value, or a <code>NaN</code> result, to the regular function.
+		 */
+		@Override
+		public Object apply(EvaluationContext context) throws EvaluationException {
+			Object left = this.left.evaluate(context);
+			Object right = this.right.evaluate(context);
+
+			if (this.doubleFunction != null && left instanceof Double && right instanceof Double) {
+				double result = this.doubleFunction.evaluate(((Double) left).doubleValue(),
+						((Double) right).doubleValue());
+
+				if (!Double.isNaN(result)) {
+					return Double.valueOf(result);
+				}
+			}
+
+			return this.function.evaluate(left, right);
+		}
+
+		@Override
+		public double evaluateDouble(EvaluationContext context) throws EvaluationException {
+
+			if (this.doubleFunction == null) {
+				return super.evaluateDouble(context);
+			}
+
+			double left = this.left.evaluateDouble(context);
+			if (Double.isNaN(left)) {
+				return Double.NaN;
+			}
+
+			double right = this.right.evaluateDouble(context);
+			if (Double.isNaN(right)) {
+				return Double.NaN;
+			}
+
+			return this.doubleFunction.evaluate(left, right);
+		}
+	}
+
+	private static class TernaryApplyExpression extends ApplyExpression {
+
+		private TernaryFunction function = null;
+
+		private CompiledExpression first = null;
+
+		private CompiledExpression second = null;
+
+		private CompiledExpression third = null;
+
+		private TernaryApplyExpression(Apply apply, TernaryFunction function,
+				CompiledExpression[] arguments) {
+			super(apply);
+
+			this.function = function;
+			this.first = arguments[0];
+			this.second = arguments[1];
+			this.third = arguments[2];
+		}
+
+		@Override
+		public Object apply(EvaluationContext context) throws EvaluationException {
+			Object first = this.first.evaluate(context);
+			Object second = this.second.evaluate(context);
+			Object third = this.third.evaluate(context);
+
+			return this.function.evaluate(first, second, third);
+		}
+	}
+
+	private static class GenericApplyExpression extends ApplyExpression {
+
+		private String name = null;
+
+		private Function function = null;
+
+		private CompiledExpression[] arguments = null;
+
+		/**
+		 * @param function The function, or <code>null</code> if it was not registered at compile
+		 *            time.
+		 */
+		private GenericApplyExpression(Apply apply, Function function,
+				CompiledExpression[] arguments) {
+			super(apply);
+
+			this.name = apply.getFunction();
+			this.function = function;
+			this.arguments = arguments;
+		}
+
+		@Override
+		public Object apply(EvaluationContext context) throws EvaluationException {
+			Object[] values = new Object[this.arguments.length];
+
+			for (int i = 0; i < values.length; i++) {
+				values[i] = this.arguments[i].evaluate(context);
+			}
+
+			if (this.function == null) {
+				return FunctionUtil.evaluate(this.name, Arrays.asList(values));
+			} else
+
+			if (this.function instanceof AggregateFunction) {
+				return ((AggregateFunction) this.function).evaluate(values);
+			}
+
+			return this.function.evaluate(Arrays.asList(values));
+		}
+	}
+}
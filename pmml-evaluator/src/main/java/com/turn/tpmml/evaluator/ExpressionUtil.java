@@ -18,6 +18,7 @@ import com.turn.tpmml.NormDiscrete;
 import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +30,11 @@ public class ExpressionUtil {
 
 	public static Object evaluate(FieldName name, EvaluationContext context)
 			throws EvaluationException {
+		int slot = context.getSlot(name);
+		if (slot > -1) {
+			return evaluate(slot, context);
+		}
+
 		DerivedField derivedField = context.resolve(name);
 		if (derivedField != null) {
 			return evaluate(derivedField, context);
@@ -37,6 +43,46 @@ public class ExpressionUtil {
 		return context.getParameter(name);
 	}
 
+	/**
+	 * Evaluates a field of a slot-backed context. The value of a derived field is computed at most
+	 * once per evaluation, using the compiled form of its expression.
+	 *
+	 * @see EvaluationContext#getPlan()
+	 * @see EvaluationContext#clearDerivedValues()
+	 */
+	public static Object evaluate(int slot, EvaluationContext context) throws EvaluationException {
+		EvaluationPlan plan = context.getPlan();
+
+		CompiledExpression expression = plan.getExpression(slot);
+		if (expression != null) {
+
+			if (context.isComputed(slot)) {
+				return context.getValue(slot);
+			}
+
+			EvaluationListener listener = context.getEvaluationListener();
+
+			// The time is reported once per model stage, for all derived fields together
+			long begin = context.beginTransformation(listener);
+
+			Object value;
+
+			try {
+				value = expression.evaluate(context);
+			} catch (EvaluationException ee) {
+				throw EvaluatorUtil.fail(listener, EvaluationStage.TRANSFORMATIONS, ee);
+			} finally {
+				context.endTransformation(listener, begin);
+			}
+
+			context.putComputedValue(slot, value);
+
+			return value;
+		}
+
+		return context.getValue(slot);
+	}
+
 	public static Object evaluate(DerivedField derivedField, EvaluationContext context)
 			throws EvaluationException {
 		Object value = evaluate(derivedField.getExpression(), context);
@@ -71,6 +117,47 @@ public class ExpressionUtil {
 		throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION, expression.toString());
 	}
 
+	/**
+	 * Collects the names of the fields that an expression refers to directly. The expressions of
+	 * derived fields are not followed.
+	 *
+	 * @return <code>true</code> if all references were collected, <code>false</code> if the
+	 *         expression is not supported (in which case it may refer to any field).
+	 */
+	static boolean collectFields(Expression expression, Collection<FieldName> fields) {
+
+		if (expression instanceof Constant) {
+			return true;
+		} else if (expression instanceof FieldRef) {
+			fields.add(((FieldRef) expression).getField());
+		} else if (expression instanceof NormContinuous) {
+			fields.add(((NormContinuous) expression).getField());
+		} else if (expression instanceof NormDiscrete) {
+			fields.add(((NormDiscrete) expression).getField());
+		} else if (expression instanceof Discretize) {
+			fields.add(((Discretize) expression).getField());
+		} else if (expression instanceof MapValues) {
+			MapValues mapValues = (MapValues) expression;
+
+			for (FieldColumnPair fieldColumnPair : mapValues.getFieldColumnPairs()) {
+				fields.add(fieldColumnPair.getField());
+			}
+		} else if (expression instanceof Apply) {
+			Apply apply = (Apply) expression;
+
+			for (Expression argument : apply.getExpressions()) {
+
+				if (!collectFields(argument, fields)) {
+					return false;
+				}
+			}
+		} else {
+			return false;
+		}
+
+		return true;
+	}
+
 	public static Object evaluateConstant(Constant constant, EvaluationContext context)
 			throws EvaluationException {
 		String value = constant.getValue();
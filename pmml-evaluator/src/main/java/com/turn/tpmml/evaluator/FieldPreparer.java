@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataField;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.Interval;
+import com.turn.tpmml.InvalidValueTreatmentMethodType;
+import com.turn.tpmml.MiningField;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.OutlierTreatmentMethodType;
+import com.turn.tpmml.Value;
+import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A precompiled form of {@link ParameterUtil#prepare(DataField, MiningField, Object)} for one
+ * field.
+ *
+ * The outlier bounds, the valid, invalid and missing values and the treatment methods are
+ * resolved once, when the preparer is created. Preparing a value is then a few hash lookups and
+ * comparisons.
+ *
+ * Field preparers are immutable and thread-safe.
+ *
+ * @see EvaluationPlan#getFieldPreparer(com.turn.tpmml.FieldName)
+ */
+public class FieldPreparer {
+
+	private DataField dataField = null;
+
+	private MiningField miningField = null;
+
+	private DataType dataType = null;
+
+	private OpType opType = null;
+
+	/**
+	 * The outlier bounds of a continuous field, or <code>null</code> if the field does not have
+	 * any.
+	 */
+	private Double minValue = null;
+
+	private Double maxValue = null;
+
+	private Set<String> missingValues = null;
+
+	/**
+	 * Mapping from a valid or invalid value (in the data type of the field) to its validity. The
+	 * first declaration of a value wins.
+	 */
+	private Map<Object, Boolean> validity = null;
+
+	private boolean hasValidValues = false;
+
+	private IntervalIndex intervalIndex = null;
+
+	private OutlierTreatmentMethodType outlierTreatment = null;
+
+	private Double lowValue = null;
+
+	private Double highValue = null;
+
+	private InvalidValueTreatmentMethodType invalidValueTreatment = null;
+
+	private String missingValueReplacement = null;
+
+	private FieldPreparer() {
+	}
+
+	/**
+	 * @return The same value as {@link ParameterUtil#prepare(DataField, MiningField, Object)}.
+	 */
+	public Object prepare(Object value) throws EvaluationException {
+
+		if (isOutlier(value)) {
+
+			if (this.miningField == null) {
+				throw new EvaluationException("MiningField is null");
+			}
+
+			switch (this.outlierTreatment) {
+			case AS_IS:
+				break;
+			case AS_MISSING_VALUES:
+				value = null;
+				break;
+			case AS_EXTREME_VALUES:
+				if (this.lowValue == null || this.highValue == null) {
+					throw new EvaluationException("There are no limits");
+				}
+
+				if (ParameterUtil.compare(this.dataType, value, this.lowValue) < 0) {
+					value = this.lowValue;
+				} else
+
+				if (ParameterUtil.compare(this.dataType, value, this.highValue) > 0) {
+					value = this.highValue;
+				}
+				break;
+			default:
+				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+						this.outlierTreatment.name());
+			}
+		}
+
+		if (isMissing(value)) {
+
+			if (this.miningField == null) {
+				return null;
+			}
+
+			value = this.missingValueReplacement;
+			if (value == null) {
+				return null;
+			}
+		}
+
+		if (!isValid(value)) {
+
+			if (this.miningField == null) {
+				throw new EvaluationException("MiningField is null");
+			}
+
+			switch (this.invalidValueTreatment) {
+			case RETURN_INVALID:
+				throw ParameterUtil.createInvalidValueException();
+			case AS_IS:
+				break;
+			case AS_MISSING:
+				value = this.missingValueReplacement;
+				if (value == null) {
+					return null;
+				}
+				break;
+			default:
+				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+						this.invalidValueTreatment.name());
+			}
+		}
+
+		return ParameterUtil.cast(this.dataType, value);
+	}
+
+	private boolean isOutlier(Object value) throws EvaluationException {
+
+		if (value == null) {
+			return false;
+		}
+
+		switch (this.opType) {
+		case CONTINUOUS:
+			if (this.minValue == null) {
+				return false;
+			}
+
+			double doubleValue = toDouble(value);
+
+			return (Double.compare(doubleValue, this.minValue.doubleValue()) < 0) ||
+					(Double.compare(doubleValue, this.maxValue.doubleValue()) > 0);
+		case CATEGORICAL:
+		case ORDINAL:
+			return false;
+		default:
+			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION, this.opType.name());
+		}
+	}
+
+	private boolean isMissing(Object value) throws EvaluationException {
+
+		if (value == null) {
+			return true;
+		}
+
+		if (this.missingValues.isEmpty()) {
+			return false;
+		}
+
+		return this.missingValues.contains(ParameterUtil.toString(value));
+	}
+
+	private boolean isValid(Object value) throws EvaluationException {
+		value = ParameterUtil.cast(this.dataType, value);
+
+		switch (this.opType) {
+		case CONTINUOUS:
+			if (this.intervalIndex != null) {
+				return this.intervalIndex.contains(toDouble(value));
+			}
+			break;
+		case CATEGORICAL:
+		case ORDINAL:
+			break;
+		default:
+			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION, this.opType.name());
+		}
+
+		Boolean validity = this.validity.get(value);
+		if (validity != null) {
+			return validity.booleanValue();
+		}
+
+		return !this.hasValidValues;
+	}
+
+	private static double toDouble(Object value) throws EvaluationException {
+
+		if (value instanceof Number) {
+			return ((Number) value).doubleValue();
+		}
+
+		return (ParameterUtil.toDouble(value)).doubleValue();
+	}
+
+	/**
+	 * @param miningField The mining field, or <code>null</code>.
+	 */
+	public static FieldPreparer create(DataField dataField, MiningField miningField)
+			throws EvaluationException {
+
+		if (dataField == null) {
+			throw new EvaluationException("DataField is null");
+		}
+
+		FieldPreparer result = new FieldPreparer();
+		result.dataField = dataField;
+		result.miningField = miningField;
+		result.dataType = dataField.getDataType();
+		result.opType = dataField.getOptype();
+
+		List<Interval> intervals = dataField.getIntervals();
+		List<Value> values = dataField.getValues();
+
+		double minValue = Double.POSITIVE_INFINITY;
+		double maxValue = Double.NEGATIVE_INFINITY;
+
+		boolean bounded = false;
+
+		if ((OpType.CONTINUOUS).equals(result.opType)) {
+
+			for (Interval interval : intervals) {
+				Double leftMargin = interval.getLeftMargin();
+				Double rightMargin = interval.getRightMargin();
+
+				// A missing margin does not bound the range
+				double left = (leftMargin != null ? leftMargin : Double.NEGATIVE_INFINITY);
+				double right = (rightMargin != null ? rightMargin : Double.POSITIVE_INFINITY);
+
+				minValue = min(minValue, left);
+				maxValue = max(maxValue, right);
+
+				bounded = true;
+			}
+
+			for (Value value : values) {
+
+				if ((Value.Property.VALID).equals(value.getProperty())) {
+					double doubleValue = (ParameterUtil.toDouble(value.getValue())).doubleValue();
+
+					minValue = min(minValue, doubleValue);
+					maxValue = max(maxValue, doubleValue);
+
+					bounded = true;
+				}
+			}
+
+			if (intervals.size() > 0) {
+				result.intervalIndex = IntervalIndex.create(intervals);
+			}
+		}
+
+		if (bounded) {
+			result.minValue = Double.valueOf(minValue);
+			result.maxValue = Double.valueOf(maxValue);
+		}
+
+		result.missingValues = new HashSet<String>();
+		result.validity = new HashMap<Object, Boolean>();
+
+		for (Value value : values) {
+			Value.Property property = value.getProperty();
+
+			switch (property) {
+			case VALID:
+				result.hasValidValues = true;
+				// Falls through
+			case INVALID:
+				Object key = ParameterUtil.cast(result.dataType, value.getValue());
+
+				if (!result.validity.containsKey(key)) {
+					boolean valid = (Value.Property.VALID).equals(property);
+
+					result.validity.put(key, Boolean.valueOf(valid));
+				}
+				break;
+			case MISSING:
+				result.missingValues.add(value.getValue());
+				break;
+			default:
+				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION, property.name());
+			}
+		}
+
+		if (miningField != null) {
+			result.outlierTreatment = miningField.getOutlierTreatment();
+			result.lowValue = miningField.getLowValue();
+			result.highValue = miningField.getHighValue();
+			result.invalidValueTreatment = miningField.getInvalidValueTreatment();
+			result.missingValueReplacement = miningField.getMissingValueReplacement();
+		}
+
+		return result;
+	}
+
+	/**
+	 * @see Double#compare(double, double)
+	 */
+	private static double min(double left, double right) {
+		return (Double.compare(left, right) <= 0 ? left : right);
+	}
+
+	/**
+	 * @see Double#compare(double, double)
+	 */
+	private static double max(double left, double right) {
+		return (Double.compare(left, right) >= 0 ? left : right);
+	}
+
+	public DataField getDataField() {
+		return this.dataField;
+	}
+
+	public MiningField getMiningField() {
+		return this.miningField;
+	}
+}
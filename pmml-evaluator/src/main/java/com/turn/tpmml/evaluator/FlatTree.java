@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.False;
+import com.turn.tpmml.MissingValueStrategyType;
+import com.turn.tpmml.NoTrueChildStrategyType;
+import com.turn.tpmml.Node;
+import com.turn.tpmml.Predicate;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.True;
+
+import java.util.Map;
+
+/**
+ * A compiled tree whose nodes are laid out in pre-order, in parallel arrays.
+ *
+ * The child nodes of a node follow it directly, and the position after the subtree of a node is
+ * kept in the {@link #ends} array. Children are therefore visited by jumping from one end to the
+ * next, without following any references.
+ *
+ * The {@link Node nodes} of the model are not kept. Their scores and record counts are copied to
+ * parallel arrays, and the node is only referenced by its classification result.
+ *
+ * Predicates that compare a field with a numeric constant are stored as a field slot, an
+ * operator and a threshold. They are evaluated directly, if the field value is a
+ * {@link Double}. Every other predicate, and every other field value, is handed over to the
+ * {@link CompiledPredicate compiled predicate} of the node, so that the results are the same as
+ * those of {@link CompiledNode}.
+ *
+ * The classification result of a node is computed once, when the tree is flattened. It is computed
+ * only for nodes that can end a descent: leaf nodes, internal nodes that do not have a child
+ * node whose predicate is always <code>true</code>, and the nodes that the missing value strategy
+ * and the no true child strategy of the model can stop at.
+ *
+ * @see TreeModelEvaluator2#evaluateTree(EvaluationContext)
+ */
+class FlatTree {
+
+	private EvaluationPlan plan = null;
+
+	private int[] ends = null;
+
+	private byte[] operators = null;
+
+	private int[] slots = null;
+
+	private double[] thresholds = null;
+
+	private CompiledPredicate[] predicates = null;
+
+	/**
+	 * The position of every node in the document order of the tree.
+	 *
+	 * @see NodeStatistics
+	 */
+	private int[] indexes = null;
+
+	private String[] scores = null;
+
+	private double[] recordCounts = null;
+
+	/**
+	 * The position of the default child of every node, or <code>-1</code>.
+	 *
+	 * @see CompiledNode#getDefaultChild()
+	 */
+	private int[] defaultChildren = null;
+
+	/**
+	 * The position of the default sibling of every node, or <code>-1</code>.
+	 *
+	 * @see CompiledNode#getDefaultSibling()
+	 */
+	private int[] defaultSiblings = null;
+
+	private NodeClassificationMap[] classifications = null;
+
+	private FlatTree(CompiledNode root, EvaluationPlan plan,
+			MissingValueStrategyType missingValueStrategy,
+			NoTrueChildStrategyType noTrueChildStrategy) {
+		int size = root.getSize();
+
+		this.plan = plan;
+		this.ends = new int[size];
+		this.operators = new byte[size];
+		this.slots = new int[size];
+		this.thresholds = new double[size];
+		this.predicates = new CompiledPredicate[size];
+		this.indexes = new int[size];
+		this.scores = new String[size];
+		this.recordCounts = new double[size];
+		this.defaultChildren = new int[size];
+		this.defaultSiblings = new int[size];
+		this.classifications = new NodeClassificationMap[size];
+
+		Map<String, Integer> classIndexes = (plan != null ? plan.getClassIndexes(root.getNode())
+				: NodeClassificationMap.createClassIndexes(root.getNode()));
+
+		this.defaultSiblings[0] = -1;
+
+		// The nodes are needed only until the classification results have been computed
+		Node[] nodes = new Node[size];
+
+		int end = layout(root, 0, nodes);
+		if (end != size) {
+			throw new IllegalStateException();
+		}
+
+		for (int position = 0; position < size; position++) {
+
+			if (isResult(position, missingValueStrategy, noTrueChildStrategy)) {
+				this.classifications[position] =
+						new NodeClassificationMap(nodes[position], classIndexes);
+			}
+		}
+
+		// The descent can stop at the default child of an unknown child node
+		if (missingValueStrategy == MissingValueStrategyType.DEFAULT_CHILD &&
+				noTrueChildStrategy == NoTrueChildStrategyType.RETURN_LAST_PREDICTION) {
+
+			for (int position = 0; position < size; position++) {
+				int defaultSibling = this.defaultSiblings[position];
+
+				if (defaultSibling > -1 && this.classifications[defaultSibling] == null) {
+					this.classifications[defaultSibling] =
+							new NodeClassificationMap(nodes[defaultSibling], classIndexes);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the descent can stop at the node, <code>false</code> otherwise.
+	 *
+	 * @see TreeModelEvaluator2#evaluateTree(EvaluationContext)
+	 */
+	private boolean isResult(int position, MissingValueStrategyType missingValueStrategy,
+			NoTrueChildStrategyType noTrueChildStrategy) {
+
+		// Any node on the path can be the last prediction
+		if (missingValueStrategy == MissingValueStrategyType.LAST_PREDICTION) {
+			return true;
+		}
+
+		// The descent stops at the root node only if there is no true child
+		if (position == 0) {
+			return (noTrueChildStrategy == NoTrueChildStrategyType.RETURN_LAST_PREDICTION);
+		}
+
+		return !hasTrueChild(position);
+	}
+
+	private boolean hasTrueChild(int position) {
+		int end = this.ends[position];
+
+		for (int child = position + 1; child < end; child = this.ends[child]) {
+
+			if (this.operators[child] == OPERATOR_TRUE) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return The position after the subtree of the node.
+	 */
+	private int layout(CompiledNode node, int position, Node[] nodes) {
+		CompiledPredicate predicate = node.getPredicate();
+
+		Node element = node.getNode();
+
+		Double recordCount = element.getRecordCount();
+
+		this.predicates[position] = predicate;
+		this.indexes[position] = node.getIndex();
+		this.scores[position] = element.getScore();
+		this.recordCounts[position] =
+				(recordCount != null ? recordCount.doubleValue() : Double.NaN);
+		this.slots[position] = -1;
+		this.operators[position] = (predicate != null ? encode(predicate.getPredicate(), position)
+				: OPERATOR_GENERIC);
+
+		nodes[position] = element;
+
+		int end = position + 1;
+
+		CompiledNode[] children = node.getChildren();
+
+		int[] positions = new int[children.length];
+		for (int i = 0; i < children.length; i++) {
+			positions[i] = end;
+
+			end = layout(children[i], end, nodes);
+		}
+
+		this.ends[position] = end;
+
+		this.defaultChildren[position] = findPosition(children, positions,
+				node.getDefaultChild());
+		for (int i = 0; i < children.length; i++) {
+			this.defaultSiblings[positions[i]] = findPosition(children, positions,
+					(children[i]).getDefaultSibling());
+		}
+
+		return end;
+	}
+
+	private static int findPosition(CompiledNode[] children, int[] positions, CompiledNode child) {
+
+		for (int i = 0; i < children.length; i++) {
+
+			if (children[i] == child) {
+				return positions[i];
+			}
+		}
+
+		return -1;
+	}
+
+	private byte encode(Predicate predicate, int position) {
+
+		if (predicate instanceof True) {
+			return OPERATOR_TRUE;
+		} else
+
+		if (predicate instanceof False) {
+			return OPERATOR_FALSE;
+		} else
+
+		if (predicate instanceof SimplePredicate) {
+			SimplePredicate simplePredicate = (SimplePredicate) predicate;
+
+			int slot = this.plan != null ? this.plan.getSlot(simplePredicate.getField()) : -1;
+			if (slot < 0 || simplePredicate.getValue() == null) {
+				return OPERATOR_GENERIC;
+			}
+
+			try {
+				this.thresholds[position] = Double.parseDouble(simplePredicate.getValue());
+			} catch (NumberFormatException nfe) {
+				return OPERATOR_GENERIC;
+			}
+
+			this.slots[position] = slot;
+
+			switch (simplePredicate.getOperator()) {
+			case EQUAL:
+				return OPERATOR_EQUAL;
+			case NOT_EQUAL:
+				return OPERATOR_NOT_EQUAL;
+			case LESS_THAN:
+				return OPERATOR_LESS_THAN;
+			case LESS_OR_EQUAL:
+				return OPERATOR_LESS_OR_EQUAL;
+			case GREATER_THAN:
+				return OPERATOR_GREATER_THAN;
+			case GREATER_OR_EQUAL:
+				return OPERATOR_GREATER_OR_EQUAL;
+			default:
+				break;
+			}
+
+			this.slots[position] = -1;
+		}
+
+		return OPERATOR_GENERIC;
+	}
+
+	/**
+	 * @return The number of nodes.
+	 */
+	public int size() {
+		return this.ends.length;
+	}
+
+	/**
+	 * @return The position after the subtree of the node. The first child of a node, if any, is at
+	 *         the position after the node.
+	 */
+	public int getEnd(int position) {
+		return this.ends[position];
+	}
+
+	public int getIndex(int position) {
+		return this.indexes[position];
+	}
+
+	/**
+	 * @return The <code>score</code> attribute of the node, or <code>null</code>.
+	 */
+	public String getScore(int position) {
+		return this.scores[position];
+	}
+
+	/**
+	 * @return The <code>recordCount</code> attribute of the node, or {@link Double#NaN}.
+	 */
+	public double getRecordCount(int position) {
+		return this.recordCounts[position];
+	}
+
+	/**
+	 * @return The position of the default child of the node, or <code>-1</code>.
+	 */
+	public int getDefaultChild(int position) {
+		return this.defaultChildren[position];
+	}
+
+	/**
+	 * @return The position of the default sibling of the node, or <code>-1</code>.
+	 */
+	public int getDefaultSibling(int position) {
+		return this.defaultSiblings[position];
+	}
+
+	/**
+	 * @return The classification result of the node, which is shared between evaluations, or
+	 *         <code>null</code> if the descent can not stop at the node.
+	 */
+	public NodeClassificationMap getClassification(int position) {
+		return this.classifications[position];
+	}
+
+	/**
+	 * @return <code>true</code>, <code>false</code> or <code>null</code> (ie. unknown). The same
+	 *         as {@link CompiledPredicate#evaluate(EvaluationContext)}.
+	 */
+	public Boolean evaluate(int position, EvaluationContext context) throws EvaluationException {
+		byte operator = this.operators[position];
+
+		switch (operator) {
+		case OPERATOR_TRUE:
+			return Boolean.TRUE;
+		case OPERATOR_FALSE:
+			return Boolean.FALSE;
+		case OPERATOR_GENERIC:
+			return evaluatePredicate(position, context);
+		default:
+			break;
+		}
+
+		if (context.getPlan() != this.plan) {
+			return evaluatePredicate(position, context);
+		}
+
+		Object value = ExpressionUtil.evaluate(this.slots[position], context);
+		if (!(value instanceof Double)) {
+			return evaluatePredicate(position, context);
+		}
+
+		int order = Double.compare(((Double) value).doubleValue(), this.thresholds[position]);
+
+		switch (operator) {
+		case OPERATOR_EQUAL:
+			return Boolean.valueOf(order == 0);
+		case OPERATOR_NOT_EQUAL:
+			return Boolean.valueOf(order != 0);
+		case OPERATOR_LESS_THAN:
+			return Boolean.valueOf(order < 0);
+		case OPERATOR_LESS_OR_EQUAL:
+			return Boolean.valueOf(order <= 0);
+		case OPERATOR_GREATER_THAN:
+			return Boolean.valueOf(order > 0);
+		case OPERATOR_GREATER_OR_EQUAL:
+			return Boolean.valueOf(order >= 0);
+		default:
+			throw new IllegalStateException();
+		}
+	}
+
+	private Boolean evaluatePredicate(int position, EvaluationContext context)
+			throws EvaluationException {
+		CompiledPredicate predicate = this.predicates[position];
+		if (predicate == null) {
+			throw new EvaluationException("No predicate found for a node.");
+		}
+
+		return predicate.evaluate(context);
+	}
+
+	static FlatTree compile(CompiledNode root, EvaluationPlan plan,
+			MissingValueStrategyType missingValueStrategy,
+			NoTrueChildStrategyType noTrueChildStrategy) {
+		return new FlatTree(root, plan, missingValueStrategy, noTrueChildStrategy);
+	}
+
+	private static final byte OPERATOR_GENERIC = 0;
+	private static final byte OPERATOR_TRUE = 1;
+	private static final byte OPERATOR_FALSE = 2;
+	private static final byte OPERATOR_EQUAL = 3;
+	private static final byte OPERATOR_NOT_EQUAL = 4;
+	private static final byte OPERATOR_LESS_THAN = 5;
+	private static final byte OPERATOR_LESS_OR_EQUAL = 6;
+	private static final byte OPERATOR_GREATER_THAN = 7;
+	private static final byte OPERATOR_GREATER_OR_EQUAL = 8;
+}
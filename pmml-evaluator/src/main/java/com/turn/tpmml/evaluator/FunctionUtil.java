@@ -6,17 +6,17 @@ package com.turn.tpmml.evaluator;
 import com.turn.tpmml.DataType;
 import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
 
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
-
-import org.apache.commons.math3.stat.descriptive.StorelessUnivariateStatistic;
-import org.apache.commons.math3.stat.descriptive.moment.Mean;
-import org.apache.commons.math3.stat.descriptive.rank.Max;
-import org.apache.commons.math3.stat.descriptive.rank.Min;
-import org.apache.commons.math3.stat.descriptive.summary.Product;
-import org.apache.commons.math3.stat.descriptive.summary.Sum;
-
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The registry of built-in and user-defined functions.
+ *
+ * Functions can be registered and looked up by any number of threads at the same time. Compiled
+ * expressions keep the function that was registered when they were compiled.
+ */
 public class FunctionUtil {
 
 	private FunctionUtil() {
@@ -35,7 +35,22 @@ public class FunctionUtil {
 		return FunctionUtil.FUNCTIONS.get(name);
 	}
 
+	/**
+	 * Registers a function. Expressions that have already been compiled keep the function that was
+	 * registered when they were compiled.
+	 *
+	 * @param function The function, or <code>null</code> to remove the function.
+	 *
+	 * @see ExpressionCompiler
+	 */
 	public static void putFunction(String name, Function function) {
+
+		if (function == null) {
+			FunctionUtil.FUNCTIONS.remove(name);
+
+			return;
+		}
+
 		FunctionUtil.FUNCTIONS.put(name, function);
 	}
 
@@ -84,30 +99,137 @@ public class FunctionUtil {
 		return dataType;
 	}
 
-	private static final Map<String, Function> FUNCTIONS = new LinkedHashMap<String, Function>();
+	private static final ConcurrentMap<String, Function> FUNCTIONS =
+			new ConcurrentHashMap<String, Function>();
 
 	public interface Function {
 
 		Object evaluate(List<?> values) throws EvaluationException;
 	}
 
-	public abstract static class ArithmeticFunction implements Function {
+	/**
+	 * A function that can be invoked with exactly one argument without allocating an argument
+	 * list. The result must be the same as that of {@link #evaluate(List)} with a singleton list.
+	 */
+	public interface UnaryFunction extends Function {
+
+		Object evaluate(Object value) throws EvaluationException;
+	}
 
-		public abstract Double evaluate(Number left, Number right);
+	/**
+	 * A function that can be invoked with exactly two arguments without allocating an argument
+	 * list.
+	 *
+	 * @see UnaryFunction
+	 */
+	public interface BinaryFunction extends Function {
 
-		public Number cast(DataType dataType, Double result) throws EvaluationException {
-			return asNumber(ParameterUtil.cast(dataType, result));
+		Object evaluate(Object left, Object right) throws EvaluationException;
+	}
+
+	/**
+	 * A function that can be invoked with exactly three arguments without allocating an argument
+	 * list.
+	 *
+	 * @see UnaryFunction
+	 */
+	public interface TernaryFunction extends Function {
+
+		Object evaluate(Object first, Object second, Object third) throws EvaluationException;
+	}
+
+	/**
+	 * A function of one continuous argument that can be invoked without boxing. The result must
+	 * be the same as that of {@link #evaluate(Object)} with a Double argument.
+	 */
+	public interface DoubleUnaryFunction extends UnaryFunction {
+
+		double evaluate(double value);
+	}
+
+	/**
+	 * A function of two continuous arguments that can be invoked without boxing.
+	 *
+	 * @see DoubleUnaryFunction
+	 */
+	public interface DoubleBinaryFunction extends BinaryFunction {
+
+		double evaluate(double left, double right);
+	}
+
+	public abstract static class AbstractUnaryFunction implements UnaryFunction {
+
+		public Object evaluate(List<?> values) throws EvaluationException {
+
+			if (values.size() != 1) {
+				throw new EvaluationException("Wrong number of arguments: expected 1, got " +
+						values.size());
+			}
+
+			return evaluate(values.get(0));
 		}
+	}
 
-		public Number evaluate(List<?> values) throws EvaluationException {
+	public abstract static class AbstractBinaryFunction implements BinaryFunction {
+
+		public Object evaluate(List<?> values) throws EvaluationException {
 
 			if (values.size() != 2) {
 				throw new EvaluationException("Wrong number of arguments: expected 2, got " +
 						values.size());
 			}
 
-			Object left = values.get(0);
-			Object right = values.get(1);
+			return evaluate(values.get(0), values.get(1));
+		}
+	}
+
+	/**
+	 * Base class for user-defined functions of one continuous argument. Missing values are
+	 * propagated, and all other values are converted to double.
+	 */
+	public abstract static class AbstractDoubleUnaryFunction extends AbstractUnaryFunction
+			implements DoubleUnaryFunction {
+
+		@Override
+		public Double evaluate(Object value) throws EvaluationException {
+
+			if (value == null) {
+				return null;
+			}
+
+			return Double.valueOf(evaluate(asNumber(value).doubleValue()));
+		}
+	}
+
+	/**
+	 * Base class for user-defined functions of two continuous arguments.
+	 *
+	 * @see AbstractDoubleUnaryFunction
+	 */
+	public abstract static class AbstractDoubleBinaryFunction extends AbstractBinaryFunction
+			implements DoubleBinaryFunction {
+
+		@Override
+		public Double evaluate(Object left, Object right) throws EvaluationException {
+
+			if (left == null || right == null) {
+				return null;
+			}
+
+			return Double.valueOf(evaluate(asNumber(left).doubleValue(),
+					asNumber(right).doubleValue()));
+		}
+	}
+
+	public abstract static class ArithmeticFunction extends AbstractBinaryFunction
+			implements DoubleBinaryFunction {
+
+		public Number cast(DataType dataType, Double result) throws EvaluationException {
+			return asNumber(ParameterUtil.cast(dataType, result));
+		}
+
+		@Override
+		public Number evaluate(Object left, Object right) throws EvaluationException {
 
 			if (left == null || right == null) {
 				return null;
@@ -115,7 +237,9 @@ public class FunctionUtil {
 
 			DataType dataType = ParameterUtil.getResultDataType(left, right);
 
-			return cast(dataType, evaluate(asNumber(left), asNumber(right)));
+			double result = evaluate(asNumber(left).doubleValue(), asNumber(right).doubleValue());
+
+			return cast(dataType, Double.valueOf(result));
 		}
 	}
 
@@ -123,24 +247,24 @@ public class FunctionUtil {
 		putFunction("+", new ArithmeticFunction() {
 
 			@Override
-			public Double evaluate(Number left, Number right) {
-				return Double.valueOf(left.doubleValue() + right.doubleValue());
+			public double evaluate(double left, double right) {
+				return left + right;
 			}
 		});
 
 		putFunction("-", new ArithmeticFunction() {
 
 			@Override
-			public Double evaluate(Number left, Number right) {
-				return Double.valueOf(left.doubleValue() - right.doubleValue());
+			public double evaluate(double left, double right) {
+				return left - right;
 			}
 		});
 
 		putFunction("*", new ArithmeticFunction() {
 
 			@Override
-			public Double evaluate(Number left, Number right) {
-				return Double.valueOf(left.doubleValue() * right.doubleValue());
+			public double evaluate(double left, double right) {
+				return left * right;
 			}
 		});
 
@@ -152,32 +276,82 @@ public class FunctionUtil {
 			}
 
 			@Override
-			public Double evaluate(Number left, Number right) {
-				return Double.valueOf(left.doubleValue() / right.doubleValue());
+			public double evaluate(double left, double right) {
+				return left / right;
 			}
 		});
 	}
 
-	public abstract static class AggregateFunction implements Function {
+	/**
+	 * A function that folds all non-missing arguments into a single value. The fold is computed
+	 * on primitive values, so that no statistic object is created per call.
+	 */
+	public abstract static class AggregateFunction implements DoubleBinaryFunction {
+
+		/**
+		 * @return The value of the fold before the first argument.
+		 */
+		public abstract double initial();
 
-		public abstract StorelessUnivariateStatistic createStatistic();
+		/**
+		 * @param result The value of the fold so far
+		 * @param value The next argument
+		 * @param count The number of arguments so far, including the next argument
+		 */
+		public abstract double accumulate(double result, double value, int count);
 
 		public Number cast(DataType dataType, Double result) throws EvaluationException {
 			return asNumber(ParameterUtil.cast(dataType, result));
 		}
 
+		public double evaluate(double left, double right) {
+			return accumulate(accumulate(initial(), left, 1), right, 2);
+		}
+
+		public Number evaluate(Object left, Object right) throws EvaluationException {
+			return evaluate(new Object[] { left, right });
+		}
+
+		/**
+		 * Folds the arguments in place, if the list supports fast random access.
+		 */
 		public Number evaluate(List<?> values) throws EvaluationException {
-			StorelessUnivariateStatistic statistic = createStatistic();
+
+			if (values instanceof RandomAccess) {
+				return fold(null, values, values.size());
+			}
+
+			return evaluate(values.toArray());
+		}
+
+		/**
+		 * Folds the arguments without creating an argument list.
+		 */
+		public Number evaluate(Object[] values) throws EvaluationException {
+			return fold(values, null, values.length);
+		}
+
+		/**
+		 * @param array The arguments, or <code>null</code>
+		 * @param list The arguments, if there is no array
+		 */
+		private Number fold(Object[] array, List<?> list, int size) throws EvaluationException {
+			double result = initial();
+
+			int count = 0;
 
 			DataType dataType = null;
 
-			for (Object value : values) {
+			for (int i = 0; i < size; i++) {
+				Object value = (array != null ? array[i] : list.get(i));
 
 				if (value == null) {
 					continue;
 				}
 
-				statistic.increment(asNumber(value).doubleValue());
+				count++;
+
+				result = accumulate(result, asNumber(value).doubleValue(), count);
 
 				if (dataType != null) {
 					dataType =
@@ -188,11 +362,11 @@ public class FunctionUtil {
 				}
 			}
 
-			if (statistic.getN() == 0) {
+			if (count == 0) {
 				throw new EvaluationException("There is no result in statistic");
 			}
 
-			return cast(dataType, statistic.getResult());
+			return cast(dataType, Double.valueOf(result));
 		}
 	}
 
@@ -200,24 +374,40 @@ public class FunctionUtil {
 		putFunction("min", new AggregateFunction() {
 
 			@Override
-			public Min createStatistic() {
-				return new Min();
+			public double initial() {
+				return Double.NaN;
+			}
+
+			@Override
+			public double accumulate(double result, double value, int count) {
+				return (value < result || Double.isNaN(result)) ? value : result;
 			}
 		});
 
 		putFunction("max", new AggregateFunction() {
 
 			@Override
-			public Max createStatistic() {
-				return new Max();
+			public double initial() {
+				return Double.NaN;
+			}
+
+			@Override
+			public double accumulate(double result, double value, int count) {
+				return (value > result || Double.isNaN(result)) ? value : result;
 			}
 		});
 
 		putFunction("avg", new AggregateFunction() {
 
 			@Override
-			public Mean createStatistic() {
-				return new Mean();
+			public double initial() {
+				return 0d;
+			}
+
+			@Override
+			public double accumulate(double result, double value, int count) {
+				// The incremental mean of Apache Commons Math
+				return result + (value - result) / count;
 			}
 
 			@Override
@@ -229,40 +419,60 @@ public class FunctionUtil {
 		putFunction("sum", new AggregateFunction() {
 
 			@Override
-			public Sum createStatistic() {
-				return new Sum();
+			public double initial() {
+				return 0d;
+			}
+
+			@Override
+			public double accumulate(double result, double value, int count) {
+				return result + value;
 			}
 		});
 
 		putFunction("product", new AggregateFunction() {
 
 			@Override
-			public Product createStatistic() {
-				return new Product();
+			public double initial() {
+				return 1d;
+			}
+
+			@Override
+			public double accumulate(double result, double value, int count) {
+				return result * value;
 			}
 		});
 	}
 
-	public abstract static class MathFunction implements Function {
-
-		public abstract Double evaluate(Number value);
+	public abstract static class MathFunction extends AbstractUnaryFunction
+			implements DoubleUnaryFunction {
 
 		public Number cast(DataType dataType, Number result) throws EvaluationException {
 			return asNumber(ParameterUtil.cast(dataType, result));
 		}
 
-		public Number evaluate(List<?> values) throws EvaluationException {
+		@Override
+		public Number evaluate(Object value) throws EvaluationException {
+			DataType dataType = ParameterUtil.getDataType(value);
 
-			if (values.size() != 1) {
-				throw new EvaluationException("Wrong number of arguments, expected 1, got " +
-						values.size());
-			}
+			double result = evaluate(asNumber(value).doubleValue());
 
-			Object value = values.get(0);
+			return cast(dataType, Double.valueOf(result));
+		}
+	}
 
-			DataType dataType = ParameterUtil.getDataType(value);
+	public abstract static class BinaryMathFunction extends AbstractBinaryFunction
+			implements DoubleBinaryFunction {
 
-			return cast(dataType, evaluate(asNumber(value)));
+		@Override
+		public Number evaluate(Object first, Object second) throws EvaluationException {
+			Number left = asNumber(first);
+			Number right = asNumber(second);
+
+			DataType dataType = ParameterUtil.getResultDataType(left, right);
+
+			double result = evaluate(left.doubleValue(), right.doubleValue());
+
+			return asNumber(ParameterUtil.cast(dataType, Double.valueOf(result)));
 		}
 	}
 
@@ -278,121 +488,88 @@ public class FunctionUtil {
 		putFunction("log10", new FpMathFunction() {
 
 			@Override
-			public Double evaluate(Number value) {
-				return Math.log10(value.doubleValue());
+			public double evaluate(double value) {
+				return Math.log10(value);
 			}
 		});
 
 		putFunction("ln", new FpMathFunction() {
 
 			@Override
-			public Double evaluate(Number value) {
-				return Math.log(value.doubleValue());
+			public double evaluate(double value) {
+				return Math.log(value);
 			}
 		});
 
 		putFunction("exp", new FpMathFunction() {
 
 			@Override
-			public Double evaluate(Number value) {
-				return Math.exp(value.doubleValue());
+			public double evaluate(double value) {
+				return Math.exp(value);
 			}
 		});
 
 		putFunction("sqrt", new FpMathFunction() {
 
 			@Override
-			public Double evaluate(Number value) {
-				return Math.sqrt(value.doubleValue());
+			public double evaluate(double value) {
+				return Math.sqrt(value);
 			}
 		});
 
 		putFunction("abs", new MathFunction() {
 
 			@Override
-			public Double evaluate(Number value) {
-				return Math.abs(value.doubleValue());
+			public double evaluate(double value) {
+				return Math.abs(value);
 			}
 		});
 
-		putFunction("pow", new Function() {
-
-			public Number evaluate(List<?> values) throws EvaluationException {
-
-				if (values.size() != 2) {
-					throw new EvaluationException("Wrong number of arguments: expected 2, got " +
-							values.size());
-				}
-
-				Number left = asNumber(values.get(0));
-				Number right = asNumber(values.get(1));
-
-				DataType dataType = ParameterUtil.getResultDataType(left, right);
-
-				Double result = Math.pow(left.doubleValue(), right.doubleValue());
+		putFunction("pow", new BinaryMathFunction() {
 
-				return asNumber(ParameterUtil.cast(dataType, result));
+			@Override
+			public double evaluate(double left, double right) {
+				return Math.pow(left, right);
 			}
 		});
 
-		putFunction("threshold", new Function() {
-
-			public Number evaluate(List<?> values) throws EvaluationException {
-
-				if (values.size() != 2) {
-					throw new EvaluationException("Wrong number of arguments: expected 2, got " +
-							values.size());
-				}
-
-				Number left = asNumber(values.get(0));
-				Number right = asNumber(values.get(1));
-
-				DataType dataType = ParameterUtil.getResultDataType(left, right);
-
-				Integer result = (left.doubleValue() > right.doubleValue()) ? 1 : 0;
+		putFunction("threshold", new BinaryMathFunction() {
 
-				return asNumber(ParameterUtil.cast(dataType, result));
+			@Override
+			public double evaluate(double left, double right) {
+				return (left > right) ? 1d : 0d;
 			}
 		});
 
 		putFunction("floor", new MathFunction() {
 
 			@Override
-			public Double evaluate(Number number) {
-				return Math.floor(number.doubleValue());
+			public double evaluate(double value) {
+				return Math.floor(value);
 			}
 		});
 
 		putFunction("ceil", new MathFunction() {
 
 			@Override
-			public Double evaluate(Number number) {
-				return Math.ceil(number.doubleValue());
+			public double evaluate(double value) {
+				return Math.ceil(value);
 			}
 		});
 
 		putFunction("round", new MathFunction() {
 
 			@Override
-			public Double evaluate(Number number) {
-				return (double) Math.round(number.doubleValue());
+			public double evaluate(double value) {
+				return (double) Math.round(value);
 			}
 		});
 	}
 
-	public abstract static class ValueFunction implements Function {
+	public abstract static class ValueFunction extends AbstractUnaryFunction {
 
+		@Override
 		public abstract Boolean evaluate(Object value);
-
-		public Boolean evaluate(List<?> values) throws EvaluationException {
-
-			if (values.size() != 1) {
-				throw new EvaluationException("Wrong number of arguments: expected 1, got " +
-						values.size());
-			}
-
-			return evaluate(values.get(0));
-		}
 	}
 
 	static {
@@ -413,7 +590,7 @@ public class FunctionUtil {
 		});
 	}
 
-	public abstract static class ComparisonFunction implements Function {
+	public abstract static class ComparisonFunction extends AbstractBinaryFunction {
 
 		public abstract Boolean evaluate(int diff);
 
@@ -421,16 +598,9 @@ public class FunctionUtil {
 			return evaluate((left).compareTo(right));
 		}
 
+		@Override
 		@SuppressWarnings({ "rawtypes", "unchecked" })
-		public Boolean evaluate(List<?> values) throws EvaluationException {
-
-			if (values.size() != 2) {
-				throw new EvaluationException("Wrong number of arguments: expected 2, got " +
-						values.size());
-			}
-
-			Object left = values.get(0);
-			Object right = values.get(1);
+		public Boolean evaluate(Object left, Object right) throws EvaluationException {
 
 			if (left == null || right == null) {
 				throw new EvaluationException("One of the operand is null");
@@ -498,10 +668,14 @@ public class FunctionUtil {
 		});
 	}
 
-	public abstract static class BinaryBooleanFunction implements Function {
+	public abstract static class BinaryBooleanFunction implements BinaryFunction {
 
 		public abstract Boolean evaluate(Boolean left, Boolean right);
 
+		public Boolean evaluate(Object left, Object right) throws EvaluationException {
+			return evaluate(asBoolean(left), asBoolean(right));
+		}
+
 		@Override
 		public Boolean evaluate(List<?> values) throws EvaluationException {
 
@@ -538,18 +712,13 @@ public class FunctionUtil {
 		});
 	}
 
-	public abstract static class UnaryBooleanFunction implements Function {
+	public abstract static class UnaryBooleanFunction extends AbstractUnaryFunction {
 
 		public abstract Boolean evaluate(Boolean value);
 
-		public Boolean evaluate(List<?> values) throws EvaluationException {
-
-			if (values.size() != 1) {
-				throw new EvaluationException("Wrong number of arguments: expected 1, got " +
-						values.size());
-			}
-
-			return evaluate(asBoolean(values.get(0)));
+		@Override
+		public Boolean evaluate(Object value) throws EvaluationException {
+			return evaluate(asBoolean(value));
 		}
 	}
 
@@ -598,44 +767,56 @@ public class FunctionUtil {
 	}
 
 	static {
-		putFunction("if", new Function() {
-
-			public Object evaluate(List<?> values) throws EvaluationException {
+		putFunction("if", new ConditionalFunction());
+	}
 
-				if (values.size() < 2 || values.size() > 3) {
-					throw new EvaluationException("Wrong number of arguments:" +
-							" expected 2 or 3, got " +
-							values.size());
-				}
+	private static class ConditionalFunction implements BinaryFunction, TernaryFunction {
 
-				Boolean flag = asBoolean(values.get(0));
+		public Object evaluate(List<?> values) throws EvaluationException {
 
-				if (flag.booleanValue()) {
-					return values.get(1);
-				} else {
-					if (values.size() > 2) {
-						return values.get(2);
-					}
+			if (values.size() == 2) {
+				return evaluate(values.get(0), values.get(1));
+			} else
 
-					// XXX
-					return null;
-				}
+			if (values.size() == 3) {
+				return evaluate(values.get(0), values.get(1), values.get(2));
 			}
-		});
-	}
 
-	public abstract static class StringFunction implements Function {
+			throw new EvaluationException("Wrong number of arguments:" +
+					" expected 2 or 3, got " +
+					values.size());
+		}
 
-		public abstract String evaluate(String value);
+		public Object evaluate(Object first, Object second) throws EvaluationException {
+			Boolean flag = asBoolean(first);
 
-		public String evaluate(List<?> values) throws EvaluationException {
+			if (flag.booleanValue()) {
+				return second;
+			}
 
-			if (values.size() != 1) {
-				throw new EvaluationException("Wrong number of arguments: expected 1, got " +
-						values.size());
+			// XXX
+			return null;
+		}
+
+		public Object evaluate(Object first, Object second, Object third)
+				throws EvaluationException {
+			Boolean flag = asBoolean(first);
+
+			if (flag.booleanValue()) {
+				return second;
 			}
 
-			return evaluate(asString(values.get(0)));
+			return third;
+		}
+	}
+
+	public abstract static class StringFunction extends AbstractUnaryFunction {
+
+		public abstract String evaluate(String value);
+
+		@Override
+		public String evaluate(Object value) throws EvaluationException {
+			return evaluate(asString(value));
 		}
 	}
 
@@ -656,8 +837,8 @@ public class FunctionUtil {
 			}
 		});
 
-		putFunction("substring", new Function() {
-			@Override
+		putFunction("substring", new TernaryFunction() {
+
 			public String evaluate(List<?> values) throws EvaluationException {
 
 				if (values.size() != 3) {
@@ -665,10 +846,15 @@ public class FunctionUtil {
 							values.size());
 				}
 
-				String value = asString(values.get(0));
+				return evaluate(values.get(0), values.get(1), values.get(2));
+			}
+
+			public String evaluate(Object first, Object second, Object third)
+					throws EvaluationException {
+				String value = asString(first);
 
-				int position = asInteger(values.get(1));
-				int length = asInteger(values.get(2));
+				int position = asInteger(second);
+				int length = asInteger(third);
 
 				if (position <= 0 || length < 0) {
 					throw new EvaluationException("Invalid position");
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Interval;
+import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * An immutable lookup structure for a list of {@link Interval intervals}.
+ *
+ * The margins of all intervals split the real line into pieces: the margins themselves, and the
+ * open ranges between them. Every value that falls into the same piece is contained by the same
+ * intervals, which means that the first interval that contains a piece can be computed in
+ * advance, in a single sweep over the sorted pieces. A lookup is a binary search over a sorted
+ * <code>double</code> array of margins.
+ *
+ * Intervals may overlap. The result is always the same as that of a linear scan with
+ * {@link DiscretizationUtil#contains(Interval, Double)}.
+ */
+public class IntervalIndex {
+
+	/**
+	 * Sorted distinct margins, in the order of {@link Double#compare(double, double)}.
+	 */
+	private double[] margins = null;
+
+	/**
+	 * The index of the first interval that contains a piece, or <code>-1</code>. The piece
+	 * <code>2 * i</code> is the open range that ends at <code>margins[i]</code>, and the piece
+	 * <code>2 * i + 1</code> is the margin <code>margins[i]</code> itself.
+	 */
+	private int[] pieces = null;
+
+	private IntervalIndex() {
+	}
+
+	/**
+	 * @return The index of the first interval that contains the value, or <code>-1</code>.
+	 */
+	public int indexOf(double value) {
+		int index = Arrays.binarySearch(this.margins, value);
+
+		if (index > -1) {
+			return this.pieces[2 * index + 1];
+		}
+
+		return this.pieces[2 * (-index - 1)];
+	}
+
+	public boolean contains(double value) {
+		return indexOf(value) > -1;
+	}
+
+	public static IntervalIndex create(List<Interval> intervals) throws EvaluationException {
+		double[] margins = new double[2 * intervals.size()];
+		int count = 0;
+
+		for (Interval interval : intervals) {
+			Double leftMargin = interval.getLeftMargin();
+			if (leftMargin != null) {
+				margins[count++] = leftMargin.doubleValue();
+			}
+
+			Double rightMargin = interval.getRightMargin();
+			if (rightMargin != null) {
+				margins[count++] = rightMargin.doubleValue();
+			}
+		}
+
+		margins = distinct(Arrays.copyOf(margins, count));
+
+		IntervalIndex result = new IntervalIndex();
+		result.margins = margins;
+		result.pieces = new int[2 * margins.length + 1];
+
+		Arrays.fill(result.pieces, -1);
+
+		// Every interval contains a contiguous run of pieces [first, last]. Sweeping the pieces
+		// from left to right, the candidate intervals are those whose run has started, and the
+		// first interval of a piece is the smallest candidate whose run has not ended yet
+		int[] first = new int[intervals.size()];
+		int[] last = new int[intervals.size()];
+
+		long[] starts = new long[intervals.size()];
+
+		for (int j = 0; j < intervals.size(); j++) {
+			Interval interval = intervals.get(j);
+
+			first[j] = firstPiece(interval, margins);
+			last[j] = lastPiece(interval, margins);
+
+			starts[j] = ((long) first[j] << 32) | j;
+		}
+
+		Arrays.sort(starts);
+
+		PriorityQueue<Integer> candidates = new PriorityQueue<Integer>();
+
+		for (int i = 0, k = 0; i < result.pieces.length; i++) {
+
+			for (; k < starts.length && (int) (starts[k] >>> 32) == i; k++) {
+				int j = (int) starts[k];
+
+				if (last[j] >= i) {
+					candidates.add(j);
+				}
+			}
+
+			while (!candidates.isEmpty() && last[candidates.peek()] < i) {
+				candidates.poll();
+			}
+
+			if (!candidates.isEmpty()) {
+				result.pieces[i] = candidates.peek();
+			}
+		}
+
+		return result;
+	}
+
+	private static int firstPiece(Interval interval, double[] margins)
+			throws EvaluationException {
+		Double leftMargin = interval.getLeftMargin();
+
+		if (leftMargin == null) {
+			return 0;
+		}
+
+		int index = Arrays.binarySearch(margins, leftMargin.doubleValue());
+
+		return (isLeftClosed(interval) ? 2 * index + 1 : 2 * index + 2);
+	}
+
+	private static int lastPiece(Interval interval, double[] margins)
+			throws EvaluationException {
+		Double rightMargin = interval.getRightMargin();
+
+		if (rightMargin == null) {
+			return 2 * margins.length;
+		}
+
+		int index = Arrays.binarySearch(margins, rightMargin.doubleValue());
+
+		return (isRightClosed(interval) ? 2 * index + 1 : 2 * index);
+	}
+
+	private static boolean isLeftClosed(Interval interval) throws EvaluationException {
+		Interval.Closure closure = interval.getClosure();
+
+		switch (closure) {
+		case OPEN_CLOSED:
+		case OPEN_OPEN:
+			return false;
+		case CLOSED_OPEN:
+		case CLOSED_CLOSED:
+			return true;
+		default:
+			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION, closure.name());
+		}
+	}
+
+	private static boolean isRightClosed(Interval interval) throws EvaluationException {
+		Interval.Closure closure = interval.getClosure();
+
+		switch (closure) {
+		case OPEN_OPEN:
+		case CLOSED_OPEN:
+			return false;
+		case OPEN_CLOSED:
+		case CLOSED_CLOSED:
+			return true;
+		default:
+			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION, closure.name());
+		}
+	}
+
+	private static double[] distinct(double[] values) {
+		Arrays.sort(values);
+
+		int count = 0;
+
+		for (int i = 0; i < values.length; i++) {
+
+			if (count == 0 || Double.compare(values[count - 1], values[i]) != 0) {
+				values[count++] = values[i];
+			}
+		}
+
+		return Arrays.copyOf(values, count);
+	}
+}
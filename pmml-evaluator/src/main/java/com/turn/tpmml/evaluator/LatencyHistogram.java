@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations, with buckets on a base-2 logarithmic scale.
+ *
+ * Bucket <code>0</code> counts zero durations, and bucket <code>i</code> counts durations from
+ * <code>2<sup>i - 1</sup></code> to <code>2<sup>i</sup> - 1</code> nanoseconds. The relative
+ * error of a quantile is therefore at most a factor of two, which is plenty for telling apart
+ * microseconds and milliseconds. Recording a duration updates two counters of the stripe of the
+ * current thread, and never allocates.
+ *
+ * @see StripedCounter
+ */
+public class LatencyHistogram {
+
+	private AtomicLongArray cells = null;
+
+	private int mask = 0;
+
+	public LatencyHistogram() {
+		this(StripedCounter.getDefaultStripes());
+	}
+
+	/**
+	 * @param stripes The number of stripes, which is rounded up to a power of two.
+	 */
+	public LatencyHistogram(int stripes) {
+		this.mask = StripedCounter.toPowerOfTwo(stripes) - 1;
+		this.cells = new AtomicLongArray((this.mask + 1) * STRIDE);
+	}
+
+	/**
+	 * @param nanos The duration in nanoseconds. Negative durations are recorded as zero.
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(nanos, 0L);
+
+		int offset = StripedCounter.getStripe(this.mask) * STRIDE;
+
+		this.cells.getAndIncrement(offset + getBucket(nanos));
+		this.cells.getAndAdd(offset + BUCKETS, nanos);
+	}
+
+	/**
+	 * @return The number of recorded durations.
+	 */
+	public long getCount() {
+		long result = 0L;
+
+		for (int i = 0; i < BUCKETS; i++) {
+			result += getCount(i);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The number of recorded durations in the bucket.
+	 */
+	public long getCount(int bucket) {
+		return sum(bucket);
+	}
+
+	/**
+	 * @return The sum of recorded durations in nanoseconds.
+	 */
+	public long getSum() {
+		return sum(BUCKETS);
+	}
+
+	/**
+	 * @param quantile The quantile, between <code>0</code> and <code>1</code>.
+	 *
+	 * @return The upper bound of the bucket that contains the quantile, or <code>0</code> if no
+	 *         durations have been recorded.
+	 */
+	public long getValueAtQuantile(double quantile) {
+
+		if (quantile < 0d || quantile > 1d) {
+			throw new IllegalArgumentException("Invalid quantile: " + quantile);
+		}
+
+		long[] counts = new long[BUCKETS];
+
+		long count = 0L;
+
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = getCount(i);
+
+			count += counts[i];
+		}
+
+		long rank = (long) Math.ceil(quantile * count);
+
+		for (int i = 0; i < BUCKETS; i++) {
+			rank -= counts[i];
+
+			if (rank <= 0L && counts[i] > 0L) {
+				return getUpperBound(i);
+			}
+		}
+
+		return 0L;
+	}
+
+	private long sum(int index) {
+		long result = 0L;
+
+		for (int offset = 0; offset < this.cells.length(); offset += STRIDE) {
+			result += this.cells.get(offset + index);
+		}
+
+		return result;
+	}
+
+	static int getBucket(long nanos) {
+		return BUCKETS - Long.numberOfLeadingZeros(nanos);
+	}
+
+	/**
+	 * @return The largest duration in the bucket.
+	 */
+	public static long getUpperBound(int bucket) {
+
+		if (bucket == BUCKETS - 1) {
+			return Long.MAX_VALUE;
+		}
+
+		return (1L << bucket) - 1L;
+	}
+
+	/**
+	 * The number of buckets, which covers all non-negative long values.
+	 */
+	public static final int BUCKETS = 64;
+
+	/**
+	 * The buckets and the sum of a stripe, rounded up to whole cache lines.
+	 */
+	private static final int STRIDE = BUCKETS + StripedCounter.PADDING;
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+/**
+ * Service provider interface for the instrumentation of evaluators.
+ *
+ * <pre>
+ * DefaultMetricsRegistry metricsRegistry = new DefaultMetricsRegistry();
+ *
+ * ModelEvaluatorFactory factory = ModelEvaluatorFactory.getInstance();
+ * factory.setMetricsRegistry(metricsRegistry);
+ *
+ * Evaluator evaluator = (Evaluator)pmmlManager.getModelManager(null, factory);
+ * </pre>
+ *
+ * @see ModelEvaluatorFactory#setMetricsRegistry(MetricsRegistry)
+ * @see CompiledEvaluator#setMetricsRegistry(MetricsRegistry, String)
+ */
+public interface MetricsRegistry {
+
+	/**
+	 * @param name The name of the model. The models of segments are named after the enclosing
+	 *            model and the segment, as in <code>"parent/segment"</code>.
+	 *
+	 * @return The listener of the model. Models that have the same name share their listener.
+	 */
+	EvaluationListener getListener(String name);
+}
@@ -15,15 +15,20 @@ import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
-public class MiningModelEvaluator extends MiningModelManager implements Evaluator {
+public class MiningModelEvaluator extends MiningModelManager implements ModelEvaluator {
 
 	private static final long serialVersionUID = 1L;
-	private HashMap<Segment, Integer> segmentToId = new HashMap<Segment, Integer>();
-	private Integer segmentMaxId = 0;
+
+	private transient EvaluationPlan evaluationPlan = null;
+
+	private transient EvaluationListener evaluationListener = null;
+
+	private transient volatile CompiledSegmentation<?> compiledSegmentation = null;
 
 	public MiningModelEvaluator(PMML pmml) {
 		super(pmml);
@@ -31,14 +36,12 @@ public class MiningModelEvaluator extends MiningModelManager implements Evaluato
 
 	public MiningModelEvaluator(PMML pmml, MiningModel miningModel) {
 		super(pmml, miningModel);
+
+		this.evaluationPlan = EvaluatorUtil.compileEvaluationPlan(this);
 	}
 
 	public Object prepare(FieldName name, Object value) throws EvaluationException {
-		try {
-			return ParameterUtil.prepare(getDataField(name), getMiningField(name), value);
-		} catch (ModelManagerException e) {
-			throw new EvaluationException(e);
-		}
+		return EvaluatorUtil.prepare(this, name, value);
 	}
 
 	/**
@@ -62,32 +65,53 @@ public class MiningModelEvaluator extends MiningModelManager implements Evaluato
 	 * Allow to get a unique id for each segment. It is useful because we can't rely on the id from
 	 * the pmml that might contain a dot, or that can be anything.
 	 * 
-	 * @param s
-	 *            The segment we want to identify.
+	 * @param index
+	 *            The position of the segment we want to identify in the segmentation.
 	 * @return His id.
 	 */
-	private String getId(Segment s) {
-		if (!segmentToId.containsKey(s)) {
-			segmentToId.put(s, segmentMaxId++);
-		}
+	private static String getId(int index) {
+		return "segmentNumber" + index;
+	}
 
-		return "segmentNumber" + segmentToId.get(s);
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+		ModelManagerEvaluationContext context =
+				new ModelManagerEvaluationContext(this, getOrCreateEvaluationPlan(), parameters);
 
+		return EvaluatorUtil.evaluate(this, context);
 	}
 
-	// We can convert anything to an Object type. So the cast is legitimate.
-	@SuppressWarnings({ "unchecked" })
-	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters, Set<FieldName> outputFields)
+			throws EvaluationException {
+		return EvaluatorUtil.evaluate(this, parameters, outputFields);
+	}
+
+	public IPMMLResult evaluate(EvaluationContext parent) throws EvaluationException {
+		ModelManagerEvaluationContext context =
+				new ModelManagerEvaluationContext(this, getOrCreateEvaluationPlan(), parent);
+
+		return EvaluatorUtil.evaluate(this, context);
+	}
+
+	public void evaluateBatch(ColumnarInput input, ColumnarOutput output)
+			throws EvaluationException {
+		EvaluatorUtil.evaluateBatch(this, input, output);
+	}
+
+	public boolean evaluate(ReusableEvaluationContext context, ResultSink sink)
+			throws EvaluationException {
+		return EvaluatorUtil.evaluate(this, context, sink);
+	}
+
+	public IPMMLResult evaluateModel(ModelManagerEvaluationContext context)
+			throws EvaluationException {
 		// FIXME: Add another way to handle exception than returning null
 		// and turning off the error.
 		try {
 			switch (getFunctionType()) {
 			case CLASSIFICATION:
-				return evaluateClassification((Map<FieldName, Object>) parameters,
-						getOutputField(this));
+				return evaluateClassification(context, getOutputField(this));
 			case REGRESSION:
-				return evaluateRegression((Map<FieldName, Object>) parameters,
-						getOutputField(this));
+				return evaluateRegression(context, getOutputField(this));
 			default:
 				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
 						getFunctionType().name());
@@ -124,8 +148,8 @@ public class MiningModelEvaluator extends MiningModelManager implements Evaluato
 	 * Run all the models, and store the results in results, the weight in idToWeight if we are
 	 * interested in them, it augments parameters in case of modelChain, and return the main result.
 	 * 
-	 * @param parameters
-	 *            The set of parameters for the evaluation.
+	 * @param context
+	 *            The context of the evaluation.
 	 * @param outputField
 	 *            The outputField where we will store the final result.
 	 * @param results
@@ -136,24 +160,28 @@ public class MiningModelEvaluator extends MiningModelManager implements Evaluato
 	 * @throws Exception
 	 *             If there is a trouble with getting the name of the outputField of a model.
 	 */
-	private Object runModels(Map<FieldName, Object> parameters, DataField outputField,
+	// We can convert anything to an Object type. So the cast is legitimate.
+	@SuppressWarnings({ "unchecked" })
+	private Object runModels(EvaluationContext context, DataField outputField,
 			TreeMap<String, Object> results, TreeMap<String, Double> idToWeight)
 			throws EvaluationException {
+		Map<FieldName, Object> parameters = (Map<FieldName, Object>) context.getParameters();
 
 		Object result = null;
 
 		try {
 
-			ModelEvaluatorFactory factory = new ModelEvaluatorFactory();
+			CompiledSegmentation<?> compiledSegmentation = getOrCreateCompiledSegmentation();
 
-			for (Segment s : getSegments()) {
-				EvaluationContext context = new ModelManagerEvaluationContext(this, parameters);
+			List<Segment> segments = getSegments();
+			for (int i = 0; i < segments.size(); i++) {
+				Segment s = segments.get(i);
 
-				Boolean test = PredicateUtil.evaluate(s.getPredicate(), context);
+				Boolean test = (compiledSegmentation.getPredicate(s)).evaluate(context);
 
 				if (test != null ? test : false) {
-					Evaluator m = (Evaluator) factory.getModelManager(getPmml(), s.getModel());
-					PMMLResult tmpObj = (PMMLResult) m.evaluate(parameters);
+					ModelEvaluator m = compiledSegmentation.getEvaluator(s);
+					PMMLResult tmpObj = (PMMLResult) m.evaluate(context);
 
 					if (tmpObj == null) {
 						return null;
@@ -162,6 +190,7 @@ public class MiningModelEvaluator extends MiningModelManager implements Evaluato
 					if (getMultipleMethodModel() == MultipleModelMethodType.MODEL_CHAIN) {
 						FieldName output = getOutputField((ModelManager<?>) m).getName();
 						tmpObj.merge(parameters);
+						context.reload();
 						// If this is the result we are interested in, put it in result.
 						if (output.equals(outputField.getName())) {
 							// This cast is legitimate because getModelManager returns a
@@ -180,13 +209,13 @@ public class MiningModelEvaluator extends MiningModelManager implements Evaluato
 						Object tmpRes =
 								tmpObj.getValue(getOutputField((ModelManager<?>) m).getName());
 						if (tmpRes != null) {
-							results.put(getId(s), tmpRes);
+							results.put(getId(i), tmpRes);
 
-							idToWeight.put(getId(s), s.getWeight());
+							idToWeight.put(getId(i), s.getWeight());
 							// In this case, we are done with the evaluation of these model. We can
 							// quit.
 							if (getMultipleMethodModel() == MultipleModelMethodType.SELECT_FIRST) {
-								result = results.get(getId(s));
+								result = results.get(getId(i));
 								break;
 							}
 						}
@@ -204,22 +233,22 @@ public class MiningModelEvaluator extends MiningModelManager implements Evaluato
 	/**
 	 * Evaluate the regression.
 	 * 
-	 * @param parameters
-	 *            The set of parameters.
+	 * @param context
+	 *            The context of the evaluation.
 	 * @param outputField
 	 *            The output field.
 	 * @return The result of the evaluation.
 	 * @throws Exception
 	 *             If there is a trouble with getting the name of the outputField of a model.
 	 */
-	private IPMMLResult evaluateRegression(Map<FieldName, Object> parameters, DataField outputField)
+	IPMMLResult evaluateRegression(EvaluationContext context, DataField outputField)
 			throws EvaluationException {
-		assert parameters != null;
+		assert context != null;
 
 		TreeMap<String, Object> results = new TreeMap<String, Object>();
 		TreeMap<String, Double> idToWeight = new TreeMap<String, Double>();
 
-		Object result = runModels(parameters, outputField, results, idToWeight);
+		Object result = runModels(context, outputField, results, idToWeight);
 
 		switch (getMultipleMethodModel()) {
 		case SELECT_FIRST:
@@ -276,22 +305,22 @@ public class MiningModelEvaluator extends MiningModelManager implements Evaluato
 	/**
 	 * Evaluate the classification.
 	 * 
-	 * @param parameters
-	 *            The set of parameters.
+	 * @param context
+	 *            The context of the evaluation.
 	 * @param outputField
 	 *            The output field.
 	 * @return The result of the evaluation.
 	 * @throws Exception
 	 *             If there is a trouble with getting the name of the outputField of a model.
 	 */
-	private IPMMLResult evaluateClassification(Map<FieldName, Object> parameters,
-			DataField outputField) throws EvaluationException {
-		assert parameters != null;
+	private IPMMLResult evaluateClassification(EvaluationContext context, DataField outputField)
+			throws EvaluationException {
+		assert context != null;
 
 		TreeMap<String, Object> results = new TreeMap<String, Object>();
 		TreeMap<String, Double> idToWeight = new TreeMap<String, Double>();
 
-		Object result = runModels(parameters, outputField, results, idToWeight);
+		Object result = runModels(context, outputField, results, idToWeight);
 
 		switch (getMultipleMethodModel()) {
 		case SELECT_FIRST:
@@ -349,4 +378,87 @@ public class MiningModelEvaluator extends MiningModelManager implements Evaluato
 	public String getResultExplanation() {
 		return "";
 	}
+
+	/**
+	 * The evaluators of segments are only registered if {@link #setSegmentMetrics(boolean)
+	 * segment metrics} are enabled.
+	 */
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry, String name) {
+		ensureNotFrozen();
+
+		this.evaluationListener = EvaluatorUtil.getListener(metricsRegistry, name);
+
+		(getOrCreateCompiledSegmentation()).setMetricsRegistry(metricsRegistry, name);
+	}
+
+	public EvaluationListener getEvaluationListener() {
+		return this.evaluationListener;
+	}
+
+	public boolean getSegmentMetrics() {
+		return (getOrCreateCompiledSegmentation()).getSegmentMetrics();
+	}
+
+	/**
+	 * Reports the evaluation stages of segments to the metrics registry of this model, under the
+	 * names of their segments. This is disabled by default, because the metrics of a model take up
+	 * to about 180KB of memory, which adds up for segmentations of hundreds of models.
+	 * 
+	 * @throws IllegalStateException If the evaluator is frozen
+	 * 
+	 * @see EvaluatorUtil#getSegmentName(String, Segment, int)
+	 * @see EvaluationMetrics
+	 */
+	public void setSegmentMetrics(boolean segmentMetrics) {
+		ensureNotFrozen();
+
+		(getOrCreateCompiledSegmentation()).setSegmentMetrics(segmentMetrics);
+	}
+
+	@Override
+	public void freeze() throws ModelManagerException {
+		getOrCreateEvaluationPlan();
+
+		(getOrCreateCompiledSegmentation()).freeze();
+
+		super.freeze();
+	}
+
+	@Override
+	public void invalidateIndexes() {
+		super.invalidateIndexes();
+
+		this.evaluationPlan = null;
+
+		CompiledSegmentation<?> compiledSegmentation = this.compiledSegmentation;
+		if (compiledSegmentation != null) {
+			compiledSegmentation.invalidate();
+		}
+	}
+
+	/**
+	 * Gets the compiled predicates and the evaluators of segments, which are shared between
+	 * evaluations.
+	 */
+	CompiledSegmentation<?> getOrCreateCompiledSegmentation() {
+
+		CompiledSegmentation<?> compiledSegmentation = this.compiledSegmentation;
+
+		if (compiledSegmentation == null) {
+			compiledSegmentation = new CompiledSegmentation<MiningModelEvaluator>(this);
+
+			this.compiledSegmentation = compiledSegmentation;
+		}
+
+		return compiledSegmentation;
+	}
+
+	public EvaluationPlan getOrCreateEvaluationPlan() throws EvaluationException {
+
+		if (this.evaluationPlan == null) {
+			this.evaluationPlan = EvaluationPlan.compile(this);
+		}
+
+		return this.evaluationPlan;
+	}
 }
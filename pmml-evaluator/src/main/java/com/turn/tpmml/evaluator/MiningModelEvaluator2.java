@@ -7,10 +7,8 @@ package com.turn.tpmml.evaluator;
 import com.turn.tpmml.FieldName;
 import com.turn.tpmml.MiningFunctionType;
 import com.turn.tpmml.MiningModel;
-import com.turn.tpmml.Model;
 import com.turn.tpmml.MultipleModelMethodType;
 import com.turn.tpmml.PMML;
-import com.turn.tpmml.Predicate;
 import com.turn.tpmml.Segment;
 import com.turn.tpmml.Segmentation;
 import com.turn.tpmml.manager.IPMMLResult;
@@ -23,25 +21,30 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-public class MiningModelEvaluator2 extends MiningModelManager implements Evaluator {
+public class MiningModelEvaluator2 extends MiningModelManager implements ModelEvaluator {
 
 	private static final long serialVersionUID = 1L;
 
+	private transient EvaluationPlan evaluationPlan = null;
+
+	private transient EvaluationListener evaluationListener = null;
+
+	private transient volatile CompiledSegmentation<?> compiledSegmentation = null;
+
 	public MiningModelEvaluator2(PMML pmml) {
 		super(pmml);
 	}
 
 	public MiningModelEvaluator2(PMML pmml, MiningModel miningModel) {
 		super(pmml, miningModel);
+
+		this.evaluationPlan = EvaluatorUtil.compileEvaluationPlan(this);
 	}
 
 	public Object prepare(FieldName name, Object value) throws EvaluationException {
-		try {
-			return ParameterUtil.prepare(getDataField(name), getMiningField(name), value);
-		} catch (ModelManagerException e) {
-			throw new EvaluationException(e);
-		}
+		return EvaluatorUtil.prepare(this, name, value);
 	}
 
 	/**
@@ -50,14 +53,41 @@ public class MiningModelEvaluator2 extends MiningModelManager implements Evaluat
 	 * @see #evaluateClassification(EvaluationContext)
 	 */
 	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+		ModelManagerEvaluationContext context =
+				new ModelManagerEvaluationContext(this, getOrCreateEvaluationPlan(), parameters);
+
+		return EvaluatorUtil.evaluate(this, context);
+	}
+
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters, Set<FieldName> outputFields)
+			throws EvaluationException {
+		return EvaluatorUtil.evaluate(this, parameters, outputFields);
+	}
+
+	public IPMMLResult evaluate(EvaluationContext parent) throws EvaluationException {
+		ModelManagerEvaluationContext context =
+				new ModelManagerEvaluationContext(this, getOrCreateEvaluationPlan(), parent);
+
+		return EvaluatorUtil.evaluate(this, context);
+	}
+
+	public void evaluateBatch(ColumnarInput input, ColumnarOutput output)
+			throws EvaluationException {
+		EvaluatorUtil.evaluateBatch(this, input, output);
+	}
+
+	public boolean evaluate(ReusableEvaluationContext context, ResultSink sink)
+			throws EvaluationException {
+		return EvaluatorUtil.evaluate(this, context, sink);
+	}
+
+	public IPMMLResult evaluateModel(ModelManagerEvaluationContext context)
+			throws EvaluationException {
 		try {
 			MiningModel model = getModel();
 
 			IPMMLResult predictions;
 
-			ModelManagerEvaluationContext context =
-					new ModelManagerEvaluationContext(this, parameters);
-
 			MiningFunctionType miningFunction = model.getFunctionName();
 			switch (miningFunction) {
 			case REGRESSION:
@@ -80,7 +110,7 @@ public class MiningModelEvaluator2 extends MiningModelManager implements Evaluat
 	}
 
 	public IPMMLResult evaluateRegression(EvaluationContext context) throws EvaluationException {
-		List<SegmentResult> segmentResults = evaluate(context);
+		List<SegmentResult> segmentResults = evaluateSegments(context);
 		try {
 			Segmentation segmentation = getSegmentation();
 
@@ -138,7 +168,7 @@ public class MiningModelEvaluator2 extends MiningModelManager implements Evaluat
 
 	public IPMMLResult evaluateClassification(EvaluationContext context)
 			throws EvaluationException {
-		List<SegmentResult> segmentResults = evaluate(context);
+		List<SegmentResult> segmentResults = evaluateSegments(context);
 
 		Segmentation segmentation;
 
@@ -220,7 +250,8 @@ public class MiningModelEvaluator2 extends MiningModelManager implements Evaluat
 	}
 
 	@SuppressWarnings("fallthrough")
-	private List<SegmentResult> evaluate(EvaluationContext context) throws EvaluationException {
+	private List<SegmentResult> evaluateSegments(EvaluationContext context)
+			throws EvaluationException {
 		List<SegmentResult> results = new ArrayList<SegmentResult>();
 
 		Segmentation segmentation;
@@ -232,11 +263,11 @@ public class MiningModelEvaluator2 extends MiningModelManager implements Evaluat
 
 		MultipleModelMethodType multipleModelMethod = segmentation.getMultipleModelMethod();
 
+		CompiledSegmentation<?> compiledSegmentation = getOrCreateCompiledSegmentation();
+
 		List<Segment> segments = segmentation.getSegments();
 		for (Segment segment : segments) {
-			Predicate predicate = segment.getPredicate();
-
-			Boolean selectable = PredicateUtil.evaluate(predicate, context);
+			Boolean selectable = (compiledSegmentation.getPredicate(segment)).evaluate(context);
 			if (selectable == null) {
 				throw new EvaluationException("Predicate doesn't evaluate to false or true");
 			} // End if
@@ -245,15 +276,7 @@ public class MiningModelEvaluator2 extends MiningModelManager implements Evaluat
 				continue;
 			}
 
-			Model model = segment.getModel();
-
-			Evaluator evaluator;
-
-			try {
-				evaluator = (Evaluator) EVALUATOR_FACTORY.getModelManager(getPmml(), model);
-			} catch (ModelManagerException e1) {
-				throw new EvaluationException(e1);
-			}
+			ModelEvaluator evaluator = compiledSegmentation.getEvaluator(segment);
 
 			FieldName target;
 			try {
@@ -262,7 +285,7 @@ public class MiningModelEvaluator2 extends MiningModelManager implements Evaluat
 				throw new EvaluationException(e);
 			}
 
-			IPMMLResult result = evaluator.evaluate(context.getParameters());
+			IPMMLResult result = evaluator.evaluate(context);
 
 			switch (multipleModelMethod) {
 			case SELECT_FIRST:
@@ -303,9 +326,6 @@ public class MiningModelEvaluator2 extends MiningModelManager implements Evaluat
 		return results;
 	}
 
-	private static final ModelEvaluatorFactory EVALUATOR_FACTORY = ModelEvaluatorFactory
-			.getInstance();
-
 	private static class SegmentResult {
 
 		private Segment segment = null;
@@ -349,4 +369,87 @@ public class MiningModelEvaluator2 extends MiningModelManager implements Evaluat
 		}
 
 	}
+
+	/**
+	 * The evaluators of segments are only registered if {@link #setSegmentMetrics(boolean)
+	 * segment metrics} are enabled.
+	 */
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry, String name) {
+		ensureNotFrozen();
+
+		this.evaluationListener = EvaluatorUtil.getListener(metricsRegistry, name);
+
+		(getOrCreateCompiledSegmentation()).setMetricsRegistry(metricsRegistry, name);
+	}
+
+	public EvaluationListener getEvaluationListener() {
+		return this.evaluationListener;
+	}
+
+	public boolean getSegmentMetrics() {
+		return (getOrCreateCompiledSegmentation()).getSegmentMetrics();
+	}
+
+	/**
+	 * Reports the evaluation stages of segments to the metrics registry of this model, under the
+	 * names of their segments. This is disabled by default, because the metrics of a model take up
+	 * to about 180KB of memory, which adds up for segmentations of hundreds of models.
+	 * 
+	 * @throws IllegalStateException If the evaluator is frozen
+	 * 
+	 * @see EvaluatorUtil#getSegmentName(String, Segment, int)
+	 * @see EvaluationMetrics
+	 */
+	public void setSegmentMetrics(boolean segmentMetrics) {
+		ensureNotFrozen();
+
+		(getOrCreateCompiledSegmentation()).setSegmentMetrics(segmentMetrics);
+	}
+
+	@Override
+	public void freeze() throws ModelManagerException {
+		getOrCreateEvaluationPlan();
+
+		(getOrCreateCompiledSegmentation()).freeze();
+
+		super.freeze();
+	}
+
+	@Override
+	public void invalidateIndexes() {
+		super.invalidateIndexes();
+
+		this.evaluationPlan = null;
+
+		CompiledSegmentation<?> compiledSegmentation = this.compiledSegmentation;
+		if (compiledSegmentation != null) {
+			compiledSegmentation.invalidate();
+		}
+	}
+
+	/**
+	 * Gets the compiled predicates and the evaluators of segments, which are shared between
+	 * evaluations.
+	 */
+	CompiledSegmentation<?> getOrCreateCompiledSegmentation() {
+
+		CompiledSegmentation<?> compiledSegmentation = this.compiledSegmentation;
+
+		if (compiledSegmentation == null) {
+			compiledSegmentation = new CompiledSegmentation<MiningModelEvaluator2>(this);
+
+			this.compiledSegmentation = compiledSegmentation;
+		}
+
+		return compiledSegmentation;
+	}
+
+	public EvaluationPlan getOrCreateEvaluationPlan() throws EvaluationException {
+
+		if (this.evaluationPlan == null) {
+			this.evaluationPlan = EvaluationPlan.compile(this);
+		}
+
+		return this.evaluationPlan;
+	}
 }
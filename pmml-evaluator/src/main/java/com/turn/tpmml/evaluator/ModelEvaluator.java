@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.manager.IPMMLResult;
+
+import java.util.Map;
+
+/**
+ * The part of the evaluator API that the evaluators of this package share with each other, but
+ * that is not published to the users of {@link CompiledEvaluator}.
+ */
+interface ModelEvaluator extends CompiledEvaluator {
+
+	/**
+	 * Gets the evaluation plan of this model. The plan is compiled when the evaluator is created,
+	 * and compiled again on first use after the model has been modified.
+	 *
+	 * @throws EvaluationException If the plan cannot be compiled
+	 *
+	 * @see EvaluatorUtil#compileEvaluationPlan(ModelManager)
+	 */
+	EvaluationPlan getOrCreateEvaluationPlan() throws EvaluationException;
+
+	/**
+	 * Evaluates this model as a part of the evaluation of an enclosing model.
+	 *
+	 * The parameters of the parent context are used as they are. Derived field values that have
+	 * been computed by the enclosing model (or by its other parts) are reused, and vice versa.
+	 *
+	 * @param parent The context of the enclosing model
+	 *
+	 * @throws EvaluationException If the evaluation fails
+	 *
+	 * @see #evaluate(Map)
+	 */
+	IPMMLResult evaluate(EvaluationContext parent) throws EvaluationException;
+
+	/**
+	 * Evaluates this model in a context that has been created for this evaluator.
+	 *
+	 * @throws EvaluationException If the evaluation fails
+	 *
+	 * @see EvaluatorUtil#evaluate(ModelEvaluator, ModelManagerEvaluationContext)
+	 */
+	IPMMLResult evaluateModel(ModelManagerEvaluationContext context) throws EvaluationException;
+
+	/**
+	 * @return The listener of this model, or <code>null</code> if there is no registry.
+	 */
+	EvaluationListener getEvaluationListener();
+}
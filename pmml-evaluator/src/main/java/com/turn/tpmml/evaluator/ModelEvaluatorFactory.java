@@ -18,12 +18,36 @@ import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
 
 public class ModelEvaluatorFactory extends ModelManagerFactory {
 
+	private MetricsRegistry metricsRegistry = null;
+
 	protected ModelEvaluatorFactory() {
 	}
 
+	/**
+	 * Creates an evaluator. If this factory has a metrics registry, then the evaluator is
+	 * registered under the name of the model, or the name of the model element if the model does
+	 * not have a name.
+	 */
 	@Override
 	public ModelManager<? extends Model> getModelManager(PMML pmml, Model model)
 			throws ModelManagerException {
+		ModelManager<? extends Model> modelManager = createModelManager(pmml, model);
+
+		MetricsRegistry metricsRegistry = getMetricsRegistry();
+		if (metricsRegistry != null) {
+			String name = model.getModelName();
+			if (name == null) {
+				name = (model.getClass()).getSimpleName();
+			}
+
+			((CompiledEvaluator) modelManager).setMetricsRegistry(metricsRegistry, name);
+		}
+
+		return modelManager;
+	}
+
+	private ModelManager<? extends Model> createModelManager(PMML pmml, Model model)
+			throws ModelManagerException {
 
 		if (model instanceof RegressionModel) {
 			return new RegressionModelEvaluator(pmml, (RegressionModel) model);
@@ -42,10 +66,20 @@ public class ModelEvaluatorFactory extends ModelManagerFactory {
 		} else
 
 		if (model instanceof MiningModel) {
+			MiningModel miningModel = (MiningModel) model;
+
 			if (alternateImplementation) {
-				return new MiningModelEvaluator(pmml, (MiningModel) model);
+				if (TreeEnsembleEvaluator.isSupported(pmml, miningModel)) {
+					return new TreeEnsembleEvaluator(pmml, miningModel);
+				} else {
+					return new MiningModelEvaluator(pmml, miningModel);
+				}
 			} else {
-				return new MiningModelEvaluator2(pmml, (MiningModel) model);
+				if (TreeEnsembleEvaluator2.isSupported(pmml, miningModel)) {
+					return new TreeEnsembleEvaluator2(pmml, miningModel);
+				} else {
+					return new MiningModelEvaluator2(pmml, miningModel);
+				}
 			}
 		}
 		if (model instanceof Scorecard) {
@@ -56,6 +90,20 @@ public class ModelEvaluatorFactory extends ModelManagerFactory {
 				model.getModelName());
 	}
 
+	public MetricsRegistry getMetricsRegistry() {
+		return this.metricsRegistry;
+	}
+
+	/**
+	 * @param metricsRegistry The registry of the evaluators that this factory creates, or
+	 *            <code>null</code>.
+	 * 
+	 * @see CompiledEvaluator#setMetricsRegistry(MetricsRegistry, String)
+	 */
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+		this.metricsRegistry = metricsRegistry;
+	}
+
 	public static ModelEvaluatorFactory getInstance() {
 		return new ModelEvaluatorFactory();
 	}
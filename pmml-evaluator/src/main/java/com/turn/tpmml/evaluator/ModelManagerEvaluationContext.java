@@ -9,11 +9,14 @@ import com.turn.tpmml.manager.ModelManager;
 import com.turn.tpmml.manager.ModelManagerException;
 
 import java.util.Map;
+import java.util.Set;
 
 public class ModelManagerEvaluationContext extends EvaluationContext {
 
 	private ModelManager<?> modelManager = null;
 
+	private OutputPlan outputPlan = null;
+
 	public ModelManagerEvaluationContext(ModelManager<?> modelManager,
 										Map<FieldName, ?> parameters) {
 		super(parameters);
@@ -21,8 +24,27 @@ public class ModelManagerEvaluationContext extends EvaluationContext {
 		setModelManager(modelManager);
 	}
 
+	public ModelManagerEvaluationContext(ModelManager<?> modelManager, EvaluationPlan plan,
+											Map<FieldName, ?> parameters) {
+		super(plan, parameters);
+
+		setModelManager(modelManager);
+	}
+
+	public ModelManagerEvaluationContext(ModelManager<?> modelManager, EvaluationPlan plan,
+											EvaluationContext parent) {
+		super(plan, parent);
+
+		setModelManager(modelManager);
+	}
+
 	@Override
 	public DerivedField resolve(FieldName name) throws EvaluationException {
+		int slot = getSlot(name);
+		if (slot > -1) {
+			return (getPlan()).getDerivedField(slot);
+		}
+
 		ModelManager<?> modelManager = getModelManager();
 
 		try {
@@ -32,11 +54,59 @@ public class ModelManagerEvaluationContext extends EvaluationContext {
 		}
 	}
 
+	@Override
+	public EvaluationListener getEvaluationListener() {
+		ModelManager<?> modelManager = getModelManager();
+
+		if (modelManager instanceof ModelEvaluator) {
+			return ((ModelEvaluator) modelManager).getEvaluationListener();
+		}
+
+		return null;
+	}
+
 	@Override
 	public ModelManagerEvaluationContext clone() {
 		return (ModelManagerEvaluationContext) super.clone();
 	}
 
+	/**
+	 * Restricts the evaluation of the Output element to the specified output fields and the
+	 * output fields that they depend on. Derived fields are computed on demand, which means that
+	 * only the derived fields that these output fields depend on are computed for them.
+	 *
+	 * The selection is resolved once, and is kept when this context is reused or cloned.
+	 *
+	 * @param outputFields The names of output fields, or <code>null</code> to evaluate all
+	 *            output fields.
+	 *
+	 * @throws IllegalStateException If this context is not slot-backed
+	 *
+	 * @see CompiledEvaluator#evaluate(Map, Set)
+	 */
+	public void setOutputFields(Set<FieldName> outputFields) {
+		EvaluationPlan plan = getPlan();
+		if (plan == null) {
+			throw new IllegalStateException("The context is not slot-backed");
+		}
+
+		this.outputPlan = (plan.getOutputPlan()).select(outputFields);
+	}
+
+	/**
+	 * @return The compiled Output element, narrowed down to the selected output fields.
+	 *
+	 * @see #setOutputFields(Set)
+	 */
+	OutputPlan getOutputPlan() {
+
+		if (this.outputPlan == null) {
+			return (getPlan()).getOutputPlan();
+		}
+
+		return this.outputPlan;
+	}
+
 	public ModelManager<?> getModelManager() {
 		return this.modelManager;
 	}
@@ -28,11 +28,20 @@ import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-public class NeuralNetworkEvaluator extends NeuralNetworkManager implements Evaluator {
+public class NeuralNetworkEvaluator extends NeuralNetworkManager implements ModelEvaluator {
 
 	private static final long serialVersionUID = 1L;
 
+	private transient EvaluationPlan evaluationPlan = null;
+
+	private transient EvaluationListener evaluationListener = null;
+
+	private transient CompiledExpression[] compiledNeuralInputs = null;
+
+	private transient CompiledNormContinuous[] compiledNeuralOutputs = null;
+
 	public NeuralNetworkEvaluator(PMML pmml) throws ModelManagerException {
 		super(pmml);
 	}
@@ -40,6 +49,8 @@ public class NeuralNetworkEvaluator extends NeuralNetworkManager implements Eval
 	public NeuralNetworkEvaluator(PMML pmml, NeuralNetwork neuralNetwork)
 			throws ModelManagerException {
 		super(pmml, neuralNetwork);
+
+		this.evaluationPlan = EvaluatorUtil.compileEvaluationPlan(this);
 	}
 
 	public NeuralNetworkEvaluator(NeuralNetworkManager parent) throws ModelManagerException {
@@ -47,11 +58,7 @@ public class NeuralNetworkEvaluator extends NeuralNetworkManager implements Eval
 	}
 
 	public Object prepare(FieldName name, Object value) throws EvaluationException {
-		try {
-			return ParameterUtil.prepare(getDataField(name), getMiningField(name), value);
-		} catch (ModelManagerException e) {
-			throw new EvaluationException(e);
-		}
+		return EvaluatorUtil.prepare(this, name, value);
 	}
 
 	/**
@@ -61,6 +68,36 @@ public class NeuralNetworkEvaluator extends NeuralNetworkManager implements Eval
 	 */
 	@Override
 	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+		ModelManagerEvaluationContext context =
+				new ModelManagerEvaluationContext(this, getOrCreateEvaluationPlan(), parameters);
+
+		return EvaluatorUtil.evaluate(this, context);
+	}
+
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters, Set<FieldName> outputFields)
+			throws EvaluationException {
+		return EvaluatorUtil.evaluate(this, parameters, outputFields);
+	}
+
+	public IPMMLResult evaluate(EvaluationContext parent) throws EvaluationException {
+		ModelManagerEvaluationContext context =
+				new ModelManagerEvaluationContext(this, getOrCreateEvaluationPlan(), parent);
+
+		return EvaluatorUtil.evaluate(this, context);
+	}
+
+	public void evaluateBatch(ColumnarInput input, ColumnarOutput output)
+			throws EvaluationException {
+		EvaluatorUtil.evaluateBatch(this, input, output);
+	}
+
+	public boolean evaluate(ReusableEvaluationContext context, ResultSink sink)
+			throws EvaluationException {
+		return EvaluatorUtil.evaluate(this, context, sink);
+	}
+
+	public IPMMLResult evaluateModel(ModelManagerEvaluationContext context)
+			throws EvaluationException {
 		NeuralNetwork neuralNetwork;
 		try {
 			neuralNetwork = getModel();
@@ -70,8 +107,6 @@ public class NeuralNetworkEvaluator extends NeuralNetworkManager implements Eval
 
 		Map<FieldName, ?> predictions;
 
-		ModelManagerEvaluationContext context = new ModelManagerEvaluationContext(this, parameters);
-
 		MiningFunctionType miningFunction = neuralNetwork.getFunctionName();
 		switch (miningFunction) {
 		case REGRESSION:
@@ -102,9 +137,25 @@ public class NeuralNetworkEvaluator extends NeuralNetworkManager implements Eval
 		} catch (ModelManagerException e) {
 			throw new EvaluationException(e);
 		}
-		for (NeuralOutput neuralOutput : neuralOutputs) {
+		CompiledNormContinuous[] compiledNeuralOutputs = getOrCreateCompiledNeuralOutputs();
+		for (int i = 0; i < neuralOutputs.size(); i++) {
+			NeuralOutput neuralOutput = neuralOutputs.get(i);
+
 			String id = neuralOutput.getOutputNeuron();
 
+			CompiledNormContinuous normalization = compiledNeuralOutputs[i];
+			if (normalization != null) {
+				NormContinuous normContinuous = normalization.getNormContinuous();
+
+				FieldName field = normContinuous.getField();
+
+				Double value = normalization.denormalize(neuronOutputs.get(id));
+
+				result.put(field, value);
+
+				continue;
+			}
+
 			Expression expression = getExpression(neuralOutput.getDerivedField());
 			if (expression instanceof FieldRef) {
 				FieldRef fieldRef = (FieldRef) expression;
@@ -211,10 +262,14 @@ public class NeuralNetworkEvaluator extends NeuralNetworkManager implements Eval
 		} catch (ModelManagerException e) {
 			throw new EvaluationException(e);
 		}
-		for (NeuralInput neuralInput : neuralInputs) {
-			Double value = (Double) ExpressionUtil.evaluate(neuralInput.getDerivedField(), context);
+
+		CompiledExpression[] compiledNeuralInputs = getOrCreateCompiledNeuralInputs();
+		for (int i = 0; i < compiledNeuralInputs.length; i++) {
+			NeuralInput neuralInput = neuralInputs.get(i);
+
+			Double value = (Double) compiledNeuralInputs[i].evaluate(context);
 			if (value == null) {
-				throw new EvaluationException(TPMMLCause.MISSING_PARAMETER, 
+				throw new StacklessEvaluationException(TPMMLCause.MISSING_PARAMETER,
 						neuralInput.getDerivedField().getName());
 			}
 
@@ -338,4 +393,110 @@ public class NeuralNetworkEvaluator extends NeuralNetworkManager implements Eval
 					activationFunction.name());
 		}
 	}
+
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry, String name) {
+		ensureNotFrozen();
+
+		this.evaluationListener = EvaluatorUtil.getListener(metricsRegistry, name);
+	}
+
+	public EvaluationListener getEvaluationListener() {
+		return this.evaluationListener;
+	}
+
+	@Override
+	public void freeze() throws ModelManagerException {
+		getOrCreateEvaluationPlan();
+		getOrCreateCompiledNeuralInputs();
+		getOrCreateCompiledNeuralOutputs();
+
+		super.freeze();
+	}
+
+	@Override
+	public void invalidateIndexes() {
+		super.invalidateIndexes();
+
+		this.evaluationPlan = null;
+		this.compiledNeuralInputs = null;
+		this.compiledNeuralOutputs = null;
+	}
+
+	public EvaluationPlan getOrCreateEvaluationPlan() throws EvaluationException {
+
+		if (this.evaluationPlan == null) {
+			this.evaluationPlan = EvaluationPlan.compile(this);
+		}
+
+		return this.evaluationPlan;
+	}
+
+	/**
+	 * @return The compiled derived fields of {@link NeuralInput NeuralInputs}, in document order.
+	 */
+	private CompiledExpression[] getOrCreateCompiledNeuralInputs() throws EvaluationException {
+
+		if (this.compiledNeuralInputs == null) {
+			EvaluationPlan plan = getOrCreateEvaluationPlan();
+
+			List<NeuralInput> neuralInputs;
+			try {
+				neuralInputs = getNeuralInputs();
+			} catch (ModelManagerException e) {
+				throw new EvaluationException(e);
+			}
+
+			CompiledExpression[] compiledNeuralInputs =
+					new CompiledExpression[neuralInputs.size()];
+			for (int i = 0; i < compiledNeuralInputs.length; i++) {
+				NeuralInput neuralInput = neuralInputs.get(i);
+
+				compiledNeuralInputs[i] =
+						ExpressionCompiler.compile(neuralInput.getDerivedField(), plan);
+			}
+
+			this.compiledNeuralInputs = compiledNeuralInputs;
+		}
+
+		return this.compiledNeuralInputs;
+	}
+
+	/**
+	 * @return The compiled denormalizations of {@link NeuralOutput NeuralOutputs}, in document
+	 *         order. The element is <code>null</code> if the neural output is not a
+	 *         {@link NormContinuous}, or if it could not be compiled.
+	 */
+	private CompiledNormContinuous[] getOrCreateCompiledNeuralOutputs()
+			throws EvaluationException {
+
+		if (this.compiledNeuralOutputs == null) {
+			List<NeuralOutput> neuralOutputs;
+			try {
+				neuralOutputs = getOrCreateNeuralOutputs();
+			} catch (ModelManagerException e) {
+				throw new EvaluationException(e);
+			}
+
+			CompiledNormContinuous[] compiledNeuralOutputs =
+					new CompiledNormContinuous[neuralOutputs.size()];
+			for (int i = 0; i < compiledNeuralOutputs.length; i++) {
+				NeuralOutput neuralOutput = neuralOutputs.get(i);
+
+				Expression expression = getExpression(neuralOutput.getDerivedField());
+				if (expression instanceof NormContinuous) {
+
+					try {
+						compiledNeuralOutputs[i] =
+								CompiledNormContinuous.create((NormContinuous) expression);
+					} catch (EvaluationException ee) {
+						// Ignored
+					}
+				}
+			}
+
+			this.compiledNeuralOutputs = compiledNeuralOutputs;
+		}
+
+		return this.compiledNeuralOutputs;
+	}
 }
@@ -6,20 +6,48 @@ package com.turn.tpmml.evaluator;
 import com.turn.tpmml.Node;
 import com.turn.tpmml.ScoreDistribution;
 
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The classification result of a {@link Node}.
+ *
+ * Results are computed once per node when the tree is compiled, and shared between evaluations.
+ * The map is an unmodifiable view over the score distributions of the node, so it can not be
+ * modified, neither directly nor through its views. Probabilities are also kept in an array,
+ * which is indexed by the class index table of the tree.
+ *
+ * @see FlatTree
+ */
+class NodeClassificationMap extends AbstractMap<String, Double> implements Classification {
 
+	private Node node = null;
 
-class NodeClassificationMap extends ClassificationMap {
+	private String score = null;
 
-	private static final long serialVersionUID = 1L;
+	private Map<String, Double> values = null;
 
-	private Node node = null;
+	private Map<String, Integer> classIndexes = null;
 
-	private String score = null;
+	private double[] probabilities = null;
 
-	NodeClassificationMap(Node node) {
+	/**
+	 * @param classIndexes The class index table of the tree.
+	 *
+	 * @see #createClassIndexes(Node)
+	 */
+	NodeClassificationMap(Node node, Map<String, Integer> classIndexes) {
 		setNode(node);
 
+		this.classIndexes = classIndexes;
+		this.probabilities = new double[classIndexes.size()];
+
+		Map<String, Double> values = new LinkedHashMap<String, Double>();
+
 		List<ScoreDistribution> scoreDistributions = node.getScoreDistributions();
 
 		double sum = 0;
@@ -41,20 +69,56 @@ class NodeClassificationMap extends ClassificationMap {
 				probability = (scoreDistribution.getRecordCount() / sum);
 			}
 
-			put(scoreDistribution.getValue(), probability);
+			values.put(scoreDistribution.getValue(), probability);
+
+			this.probabilities[(classIndexes.get(scoreDistribution.getValue())).intValue()] =
+					probability.doubleValue();
 		}
 
+		this.values = Collections.unmodifiableMap(values);
+
 		String score = node.getScore();
-		if (score == null) {
+		if (score == null && result != null) {
 			score = result.getValue();
 		}
 
 		setScore(score);
 	}
 
-	@Override
-	public String getResult() {
-		return getScore();
+	public String getResult() throws EvaluationException {
+		String score = getScore();
+		if (score == null) {
+			throw new EvaluationException("There are no results for this instance");
+		}
+
+		return score;
+	}
+
+	public Double getProbability(String value) {
+		Integer index = this.classIndexes.get(value);
+
+		// The specified value was not encountered during training
+		if (index == null) {
+			return 0d;
+		}
+
+		return getProbability(index.intValue());
+	}
+
+	/**
+	 * @param index The index of a class in the class index table, or <code>-1</code>.
+	 */
+	public double getProbability(int index) {
+
+		if (index < 0) {
+			return 0d;
+		}
+
+		return this.probabilities[index];
+	}
+
+	public Map<String, Integer> getClassIndexes() {
+		return this.classIndexes;
 	}
 
 	public Node getNode() {
@@ -72,4 +136,56 @@ class NodeClassificationMap extends ClassificationMap {
 	private void setScore(String score) {
 		this.score = score;
 	}
+
+	@Override
+	public int size() {
+		return this.values.size();
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return this.values.containsKey(key);
+	}
+
+	@Override
+	public Double get(Object key) {
+		return this.values.get(key);
+	}
+
+	/**
+	 * @return A read-only view. Its entries can not be modified either.
+	 */
+	@Override
+	public Set<Map.Entry<String, Double>> entrySet() {
+		return this.values.entrySet();
+	}
+
+	/**
+	 * Assigns an index to every class that the score distributions of the tree refer to, in
+	 * document order.
+	 */
+	static Map<String, Integer> createClassIndexes(Node root) {
+		Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+
+		collectClasses(root, result);
+
+		return Collections.unmodifiableMap(result);
+	}
+
+	private static void collectClasses(Node node, Map<String, Integer> classIndexes) {
+		List<ScoreDistribution> scoreDistributions = node.getScoreDistributions();
+
+		for (ScoreDistribution scoreDistribution : scoreDistributions) {
+			String value = scoreDistribution.getValue();
+
+			if (!classIndexes.containsKey(value)) {
+				classIndexes.put(value, Integer.valueOf(classIndexes.size()));
+			}
+		}
+
+		List<Node> nodes = node.getNodes();
+		for (int i = 0; i < nodes.size(); i++) {
+			collectClasses(nodes.get(i), classIndexes);
+		}
+	}
 }
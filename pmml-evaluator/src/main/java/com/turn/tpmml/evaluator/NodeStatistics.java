@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Node;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Hit counts of the {@link Node nodes} of a tree. A node is hit when its predicate evaluates to
+ * <code>true</code>.
+ *
+ * Nodes are identified by their position in the document order (ie. pre-order) of the tree, where
+ * the root node has the position <code>0</code>. Positions do not depend on node ids, which are
+ * optional. The counts can be exported with {@link #getCounts()}, and imported back with
+ * {@link #NodeStatistics(Node, long[])} when the same tree is loaded again.
+ *
+ * Counts are updated without locking, and can be read while the tree is being evaluated. Like
+ * {@link StripedCounter}, the counts are split into stripes, and a thread always updates the same
+ * stripe, so that threads that evaluate the same tree do not contend for the same cache lines.
+ * Every stripe holds a count for every node, so large trees should use few stripes.
+ *
+ * @see TreeModelEvaluator#setNodeStatistics(NodeStatistics)
+ * @see TreeModelEvaluator2#setNodeStatistics(NodeStatistics)
+ */
+public class NodeStatistics {
+
+	private AtomicLongArray cells = null;
+
+	private int size = 0;
+
+	private int stride = 0;
+
+	private int mask = 0;
+
+	public NodeStatistics(Node root) {
+		this(root, StripedCounter.getDefaultStripes());
+	}
+
+	/**
+	 * @param stripes The number of stripes, which is rounded up to a power of two.
+	 */
+	public NodeStatistics(Node root, int stripes) {
+		this.size = getSize(root);
+		this.stride = this.size + StripedCounter.PADDING;
+		this.mask = StripedCounter.toPowerOfTwo(stripes) - 1;
+		this.cells = new AtomicLongArray((this.mask + 1) * this.stride);
+	}
+
+	/**
+	 * @param counts Counts that have been exported from an earlier instance.
+	 *
+	 * @throws IllegalArgumentException If the number of counts does not match the number of nodes.
+	 */
+	public NodeStatistics(Node root, long[] counts) {
+		this(root);
+
+		if (counts.length != this.size) {
+			throw new IllegalArgumentException("Expected " + this.size + " counts, got " +
+					counts.length + " counts");
+		}
+
+		// Imported counts are kept in the first stripe
+		for (int i = 0; i < counts.length; i++) {
+			this.cells.set(i, counts[i]);
+		}
+	}
+
+	/**
+	 * @return The number of nodes.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @param index The position of the node.
+	 */
+	public long getCount(int index) {
+		long result = 0L;
+
+		for (int i = index; i < this.cells.length(); i += this.stride) {
+			result += this.cells.get(i);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return A snapshot of all counts, in the document order of nodes.
+	 */
+	public long[] getCounts() {
+		long[] result = new long[this.size];
+
+		for (int i = 0; i < result.length; i++) {
+			result[i] = getCount(i);
+		}
+
+		return result;
+	}
+
+	void increment(int index) {
+		this.cells.getAndIncrement(StripedCounter.getStripe(this.mask) * this.stride + index);
+	}
+
+	static int getSize(Node node) {
+		int result = 1;
+
+		List<Node> nodes = node.getNodes();
+		for (int i = 0; i < nodes.size(); i++) {
+			result += getSize(nodes.get(i));
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,502 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.DerivedField;
+import com.turn.tpmml.Expression;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.Output;
+import com.turn.tpmml.OutputField;
+import com.turn.tpmml.ResultFeatureType;
+import com.turn.tpmml.manager.ModelManager;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.PMMLResult;
+import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compiled form of the {@link Output} element of a model.
+ *
+ * Every {@link OutputField} is compiled once to a step, which computes the value of the field and
+ * writes it to the slot of the field. Targets are resolved, expressions are compiled and result
+ * features are dispatched at compile time. Steps are executed in document order, so that the
+ * value of an output field is available to the expressions of the output fields that follow it.
+ *
+ * The slots of the output fields belong to the context of the model, which is created for a
+ * single evaluation. They act as an overlay on the parameters, which are not modified.
+ *
+ * The output fields that every step depends on are found at compile time, by following the field
+ * references of its expression through the derived fields of the LocalTransformations and the
+ * TransformationDictionary. A plan can therefore be narrowed down to the output fields that the
+ * caller is interested in.
+ *
+ * @see OutputUtil#evaluate(PMMLResult, ModelManagerEvaluationContext)
+ */
+class OutputPlan {
+
+	private Step[] steps = null;
+
+	/**
+	 * The plans that have been selected from this plan, by the names of output fields.
+	 */
+	private ConcurrentMap<Set<FieldName>, OutputPlan> selections =
+			new ConcurrentHashMap<Set<FieldName>, OutputPlan>();
+
+	private OutputPlan(Step[] steps) {
+		this.steps = steps;
+	}
+
+	/**
+	 * @return <code>true</code> if the model does not have any output fields.
+	 */
+	public boolean isEmpty() {
+		return this.steps.length == 0;
+	}
+
+	/**
+	 * Narrows down this plan to the specified output fields and the output fields that they depend
+	 * on. Names that do not belong to output fields are ignored.
+	 *
+	 * The selected plans are cached by the names of output fields, up to a fixed number of
+	 * different selections. Selections beyond that are narrowed down on every call.
+	 *
+	 * @param names The names of output fields, or <code>null</code> to keep all output fields.
+	 */
+	public OutputPlan select(Set<FieldName> names) {
+
+		if (names == null) {
+			return this;
+		}
+
+		OutputPlan result = this.selections.get(names);
+		if (result == null) {
+			result = createSelection(names);
+
+			if (this.selections.size() < OutputPlan.MAX_SELECTIONS) {
+				// The names are copied, because the caller may modify them later
+				this.selections.putIfAbsent(new HashSet<FieldName>(names), result);
+			}
+		}
+
+		return result;
+	}
+
+	private OutputPlan createSelection(Set<FieldName> names) {
+		boolean[] selected = new boolean[this.steps.length];
+
+		int count = 0;
+
+		// Dependencies always precede the step that depends on them
+		for (int i = this.steps.length - 1; i > -1; i--) {
+			Step step = this.steps[i];
+
+			if (!selected[i] && !names.contains(step.name)) {
+				continue;
+			}
+
+			selected[i] = true;
+
+			count++;
+
+			int[] dependencies = step.dependencies;
+			if (dependencies == null) {
+				Arrays.fill(selected, 0, i, true);
+
+				continue;
+			}
+
+			for (int dependency : dependencies) {
+				selected[dependency] = true;
+			}
+		}
+
+		if (count == this.steps.length) {
+			return this;
+		}
+
+		Step[] steps = new Step[count];
+		for (int i = 0, j = 0; i < this.steps.length; i++) {
+
+			if (selected[i]) {
+				steps[j++] = this.steps[i];
+			}
+		}
+
+		return new OutputPlan(steps);
+	}
+
+	/**
+	 * Adds the values of the output fields to the predictions.
+	 *
+	 * The memoized values of local derived fields are forgotten at most once between steps, and
+	 * only when a step that follows may depend on the output fields that have been written since.
+	 *
+	 * @param context A context that is backed by the plan that this output plan was compiled
+	 *            with.
+	 */
+	public void evaluate(PMMLResult predictions, EvaluationContext context)
+			throws EvaluationException {
+		boolean stale = false;
+
+		for (Step step : this.steps) {
+
+			if (stale && step.hasDependencies()) {
+				context.clearLocalDerivedValues();
+
+				stale = false;
+			}
+
+			Object value = step.evaluate(predictions, context);
+
+			DataType dataType = step.dataType;
+			if (dataType != null) {
+				value = ParameterUtil.cast(dataType, value);
+			}
+
+			predictions.put(step.name, value);
+
+			context.putValue(step.slot, value);
+
+			stale |= step.dependent;
+		}
+	}
+
+	static OutputPlan compile(ModelManager<?> modelManager, EvaluationPlan plan)
+			throws EvaluationException {
+		List<OutputField> outputFields;
+		try {
+			outputFields = EvaluationPlan.getOutputFields(modelManager.getModel());
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		Step[] steps = new Step[outputFields.size()];
+		for (int i = 0; i < steps.length; i++) {
+			OutputField outputField = outputFields.get(i);
+
+			Step step = compile(modelManager, plan, outputField);
+			step.name = outputField.getName();
+			step.slot = plan.getOutputOffset() + i;
+			step.dataType = outputField.getDataType();
+
+			if (step instanceof TransformedValueStep) {
+				step.dependencies = collectDependencies(plan, outputField.getExpression(), i);
+			}
+
+			steps[i] = step;
+		}
+
+		for (int i = 0; i < steps.length; i++) {
+			int[] dependencies = steps[i].dependencies;
+
+			if (dependencies == null) {
+
+				for (int j = 0; j < i; j++) {
+					steps[j].dependent = true;
+				}
+
+				continue;
+			}
+
+			for (int dependency : dependencies) {
+				steps[dependency].dependent = true;
+			}
+		}
+
+		return new OutputPlan(steps);
+	}
+
+	private static Step compile(ModelManager<?> modelManager, EvaluationPlan plan,
+			OutputField outputField) {
+		ResultFeatureType resultFeature = outputField.getFeature();
+
+		// The default value of the attribute "feature"
+		if (resultFeature == null) {
+			resultFeature = ResultFeatureType.PREDICTED_VALUE;
+		}
+
+		switch (resultFeature) {
+		case PREDICTED_VALUE:
+			return new PredictedValueStep(new Target(modelManager, outputField));
+		case TRANSFORMED_VALUE:
+			Expression expression = outputField.getExpression();
+			if (expression == null) {
+				return new FailingStep(TPMMLCause.GENERAL, "There is no expression");
+			}
+
+			return new TransformedValueStep(ExpressionCompiler.compile(expression, plan));
+		case PROBABILITY:
+			return new ProbabilityStep(new Target(modelManager, outputField),
+					outputField.getValue(), plan.getClassIndexes());
+		default:
+			return new FailingStep(TPMMLCause.UNSUPPORTED_OPERATION, resultFeature.name());
+		}
+	}
+
+	/**
+	 * Collects the output fields that an expression refers to, either directly or through derived
+	 * fields.
+	 *
+	 * @param index The index of the output field that owns the expression. Only the output fields
+	 *            before it have a value when the expression is evaluated.
+	 *
+	 * @return The indexes of the output fields, or <code>null</code> if the expression may refer to
+	 *         any output field.
+	 */
+	private static int[] collectDependencies(EvaluationPlan plan, Expression expression,
+			int index) {
+		int outputOffset = plan.getOutputOffset();
+
+		BitSet visited = new BitSet(plan.size());
+		BitSet dependencies = new BitSet(index);
+
+		List<Expression> pending = new ArrayList<Expression>();
+		pending.add(expression);
+
+		while (!pending.isEmpty()) {
+			Set<FieldName> names = new HashSet<FieldName>();
+
+			if (!ExpressionUtil.collectFields(pending.remove(pending.size() - 1), names)) {
+				return null;
+			}
+
+			for (FieldName name : names) {
+				int slot = plan.getSlot(name);
+
+				// Fields that are not known to the plan belong to the enclosing model
+				if (slot < 0 || visited.get(slot)) {
+					continue;
+				}
+
+				visited.set(slot);
+
+				if (plan.isOutputField(slot)) {
+
+					if (slot - outputOffset < index) {
+						dependencies.set(slot - outputOffset);
+					}
+
+					continue;
+				}
+
+				DerivedField derivedField = plan.getDerivedField(slot);
+				if (derivedField != null) {
+					pending.add(derivedField.getExpression());
+				}
+			}
+		}
+
+		int[] result = new int[dependencies.cardinality()];
+		for (int i = 0, dependency = dependencies.nextSetBit(0); dependency > -1; i++) {
+			result[i] = dependency;
+
+			dependency = dependencies.nextSetBit(dependency + 1);
+		}
+
+		return result;
+	}
+
+	private static final int MAX_SELECTIONS = 64;
+
+	private abstract static class Step {
+
+		private FieldName name = null;
+
+		private int slot = -1;
+
+		private DataType dataType = null;
+
+		/**
+		 * The indexes of the output fields that this step depends on, or <code>null</code> if it
+		 * may depend on any output field that precedes it.
+		 */
+		private int[] dependencies = new int[0];
+
+		/**
+		 * <code>true</code> if a step that follows may depend on this step.
+		 */
+		private boolean dependent = false;
+
+		boolean hasDependencies() {
+			return (this.dependencies == null || this.dependencies.length > 0);
+		}
+
+		abstract Object evaluate(PMMLResult predictions, EvaluationContext context)
+				throws EvaluationException;
+	}
+
+	private static class PredictedValueStep extends Step {
+
+		private Target target = null;
+
+		private PredictedValueStep(Target target) {
+			this.target = target;
+		}
+
+		@Override
+		Object evaluate(PMMLResult predictions, EvaluationContext context)
+				throws EvaluationException {
+			FieldName name = this.target.getName();
+
+			if (!predictions.containsKey(name)) {
+				throw new EvaluationException("There is no target");
+			}
+
+			// Prediction results may be either simple or complex values
+			try {
+				return EvaluatorUtil.decode(predictions.getValue(name));
+			} catch (ModelManagerException e) {
+				throw new EvaluationException(e);
+			}
+		}
+	}
+
+	private static class TransformedValueStep extends Step {
+
+		private CompiledExpression expression = null;
+
+		private TransformedValueStep(CompiledExpression expression) {
+			this.expression = expression;
+		}
+
+		@Override
+		Object evaluate(PMMLResult predictions, EvaluationContext context)
+				throws EvaluationException {
+			return this.expression.evaluate(context);
+		}
+	}
+
+	private static class ProbabilityStep extends Step {
+
+		private Target target = null;
+
+		private String value = null;
+
+		/**
+		 * The class index table of the tree, or <code>null</code>.
+		 *
+		 * @see EvaluationPlan#getClassIndexes()
+		 */
+		private Map<String, Integer> classIndexes = null;
+
+		/**
+		 * The index of the value in the class index table, or <code>-1</code>.
+		 */
+		private int index = -1;
+
+		private ProbabilityStep(Target target, String value, Map<String, Integer> classIndexes) {
+			this.target = target;
+			this.value = value;
+			this.classIndexes = classIndexes;
+
+			if (classIndexes != null) {
+				Integer index = classIndexes.get(value);
+
+				this.index = (index != null ? index.intValue() : -1);
+			}
+		}
+
+		@Override
+		Object evaluate(PMMLResult predictions, EvaluationContext context)
+				throws EvaluationException {
+			FieldName name = this.target.getName();
+
+			if (!predictions.containsKey(name)) {
+				throw new EvaluationException("There is no expression");
+			}
+
+			Object result;
+			try {
+				result = predictions.getValue(name);
+			} catch (ModelManagerException e) {
+				throw new EvaluationException(e);
+			}
+
+			if (result instanceof NodeClassificationMap) {
+				NodeClassificationMap classification = (NodeClassificationMap) result;
+
+				if (classification.getClassIndexes() == this.classIndexes) {
+					return classification.getProbability(this.index);
+				}
+			}
+
+			if (!(result instanceof Classification)) {
+				throw new EvaluationException("Wrong result type");
+			}
+
+			return ((Classification) result).getProbability(this.value);
+		}
+	}
+
+	/**
+	 * A step whose output field is invalid. It fails when it is evaluated, the same way as the
+	 * interpreter does.
+	 */
+	private static class FailingStep extends Step {
+
+		private TPMMLCause cause = null;
+
+		private String argument = null;
+
+		private FailingStep(TPMMLCause cause, String argument) {
+			this.cause = cause;
+			this.argument = argument;
+		}
+
+		@Override
+		Object evaluate(PMMLResult predictions, EvaluationContext context)
+				throws EvaluationException {
+			throw new EvaluationException(this.cause, this.argument);
+		}
+	}
+
+	/**
+	 * The target of an output field. A target that can not be resolved at compile time is
+	 * resolved again when it is needed, so that it fails the same way as the interpreter does.
+	 */
+	private static class Target {
+
+		private ModelManager<?> modelManager = null;
+
+		private FieldName name = null;
+
+		private Target(ModelManager<?> modelManager, OutputField outputField) {
+			this.modelManager = modelManager;
+			this.name = outputField.getTargetField();
+
+			if (this.name == null) {
+
+				try {
+					this.name = modelManager.getTarget();
+				} catch (ModelManagerException e) {
+					// Ignored
+				}
+			}
+		}
+
+		private FieldName getName() throws EvaluationException {
+
+			if (this.name == null) {
+
+				try {
+					return this.modelManager.getTarget();
+				} catch (ModelManagerException e) {
+					throw new EvaluationException(e);
+				}
+			}
+
+			return this.name;
+		}
+	}
+}
@@ -29,24 +29,79 @@ public class OutputUtil {
 			res.put(e.getKey(), e.getValue());
 		}
 
-		return evaluate(res, context);
+		return evaluateOutput(res, context);
 	}
 
 	/**
 	 * Evaluates the {@link Output} element.
 	 * 
-	 * @param predictions Map of {@link Evaluator#getPredictedFields() predicted field} values.
+	 * @param predictions Map of {@link Evaluator#getPredictedFields() predicted field} values,
+	 *            which is not modified.
 	 * 
 	 * @return Map of {@link Evaluator#getPredictedFields() predicted field} values together with
-	 *         {@link Evaluator#getOutputFields() output field} values.
+	 *         {@link Evaluator#getOutputFields() output field} values. This is a new map, or the
+	 *         predictions themselves if there are no output fields to evaluate. Only the selected
+	 *         output fields are evaluated.
+	 * 
+	 * @see OutputPlan
+	 * @see ModelManagerEvaluationContext#setOutputFields(java.util.Set)
 	 * @throws EvaluationException 
 	 */
 	public static PMMLResult evaluate(PMMLResult predictions,
 							ModelManagerEvaluationContext context) throws EvaluationException {
-		PMMLResult result = new PMMLResult(predictions);
 
-		// Create a modifiable context instance
-		context = context.clone();
+		if (isEmpty(context)) {
+			return predictions;
+		}
+
+		return evaluateOutput(new PMMLResult(predictions), context);
+	}
+
+	/**
+	 * @return <code>true</code> if the model of the context does not have any output fields to
+	 *         evaluate, <code>false</code> otherwise.
+	 */
+	private static boolean isEmpty(ModelManagerEvaluationContext context)
+			throws EvaluationException {
+		EvaluationPlan plan = context.getPlan();
+
+		if (plan != null) {
+			OutputPlan outputPlan = context.getOutputPlan();
+
+			return outputPlan.isEmpty();
+		}
+
+		return false;
+	}
+
+	/**
+	 * @param result Map of {@link Evaluator#getPredictedFields() predicted field} values, to which
+	 *            the output field values are added.
+	 */
+	private static PMMLResult evaluateOutput(PMMLResult result,
+			ModelManagerEvaluationContext context) throws EvaluationException {
+		EvaluationPlan plan = context.getPlan();
+
+		if (plan != null) {
+			OutputPlan outputPlan = context.getOutputPlan();
+			if (outputPlan.isEmpty()) {
+				return result;
+			}
+
+			EvaluationListener listener = context.getEvaluationListener();
+
+			long begin = EvaluatorUtil.beginOutput(listener, context);
+
+			try {
+				outputPlan.evaluate(result, context);
+
+				EvaluatorUtil.endOutput(listener, context, begin);
+
+				return result;
+			} catch (EvaluationException ee) {
+				throw EvaluatorUtil.fail(listener, EvaluationStage.OUTPUT, ee);
+			}
+		}
 
 		ModelManager<?> modelManager = context.getModelManager();
 
@@ -58,6 +113,16 @@ public class OutputUtil {
 		}
 
 		List<OutputField> outputFields = output.getOutputFields();
+		if (outputFields.isEmpty()) {
+			return result;
+		}
+
+		// The predictions are read from a snapshot, which the output field values do not change
+		PMMLResult predictions = new PMMLResult(result);
+
+		// Create a modifiable context instance
+		context = context.clone();
+
 		for (OutputField outputField : outputFields) {
 			ResultFeatureType resultFeature = outputField.getFeature();
 
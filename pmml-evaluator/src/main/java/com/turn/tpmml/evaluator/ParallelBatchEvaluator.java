@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import jsr166y.ForkJoinPool;
+import jsr166y.RecursiveAction;
+
+/**
+ * Scores a {@link ColumnarInput} on the threads of a {@link ForkJoinPool}.
+ *
+ * The rows are split in halves until a range is no longer than the chunk size, and every range
+ * is scored with {@link CompiledEvaluator#evaluateBatch(ColumnarInput, ColumnarOutput)}. Idle
+ * workers steal the largest unscored ranges, so the load stays balanced when some rows are more
+ * expensive than others. Workers write to disjoint rows of the same output arrays, so the output
+ * is in input order. The set-up of the evaluation context is paid once per chunk.
+ *
+ * The first chunk is scored on the calling thread, so that the lazily compiled state of the
+ * evaluator (eg. its {@link EvaluationPlan}) is built before the evaluator is shared with the
+ * workers. Evaluators that are shared with other code should be
+ * {@link CompiledEvaluator#freeze() frozen} beforehand.
+ *
+ * <pre>
+ * ForkJoinPool pool = new ForkJoinPool(8);
+ * ParallelBatchEvaluator parallelEvaluator = new ParallelBatchEvaluator(evaluator, pool);
+ * parallelEvaluator.evaluateBatch(input, output);
+ * </pre>
+ */
+public class ParallelBatchEvaluator {
+
+	private CompiledEvaluator evaluator = null;
+
+	private ForkJoinPool pool = null;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	/**
+	 * @param pool The pool that runs the workers. It is owned by the caller. Its parallelism is
+	 *            the maximum number of workers per batch.
+	 */
+	public ParallelBatchEvaluator(CompiledEvaluator evaluator, ForkJoinPool pool) {
+		this.evaluator = evaluator;
+		this.pool = pool;
+	}
+
+	/**
+	 * @throws EvaluationException If the evaluation of any row fails. The remaining chunks are
+	 *             not scored.
+	 *
+	 * @see CompiledEvaluator#evaluateBatch(ColumnarInput, ColumnarOutput)
+	 */
+	public void evaluateBatch(ColumnarInput input, ColumnarOutput output)
+			throws EvaluationException {
+		CompiledEvaluator evaluator = getEvaluator();
+
+		output.prepare(evaluator, input);
+
+		int size = input.getSize();
+
+		int first = Math.min(getChunkSize(), size);
+
+		evaluator.evaluateBatch(input.slice(0, first), output.slice(0, first));
+
+		if (first == size) {
+			return;
+		}
+
+		AtomicReference<EvaluationException> exception =
+				new AtomicReference<EvaluationException>();
+
+		this.pool.invoke(new Range(input, output, first, size, exception));
+
+		if (exception.get() != null) {
+			throw exception.get();
+		}
+	}
+
+	public CompiledEvaluator getEvaluator() {
+		return this.evaluator;
+	}
+
+	public ForkJoinPool getPool() {
+		return this.pool;
+	}
+
+	public int getChunkSize() {
+		return this.chunkSize;
+	}
+
+	/**
+	 * @param chunkSize The maximum number of rows that a worker scores at a time.
+	 */
+	public void setChunkSize(int chunkSize) {
+
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+		}
+
+		this.chunkSize = chunkSize;
+	}
+
+	private class Range extends RecursiveAction {
+
+		private ColumnarInput input = null;
+
+		private ColumnarOutput output = null;
+
+		private int begin = 0;
+
+		private int end = 0;
+
+		/**
+		 * The first exception of the batch, which is shared by all ranges. Once it has been set,
+		 * the remaining ranges are skipped.
+		 */
+		private AtomicReference<EvaluationException> exception = null;
+
+		private Range(ColumnarInput input, ColumnarOutput output, int begin, int end,
+				AtomicReference<EvaluationException> exception) {
+			this.input = input;
+			this.output = output;
+			this.begin = begin;
+			this.end = end;
+			this.exception = exception;
+		}
+
+		@Override
+		protected void compute() {
+
+			if (this.exception.get() != null) {
+				return;
+			}
+
+			if (this.end - this.begin > getChunkSize()) {
+				int middle = (this.begin + this.end) >>> 1;
+
+				invokeAll(new Range(this.input, this.output, this.begin, middle, this.exception),
+						new Range(this.input, this.output, middle, this.end, this.exception));
+
+				return;
+			}
+
+			try {
+				(getEvaluator()).evaluateBatch(this.input.slice(this.begin, this.end),
+						this.output.slice(this.begin, this.end));
+			} catch (EvaluationException ee) {
+				this.exception.compareAndSet(null, ee);
+			}
+		}
+
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static final int DEFAULT_CHUNK_SIZE = 1024;
+}
@@ -22,6 +22,9 @@ public class ParameterUtil {
 	private ParameterUtil() {
 	}
 
+	/**
+	 * @see FieldPreparer
+	 */
 	@SuppressWarnings("unused")
 	public static Object prepare(DataField dataField, MiningField miningField, Object value)
 			throws EvaluationException {
@@ -91,7 +94,7 @@ public class ParameterUtil {
 					miningField.getInvalidValueTreatment();
 			switch (invalidValueTreatmentMethod) {
 			case RETURN_INVALID:
-				throw new EvaluationException("Invalid evaluation");
+				throw createInvalidValueException();
 			case AS_IS:
 				break invalidValueTreatment;
 			case AS_MISSING:
@@ -299,7 +302,7 @@ public class ParameterUtil {
 	}
 
 	@SuppressWarnings({ "cast", "rawtypes", "unchecked" })
-	private static int compare(DataType dataType, Object left, Object right)
+	static int compare(DataType dataType, Object left, Object right)
 			throws EvaluationException {
 		return ((Comparable) cast(dataType, left)).compareTo((Comparable) cast(dataType, right));
 	}
@@ -385,7 +388,7 @@ public class ParameterUtil {
 			break;
 		}
 
-		throw new EvaluationException("Can't cast [" + value + "] to " + dataType.name());
+		throw new StacklessEvaluationException("Can't cast [" + value + "] to " + dataType.name());
 	}
 
 	/**
@@ -432,7 +435,7 @@ public class ParameterUtil {
 			return Integer.valueOf(number.intValue());
 		}
 
-		throw new EvaluationException("Can't cast [" + value + "] to an integer");
+		throw new StacklessEvaluationException("Can't cast [" + value + "] to an integer");
 	}
 
 	/**
@@ -459,7 +462,7 @@ public class ParameterUtil {
 			return Float.valueOf(number.floatValue());
 		}
 
-		throw new EvaluationException("Can't cast [" + value + "] to a float");
+		throw new StacklessEvaluationException("Can't cast [" + value + "] to a float");
 	}
 
 	/**
@@ -482,7 +485,7 @@ public class ParameterUtil {
 			return Double.valueOf(number.doubleValue());
 		}
 
-		throw new EvaluationException("Can't cast [" + value + "] to a double");
+		throw new StacklessEvaluationException("Can't cast [" + value + "] to a double");
 	}
 
 	public static DataType getConstantDataType(String string) {
@@ -504,4 +507,13 @@ public class ParameterUtil {
 
 	private static final DataType[] PRECEDENCE_SEQUENCE = { DataType.STRING, DataType.DOUBLE,
 			DataType.FLOAT, DataType.INTEGER };
+
+	/**
+	 * @return The outcome of the invalid value treatment method "returnInvalid".
+	 *
+	 * @see FieldPreparer
+	 */
+	static EvaluationException createInvalidValueException() {
+		return new StacklessEvaluationException("Invalid evaluation");
+	}
 }
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Array;
+import com.turn.tpmml.CompoundPredicate;
+import com.turn.tpmml.False;
+import com.turn.tpmml.Predicate;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.SimpleSetPredicate;
+import com.turn.tpmml.True;
+import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
+
+import java.util.List;
+
+/**
+ * Compiles {@link Predicate predicates} to {@link CompiledPredicate compiled predicates}.
+ *
+ * A compiled predicate evaluates to the same value as the source predicate does in
+ * {@link PredicateUtil}. The difference is that the String constants of a {@link SimplePredicate}
+ * are parsed once, at compile time, to every data type that a field value could have.
+ *
+ * Predicates that are not supported are compiled successfully, and fail when they are evaluated
+ * the same way as in {@link PredicateUtil}.
+ */
+public class PredicateCompiler {
+
+	private PredicateCompiler() {
+	}
+
+	/**
+	 * @param plan The plan to bind field references to. Could be <code>null</code>.
+	 */
+	public static CompiledPredicate compile(Predicate predicate, EvaluationPlan plan) {
+
+		if (predicate instanceof SimplePredicate) {
+			return compileSimplePredicate((SimplePredicate) predicate, plan);
+		} else
+
+		if (predicate instanceof CompoundPredicate) {
+			return compileCompoundPredicate((CompoundPredicate) predicate, plan);
+		} else
+
+		if (predicate instanceof SimpleSetPredicate) {
+			return compileSimpleSetPredicate((SimpleSetPredicate) predicate, plan);
+		} else
+
+		if (predicate instanceof True) {
+			return new ConstantPredicate(predicate, Boolean.TRUE);
+		} else
+
+		if (predicate instanceof False) {
+			return new ConstantPredicate(predicate, Boolean.FALSE);
+		}
+
+		return new UnsupportedPredicate(predicate);
+	}
+
+	public static CompiledPredicate compileSimplePredicate(SimplePredicate simplePredicate,
+			EvaluationPlan plan) {
+		return new CompiledSimplePredicate(simplePredicate, plan);
+	}
+
+	public static CompiledPredicate compileCompoundPredicate(CompoundPredicate compoundPredicate,
+			EvaluationPlan plan) {
+		return new CompiledCompoundPredicate(compoundPredicate, plan);
+	}
+
+	public static CompiledPredicate compileSimpleSetPredicate(
+			SimpleSetPredicate simpleSetPredicate, EvaluationPlan plan) {
+		return new CompiledSimpleSetPredicate(simpleSetPredicate, plan);
+	}
+
+	private static class ConstantPredicate extends CompiledPredicate {
+
+		private Boolean value = null;
+
+		private ConstantPredicate(Predicate predicate, Boolean value) {
+			super(predicate);
+
+			this.value = value;
+		}
+
+		@Override
+		public Boolean evaluate(EvaluationContext context) {
+			return this.value;
+		}
+	}
+
+	private static class UnsupportedPredicate extends CompiledPredicate {
+
+		private UnsupportedPredicate(Predicate predicate) {
+			super(predicate);
+		}
+
+		@Override
+		public Boolean evaluate(EvaluationContext context) throws EvaluationException {
+			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+					(getPredicate()).toString());
+		}
+	}
+
+	private static class CompiledSimplePredicate extends CompiledPredicate {
+
+		private CompiledField field = null;
+
+		private SimplePredicate.Operator operator = null;
+
+		private TypedValue value = null;
+
+		private CompiledSimplePredicate(SimplePredicate simplePredicate, EvaluationPlan plan) {
+			super(simplePredicate);
+
+			this.field = new CompiledField(simplePredicate.getField(), plan);
+			this.operator = simplePredicate.getOperator();
+			this.value = new TypedValue(simplePredicate.getValue());
+		}
+
+		@Override
+		public Boolean evaluate(EvaluationContext context) throws EvaluationException {
+			Object value = this.field.evaluate(context);
+
+			switch (this.operator) {
+			case IS_MISSING:
+				return Boolean.valueOf(value == null);
+			case IS_NOT_MISSING:
+				return Boolean.valueOf(value != null);
+			default:
+				break;
+			}
+
+			if (value == null) {
+				return null;
+			}
+
+			int order = this.value.compareTo(value);
+
+			switch (this.operator) {
+			case EQUAL:
+				return Boolean.valueOf(order == 0);
+			case NOT_EQUAL:
+				return Boolean.valueOf(order != 0);
+			case LESS_THAN:
+				return Boolean.valueOf(order < 0);
+			case LESS_OR_EQUAL:
+				return Boolean.valueOf(order <= 0);
+			case GREATER_THAN:
+				return Boolean.valueOf(order > 0);
+			case GREATER_OR_EQUAL:
+				return Boolean.valueOf(order >= 0);
+			default:
+				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+						this.operator.name());
+			}
+		}
+	}
+
+	private static class CompiledCompoundPredicate extends CompiledPredicate {
+
+		private CompoundPredicate.BooleanOperator operator = null;
+
+		private CompiledPredicate[] predicates = null;
+
+		private CompiledCompoundPredicate(CompoundPredicate compoundPredicate,
+				EvaluationPlan plan) {
+			super(compoundPredicate);
+
+			this.operator = compoundPredicate.getBooleanOperator();
+
+			List<Predicate> predicates = compoundPredicate.getContent();
+
+			this.predicates = new CompiledPredicate[predicates.size()];
+			for (int i = 0; i < this.predicates.length; i++) {
+				this.predicates[i] = compile(predicates.get(i), plan);
+			}
+		}
+
+		@Override
+		public Boolean evaluate(EvaluationContext context) throws EvaluationException {
+			CompiledPredicate[] predicates = this.predicates;
+
+			if (predicates.length == 0) {
+				throw new EvaluationException("Compound predicate has no predicates");
+			}
+
+			Boolean result = predicates[0].evaluate(context);
+
+			switch (this.operator) {
+			case AND:
+			case OR:
+			case XOR:
+				break;
+			case SURROGATE:
+				if (result != null) {
+					return result;
+				}
+				break;
+			}
+
+			for (int i = 1; i < predicates.length; i++) {
+				Boolean value = predicates[i].evaluate(context);
+
+				switch (this.operator) {
+				case AND:
+					result = PredicateUtil.binaryAnd(result, value);
+					break;
+				case OR:
+					result = PredicateUtil.binaryOr(result, value);
+					break;
+				case XOR:
+					result = PredicateUtil.binaryXor(result, value);
+					break;
+				case SURROGATE:
+					if (value != null) {
+						return value;
+					}
+					break;
+				}
+			}
+
+			return result;
+		}
+	}
+
+	private static class CompiledSimpleSetPredicate extends CompiledPredicate {
+
+		private CompiledField field = null;
+
+		private SimpleSetPredicate.BooleanOperator operator = null;
+
+		private Array array = null;
+
+		private ArraySet arraySet = null;
+
+		private CompiledSimpleSetPredicate(SimpleSetPredicate simpleSetPredicate,
+				EvaluationPlan plan) {
+			super(simpleSetPredicate);
+
+			this.field = new CompiledField(simpleSetPredicate.getField(), plan);
+			this.operator = simpleSetPredicate.getBooleanOperator();
+			this.array = simpleSetPredicate.getArray();
+
+			try {
+				this.arraySet = ArraySet.create(this.array);
+			} catch (EvaluationException ee) {
+				// Ignored. The interpreter raises the same error at evaluation time
+			}
+		}
+
+		@Override
+		public Boolean evaluate(EvaluationContext context) throws EvaluationException {
+			Object value = this.field.evaluate(context);
+			if (value == null) {
+				throw new StacklessEvaluationException(TPMMLCause.MISSING_PARAMETER,
+						this.field.getName());
+			}
+
+			if (this.arraySet == null) {
+				return evaluateArray(value);
+			}
+
+			boolean result = this.arraySet.contains(value);
+
+			switch (this.operator) {
+			case IS_IN:
+				return Boolean.valueOf(result);
+			case IS_NOT_IN:
+				return Boolean.valueOf(!result);
+			default:
+				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+						this.operator.name());
+			}
+		}
+
+		private Boolean evaluateArray(Object value) throws EvaluationException {
+
+			switch (this.operator) {
+			case IS_IN:
+				return ArrayUtil.isIn(this.array, value);
+			case IS_NOT_IN:
+				return ArrayUtil.isNotIn(this.array, value);
+			default:
+				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+						this.operator.name());
+			}
+		}
+	}
+}
@@ -131,7 +131,7 @@ public class PredicateUtil {
 			EvaluationContext context) throws EvaluationException {
 		Object value = ExpressionUtil.evaluate(simpleSetPredicate.getField(), context);
 		if (value == null) {
-			throw new EvaluationException(TPMMLCause.MISSING_PARAMETER,
+			throw new StacklessEvaluationException(TPMMLCause.MISSING_PARAMETER,
 					simpleSetPredicate.getField());
 		}
 
@@ -0,0 +1,598 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataField;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.False;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.LocalTransformations;
+import com.turn.tpmml.MiningFunctionType;
+import com.turn.tpmml.MiningModel;
+import com.turn.tpmml.Model;
+import com.turn.tpmml.MultipleModelMethodType;
+import com.turn.tpmml.Node;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.Output;
+import com.turn.tpmml.PMML;
+import com.turn.tpmml.Predicate;
+import com.turn.tpmml.Segment;
+import com.turn.tpmml.Segmentation;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.TreeModel;
+import com.turn.tpmml.True;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled additive ensemble of trees, which is scored feature by feature instead of tree by
+ * tree.
+ *
+ * The nodes of every tree are laid out in post-order, one bit per node, so that the child nodes
+ * of a node come before the node itself. Every node predicate becomes a condition on a feature,
+ * together with a mask that clears the bits of the subtree of the node. The conditions of a
+ * feature are sorted by threshold, so that scanning them stops at the first condition that is
+ * true. When all features have been scanned, the lowest set bit of a tree is the node that a
+ * traversal of the tree would have ended up in.
+ *
+ * A record is not scored if the value of some feature is not a {@link Double}, or if the
+ * traversal of some tree would not have ended up in a leaf node. The results of such records
+ * depend on the missing value strategy and the no true child strategy of the tree, and are left to
+ * the evaluators of the segments.
+ *
+ * The scores of the trees are not aggregated here, because the two implementations of mining
+ * models aggregate them differently.
+ *
+ * @see TreeEnsembleEvaluator
+ * @see TreeEnsembleEvaluator2
+ */
+class QuickScorer {
+
+	/**
+	 * The position of the first word of every tree in the bit vector, followed by the size of the
+	 * bit vector.
+	 */
+	private int[] wordOffsets = null;
+
+	/**
+	 * The position of the first node of every tree in the node arrays.
+	 */
+	private int[] nodeOffsets = null;
+
+	/**
+	 * The bit vector before any of the conditions has been applied.
+	 */
+	private long[] vector = null;
+
+	private boolean[] leaves = null;
+
+	private double[] values = null;
+
+	private long[] masks = null;
+
+	private int maskSize = 0;
+
+	private Feature[] features = null;
+
+	private QuickScorer(MiningModel miningModel, EvaluationPlan plan) {
+		Segmentation segmentation = miningModel.getSegmentation();
+
+		List<Segment> segments = segmentation.getSegments();
+
+		this.wordOffsets = new int[segments.size() + 1];
+		this.nodeOffsets = new int[segments.size() + 1];
+
+		for (int i = 0; i < segments.size(); i++) {
+			Segment segment = segments.get(i);
+
+			int size = NodeStatistics.getSize(getRoot(segment));
+
+			this.wordOffsets[i + 1] = this.wordOffsets[i] + ((size + 63) >>> 6);
+			this.nodeOffsets[i + 1] = this.nodeOffsets[i] + size;
+		}
+
+		this.vector = new long[this.wordOffsets[segments.size()]];
+		this.leaves = new boolean[this.nodeOffsets[segments.size()]];
+		this.values = new double[this.nodeOffsets[segments.size()]];
+
+		Map<FieldName, List<Condition>> conditions =
+				new LinkedHashMap<FieldName, List<Condition>>();
+
+		this.masks = new long[1024];
+
+		for (int i = 0; i < segments.size(); i++) {
+			int size = this.nodeOffsets[i + 1] - this.nodeOffsets[i];
+
+			for (int position = 0; position < size; position++) {
+				this.vector[this.wordOffsets[i] + (position >>> 6)] |= (1L << position);
+			}
+
+			int end = layout(getRoot(segments.get(i)), i, 0, conditions);
+			if (end != size) {
+				throw new IllegalStateException();
+			}
+		}
+
+		this.masks = Arrays.copyOf(this.masks, this.maskSize);
+
+		this.features = new Feature[conditions.size()];
+
+		int index = 0;
+
+		for (Map.Entry<FieldName, List<Condition>> entry : conditions.entrySet()) {
+			this.features[index] = new Feature(new CompiledField(entry.getKey(), plan),
+					entry.getValue());
+
+			index++;
+		}
+	}
+
+	/**
+	 * @return The post-order position after the subtree of the node.
+	 */
+	private int layout(Node node, int tree, int position,
+			Map<FieldName, List<Condition>> conditions) {
+		int begin = position;
+
+		List<Node> children = node.getNodes();
+		for (int i = 0; i < children.size(); i++) {
+			position = layout(children.get(i), tree, position, conditions);
+		}
+
+		int nodeOffset = this.nodeOffsets[tree] + position;
+
+		if (children.isEmpty()) {
+			this.leaves[nodeOffset] = true;
+			this.values[nodeOffset] = Double.parseDouble(node.getScore());
+		}
+
+		int wordOffset = this.wordOffsets[tree] + (begin >>> 6);
+
+		Predicate predicate = node.getPredicate();
+
+		if (predicate instanceof False) {
+			long[] mask = createMask(begin, position);
+
+			for (int i = 0; i < mask.length; i++) {
+				this.vector[wordOffset + i] &= mask[i];
+			}
+		} else
+
+		if (predicate instanceof SimplePredicate) {
+			SimplePredicate simplePredicate = (SimplePredicate) predicate;
+
+			List<Condition> featureConditions = conditions.get(simplePredicate.getField());
+			if (featureConditions == null) {
+				featureConditions = new ArrayList<Condition>();
+
+				conditions.put(simplePredicate.getField(), featureConditions);
+			}
+
+			long[] mask = createMask(begin, position);
+
+			featureConditions.add(new Condition(simplePredicate.getOperator(),
+					Double.parseDouble(simplePredicate.getValue()), wordOffset, addMask(mask),
+					mask.length));
+		}
+
+		return position + 1;
+	}
+
+	/**
+	 * @return The score of every tree, in the order of the segments, or <code>null</code> if the
+	 *         record must be scored by the evaluators of the segments.
+	 */
+	public double[] score(EvaluationContext context) throws EvaluationException {
+		long[] vector = this.vector.clone();
+
+		for (Feature feature : this.features) {
+			Object value = (feature.getField()).evaluate(context);
+
+			if (!(value instanceof Double)) {
+				return null;
+			}
+
+			feature.apply(((Double) value).doubleValue(), vector, this.masks);
+		}
+
+		double[] result = new double[size()];
+
+		for (int i = 0; i < result.length; i++) {
+			int position = findLowestBit(vector, this.wordOffsets[i], this.wordOffsets[i + 1]);
+			if (position < 0 || !this.leaves[this.nodeOffsets[i] + position]) {
+				return null;
+			}
+
+			result[i] = this.values[this.nodeOffsets[i] + position];
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The number of trees.
+	 */
+	public int size() {
+		return this.nodeOffsets.length - 1;
+	}
+
+	/**
+	 * @return The position of the lowest set bit of a tree, or <code>-1</code>.
+	 */
+	private static int findLowestBit(long[] vector, int begin, int end) {
+
+		for (int i = begin; i < end; i++) {
+			long word = vector[i];
+
+			if (word != 0L) {
+				return ((i - begin) << 6) + Long.numberOfTrailingZeros(word);
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return The words that clear the bits from <code>begin</code> to <code>end</code>
+	 *         (inclusive), starting from the word of the first bit.
+	 */
+	private static long[] createMask(int begin, int end) {
+		int firstWord = (begin >>> 6);
+		int lastWord = (end >>> 6);
+
+		long[] result = new long[lastWord - firstWord + 1];
+
+		for (int word = firstWord; word <= lastWord; word++) {
+			int from = Math.max(begin, word << 6) - (word << 6);
+			int to = Math.min(end, (word << 6) + 63) - (word << 6);
+
+			long bits = (to == 63 ? -1L : (1L << (to + 1)) - 1L) & (-1L << from);
+
+			result[word - firstWord] = ~bits;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The position of the mask in the mask array.
+	 */
+	private int addMask(long[] mask) {
+		int result = this.maskSize;
+
+		if (result + mask.length > this.masks.length) {
+			this.masks = Arrays.copyOf(this.masks, Math.max(2 * this.masks.length,
+					result + mask.length));
+		}
+
+		System.arraycopy(mask, 0, this.masks, result, mask.length);
+
+		this.maskSize += mask.length;
+
+		return result;
+	}
+
+	private static Node getRoot(Segment segment) {
+		TreeModel treeModel = (TreeModel) segment.getModel();
+
+		return treeModel.getNode();
+	}
+
+	/**
+	 * @return <code>true</code> if the model is an additive ensemble of trees that only split
+	 *         continuous double fields of the DataDictionary on numeric constants,
+	 *         <code>false</code> otherwise. The values of other fields are not prepared to
+	 *         {@link Double}, so every record would be evaluated segment by segment.
+	 */
+	static boolean isSupported(PMML pmml, MiningModel miningModel) {
+
+		if (miningModel.getFunctionName() != MiningFunctionType.REGRESSION ||
+				hasDerivedFields(miningModel)) {
+			return false;
+		}
+
+		Segmentation segmentation = miningModel.getSegmentation();
+		if (segmentation == null) {
+			return false;
+		}
+
+		MultipleModelMethodType multipleModelMethod = segmentation.getMultipleModelMethod();
+		switch (multipleModelMethod) {
+		case SUM:
+		case AVERAGE:
+		case WEIGHTED_AVERAGE:
+			break;
+		default:
+			return false;
+		}
+
+		List<Segment> segments = segmentation.getSegments();
+		for (Segment segment : segments) {
+
+			if (!(segment.getPredicate() instanceof True)) {
+				return false;
+			}
+
+			Model model = segment.getModel();
+			if (!(model instanceof TreeModel)) {
+				return false;
+			}
+
+			TreeModel treeModel = (TreeModel) model;
+			if (hasDerivedFields(treeModel) || hasOutputFields(treeModel) ||
+					treeModel.getNode() == null) {
+				return false;
+			}
+
+			if (!isSupported(pmml, treeModel.getNode())) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean hasDerivedFields(Model model) {
+		LocalTransformations localTransformations = model.getLocalTransformations();
+
+		return (localTransformations != null &&
+				!(localTransformations.getDerivedFields()).isEmpty());
+	}
+
+	private static boolean hasOutputFields(Model model) {
+		Output output = model.getOutput();
+
+		return (output != null && !(output.getOutputFields()).isEmpty());
+	}
+
+	private static boolean isSupported(PMML pmml, Node node) {
+		Predicate predicate = node.getPredicate();
+
+		if (predicate instanceof SimplePredicate) {
+			SimplePredicate simplePredicate = (SimplePredicate) predicate;
+
+			switch (simplePredicate.getOperator()) {
+			case EQUAL:
+			case NOT_EQUAL:
+			case LESS_THAN:
+			case LESS_OR_EQUAL:
+			case GREATER_THAN:
+			case GREATER_OR_EQUAL:
+				break;
+			default:
+				return false;
+			}
+
+			if (!isNumber(simplePredicate.getValue()) ||
+					!isContinuousDouble(pmml, simplePredicate.getField())) {
+				return false;
+			}
+		} else
+
+		if (!(predicate instanceof True) && !(predicate instanceof False)) {
+			return false;
+		}
+
+		List<Node> children = node.getNodes();
+		if (children.isEmpty()) {
+			return isNumber(node.getScore());
+		}
+
+		for (int i = 0; i < children.size(); i++) {
+
+			if (!isSupported(pmml, children.get(i))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean isContinuousDouble(PMML pmml, FieldName name) {
+		List<DataField> dataFields = (pmml.getDataDictionary()).getDataFields();
+
+		for (DataField dataField : dataFields) {
+
+			if ((dataField.getName()).equals(name)) {
+				return (dataField.getDataType() == DataType.DOUBLE &&
+						dataField.getOptype() == OpType.CONTINUOUS);
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean isNumber(String string) {
+
+		if (string == null) {
+			return false;
+		}
+
+		try {
+			Double.parseDouble(string);
+
+			return true;
+		} catch (NumberFormatException nfe) {
+			return false;
+		}
+	}
+
+	static QuickScorer compile(MiningModel miningModel, EvaluationPlan plan) {
+		return new QuickScorer(miningModel, plan);
+	}
+
+	/**
+	 * The conditions on a single feature.
+	 *
+	 * Less than and less or equal conditions are sorted by ascending threshold, and greater than
+	 * and greater or equal conditions by descending threshold. Either way, the conditions that are
+	 * false for a value precede the conditions that are true.
+	 */
+	private static class Feature {
+
+		private CompiledField field = null;
+
+		private Condition[] lowerConditions = null;
+
+		private Condition[] upperConditions = null;
+
+		private Condition[] otherConditions = null;
+
+		public Feature(CompiledField field, List<Condition> conditions) {
+			this.field = field;
+
+			List<Condition> lowerConditions = new ArrayList<Condition>();
+			List<Condition> upperConditions = new ArrayList<Condition>();
+			List<Condition> otherConditions = new ArrayList<Condition>();
+
+			for (Condition condition : conditions) {
+
+				switch (condition.getOperator()) {
+				case LESS_THAN:
+				case LESS_OR_EQUAL:
+					lowerConditions.add(condition);
+					break;
+				case GREATER_THAN:
+				case GREATER_OR_EQUAL:
+					upperConditions.add(condition);
+					break;
+				default:
+					otherConditions.add(condition);
+					break;
+				}
+			}
+
+			this.lowerConditions = lowerConditions.toArray(new Condition[lowerConditions.size()]);
+			this.upperConditions = upperConditions.toArray(new Condition[upperConditions.size()]);
+			this.otherConditions = otherConditions.toArray(new Condition[otherConditions.size()]);
+
+			// At equal thresholds, strict conditions are false for more values
+			Arrays.sort(this.lowerConditions, new Comparator<Condition>() {
+
+				public int compare(Condition left, Condition right) {
+					int order = Double.compare(left.getThreshold(), right.getThreshold());
+					if (order != 0) {
+						return order;
+					}
+
+					return Boolean.valueOf(left.isInclusive()).compareTo(right.isInclusive());
+				}
+			});
+
+			Arrays.sort(this.upperConditions, new Comparator<Condition>() {
+
+				public int compare(Condition left, Condition right) {
+					int order = Double.compare(right.getThreshold(), left.getThreshold());
+					if (order != 0) {
+						return order;
+					}
+
+					return Boolean.valueOf(left.isInclusive()).compareTo(right.isInclusive());
+				}
+			});
+		}
+
+		public void apply(double value, long[] vector, long[] masks) {
+			apply(this.lowerConditions, value, vector, masks, true);
+			apply(this.upperConditions, value, vector, masks, true);
+			apply(this.otherConditions, value, vector, masks, false);
+		}
+
+		public CompiledField getField() {
+			return this.field;
+		}
+
+		private static void apply(Condition[] conditions, double value, long[] vector,
+				long[] masks, boolean sorted) {
+
+			for (Condition condition : conditions) {
+
+				if (condition.evaluate(value)) {
+
+					if (sorted) {
+						break;
+					}
+
+					continue;
+				}
+
+				condition.apply(vector, masks);
+			}
+		}
+	}
+
+	private static class Condition {
+
+		private SimplePredicate.Operator operator = null;
+
+		private double threshold = 0d;
+
+		private int wordOffset = 0;
+
+		private int maskOffset = 0;
+
+		private int maskLength = 0;
+
+		public Condition(SimplePredicate.Operator operator, double threshold, int wordOffset,
+				int maskOffset, int maskLength) {
+			this.operator = operator;
+			this.threshold = threshold;
+			this.wordOffset = wordOffset;
+			this.maskOffset = maskOffset;
+			this.maskLength = maskLength;
+		}
+
+		/**
+		 * Compares values the same way as {@link FlatTree#evaluate(int, EvaluationContext)}.
+		 */
+		public boolean evaluate(double value) {
+			int order = Double.compare(value, this.threshold);
+
+			switch (this.operator) {
+			case EQUAL:
+				return (order == 0);
+			case NOT_EQUAL:
+				return (order != 0);
+			case LESS_THAN:
+				return (order < 0);
+			case LESS_OR_EQUAL:
+				return (order <= 0);
+			case GREATER_THAN:
+				return (order > 0);
+			case GREATER_OR_EQUAL:
+				return (order >= 0);
+			default:
+				throw new IllegalStateException();
+			}
+		}
+
+		/**
+		 * Clears the bits of the subtree of the node.
+		 */
+		public void apply(long[] vector, long[] masks) {
+
+			for (int i = 0; i < this.maskLength; i++) {
+				vector[this.wordOffset + i] &= masks[this.maskOffset + i];
+			}
+		}
+
+		public SimplePredicate.Operator getOperator() {
+			return this.operator;
+		}
+
+		public double getThreshold() {
+			return this.threshold;
+		}
+
+		public boolean isInclusive() {
+			return (this.operator == SimplePredicate.Operator.LESS_OR_EQUAL ||
+					this.operator == SimplePredicate.Operator.GREATER_OR_EQUAL);
+		}
+	}
+}
@@ -20,10 +20,12 @@ import com.turn.tpmml.manager.PMMLResult;
 import com.turn.tpmml.manager.RegressionModelManager;
 import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This class evaluates the variables on the model. It reads the pmml object to return a result. For
@@ -32,16 +34,24 @@ import java.util.Map;
  * @author tbadie
  * 
  */
-public class RegressionModelEvaluator extends RegressionModelManager implements Evaluator {
+public class RegressionModelEvaluator extends RegressionModelManager implements ModelEvaluator {
 
 	private static final long serialVersionUID = 1L;
 
+	private transient EvaluationPlan evaluationPlan = null;
+
+	private transient EvaluationListener evaluationListener = null;
+
+	private transient CompiledRegressionTable[] compiledRegressionTables = null;
+
 	public RegressionModelEvaluator(PMML pmml) {
 		super(pmml);
 	}
 
 	public RegressionModelEvaluator(PMML pmml, RegressionModel regressionModel) {
 		super(pmml, regressionModel);
+
+		this.evaluationPlan = EvaluatorUtil.compileEvaluationPlan(this);
 	}
 
 	public RegressionModelEvaluator(RegressionModelManager parent) throws ModelManagerException {
@@ -49,11 +59,7 @@ public class RegressionModelEvaluator extends RegressionModelManager implements
 	}
 
 	public Object prepare(FieldName name, Object value) throws EvaluationException {
-		try {
-			return ParameterUtil.prepare(getDataField(name), getMiningField(name), value);
-		} catch (ModelManagerException e) {
-			throw new EvaluationException(e);
-		}
+		return EvaluatorUtil.prepare(this, name, value);
 	}
 
 	/**
@@ -63,6 +69,61 @@ public class RegressionModelEvaluator extends RegressionModelManager implements
 	 */
 	@Override
 	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+		ModelManagerEvaluationContext context =
+				new ModelManagerEvaluationContext(this, getOrCreateEvaluationPlan(), parameters);
+
+		return EvaluatorUtil.evaluate(this, context);
+	}
+
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters, Set<FieldName> outputFields)
+			throws EvaluationException {
+		return EvaluatorUtil.evaluate(this, parameters, outputFields);
+	}
+
+	public IPMMLResult evaluate(EvaluationContext parent) throws EvaluationException {
+		ModelManagerEvaluationContext context =
+				new ModelManagerEvaluationContext(this, getOrCreateEvaluationPlan(), parent);
+
+		return EvaluatorUtil.evaluate(this, context);
+	}
+
+	/**
+	 * Regression models without output fields, whose predictors are all numeric and read from
+	 * <code>double[]</code> columns, are evaluated predictor by predictor over whole columns,
+	 * without boxing the input values. The batch is reported to the listener as a single
+	 * evaluation. Other models are evaluated row by row.
+	 */
+	public void evaluateBatch(ColumnarInput input, ColumnarOutput output)
+			throws EvaluationException {
+		double[][] columns = getNumericColumns(input);
+
+		if (columns == null) {
+			EvaluatorUtil.evaluateBatch(this, input, output);
+
+			return;
+		}
+
+		EvaluationListener listener = getEvaluationListener();
+
+		long begin = EvaluatorUtil.begin(listener, EvaluationStage.MODEL);
+
+		try {
+			evaluateRegression(columns, input, output);
+
+			EvaluatorUtil.end(listener, EvaluationStage.MODEL, begin);
+		} catch (EvaluationException ee) {
+			throw EvaluatorUtil.fail(listener, EvaluationStage.MODEL, ee);
+		}
+	}
+
+	/**
+	 * Regression models without output fields, or without selected output fields, are evaluated
+	 * without creating any objects.
+	 */
+	public boolean evaluate(ReusableEvaluationContext context, ResultSink sink)
+			throws EvaluationException {
+		context.checkModelManager(this);
+
 		RegressionModel regressionModel;
 		try {
 			regressionModel = getModel();
@@ -70,9 +131,38 @@ public class RegressionModelEvaluator extends RegressionModelManager implements
 			throw new EvaluationException(e);
 		}
 
-		Map<FieldName, ?> predictions;
+		OutputPlan outputPlan = context.getOutputPlan();
 
-		ModelManagerEvaluationContext context = new ModelManagerEvaluationContext(this, parameters);
+		MiningFunctionType miningFunction = regressionModel.getFunctionName();
+		if (miningFunction == MiningFunctionType.REGRESSION && outputPlan.isEmpty()) {
+			EvaluationListener listener = getEvaluationListener();
+
+			long begin = EvaluatorUtil.beginModel(listener, context);
+
+			try {
+				boolean result = evaluateRegression(context, sink);
+
+				EvaluatorUtil.endModel(listener, context, begin);
+
+				return result;
+			} catch (EvaluationException ee) {
+				throw EvaluatorUtil.fail(listener, EvaluationStage.MODEL, ee);
+			}
+		}
+
+		return EvaluatorUtil.forward(this, EvaluatorUtil.evaluate(this, context), sink);
+	}
+
+	public IPMMLResult evaluateModel(ModelManagerEvaluationContext context)
+			throws EvaluationException {
+		RegressionModel regressionModel;
+		try {
+			regressionModel = getModel();
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		Map<FieldName, ?> predictions;
 
 		MiningFunctionType miningFunction = regressionModel.getFunctionName();
 		switch (miningFunction) {
@@ -113,18 +203,13 @@ public class RegressionModelEvaluator extends RegressionModelManager implements
 			throw new EvaluationException(e);
 		}
 
-		List<RegressionTable> regressionTables;
-		try {
-			regressionTables = getRegressionTables();
-		} catch (ModelManagerException e) {
-			throw new EvaluationException(e);
-		}
+		CompiledRegressionTable[] regressionTables = getOrCreateCompiledRegressionTables();
 
-		if (regressionTables.size() != 1) {
+		if (regressionTables.length != 1) {
 			throw new EvaluationException("There are too many tables for a regression.");
 		}
 
-		RegressionTable regressionTable = regressionTables.get(0);
+		CompiledRegressionTable regressionTable = regressionTables[0];
 
 		Double value = evaluateRegressionTable(regressionTable, context);
 
@@ -147,23 +232,96 @@ public class RegressionModelEvaluator extends RegressionModelManager implements
 		return Collections.singletonMap(name, value);
 	}
 
-	public Map<FieldName, ClassificationMap> evaluateClassification(EvaluationContext context)
+	private boolean evaluateRegression(EvaluationContext context, ResultSink sink)
 			throws EvaluationException {
 		RegressionModel regressionModel;
+		FieldName name;
 		try {
 			regressionModel = getModel();
+			name = getTarget();
 		} catch (ModelManagerException e) {
 			throw new EvaluationException(e);
 		}
 
-		List<RegressionTable> regressionTables;
+		CompiledRegressionTable[] regressionTables = getOrCreateCompiledRegressionTables();
+
+		if (regressionTables.length != 1) {
+			throw new EvaluationException("There are too many tables for a regression.");
+		}
+
+		CompiledRegressionTable regressionTable = regressionTables[0];
+
+		double value = sumRegressionTable(regressionTable, context);
+		if (Double.isNaN(value) && isMissing(regressionTable, context)) {
+			return false;
+		}
+
+		RegressionNormalizationMethodType regressionNormalizationMethod =
+				regressionModel.getNormalizationMethod();
+
+		sink.putDouble(name, normalizeRegressionResult(regressionNormalizationMethod, value));
+
+		return true;
+	}
+
+	/**
+	 * @param columns The columns of the numeric predictors.
+	 *
+	 * @see #getNumericColumns(ColumnarInput)
+	 */
+	private void evaluateRegression(double[][] columns, ColumnarInput input,
+			ColumnarOutput output) throws EvaluationException {
+		RegressionModel regressionModel;
+		FieldName name;
+		try {
+			regressionModel = getModel();
+			name = getTarget();
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		CompiledRegressionTable regressionTable = (getOrCreateCompiledRegressionTables())[0];
+
+		int offset = input.getOffset();
+
+		double[] values = new double[input.getSize()];
+		Arrays.fill(values, regressionTable.intercept);
+
+		// The terms are added in the same order as in the evaluation of a single row
+		for (int i = 0; i < columns.length; i++) {
+			double[] column = columns[i];
+
+			double coefficient = regressionTable.numericCoefficients[i];
+			int exponent = regressionTable.numericExponents[i];
+
+			for (int row = 0; row < values.length; row++) {
+				values[row] += coefficient * Math.pow(column[offset + row], exponent);
+			}
+		}
+
+		RegressionNormalizationMethodType regressionNormalizationMethod =
+				regressionModel.getNormalizationMethod();
+
+		for (int row = 0; row < values.length; row++) {
+			values[row] = normalizeRegressionResult(regressionNormalizationMethod, values[row]);
+		}
+
+		output.prepare(this, input);
+		output.putColumn(name, values);
+	}
+
+	public Map<FieldName, ClassificationMap> evaluateClassification(EvaluationContext context)
+			throws EvaluationException {
+		RegressionModel regressionModel;
 		try {
-			regressionTables = getRegressionTables();
+			regressionModel = getModel();
 		} catch (ModelManagerException e) {
 			throw new EvaluationException(e);
 		}
 
-		if (regressionTables.size() < 1) {
+		CompiledRegressionTable[] regressionTables = getOrCreateCompiledRegressionTables();
+
+		if (regressionTables.length < 1) {
 			throw new EvaluationException("There is no regression table in this model");
 		}
 
@@ -171,16 +329,16 @@ public class RegressionModelEvaluator extends RegressionModelManager implements
 
 		ClassificationMap values = new ClassificationMap();
 
-		for (RegressionTable regressionTable : regressionTables) {
+		for (CompiledRegressionTable regressionTable : regressionTables) {
 			Double value = evaluateRegressionTable(regressionTable, context);
 
+			// "If the input value is missing then the result evaluates to a missing value"
 			if (value == null) {
-				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
-						"Target");
+				return null;
 			}
 
 			sumExp += Math.exp(value.doubleValue());
-			values.put(regressionTable.getTargetCategory(), value);
+			values.put(regressionTable.targetCategory, value);
 		}
 
 		FieldName name;
@@ -217,54 +375,217 @@ public class RegressionModelEvaluator extends RegressionModelManager implements
 		return Collections.singletonMap(name, values);
 	}
 
-	private static Double evaluateRegressionTable(RegressionTable regressionTable,
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry, String name) {
+		ensureNotFrozen();
+
+		this.evaluationListener = EvaluatorUtil.getListener(metricsRegistry, name);
+	}
+
+	public EvaluationListener getEvaluationListener() {
+		return this.evaluationListener;
+	}
+
+	@Override
+	public void freeze() throws ModelManagerException {
+		getOrCreateEvaluationPlan();
+		getOrCreateCompiledRegressionTables();
+
+		super.freeze();
+	}
+
+	@Override
+	public void invalidateIndexes() {
+		super.invalidateIndexes();
+
+		this.evaluationPlan = null;
+		this.compiledRegressionTables = null;
+	}
+
+	public EvaluationPlan getOrCreateEvaluationPlan() throws EvaluationException {
+
+		if (this.evaluationPlan == null) {
+			this.evaluationPlan = EvaluationPlan.compile(this);
+		}
+
+		return this.evaluationPlan;
+	}
+
+	private CompiledRegressionTable[] getOrCreateCompiledRegressionTables()
+			throws EvaluationException {
+
+		if (this.compiledRegressionTables == null) {
+			EvaluationPlan plan = getOrCreateEvaluationPlan();
+
+			List<RegressionTable> regressionTables;
+			try {
+				regressionTables = getRegressionTables();
+			} catch (ModelManagerException e) {
+				throw new EvaluationException(e);
+			}
+
+			CompiledRegressionTable[] result = new CompiledRegressionTable[regressionTables.size()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = new CompiledRegressionTable(regressionTables.get(i), plan);
+			}
+
+			this.compiledRegressionTables = result;
+		}
+
+		return this.compiledRegressionTables;
+	}
+
+	/**
+	 * @return The input columns of the numeric predictors, or <code>null</code> if the batch must
+	 *         be evaluated row by row.
+	 */
+	private double[][] getNumericColumns(ColumnarInput input) throws EvaluationException {
+		RegressionModel regressionModel;
+		try {
+			regressionModel = getModel();
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		MiningFunctionType miningFunction = regressionModel.getFunctionName();
+		if (miningFunction != MiningFunctionType.REGRESSION) {
+			return null;
+		} // End if
+
+		if (!(EvaluationPlan.getOutputFields(regressionModel)).isEmpty()) {
+			return null;
+		}
+
+		CompiledRegressionTable[] regressionTables = getOrCreateCompiledRegressionTables();
+		if (regressionTables.length != 1 || (regressionTables[0].categoricalSlots).length > 0) {
+			return null;
+		}
+
+		EvaluationPlan plan = getOrCreateEvaluationPlan();
+
+		int[] numericSlots = regressionTables[0].numericSlots;
+
+		double[][] result = new double[numericSlots.length][];
+
+		for (int i = 0; i < numericSlots.length; i++) {
+			int slot = numericSlots[i];
+
+			// Derived fields are computed row by row
+			if (slot < 0 || plan.getDerivedField(slot) != null) {
+				return null;
+			}
+
+			Object column = input.getColumn(plan.getName(slot));
+			if (!(column instanceof double[])) {
+				return null;
+			}
+
+			result[i] = (double[]) column;
+		}
+
+		return result;
+	}
+
+	private static Double evaluateRegressionTable(CompiledRegressionTable regressionTable,
+			EvaluationContext context) throws EvaluationException {
+
+		double value = sumRegressionTable(regressionTable, context);
+		if (Double.isNaN(value) && isMissing(regressionTable, context)) {
+			return null;
+		}
+
+		return value;
+	}
+
+	/**
+	 * "If the input value is missing then the result evaluates to a missing value"
+	 *
+	 * This is only checked when {@link #sumRegressionTable(CompiledRegressionTable,
+	 * EvaluationContext)} returns <code>NaN</code>, which may also be a regular result.
+	 */
+	private static boolean isMissing(CompiledRegressionTable regressionTable,
 			EvaluationContext context) throws EvaluationException {
-		double result = 0D;
+		int[] numericSlots = regressionTable.numericSlots;
 
-		result += regressionTable.getIntercept();
+		for (int i = 0; i < numericSlots.length; i++) {
+			Object value =
+					evaluate(numericSlots[i], regressionTable.numericNames[i], context);
 
-		List<NumericPredictor> numericPredictors = regressionTable.getNumericPredictors();
+			if (value == null) {
+				return true;
+			}
+		}
 
-		for (NumericPredictor numericPredictor : numericPredictors) {
-			Object value = ExpressionUtil.evaluate(numericPredictor.getName(), context);
+		return false;
+	}
+
+	/**
+	 * Sums the terms of a regression table in a single pass over its predictors.
+	 *
+	 * @return The sum, or <code>NaN</code> if the value of a numeric predictor is missing.
+	 *
+	 * @see #isMissing(CompiledRegressionTable, EvaluationContext)
+	 */
+	private static double sumRegressionTable(CompiledRegressionTable regressionTable,
+			EvaluationContext context) throws EvaluationException {
+		double result = regressionTable.intercept;
+
+		int[] numericSlots = regressionTable.numericSlots;
+		for (int i = 0; i < numericSlots.length; i++) {
+			Object value =
+					evaluate(numericSlots[i], regressionTable.numericNames[i], context);
 
-			// "if the input value is missing then the result evaluates to a missing value"
 			if (value == null) {
-				return null;
+				return Double.NaN;
 			}
 
 			result +=
-					numericPredictor.getCoefficient() *
-							Math.pow(((Number) value).doubleValue(),
-									numericPredictor.getExponent());
+					regressionTable.numericCoefficients[i] *
+							Math.pow(toDouble(value), regressionTable.numericExponents[i]);
 		}
 
-		List<CategoricalPredictor> categoricalPredictors =
-				regressionTable.getCategoricalPredictors();
-		for (CategoricalPredictor categoricalPredictor : categoricalPredictors) {
-			Object value = ExpressionUtil.evaluate(categoricalPredictor.getName(), context);
+		int[] categoricalSlots = regressionTable.categoricalSlots;
+		for (int i = 0; i < categoricalSlots.length; i++) {
+			Object value =
+					evaluate(categoricalSlots[i], regressionTable.categoricalNames[i], context);
 
 			// "if the input value is missing then the product is ignored"
 			if (value == null) {
 				continue;
 			}
 
-			boolean equals = ParameterUtil.equals(value, categoricalPredictor.getValue());
+			boolean equals = ParameterUtil.equals(value, regressionTable.categoricalValues[i]);
 
-			result += categoricalPredictor.getCoefficient() * (equals ? 1d : 0d);
+			result += regressionTable.categoricalCoefficients[i] * (equals ? 1d : 0d);
 		}
 
-		List<PredictorTerm> predictorTerms = regressionTable.getPredictorTerms();
-		for (PredictorTerm predictorTerm : predictorTerms) {
-			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
-					predictorTerm.toString());
+		return result;
+	}
+
+	private static Object evaluate(int slot, FieldName name, EvaluationContext context)
+			throws EvaluationException {
+
+		// Fields that are not defined in the PMML document are looked up by name
+		if (slot < 0) {
+			return ExpressionUtil.evaluate(name, context);
 		}
 
-		return result;
+		return ExpressionUtil.evaluate(slot, context);
+	}
+
+	/**
+	 * @throws EvaluationException If the value is not a number (eg. it has not been prepared)
+	 */
+	private static double toDouble(Object value) throws EvaluationException {
+
+		if (value instanceof Number) {
+			return ((Number) value).doubleValue();
+		}
+
+		throw new StacklessEvaluationException("Can't cast [" + value + "] to a number");
 	}
 
-	private static Double normalizeRegressionResult(
-			RegressionNormalizationMethodType regressionNormalizationMethod, Double value)
+	private static double normalizeRegressionResult(
+			RegressionNormalizationMethodType regressionNormalizationMethod, double value)
 			throws EvaluationException {
 		switch (regressionNormalizationMethod) {
 		case NONE:
@@ -300,4 +621,76 @@ public class RegressionModelEvaluator extends RegressionModelManager implements
 					regressionNormalizationMethod.name());
 		}
 	}
+
+	/**
+	 * A {@link RegressionTable} whose predictors have been bound to the slots of an
+	 * {@link EvaluationPlan}.
+	 */
+	private static class CompiledRegressionTable {
+
+		private String targetCategory = null;
+
+		private double intercept = 0d;
+
+		private FieldName[] numericNames = null;
+
+		private int[] numericSlots = null;
+
+		private double[] numericCoefficients = null;
+
+		private int[] numericExponents = null;
+
+		private FieldName[] categoricalNames = null;
+
+		private int[] categoricalSlots = null;
+
+		private double[] categoricalCoefficients = null;
+
+		private String[] categoricalValues = null;
+
+		private CompiledRegressionTable(RegressionTable regressionTable, EvaluationPlan plan)
+				throws EvaluationException {
+			this.targetCategory = regressionTable.getTargetCategory();
+			this.intercept = regressionTable.getIntercept();
+
+			List<NumericPredictor> numericPredictors = regressionTable.getNumericPredictors();
+
+			this.numericNames = new FieldName[numericPredictors.size()];
+			this.numericSlots = new int[numericPredictors.size()];
+			this.numericCoefficients = new double[numericPredictors.size()];
+			this.numericExponents = new int[numericPredictors.size()];
+
+			for (int i = 0; i < numericPredictors.size(); i++) {
+				NumericPredictor numericPredictor = numericPredictors.get(i);
+
+				this.numericNames[i] = numericPredictor.getName();
+				this.numericSlots[i] = plan.getSlot(numericPredictor.getName());
+				this.numericCoefficients[i] = numericPredictor.getCoefficient();
+				this.numericExponents[i] = numericPredictor.getExponent();
+			}
+
+			List<CategoricalPredictor> categoricalPredictors =
+					regressionTable.getCategoricalPredictors();
+
+			this.categoricalNames = new FieldName[categoricalPredictors.size()];
+			this.categoricalSlots = new int[categoricalPredictors.size()];
+			this.categoricalCoefficients = new double[categoricalPredictors.size()];
+			this.categoricalValues = new String[categoricalPredictors.size()];
+
+			for (int i = 0; i < categoricalPredictors.size(); i++) {
+				CategoricalPredictor categoricalPredictor = categoricalPredictors.get(i);
+
+				this.categoricalNames[i] = categoricalPredictor.getName();
+				this.categoricalSlots[i] = plan.getSlot(categoricalPredictor.getName());
+				this.categoricalCoefficients[i] = categoricalPredictor.getCoefficient();
+				this.categoricalValues[i] = categoricalPredictor.getValue();
+			}
+
+			List<PredictorTerm> predictorTerms = regressionTable.getPredictorTerms();
+			for (PredictorTerm predictorTerm : predictorTerms) {
+				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+						predictorTerm.toString());
+			}
+		}
+	}
 }
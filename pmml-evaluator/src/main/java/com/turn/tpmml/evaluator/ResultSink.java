@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+
+/**
+ * Receives the values of an evaluation result one field at a time, instead of collecting them in
+ * a new {@link com.turn.tpmml.manager.IPMMLResult IPMMLResult}.
+ *
+ * The sink is owned by the caller, and can be reused for any number of evaluations.
+ *
+ * @see CompiledEvaluator#evaluate(ReusableEvaluationContext, ResultSink)
+ */
+public interface ResultSink {
+
+	/**
+	 * @param name The name of a {@link Evaluator#getPredictedFields() predicted field} or
+	 *            {@link Evaluator#getOutputFields() output field}
+	 * @param value The value. Like in {@link Evaluator#evaluate(java.util.Map)}, complex values
+	 *            are represented as instances of {@link Computable}.
+	 */
+	void put(FieldName name, Object value);
+
+	/**
+	 * Receives a continuous value without boxing it.
+	 *
+	 * @see #put(FieldName, Object)
+	 */
+	void putDouble(FieldName name, double value);
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.manager.ModelManager;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A slot-backed context that is owned by the caller, and is reused for any number of evaluations
+ * of the same evaluator.
+ *
+ * Moving to the next set of parameters copies their values to the slots, and forgets all memoized
+ * derived field values. Neither operation creates objects. Whether the evaluation itself creates
+ * objects depends on the model.
+ *
+ * A context must not be used by several threads at the same time. A
+ * {@link CompiledEvaluator#freeze() frozen} evaluator can be shared between threads that each own
+ * a context.
+ *
+ * <pre>
+ * ReusableEvaluationContext context = new ReusableEvaluationContext(evaluator);
+ *
+ * context.reset(parameters);
+ * evaluator.evaluate(context, sink);
+ * </pre>
+ *
+ * A context that is bound to a list of fields takes the values of the parameters by position.
+ * The fields are resolved to slots once, so that moving to the next set of parameters does not
+ * hash any field names either.
+ *
+ * <pre>
+ * ReusableEvaluationContext context =
+ *   new ReusableEvaluationContext(evaluator, evaluator.getActiveFields());
+ *
+ * context.reset(values);
+ * evaluator.evaluate(context, sink);
+ * </pre>
+ *
+ * @see CompiledEvaluator#evaluate(ReusableEvaluationContext, ResultSink)
+ */
+public class ReusableEvaluationContext extends ModelManagerEvaluationContext {
+
+	private ValueMap valueMap = null;
+
+	/**
+	 * The slots of the bound fields, in the order of their values.
+	 */
+	private int[] slots = null;
+
+	/**
+	 * The slots that are not derived fields, and are not bound to any field.
+	 */
+	private int[] otherSlots = null;
+
+	public ReusableEvaluationContext(CompiledEvaluator evaluator) throws EvaluationException {
+		super(toModelManager(evaluator), toModelEvaluator(evaluator).getOrCreateEvaluationPlan(),
+				Collections.<FieldName, Object>emptyMap());
+	}
+
+	/**
+	 * Creates a context that is bound to a list of fields.
+	 *
+	 * @param names The names of {@link Evaluator#getActiveFields() active fields}, in the order of
+	 *            the values of {@link #reset(Object[])}.
+	 *
+	 * @throws EvaluationException If some field is not a data field of the model
+	 */
+	public ReusableEvaluationContext(CompiledEvaluator evaluator, List<FieldName> names)
+			throws EvaluationException {
+		this(evaluator);
+
+		EvaluationPlan plan = getPlan();
+
+		boolean[] bound = new boolean[plan.size()];
+
+		this.slots = new int[names.size()];
+		for (int i = 0; i < this.slots.length; i++) {
+			FieldName name = names.get(i);
+
+			int slot = plan.getParameterSlot(name);
+			if (slot < 0) {
+				throw new EvaluationException("Not a data field: " + name.getValue());
+			}
+
+			this.slots[i] = slot;
+
+			bound[slot] = true;
+		}
+
+		int count = 0;
+
+		int[] otherSlots = new int[plan.size()];
+		for (int slot = 0; slot < plan.size(); slot++) {
+
+			if (!bound[slot] && plan.getDerivedField(slot) == null) {
+				otherSlots[count++] = slot;
+			}
+		}
+
+		this.otherSlots = new int[count];
+		System.arraycopy(otherSlots, 0, this.otherSlots, 0, count);
+
+		this.valueMap = new ValueMap(names.toArray(new FieldName[names.size()]));
+	}
+
+	/**
+	 * Moves to a new set of parameters. Every parameter is looked up by name.
+	 *
+	 * @param parameters Map of {@link Evaluator#getActiveFields() active field} values. The map is
+	 *            used as it is, and must not be modified until the evaluation is over.
+	 */
+	public void reset(Map<FieldName, ?> parameters) {
+		setParameters(parameters);
+
+		reload();
+	}
+
+	/**
+	 * Moves to a new set of parameters. Every value is copied directly to the slot of its field.
+	 *
+	 * @param values The values of the fields that this context is bound to, in the same order.
+	 *            The array is used as it is, and must not be modified until the evaluation is
+	 *            over.
+	 *
+	 * @throws IllegalStateException If this context is not bound to a list of fields
+	 *
+	 * @see #ReusableEvaluationContext(CompiledEvaluator, List)
+	 */
+	public void reset(Object[] values) {
+
+		if (this.slots == null) {
+			throw new IllegalStateException("The context is not bound to a list of fields");
+		} // End if
+
+		if (values.length != this.slots.length) {
+			throw new IllegalArgumentException("Wrong number of values: expected " +
+					this.slots.length + ", got " + values.length);
+		}
+
+		this.valueMap.setValues(values);
+
+		setParameters(this.valueMap);
+
+		for (int i = 0; i < this.slots.length; i++) {
+			putValue(this.slots[i], values[i]);
+		}
+
+		// Eg. output fields, and parameters that were added by a model chain
+		for (int i = 0; i < this.otherSlots.length; i++) {
+			putValue(this.otherSlots[i], null);
+		}
+
+		clearDerivedValues();
+	}
+
+	@Override
+	public ReusableEvaluationContext clone() {
+		return (ReusableEvaluationContext) super.clone();
+	}
+
+	/**
+	 * @throws EvaluationException If the context was created for another evaluator
+	 */
+	void checkModelManager(Evaluator evaluator) throws EvaluationException {
+
+		if (getModelManager() != evaluator) {
+			throw new EvaluationException("The context belongs to another evaluator");
+		}
+	}
+
+	private static ModelManager<?> toModelManager(Evaluator evaluator) {
+
+		if (!(evaluator instanceof ModelManager)) {
+			throw new IllegalArgumentException("Not a model manager: " + evaluator);
+		}
+
+		return (ModelManager<?>) evaluator;
+	}
+
+	private static ModelEvaluator toModelEvaluator(Evaluator evaluator) {
+
+		if (!(evaluator instanceof ModelEvaluator)) {
+			throw new IllegalArgumentException("Not a model evaluator: " + evaluator);
+		}
+
+		return (ModelEvaluator) evaluator;
+	}
+
+	/**
+	 * A view of the current values of the bound fields. Values that are put into the map (eg. by
+	 * a model chain) are kept until the next set of parameters.
+	 */
+	private static class ValueMap extends AbstractMap<FieldName, Object> {
+
+		private FieldName[] names = null;
+
+		private Object[] values = null;
+
+		private Map<FieldName, Object> overrides = null;
+
+		private ValueMap(FieldName[] names) {
+			this.names = names;
+		}
+
+		private void setValues(Object[] values) {
+			this.values = values;
+
+			if (this.overrides != null && !this.overrides.isEmpty()) {
+				this.overrides.clear();
+			}
+		}
+
+		private int indexOf(Object key) {
+
+			for (int i = 0; i < this.names.length; i++) {
+
+				if ((this.names[i]).equals(key)) {
+					return i;
+				}
+			}
+
+			return -1;
+		}
+
+		@Override
+		public Object get(Object key) {
+
+			if (this.overrides != null && this.overrides.containsKey(key)) {
+				return this.overrides.get(key);
+			}
+
+			int index = indexOf(key);
+			if (index < 0 || this.values == null) {
+				return null;
+			}
+
+			return this.values[index];
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return (this.overrides != null && this.overrides.containsKey(key)) || indexOf(key) > -1;
+		}
+
+		@Override
+		public Object put(FieldName key, Object value) {
+			Object result = get(key);
+
+			if (this.overrides == null) {
+				this.overrides = new HashMap<FieldName, Object>();
+			}
+
+			this.overrides.put(key, value);
+
+			return result;
+		}
+
+		@Override
+		public Set<Map.Entry<FieldName, Object>> entrySet() {
+			Map<FieldName, Object> result = new LinkedHashMap<FieldName, Object>();
+
+			if (this.values != null) {
+
+				for (int i = 0; i < this.names.length; i++) {
+					result.put(this.names[i], this.values[i]);
+				}
+			} // End if
+
+			if (this.overrides != null) {
+				result.putAll(this.overrides);
+			}
+
+			return result.entrySet();
+		}
+	}
+}
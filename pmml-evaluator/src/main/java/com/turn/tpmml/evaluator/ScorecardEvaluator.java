@@ -12,27 +12,32 @@ import com.turn.tpmml.manager.ScoreCardPMMLResult;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
-public class ScorecardEvaluator extends ScoreCardModelManager implements Evaluator {
+public class ScorecardEvaluator extends ScoreCardModelManager implements ModelEvaluator {
 
 
 	private static final long serialVersionUID = 1L;
 
+	private transient EvaluationPlan evaluationPlan = null;
+
+	private transient EvaluationListener evaluationListener = null;
+
+	private transient CompiledPredicate[][] compiledPredicates = null;
+
 	public ScorecardEvaluator(PMML pmml) {
 		super(pmml);
 	}
 
 	public ScorecardEvaluator(PMML pmml, Scorecard scorecard) {
 		super(pmml, scorecard);
+
+		this.evaluationPlan = EvaluatorUtil.compileEvaluationPlan(this);
 	}
 
 	public Object prepare(FieldName name, Object value) throws EvaluationException {
-		try {
-			return ParameterUtil.prepare(getDataField(name), getMiningField(name), value);
-		} catch (ModelManagerException e) {
-			throw new EvaluationException(e);
-		}
+		return EvaluatorUtil.prepare(this, name, value);
 	}
 
 	public ScorecardEvaluator(ScoreCardModelManager parent) throws ModelManagerException {
@@ -41,15 +46,47 @@ public class ScorecardEvaluator extends ScoreCardModelManager implements Evaluat
 
 	// Evaluate the parameters on the score card.
 	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+		ModelManagerEvaluationContext context =
+				new ModelManagerEvaluationContext(this, getOrCreateEvaluationPlan(), parameters);
+
+		return EvaluatorUtil.evaluate(this, context);
+	}
+
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters, Set<FieldName> outputFields)
+			throws EvaluationException {
+		return EvaluatorUtil.evaluate(this, parameters, outputFields);
+	}
+
+	public IPMMLResult evaluate(EvaluationContext parent) throws EvaluationException {
+		ModelManagerEvaluationContext context =
+				new ModelManagerEvaluationContext(this, getOrCreateEvaluationPlan(), parent);
+
+		return EvaluatorUtil.evaluate(this, context);
+	}
+
+	public void evaluateBatch(ColumnarInput input, ColumnarOutput output)
+			throws EvaluationException {
+		EvaluatorUtil.evaluateBatch(this, input, output);
+	}
+
+	public boolean evaluate(ReusableEvaluationContext context, ResultSink sink)
+			throws EvaluationException {
+		return EvaluatorUtil.evaluate(this, context, sink);
+	}
+
+	public IPMMLResult evaluateModel(ModelManagerEvaluationContext context)
+			throws EvaluationException {
 		Double score = 0.0;
-		EvaluationContext context = new ModelManagerEvaluationContext(this, parameters);
 		TreeMap<Double, String> diffToReasonCode = new TreeMap<Double, String>();
+		CompiledPredicate[][] predicates = getOrCreateCompiledPredicates();
 		List<Characteristic> cl = scorecard.getCharacteristics().getCharacteristics();
-		for (Characteristic c : cl) {
+		for (int i = 0; i < predicates.length; i++) {
+			Characteristic c = cl.get(i);
 			List<Attribute> al = c.getAttributes();
-			for (Attribute a : al) {
+			for (int j = 0; j < predicates[i].length; j++) {
+				Attribute a = al.get(j);
 				// Evaluate the predicate.
-				Boolean predicateValue = PredicateUtil.evaluate(a.getPredicate(), context);
+				Boolean predicateValue = predicates[i][j].evaluate(context);
 				// If it is valid, and the value is true, update the score.
 				if (predicateValue != null && predicateValue.booleanValue()) {
 					score += a.getPartialScore();
@@ -79,12 +116,17 @@ public class ScorecardEvaluator extends ScoreCardModelManager implements Evaluat
 			}
 		}
 
-		lastReasonCode = diffToReasonCode.lastEntry().getValue();
+		String reasonCode = diffToReasonCode.lastEntry().getValue();
+
+		// A frozen evaluator is shared between threads, so the result is the only holder
+		if (!isFrozen()) {
+			lastReasonCode = reasonCode;
+		}
 
 		ScoreCardPMMLResult res = new ScoreCardPMMLResult();
 		try {
 			res.put(getOutputField(this).getName(), score);
-			res.setLastReasonCode(lastReasonCode);
+			res.setLastReasonCode(reasonCode);
 		} catch (ModelManagerException e) {
 			throw new EvaluationException(e);
 		}
@@ -96,4 +138,66 @@ public class ScorecardEvaluator extends ScoreCardModelManager implements Evaluat
 		return lastReasonCode;
 	}
 
+
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry, String name) {
+		ensureNotFrozen();
+
+		this.evaluationListener = EvaluatorUtil.getListener(metricsRegistry, name);
+	}
+
+	public EvaluationListener getEvaluationListener() {
+		return this.evaluationListener;
+	}
+
+	@Override
+	public void freeze() throws ModelManagerException {
+		getOrCreateEvaluationPlan();
+		getOrCreateCompiledPredicates();
+
+		super.freeze();
+	}
+
+	@Override
+	public void invalidateIndexes() {
+		super.invalidateIndexes();
+
+		this.evaluationPlan = null;
+		this.compiledPredicates = null;
+	}
+
+	/**
+	 * Gets the compiled predicates of all attributes, indexed by characteristic and attribute.
+	 * The predicates are compiled on first use.
+	 */
+	private CompiledPredicate[][] getOrCreateCompiledPredicates() throws EvaluationException {
+
+		if (this.compiledPredicates == null) {
+			EvaluationPlan plan = getOrCreateEvaluationPlan();
+
+			List<Characteristic> cl = scorecard.getCharacteristics().getCharacteristics();
+
+			CompiledPredicate[][] result = new CompiledPredicate[cl.size()][];
+			for (int i = 0; i < result.length; i++) {
+				List<Attribute> al = (cl.get(i)).getAttributes();
+
+				result[i] = new CompiledPredicate[al.size()];
+				for (int j = 0; j < result[i].length; j++) {
+					result[i][j] = PredicateCompiler.compile((al.get(j)).getPredicate(), plan);
+				}
+			}
+
+			this.compiledPredicates = result;
+		}
+
+		return this.compiledPredicates;
+	}
+
+	public EvaluationPlan getOrCreateEvaluationPlan() throws EvaluationException {
+
+		if (this.evaluationPlan == null) {
+			this.evaluationPlan = EvaluationPlan.compile(this);
+		}
+
+		return this.evaluationPlan;
+	}
 }
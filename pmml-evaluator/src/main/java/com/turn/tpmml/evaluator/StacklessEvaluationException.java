@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+/**
+ * An evaluation exception that does not capture a stack trace.
+ *
+ * Missing and invalid input values are a property of the data, not of the code, which means that
+ * a stack trace does not tell anything about them. When an upstream feed sends bad data, capturing
+ * the stack trace of every failed evaluation would dominate the cost of evaluation.
+ *
+ * An instance is created for every failure, which is cheap without a stack trace. Instances are
+ * not shared, because the code that catches them may modify them (eg. by initializing their cause
+ * or by adding suppressed exceptions).
+ */
+public class StacklessEvaluationException extends EvaluationException {
+
+	private static final long serialVersionUID = 1L;
+
+	public StacklessEvaluationException(String message) {
+		super(message);
+	}
+
+	public StacklessEvaluationException(TPMMLCause cause, Object... args) {
+		super(cause, args);
+	}
+
+	@Override
+	public Throwable fillInStackTrace() {
+		return this;
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter for values that are added by many threads at the same time.
+ *
+ * The count is split into stripes, and a thread always updates the same stripe. Every stripe has
+ * a cache line of its own, so that threads that update different stripes do not contend. Reading
+ * the count sums up all stripes.
+ */
+public class StripedCounter {
+
+	private AtomicLongArray cells = null;
+
+	private int mask = 0;
+
+	public StripedCounter() {
+		this(getDefaultStripes());
+	}
+
+	/**
+	 * @param stripes The number of stripes, which is rounded up to a power of two.
+	 */
+	public StripedCounter(int stripes) {
+		this.mask = toPowerOfTwo(stripes) - 1;
+		this.cells = new AtomicLongArray((this.mask + 1) * PADDING);
+	}
+
+	public void increment() {
+		add(1L);
+	}
+
+	/**
+	 * @return The count of the stripe of the current thread before the increment. It is not the
+	 *         total count.
+	 */
+	long getAndIncrement() {
+		return this.cells.getAndIncrement(getStripe(this.mask) * PADDING);
+	}
+
+	public void add(long value) {
+		this.cells.getAndAdd(getStripe(this.mask) * PADDING, value);
+	}
+
+	public long sum() {
+		long result = 0L;
+
+		for (int i = 0; i < this.cells.length(); i += PADDING) {
+			result += this.cells.get(i);
+		}
+
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(sum());
+	}
+
+	/**
+	 * @return The stripe of the current thread.
+	 */
+	static int getStripe(int mask) {
+		long id = (Thread.currentThread()).getId();
+
+		// Thread identifiers are sequential. Spread them so that neighbours use different stripes
+		int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	/**
+	 * @return Twice the number of processors, which keeps collisions between busy threads rare.
+	 */
+	static int getDefaultStripes() {
+		int processors = (Runtime.getRuntime()).availableProcessors();
+
+		return Math.min(toPowerOfTwo(2 * processors), MAX_STRIPES);
+	}
+
+	static int toPowerOfTwo(int value) {
+
+		if (value < 1) {
+			throw new IllegalArgumentException("Invalid number of stripes: " + value);
+		}
+
+		int result = Integer.highestOneBit(value);
+
+		return (result == value) ? result : (result << 1);
+	}
+
+	/**
+	 * The number of longs in a cache line.
+	 */
+	static final int PADDING = 8;
+
+	private static final int MAX_STRIPES = 64;
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.InlineTable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hash index over the rows of an {@link InlineTable}, which maps the values of the input
+ * columns to the (parsed) value of the output column.
+ *
+ * The table is parsed once, when the index is created. A lookup hashes the input values directly,
+ * and does not allocate a composite key. Rows are matched the same way as in
+ * {@link TableUtil#match(List, Map)}: cells are parsed to the runtime data type of the value, and
+ * the first matching row wins. Cells that can not be parsed to the runtime data type of the value
+ * do not match it.
+ *
+ * Because cells are parsed by the runtime data types of the values, there is one hash table per
+ * combination of data types. Hash tables are built on first use, and are never modified after
+ * that. The index is thread-safe.
+ */
+public class TableIndex {
+
+	private String[] columns = null;
+
+	/**
+	 * The cells of the input columns of matchable rows, in document order.
+	 */
+	private String[][] rows = null;
+
+	/**
+	 * The parsed values of the output column, or {@link #NO_RESULT}.
+	 */
+	private Object[] results = null;
+
+	private volatile Table[] tables = new Table[0];
+
+	private TableIndex() {
+	}
+
+	public String[] getColumns() {
+		return this.columns.clone();
+	}
+
+	/**
+	 * @return The value of the output column of the first matching row, or <code>null</code>.
+	 */
+	public Object get(Object value) throws EvaluationException {
+		checkColumns(1);
+
+		return getTable(signature(value)).find(value, null, null);
+	}
+
+	public Object get(Object left, Object right) throws EvaluationException {
+		checkColumns(2);
+
+		return getTable(signature(left) | (signature(right) << 2)).find(left, right, null);
+	}
+
+	/**
+	 * @param values The values of input columns, in the same order as {@link #getColumns()}.
+	 */
+	public Object get(Object[] values) throws EvaluationException {
+		checkColumns(values.length);
+
+		int signature = 0;
+
+		for (int i = 0; i < values.length; i++) {
+			signature |= (signature(values[i]) << (2 * i));
+		}
+
+		return getTable(signature).find(null, null, values);
+	}
+
+	private void checkColumns(int count) throws EvaluationException {
+
+		if (this.columns.length != count) {
+			throw new EvaluationException("Wrong number of input columns: expected " +
+					this.columns.length + ", got " + count);
+		}
+	}
+
+	private Table getTable(int signature) throws EvaluationException {
+		Table[] tables = this.tables;
+
+		for (Table table : tables) {
+
+			if (table.signature == signature) {
+				return table;
+			}
+		}
+
+		synchronized (this) {
+			tables = this.tables;
+
+			for (Table table : tables) {
+
+				if (table.signature == signature) {
+					return table;
+				}
+			}
+
+			Table table = new Table(signature);
+
+			tables = Arrays.copyOf(tables, tables.length + 1);
+			tables[tables.length - 1] = table;
+
+			this.tables = tables;
+
+			return table;
+		}
+	}
+
+	/**
+	 * @param columns The input columns.
+	 * @param outputColumn The output column.
+	 * @param dataType The data type of the output column, or <code>null</code>.
+	 */
+	public static TableIndex create(InlineTable table, String[] columns, String outputColumn,
+			DataType dataType) throws EvaluationException {
+
+		if (columns.length > MAX_COLUMNS) {
+			throw new EvaluationException("Too many input columns: " + columns.length);
+		}
+
+		List<Map<String, String>> rows = TableUtil.parse(table);
+
+		String[][] cells = new String[rows.size()][];
+		Object[] results = new Object[rows.size()];
+
+		int count = 0;
+
+		rows: for (Map<String, String> row : rows) {
+
+			// A table row contains a certain number of input columns, plus an output column
+			if (columns.length < (row.size() - 1)) {
+				continue rows;
+			}
+
+			String[] rowCells = new String[columns.length];
+
+			for (int i = 0; i < columns.length; i++) {
+				rowCells[i] = row.get(columns[i]);
+
+				if (rowCells[i] == null) {
+					continue rows;
+				}
+			}
+
+			String result = row.get(outputColumn);
+
+			cells[count] = rowCells;
+			results[count] = (result != null ? parse(dataType, result) : NO_RESULT);
+
+			count++;
+		}
+
+		TableIndex index = new TableIndex();
+		index.columns = columns.clone();
+		index.rows = Arrays.copyOf(cells, count);
+		index.results = Arrays.copyOf(results, count);
+
+		return index;
+	}
+
+	private static Object parse(DataType dataType, String value) throws EvaluationException {
+
+		if (dataType != null) {
+			return ParameterUtil.parse(dataType, value);
+		}
+
+		return value;
+	}
+
+	private static int signature(Object value) throws EvaluationException {
+
+		if (value instanceof String) {
+			return 0;
+		} else
+
+		if (value instanceof Integer) {
+			return 1;
+		} else
+
+		if (value instanceof Float) {
+			return 2;
+		} else
+
+		if (value instanceof Double) {
+			return 3;
+		}
+
+		// Raise the same error as ParameterUtil#equals(Object, String)
+		ParameterUtil.getDataType(value);
+
+		throw new EvaluationException(value + " is not a valid type.");
+	}
+
+	private static Object parseCell(int signature, String cell) {
+
+		try {
+			switch (signature) {
+			case 0:
+				return cell;
+			case 1:
+				return Integer.valueOf(cell);
+			case 2:
+				return Float.valueOf(cell);
+			case 3:
+				return Double.valueOf(cell);
+			default:
+				break;
+			}
+		} catch (NumberFormatException nfe) {
+			// Ignored
+		}
+
+		return null;
+	}
+
+	/**
+	 * An open addressing hash table for one combination of runtime data types.
+	 */
+	private class Table {
+
+		private int signature = 0;
+
+		private int mask = 0;
+
+		/**
+		 * The keys of an entry occupy <code>columns.length</code> consecutive elements.
+		 */
+		private Object[] keys = null;
+
+		/**
+		 * The row of an entry, or <code>-1</code> if the entry is empty.
+		 */
+		private int[] entries = null;
+
+		private Table(int signature) {
+			this.signature = signature;
+
+			int width = TableIndex.this.columns.length;
+
+			int capacity = 2;
+			while (capacity < 2 * TableIndex.this.rows.length) {
+				capacity *= 2;
+			}
+
+			this.mask = capacity - 1;
+			this.keys = new Object[capacity * width];
+			this.entries = new int[capacity];
+
+			Arrays.fill(this.entries, -1);
+
+			Object[] values = new Object[width];
+
+			rows: for (int row = 0; row < TableIndex.this.rows.length; row++) {
+				String[] cells = TableIndex.this.rows[row];
+
+				for (int i = 0; i < width; i++) {
+					values[i] = parseCell((signature >> (2 * i)) & 3, cells[i]);
+
+					if (values[i] == null) {
+						continue rows;
+					}
+				}
+
+				int entry = probe(null, null, values);
+
+				// The first matching row wins
+				if (this.entries[entry] < 0) {
+					System.arraycopy(values, 0, this.keys, entry * width, width);
+
+					this.entries[entry] = row;
+				}
+			}
+		}
+
+		public Object find(Object left, Object right, Object[] values) throws EvaluationException {
+			int row = this.entries[probe(left, right, values)];
+
+			if (row < 0) {
+				return null;
+			}
+
+			Object result = TableIndex.this.results[row];
+			if (result == NO_RESULT) {
+				throw new EvaluationException("There is no result here");
+			}
+
+			return result;
+		}
+
+		/**
+		 * @return The entry that holds the key, or the empty entry where the key belongs.
+		 */
+		private int probe(Object left, Object right, Object[] values) {
+			int width = TableIndex.this.columns.length;
+
+			int hash = 0;
+
+			for (int i = 0; i < width; i++) {
+				hash = 31 * hash + (component(i, left, right, values)).hashCode();
+			}
+
+			// Spread the hash code the same way as java.util.HashMap does
+			hash ^= (hash >>> 20) ^ (hash >>> 12);
+			hash ^= (hash >>> 7) ^ (hash >>> 4);
+
+			int entry = hash & this.mask;
+
+			entries: while (this.entries[entry] > -1) {
+
+				for (int i = 0; i < width; i++) {
+					Object key = this.keys[entry * width + i];
+
+					if (!(key).equals(component(i, left, right, values))) {
+						entry = (entry + 1) & this.mask;
+
+						continue entries;
+					}
+				}
+
+				break;
+			}
+
+			return entry;
+		}
+	}
+
+	private static Object component(int index, Object left, Object right, Object[] values) {
+
+		if (values != null) {
+			return values[index];
+		}
+
+		return (index == 0 ? left : right);
+	}
+
+	/**
+	 * Two bits of the signature per input column.
+	 */
+	private static final int MAX_COLUMNS = 15;
+
+	private static final Object NO_RESULT = new Object();
+}
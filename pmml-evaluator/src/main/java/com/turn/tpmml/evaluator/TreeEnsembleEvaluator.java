@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataField;
+import com.turn.tpmml.MiningModel;
+import com.turn.tpmml.MultipleModelMethodType;
+import com.turn.tpmml.PMML;
+import com.turn.tpmml.Segment;
+import com.turn.tpmml.Segmentation;
+import com.turn.tpmml.manager.IPMMLResult;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.PMMLResult;
+import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An evaluator for additive ensembles of trees (ie. the AVERAGE or WEIGHTED_AVERAGE of tree
+ * segments that are always selected), whose nodes only split on numeric constants.
+ *
+ * Records are scored by a {@link QuickScorer}, and the scores of the trees are aggregated the same
+ * way as {@link MiningModelEvaluator} does, so that the results are identical. Records that it
+ * can not score (eg. because of missing values) are evaluated segment by segment by
+ * {@link MiningModelEvaluator}.
+ *
+ * @see #isSupported(PMML, MiningModel)
+ * @see TreeEnsembleEvaluator2
+ */
+public class TreeEnsembleEvaluator extends MiningModelEvaluator {
+
+	private static final long serialVersionUID = 1L;
+
+	private transient volatile QuickScorer quickScorer = null;
+
+	/**
+	 * The indexes of the segments, in the order in which {@link MiningModelEvaluator} sums up
+	 * their scores.
+	 */
+	private transient volatile int[] order = null;
+
+	public TreeEnsembleEvaluator(PMML pmml) {
+		super(pmml);
+	}
+
+	public TreeEnsembleEvaluator(PMML pmml, MiningModel miningModel) {
+		super(pmml, miningModel);
+	}
+
+	@Override
+	IPMMLResult evaluateRegression(EvaluationContext context, DataField outputField)
+			throws EvaluationException {
+		double[] scores = (getOrCreateQuickScorer()).score(context);
+
+		if (scores == null) {
+			return super.evaluateRegression(context, outputField);
+		}
+
+		PMMLResult res = new PMMLResult();
+		try {
+			res.put(getOutputField(this).getName(), aggregate(getSegments(), scores));
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		return res;
+	}
+
+	/**
+	 * Aggregates the scores the same way as {@link MiningModelEvaluator#evaluateRegression}.
+	 */
+	private Double aggregate(List<Segment> segments, double[] scores)
+			throws EvaluationException {
+		int[] order = getOrCreateOrder(segments);
+
+		double result = 0d;
+		double sumWeight = 0d;
+
+		MultipleModelMethodType multipleModelMethod = getMultipleMethodModel();
+		switch (multipleModelMethod) {
+		case AVERAGE:
+			for (int i : order) {
+				result += scores[i];
+			}
+			if (order.length != 0) {
+				result /= order.length;
+			}
+			return result;
+		case WEIGHTED_AVERAGE:
+			for (int i : order) {
+				double weight = (segments.get(i)).getWeight();
+
+				result += (weight * scores[i]);
+				sumWeight += weight;
+			}
+			if (sumWeight != 0d) {
+				result /= sumWeight;
+			}
+			return result;
+		default:
+			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+					multipleModelMethod.name());
+		}
+	}
+
+	@Override
+	public void freeze() throws ModelManagerException {
+		getOrCreateQuickScorer();
+		getOrCreateOrder(getSegments());
+
+		super.freeze();
+	}
+
+	@Override
+	public void invalidateIndexes() {
+		super.invalidateIndexes();
+
+		this.quickScorer = null;
+		this.order = null;
+	}
+
+	private QuickScorer getOrCreateQuickScorer() throws EvaluationException {
+		QuickScorer quickScorer = this.quickScorer;
+
+		if (quickScorer == null) {
+			MiningModel miningModel;
+
+			try {
+				miningModel = getModel();
+			} catch (ModelManagerException e) {
+				throw new EvaluationException(e);
+			}
+
+			if (!isSupported(getPmml(), miningModel)) {
+				throw new EvaluationException("The model is not an additive ensemble of trees");
+			}
+
+			quickScorer = QuickScorer.compile(miningModel, getOrCreateEvaluationPlan());
+
+			this.quickScorer = quickScorer;
+		}
+
+		return quickScorer;
+	}
+
+	/**
+	 * {@link MiningModelEvaluator} keys the scores of segments by "segmentNumber" and the index
+	 * of the segment, and sums them up in the lexicographic order of these keys (ie. 0, 1, 10, 11,
+	 * ..., 2, 20, ...). Floating-point addition is not associative, so the same order is kept here.
+	 */
+	private int[] getOrCreateOrder(List<Segment> segments) {
+		int[] order = this.order;
+
+		if (order == null) {
+			Integer[] indexes = new Integer[segments.size()];
+			for (int i = 0; i < indexes.length; i++) {
+				indexes[i] = i;
+			}
+
+			Arrays.sort(indexes, new Comparator<Integer>() {
+
+				public int compare(Integer left, Integer right) {
+					return (String.valueOf(left)).compareTo(String.valueOf(right));
+				}
+			});
+
+			order = new int[indexes.length];
+			for (int i = 0; i < indexes.length; i++) {
+				order[i] = indexes[i];
+			}
+
+			this.order = order;
+		}
+
+		return order;
+	}
+
+	/**
+	 * @return <code>true</code> if the model can be evaluated by this evaluator,
+	 *         <code>false</code> otherwise. Unlike {@link TreeEnsembleEvaluator2}, the SUM of
+	 *         segments is not supported, because {@link MiningModelEvaluator} does not support it.
+	 */
+	public static boolean isSupported(PMML pmml, MiningModel miningModel) {
+		Segmentation segmentation = miningModel.getSegmentation();
+
+		if (segmentation != null &&
+				segmentation.getMultipleModelMethod() == MultipleModelMethodType.SUM) {
+			return false;
+		}
+
+		return QuickScorer.isSupported(pmml, miningModel);
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.MiningModel;
+import com.turn.tpmml.MultipleModelMethodType;
+import com.turn.tpmml.PMML;
+import com.turn.tpmml.Segment;
+import com.turn.tpmml.Segmentation;
+import com.turn.tpmml.manager.IPMMLResult;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.PMMLResult;
+import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
+
+import java.util.List;
+
+/**
+ * An evaluator for additive ensembles of trees (ie. the SUM, AVERAGE or WEIGHTED_AVERAGE of tree
+ * segments that are always selected), whose nodes only split on numeric constants.
+ *
+ * Records are scored by a {@link QuickScorer}, which applies the conditions of all trees feature
+ * by feature. The scores of the trees are aggregated, and records that it can not score are
+ * evaluated segment by segment, the same way as {@link MiningModelEvaluator2} does.
+ *
+ * @see #isSupported(PMML, MiningModel)
+ * @see TreeEnsembleEvaluator
+ */
+public class TreeEnsembleEvaluator2 extends MiningModelEvaluator2 {
+
+	private static final long serialVersionUID = 1L;
+
+	private transient volatile QuickScorer quickScorer = null;
+
+	public TreeEnsembleEvaluator2(PMML pmml) {
+		super(pmml);
+	}
+
+	public TreeEnsembleEvaluator2(PMML pmml, MiningModel miningModel) {
+		super(pmml, miningModel);
+	}
+
+	@Override
+	public IPMMLResult evaluateRegression(EvaluationContext context) throws EvaluationException {
+		double[] scores = (getOrCreateQuickScorer()).score(context);
+
+		if (scores == null) {
+			return super.evaluateRegression(context);
+		}
+
+		PMMLResult res = new PMMLResult();
+		try {
+			res.put(getTarget(), aggregate(getSegmentation(), scores));
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		return res;
+	}
+
+	/**
+	 * Aggregates the scores the same way as {@link MiningModelEvaluator2#evaluateRegression}.
+	 */
+	private static Double aggregate(Segmentation segmentation, double[] scores)
+			throws EvaluationException {
+		List<Segment> segments = segmentation.getSegments();
+
+		double sum = 0d;
+		double weightedSum = 0d;
+
+		for (int i = 0; i < scores.length; i++) {
+			sum += scores[i];
+			weightedSum += ((segments.get(i)).getWeight() * scores[i]);
+		}
+
+		int count = scores.length;
+
+		MultipleModelMethodType multipleModelMethod = segmentation.getMultipleModelMethod();
+		switch (multipleModelMethod) {
+		case SUM:
+			return sum;
+		case AVERAGE:
+			return (sum / count);
+		case WEIGHTED_AVERAGE:
+			return (weightedSum / count);
+		default:
+			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+					multipleModelMethod.name());
+		}
+	}
+
+	@Override
+	public void freeze() throws ModelManagerException {
+		getOrCreateQuickScorer();
+
+		super.freeze();
+	}
+
+	@Override
+	public void invalidateIndexes() {
+		super.invalidateIndexes();
+
+		this.quickScorer = null;
+	}
+
+	private QuickScorer getOrCreateQuickScorer() throws EvaluationException {
+		QuickScorer quickScorer = this.quickScorer;
+
+		if (quickScorer == null) {
+			MiningModel miningModel;
+
+			try {
+				miningModel = getModel();
+			} catch (ModelManagerException e) {
+				throw new EvaluationException(e);
+			}
+
+			if (!isSupported(getPmml(), miningModel)) {
+				throw new EvaluationException("The model is not an additive ensemble of trees");
+			}
+
+			quickScorer = QuickScorer.compile(miningModel, getOrCreateEvaluationPlan());
+
+			this.quickScorer = quickScorer;
+		}
+
+		return quickScorer;
+	}
+
+	/**
+	 * @return <code>true</code> if the model can be evaluated by this evaluator,
+	 *         <code>false</code> otherwise.
+	 */
+	public static boolean isSupported(PMML pmml, MiningModel miningModel) {
+		return QuickScorer.isSupported(pmml, miningModel);
+	}
+}
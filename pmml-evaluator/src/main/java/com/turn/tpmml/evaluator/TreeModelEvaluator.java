@@ -4,9 +4,9 @@
 package com.turn.tpmml.evaluator;
 
 import com.turn.tpmml.FieldName;
+import com.turn.tpmml.MissingValueStrategyType;
 import com.turn.tpmml.Node;
 import com.turn.tpmml.PMML;
-import com.turn.tpmml.Predicate;
 import com.turn.tpmml.TreeModel;
 import com.turn.tpmml.manager.IPMMLResult;
 import com.turn.tpmml.manager.ModelManagerException;
@@ -15,17 +15,33 @@ import com.turn.tpmml.manager.TreeModelManager;
 import com.turn.tpmml.manager.TreePMMLResult;
 
 import java.util.Map;
+import java.util.Set;
 
-public class TreeModelEvaluator extends TreeModelManager implements Evaluator {
+public class TreeModelEvaluator extends TreeModelManager implements ModelEvaluator {
 
 	private static final long serialVersionUID = 1L;
 
+	private transient EvaluationPlan evaluationPlan = null;
+
+	private transient EvaluationListener evaluationListener = null;
+
+	/**
+	 * The compiled tree is replaced when nodes are {@link #reorderNodes() reordered}, possibly
+	 * while other threads are evaluating it. Compiled nodes are not immutable, so the tree is
+	 * published through a volatile field.
+	 */
+	private transient volatile CompiledNode compiledRoot = null;
+
+	private transient volatile NodeStatistics nodeStatistics = null;
+
 	public TreeModelEvaluator(PMML pmml) {
 		super(pmml);
 	}
 
 	public TreeModelEvaluator(PMML pmml, TreeModel treeModel) {
 		super(pmml, treeModel);
+
+		this.evaluationPlan = EvaluatorUtil.compileEvaluationPlan(this);
 	}
 
 	public TreeModelEvaluator(TreeModelManager parent) throws ModelManagerException {
@@ -34,31 +50,53 @@ public class TreeModelEvaluator extends TreeModelManager implements Evaluator {
 
 	@Override
 	public Object prepare(FieldName name, Object value) throws EvaluationException {
-		try {
-			return ParameterUtil.prepare(getDataField(name), getMiningField(name), value);
-		} catch (ModelManagerException e) {
-			throw new EvaluationException(e);
-		}
+		return EvaluatorUtil.prepare(this, name, value);
 	}
 
 	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
+		ModelManagerEvaluationContext context =
+				new ModelManagerEvaluationContext(this, getOrCreateEvaluationPlan(), parameters);
+
+		return EvaluatorUtil.evaluate(this, context);
+	}
+
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters, Set<FieldName> outputFields)
+			throws EvaluationException {
+		return EvaluatorUtil.evaluate(this, parameters, outputFields);
+	}
+
+	public IPMMLResult evaluate(EvaluationContext parent) throws EvaluationException {
+		ModelManagerEvaluationContext context =
+				new ModelManagerEvaluationContext(this, getOrCreateEvaluationPlan(), parent);
+
+		return EvaluatorUtil.evaluate(this, context);
+	}
+
+	public void evaluateBatch(ColumnarInput input, ColumnarOutput output)
+			throws EvaluationException {
+		EvaluatorUtil.evaluateBatch(this, input, output);
+	}
+
+	public boolean evaluate(ReusableEvaluationContext context, ResultSink sink)
+			throws EvaluationException {
+		return EvaluatorUtil.evaluate(this, context, sink);
+	}
+
+	public IPMMLResult evaluateModel(ModelManagerEvaluationContext context)
+			throws EvaluationException {
 		String result = null;
-		Node currentNode = null;
-		Node rootNode;
-		try {
-			rootNode = getOrCreateRoot();
-		} catch (ModelManagerException e1) {
-			throw new EvaluationException(e1);
-		}
+		CompiledNode currentNode = null;
+		CompiledNode rootNode = getOrCreateCompiledRoot();
+
+		NodeStatistics nodeStatistics = getNodeStatistics();
 
-		ModelManagerEvaluationContext context = new ModelManagerEvaluationContext(this, parameters);
-		Predicate rootPredicate = rootNode.getPredicate();
-		Boolean predicateResult = PredicateUtil.evaluate(rootPredicate, context);
+		Boolean predicateResult = evaluateNode(rootNode, context);
 
 		if (predicateResult != null) {
 			if (predicateResult.booleanValue()) {
-				result = rootNode.getScore();
+				result = (rootNode.getNode()).getScore();
 				currentNode = rootNode;
+				hit(nodeStatistics, rootNode);
 			}
 		} else {
 			// if root evaluates to "UNKNOWN" - we are done for all missing value
@@ -71,21 +109,15 @@ public class TreeModelEvaluator extends TreeModelManager implements Evaluator {
 					break;
 				/* use default node if available */
 				case DEFAULT_CHILD:
-					String defaultChildId = rootNode.getDefaultChild();
-					if (defaultChildId == null) {
+					if ((rootNode.getNode()).getDefaultChild() == null) {
 						throw new EvaluationException("Default child is undefined");
 					}
-					Node defauldChild = null;
-					for (Node child : rootNode.getNodes()) {
-						if (child.getId() != null && child.getId().equals(defaultChildId)) {
-							defauldChild = child;
-							break;
-						}
-					}
+					CompiledNode defauldChild = rootNode.getDefaultChild();
 
 					if (defauldChild != null) {
 						// result = defauldChild.getScore();
 						currentNode = defauldChild;
+						hit(nodeStatistics, defauldChild);
 					} else {
 						throw new EvaluationException("No default child");
 					}
@@ -99,17 +131,20 @@ public class TreeModelEvaluator extends TreeModelManager implements Evaluator {
 			}
 		}
 
-		while (currentNode != null && currentNode.getNodes() != null &&
-				!currentNode.getNodes().isEmpty()) {
+		while (currentNode != null && currentNode.hasChildren()) {
 			boolean pickedNextNode = false;
-			for (Node node : currentNode.getNodes()) {
-				Predicate predicate = node.getPredicate();
-				predicateResult = PredicateUtil.evaluate(predicate, context);
+
+			CompiledNode[] children = currentNode.getChildren();
+			for (int i = 0; i < children.length; i++) {
+				CompiledNode node = children[i];
+
+				predicateResult = evaluateNode(node, context);
 
 				if (predicateResult != null) {
 					if (predicateResult.booleanValue()) {
-						result = node.getScore();
+						result = (node.getNode()).getScore();
 						currentNode = node;
+						hit(nodeStatistics, node);
 						pickedNextNode = true;
 						break;
 					}
@@ -132,20 +167,15 @@ public class TreeModelEvaluator extends TreeModelManager implements Evaluator {
 							break;
 						/* use default node if available */
 						case DEFAULT_CHILD:
-							String defaultChildId = node.getDefaultChild();
-							if (defaultChildId == null) {
+							if ((node.getNode()).getDefaultChild() == null) {
 								throw new EvaluationException("Default child is undefined");
 							}
-							Node defauldChild = null;
-							for (Node child : currentNode.getNodes()) {
-								if (child.getId() != null && child.getId().equals(defaultChildId)) {
-									defauldChild = child;
-									break;
-								}
-							}
+							// The default child is looked up among the siblings of the node
+							CompiledNode defauldChild = node.getDefaultSibling();
 							if (defauldChild != null) {
-								result = defauldChild.getScore();
+								result = (defauldChild.getNode()).getScore();
 								currentNode = defauldChild;
+								hit(nodeStatistics, defauldChild);
 							} else {
 								throw new EvaluationException("Default child is undefined");
 							}
@@ -183,11 +213,150 @@ public class TreeModelEvaluator extends TreeModelManager implements Evaluator {
 			res.put(getOutputField(this).getName(), result);
 			// Sometimes we ends up with no currentNode.
 			if (currentNode != null) {
-				res.setNodeId(currentNode.getId());
+				res.setNodeId((currentNode.getNode()).getId());
 			}
 		} catch (ModelManagerException e) {
 			throw new EvaluationException(e);
 		}
 		return res;
 	}
+
+	private static Boolean evaluateNode(CompiledNode node, EvaluationContext context)
+			throws EvaluationException {
+		CompiledPredicate predicate = node.getPredicate();
+		if (predicate == null) {
+			throw new EvaluationException("No predicate found for a node.");
+		}
+
+		return predicate.evaluate(context);
+	}
+
+	private static void hit(NodeStatistics nodeStatistics, CompiledNode node) {
+
+		if (nodeStatistics != null) {
+			nodeStatistics.increment(node.getIndex());
+		}
+	}
+
+	/**
+	 * Gets the compiled form of the tree. The tree is compiled on first use.
+	 */
+	private CompiledNode getOrCreateCompiledRoot() throws EvaluationException {
+		CompiledNode compiledRoot = this.compiledRoot;
+
+		if (compiledRoot == null) {
+			Node root;
+			try {
+				root = getOrCreateRoot();
+			} catch (ModelManagerException e) {
+				throw new EvaluationException(e);
+			}
+
+			compiledRoot = CompiledNode.compile(root, getOrCreateEvaluationPlan());
+
+			this.compiledRoot = compiledRoot;
+		}
+
+		return compiledRoot;
+	}
+
+	/**
+	 * Starts counting how many times every node of the tree is hit. The counts can be used to
+	 * {@link #reorderNodes() reorder} the tree, or exported for the next time that the model is
+	 * loaded.
+	 *
+	 * @param nodeStatistics The statistics of the tree of this model, or <code>null</code> to stop
+	 *            counting.
+	 *
+	 * @throws IllegalArgumentException If the statistics do not match the tree.
+	 * @throws IllegalStateException If the evaluator is frozen.
+	 */
+	public void setNodeStatistics(NodeStatistics nodeStatistics) throws EvaluationException {
+		ensureNotFrozen();
+
+		if (nodeStatistics != null &&
+				nodeStatistics.size() != (getOrCreateCompiledRoot()).getSize()) {
+			throw new IllegalArgumentException("Node statistics do not match the tree");
+		}
+
+		this.nodeStatistics = nodeStatistics;
+	}
+
+	public NodeStatistics getNodeStatistics() {
+		return this.nodeStatistics;
+	}
+
+	/**
+	 * Reorders the child nodes of the compiled tree by the hit counts of the current
+	 * {@link #getNodeStatistics() node statistics}, so that the most frequent child is tested
+	 * first. Only sibling nodes whose predicates are provably disjoint are reordered, so that
+	 * evaluation results do not change.
+	 *
+	 * Trees whose missing value strategy is {@link MissingValueStrategyType#DEFAULT_CHILD} are not
+	 * reordered, because the default child is looked up from the first child whose predicate is
+	 * unknown.
+	 *
+	 * The {@link Node nodes} of the model are not modified, and keep their document order.
+	 *
+	 * @throws IllegalStateException If the evaluator is frozen, or there are no node statistics.
+	 */
+	public void reorderNodes() throws EvaluationException {
+		ensureNotFrozen();
+
+		NodeStatistics nodeStatistics = getNodeStatistics();
+		if (nodeStatistics == null) {
+			throw new IllegalStateException("Node statistics are not available");
+		}
+
+		MissingValueStrategyType missingValueStrategy;
+		try {
+			missingValueStrategy = getModel().getMissingValueStrategy();
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		if (missingValueStrategy == MissingValueStrategyType.DEFAULT_CHILD) {
+			return;
+		}
+
+		CompiledNode root = getOrCreateCompiledRoot();
+
+		this.compiledRoot = root.reorder(nodeStatistics, this, getOrCreateEvaluationPlan());
+	}
+
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry, String name) {
+		ensureNotFrozen();
+
+		this.evaluationListener = EvaluatorUtil.getListener(metricsRegistry, name);
+	}
+
+	public EvaluationListener getEvaluationListener() {
+		return this.evaluationListener;
+	}
+
+	@Override
+	public void freeze() throws ModelManagerException {
+		getOrCreateEvaluationPlan();
+		getOrCreateCompiledRoot();
+
+		super.freeze();
+	}
+
+	@Override
+	public void invalidateIndexes() {
+		super.invalidateIndexes();
+
+		this.evaluationPlan = null;
+		this.compiledRoot = null;
+		this.nodeStatistics = null;
+	}
+
+	public EvaluationPlan getOrCreateEvaluationPlan() throws EvaluationException {
+
+		if (this.evaluationPlan == null) {
+			this.evaluationPlan = EvaluationPlan.compile(this);
+		}
+
+		return this.evaluationPlan;
+	}
 }
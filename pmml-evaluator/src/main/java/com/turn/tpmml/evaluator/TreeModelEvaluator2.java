@@ -4,10 +4,10 @@
 package com.turn.tpmml.evaluator;
 
 import com.turn.tpmml.FieldName;
+import com.turn.tpmml.MissingValueStrategyType;
 import com.turn.tpmml.NoTrueChildStrategyType;
 import com.turn.tpmml.Node;
 import com.turn.tpmml.PMML;
-import com.turn.tpmml.Predicate;
 import com.turn.tpmml.TreeModel;
 import com.turn.tpmml.manager.IPMMLResult;
 import com.turn.tpmml.manager.ModelManagerException;
@@ -16,19 +16,36 @@ import com.turn.tpmml.manager.TPMMLException.TPMMLCause;
 import com.turn.tpmml.manager.TreeModelManager;
 import com.turn.tpmml.manager.TreePMMLResult;
 
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-public class TreeModelEvaluator2 extends TreeModelManager implements Evaluator {
+public class TreeModelEvaluator2 extends TreeModelManager implements ModelEvaluator {
 
 	private static final long serialVersionUID = 1L;
 
+	private transient EvaluationPlan evaluationPlan = null;
+
+	private transient EvaluationListener evaluationListener = null;
+
+	/**
+	 * The compiled tree is replaced when nodes are {@link #reorderNodes() reordered}, possibly
+	 * while other threads are evaluating it. Compiled nodes are not immutable, so the tree is
+	 * published through a volatile field.
+	 */
+	private transient volatile CompiledNode compiledRoot = null;
+
+	private transient volatile FlatTree flatTree = null;
+
+	private transient volatile NodeStatistics nodeStatistics = null;
+
 	public TreeModelEvaluator2(PMML pmml) {
 		super(pmml);
 	}
 
 	public TreeModelEvaluator2(PMML pmml, TreeModel treeModel) {
 		super(pmml, treeModel);
+
+		this.evaluationPlan = EvaluatorUtil.compileEvaluationPlan(this);
 	}
 
 	public TreeModelEvaluator2(TreeModelManager parent) throws ModelManagerException {
@@ -36,11 +53,7 @@ public class TreeModelEvaluator2 extends TreeModelManager implements Evaluator {
 	}
 
 	public Object prepare(FieldName name, Object value) throws EvaluationException {
-		try {
-			return ParameterUtil.prepare(getDataField(name), getMiningField(name), value);
-		} catch (ModelManagerException e) {
-			throw new EvaluationException(e);
-		}
+		return EvaluatorUtil.prepare(this, name, value);
 	}
 
 	/**
@@ -49,14 +62,119 @@ public class TreeModelEvaluator2 extends TreeModelManager implements Evaluator {
 	 */
 	@Override
 	public IPMMLResult evaluate(Map<FieldName, ?> parameters) throws EvaluationException {
-		ModelManagerEvaluationContext context = new ModelManagerEvaluationContext(this, parameters);
+		ModelManagerEvaluationContext context =
+				new ModelManagerEvaluationContext(this, getOrCreateEvaluationPlan(), parameters);
+
+		return EvaluatorUtil.evaluate(this, context);
+	}
+
+	public IPMMLResult evaluate(Map<FieldName, ?> parameters, Set<FieldName> outputFields)
+			throws EvaluationException {
+		return EvaluatorUtil.evaluate(this, parameters, outputFields);
+	}
+
+	public IPMMLResult evaluate(EvaluationContext parent) throws EvaluationException {
+		ModelManagerEvaluationContext context =
+				new ModelManagerEvaluationContext(this, getOrCreateEvaluationPlan(), parent);
+
+		return EvaluatorUtil.evaluate(this, context);
+	}
+
+	/**
+	 * Tree models without output fields descend the flattened tree once per row, and write the
+	 * shared classification of the resulting node directly to the output column, without
+	 * creating a result. The batch is reported to the listener as a single evaluation. Other
+	 * models are evaluated row by row.
+	 */
+	public void evaluateBatch(ColumnarInput input, ColumnarOutput output)
+			throws EvaluationException {
+		EvaluationPlan plan = getOrCreateEvaluationPlan();
+
+		if (!(plan.getOutputPlan()).isEmpty()) {
+			EvaluatorUtil.evaluateBatch(this, input, output);
+
+			return;
+		}
+
+		FieldName name;
+		try {
+			name = getTarget();
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		BatchEvaluationContext context = new BatchEvaluationContext(this, plan, input);
+
+		output.prepare(this, input);
+
+		EvaluationListener listener = getEvaluationListener();
+
+		long begin = EvaluatorUtil.begin(listener, EvaluationStage.MODEL);
+
+		try {
+			FlatTree tree = getOrCreateFlatTree();
+
+			for (int row = 0; row < input.getSize(); row++) {
+				context.setRow(row);
+
+				int position = evaluateTree(tree, context);
+
+				output.put(row, name, (position > -1 ? tree.getClassification(position) : null));
+			}
+
+			EvaluatorUtil.end(listener, EvaluationStage.MODEL, begin);
+		} catch (EvaluationException ee) {
+			throw EvaluatorUtil.fail(listener, EvaluationStage.MODEL, ee);
+		}
+	}
+
+	/**
+	 * Tree models without output fields, or without selected output fields, pass the shared
+	 * classification of the resulting node to the sink, without creating a result.
+	 */
+	public boolean evaluate(ReusableEvaluationContext context, ResultSink sink)
+			throws EvaluationException {
+		context.checkModelManager(this);
+
+		OutputPlan outputPlan = context.getOutputPlan();
+		if (!outputPlan.isEmpty()) {
+			return EvaluatorUtil.forward(this, EvaluatorUtil.evaluate(this, context), sink);
+		}
+
+		FieldName name;
+		try {
+			name = getTarget();
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+
+		EvaluationListener listener = getEvaluationListener();
+
+		long begin = EvaluatorUtil.beginModel(listener, context);
+
+		try {
+			FlatTree tree = getOrCreateFlatTree();
+
+			int position = evaluateTree(tree, context);
+
+			EvaluatorUtil.endModel(listener, context, begin);
+
+			sink.put(name, (position > -1 ? tree.getClassification(position) : null));
+
+			return true;
+		} catch (EvaluationException ee) {
+			throw EvaluatorUtil.fail(listener, EvaluationStage.MODEL, ee);
+		}
+	}
 
-		Node node = evaluateTree(context);
+	public IPMMLResult evaluateModel(ModelManagerEvaluationContext context)
+			throws EvaluationException {
+		FlatTree tree = getOrCreateFlatTree();
 
-		NodeClassificationMap values = new NodeClassificationMap(node);
+		int position = evaluateTree(tree, context);
 
-		// Map<FieldName, NodeClassificationMap> predictions =
-		// Collections.singletonMap(getTarget(), values);
+		// The classification result is shared between evaluations
+		NodeClassificationMap values = (position > -1 ? tree.getClassification(position) : null);
 
 		TreePMMLResult res = new TreePMMLResult();
 		try {
@@ -67,96 +185,341 @@ public class TreeModelEvaluator2 extends TreeModelManager implements Evaluator {
 		PMMLResult tmpRes = OutputUtil.evaluate(res, context);
 		res.absorb(tmpRes);
 		// Sometimes we ends up with no currentNode.
-		if (node != null) {
-			res.setNodeId(node.getId());
+		if (values != null) {
+			res.setNodeId((values.getNode()).getId());
 		}
 
 		return res;
 	}
 
 	public Node evaluateTree(EvaluationContext context) throws EvaluationException {
-		Node root;
+		FlatTree tree = getOrCreateFlatTree();
+
+		int position = evaluateTree(tree, context);
+		if (position < 0) {
+			return null;
+		}
+
+		// Every node that the descent can stop at has a classification result
+		return (tree.getClassification(position)).getNode();
+	}
+
+	/**
+	 * Descends from the root node to the first child node whose predicate is <code>true</code>,
+	 * until a node does not have such child nodes.
+	 *
+	 * Predicates that are unknown (ie. evaluate to <code>null</code>) are handled by the
+	 * {@link MissingValueStrategyType missing value strategy} of the model, the same way as in
+	 * {@link TreeModelEvaluator}. The strategy is looked up only when a predicate is unknown.
+	 * Like there, an unknown predicate does not end the evaluation of its siblings. A later
+	 * sibling whose predicate is <code>true</code> is still descended to. The strategy decides
+	 * the result only if there is no such sibling:
+	 * <ul>
+	 * <li>{@link MissingValueStrategyType#LAST_PREDICTION}: the current node.
+	 * <li>{@link MissingValueStrategyType#NULL_PREDICTION}: no result.
+	 * <li>{@link MissingValueStrategyType#DEFAULT_CHILD}: the default child of the last unknown
+	 * child node, subject to the {@link NoTrueChildStrategyType no true child strategy}.
+	 * </ul>
+	 *
+	 * @return The position of the resulting node, or <code>-1</code> if there is no result.
+	 */
+	private int evaluateTree(FlatTree tree, EvaluationContext context)
+			throws EvaluationException {
+		NodeStatistics nodeStatistics = getNodeStatistics();
+
+		int position = 0;
+
+		Boolean value = tree.evaluate(position, context);
+
+		if (value == null) {
+			MissingValueStrategyType missingValueStrategy = getMissingValueStrategy();
+
+			switch (missingValueStrategy) {
+			// Same as false
+			case NONE:
+				return evaluateNoTrueChild(position);
+			// There is no prediction before the root node
+			case LAST_PREDICTION:
+			case NULL_PREDICTION:
+				return -1;
+			case DEFAULT_CHILD:
+				position = getDefaultPosition(tree.getDefaultChild(position));
+				break;
+			default:
+				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+						missingValueStrategy.name());
+			}
+		} else
+
+		if (!value.booleanValue()) {
+			return evaluateNoTrueChild(position);
+		}
+
+		while (true) {
+
+			if (nodeStatistics != null) {
+				nodeStatistics.increment(tree.getIndex(position));
+			}
+
+			int next = -1;
+
+			// The strategy of the last unknown child node, if any
+			MissingValueStrategyType missingValueStrategy = null;
+
+			int defaultPosition = -1;
+
+			int end = tree.getEnd(position);
+
+			for (int child = position + 1; child < end && next < 0; child = tree.getEnd(child)) {
+				value = tree.evaluate(child, context);
+
+				if (value == null) {
+					missingValueStrategy = getMissingValueStrategy();
+
+					switch (missingValueStrategy) {
+					// Same as false
+					case NONE:
+					case LAST_PREDICTION:
+					case NULL_PREDICTION:
+						break;
+					// The default child is looked up among the siblings of the node
+					case DEFAULT_CHILD:
+						defaultPosition = getDefaultPosition(tree.getDefaultSibling(child));
+						break;
+					default:
+						throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+								missingValueStrategy.name());
+					}
+				} else
+
+				if (value.booleanValue()) {
+					next = child;
+				}
+			}
+
+			if (next < 0) {
+
+				if (missingValueStrategy != null) {
+
+					switch (missingValueStrategy) {
+					case NONE:
+						break;
+					// Stop with the prediction of the current node
+					case LAST_PREDICTION:
+						return position;
+					case NULL_PREDICTION:
+						return -1;
+					// Stop at the default child
+					case DEFAULT_CHILD:
+						if (nodeStatistics != null) {
+							nodeStatistics.increment(tree.getIndex(defaultPosition));
+						}
+
+						return evaluateNoTrueChild(defaultPosition);
+					default:
+						throw new IllegalStateException();
+					}
+				}
+
+				return (position > 0 ? position : evaluateNoTrueChild(position));
+			}
+
+			position = next;
+		}
+	}
+
+	/**
+	 * @return The position of the resulting node, when the root node does not have a child node
+	 *         whose predicate is <code>true</code>, or when the descent stops at a default child.
+	 */
+	private int evaluateNoTrueChild(int position) throws EvaluationException {
+		NoTrueChildStrategyType noTrueChildStrategy = getNoTrueChildStrategy();
+
+		switch (noTrueChildStrategy) {
+		case RETURN_NULL_PREDICTION:
+			return -1;
+		case RETURN_LAST_PREDICTION:
+			return position;
+		default:
+			throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
+					noTrueChildStrategy.name());
+		}
+	}
+
+	private MissingValueStrategyType getMissingValueStrategy() throws EvaluationException {
+
+		try {
+			return getModel().getMissingValueStrategy();
+		} catch (ModelManagerException e) {
+			throw new EvaluationException(e);
+		}
+	}
+
+	private NoTrueChildStrategyType getNoTrueChildStrategy() throws EvaluationException {
+
 		try {
-			root = getOrCreateRoot();
+			return getModel().getNoTrueChildStrategy();
 		} catch (ModelManagerException e) {
 			throw new EvaluationException(e);
 		}
+	}
 
-		Prediction prediction = findTrueChild(root, root, context); // XXX
+	private static int getDefaultPosition(int position) throws EvaluationException {
 
-		if (prediction.getLastTrueNode() != null && prediction.getTrueNode() != null &&
-				!(prediction.getLastTrueNode()).equals(prediction.getTrueNode())) {
-			return prediction.getTrueNode();
-		} else {
-			NoTrueChildStrategyType noTrueChildStrategy;
+		if (position < 0) {
+			throw new EvaluationException("Default child is undefined");
+		}
+
+		return position;
+	}
+
+	/**
+	 * Gets the compiled form of the tree. The tree is compiled on first use.
+	 */
+	private CompiledNode getOrCreateCompiledRoot() throws EvaluationException {
+		CompiledNode compiledRoot = this.compiledRoot;
+
+		if (compiledRoot == null) {
+			Node root;
 			try {
-				noTrueChildStrategy = getModel().getNoTrueChildStrategy();
+				root = getOrCreateRoot();
 			} catch (ModelManagerException e) {
 				throw new EvaluationException(e);
 			}
-			switch (noTrueChildStrategy) {
-			case RETURN_NULL_PREDICTION:
-				return null;
-			case RETURN_LAST_PREDICTION:
-				return prediction.getLastTrueNode();
-			default:
-				throw new EvaluationException(TPMMLCause.UNSUPPORTED_OPERATION,
-						noTrueChildStrategy.name());
-			}
+
+			compiledRoot = CompiledNode.compile(root, getOrCreateEvaluationPlan());
+
+			this.compiledRoot = compiledRoot;
 		}
+
+		return compiledRoot;
 	}
 
-	private Prediction findTrueChild(Node lastNode, Node node, EvaluationContext context)
-			throws EvaluationException {
-		Boolean value = evaluateNode(node, context);
+	/**
+	 * Gets the flattened form of the compiled tree. The tree is flattened on first use.
+	 */
+	private FlatTree getOrCreateFlatTree() throws EvaluationException {
+		FlatTree flatTree = this.flatTree;
 
-		if (value == null) {
-			throw new EvaluationException("A node has been evaluated to null.");
-		} // End if
+		if (flatTree == null) {
+			CompiledNode root = getOrCreateCompiledRoot();
 
-		if (value.booleanValue()) {
-			List<Node> children = node.getNodes();
+			flatTree = compileFlatTree(root);
 
-			for (Node child : children) {
-				Prediction childPrediction = findTrueChild(node, child, context);
+			this.flatTree = flatTree;
+		}
 
-				if (childPrediction.getTrueNode() != null) {
-					return childPrediction;
-				}
-			}
+		return flatTree;
+	}
 
-			return new Prediction(lastNode, node);
-		} else {
-			return new Prediction(lastNode, null);
-		}
+	/**
+	 * The classification results of the flattened tree depend on the missing value strategy and
+	 * the no true child strategy of the model.
+	 */
+	private FlatTree compileFlatTree(CompiledNode root) throws EvaluationException {
+		return FlatTree.compile(root, getOrCreateEvaluationPlan(), getMissingValueStrategy(),
+				getNoTrueChildStrategy());
 	}
 
-	private Boolean evaluateNode(Node node, EvaluationContext context) throws EvaluationException {
-		Predicate predicate = node.getPredicate();
-		if (predicate == null) {
-			throw new EvaluationException("No predicate found for a node.");
+	/**
+	 * Starts counting how many times every node of the tree is hit. The counts can be used to
+	 * {@link #reorderNodes() reorder} the tree, or exported for the next time that the model is
+	 * loaded.
+	 *
+	 * @param nodeStatistics The statistics of the tree of this model, or <code>null</code> to stop
+	 *            counting.
+	 *
+	 * @throws IllegalArgumentException If the statistics do not match the tree.
+	 * @throws IllegalStateException If the evaluator is frozen.
+	 */
+	public void setNodeStatistics(NodeStatistics nodeStatistics) throws EvaluationException {
+		ensureNotFrozen();
+
+		if (nodeStatistics != null &&
+				nodeStatistics.size() != (getOrCreateCompiledRoot()).getSize()) {
+			throw new IllegalArgumentException("Node statistics do not match the tree");
 		}
 
-		return PredicateUtil.evaluate(predicate, context);
+		this.nodeStatistics = nodeStatistics;
 	}
 
-	private static class Prediction {
-
-		private Node lastTrueNode = null;
+	public NodeStatistics getNodeStatistics() {
+		return this.nodeStatistics;
+	}
 
-		private Node trueNode = null;
+	/**
+	 * Reorders the child nodes of the compiled tree by the hit counts of the current
+	 * {@link #getNodeStatistics() node statistics}, so that the most frequent child is tested
+	 * first. Only sibling nodes whose predicates are provably disjoint are reordered, so that
+	 * evaluation results do not change.
+	 *
+	 * Trees whose missing value strategy is {@link MissingValueStrategyType#DEFAULT_CHILD} are not
+	 * reordered, because the default child is looked up from the first child whose predicate is
+	 * unknown.
+	 *
+	 * The {@link Node nodes} of the model are not modified, and keep their document order.
+	 *
+	 * @throws IllegalStateException If the evaluator is frozen, or there are no node statistics.
+	 */
+	public void reorderNodes() throws EvaluationException {
+		ensureNotFrozen();
 
-		public Prediction(Node lastTrueNode, Node trueNode) {
-			this.lastTrueNode = lastTrueNode;
-			this.trueNode = trueNode;
+		NodeStatistics nodeStatistics = getNodeStatistics();
+		if (nodeStatistics == null) {
+			throw new IllegalStateException("Node statistics are not available");
 		}
 
-		public Node getLastTrueNode() {
-			return this.lastTrueNode;
+		if (getMissingValueStrategy() == MissingValueStrategyType.DEFAULT_CHILD) {
+			return;
 		}
 
-		public Node getTrueNode() {
-			return this.trueNode;
+		CompiledNode root = getOrCreateCompiledRoot();
+
+		CompiledNode reorderedRoot =
+				root.reorder(nodeStatistics, this, getOrCreateEvaluationPlan());
+
+		// The flattened tree is built before it is published, so that evaluations never see an
+		// incomplete tree
+		FlatTree reorderedTree = compileFlatTree(reorderedRoot);
+
+		this.compiledRoot = reorderedRoot;
+		this.flatTree = reorderedTree;
+	}
+
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry, String name) {
+		ensureNotFrozen();
+
+		this.evaluationListener = EvaluatorUtil.getListener(metricsRegistry, name);
+	}
+
+	public EvaluationListener getEvaluationListener() {
+		return this.evaluationListener;
+	}
+
+	@Override
+	public void freeze() throws ModelManagerException {
+		getOrCreateEvaluationPlan();
+		getOrCreateFlatTree();
+
+		super.freeze();
+	}
+
+	@Override
+	public void invalidateIndexes() {
+		super.invalidateIndexes();
+
+		this.evaluationPlan = null;
+		this.compiledRoot = null;
+		this.flatTree = null;
+		this.nodeStatistics = null;
+	}
+
+	public EvaluationPlan getOrCreateEvaluationPlan() throws EvaluationException {
+
+		if (this.evaluationPlan == null) {
+			this.evaluationPlan = EvaluationPlan.compile(this);
 		}
+
+		return this.evaluationPlan;
 	}
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+/**
+ * A String constant that has been parsed once to every runtime data type that it can be compared
+ * against.
+ *
+ * Comparisons give the same results as {@link ParameterUtil#compare(Object, String)} and
+ * {@link ParameterUtil#equals(Object, String)}, and fall back to them if the constant could not be
+ * parsed to the data type of the value.
+ */
+class TypedValue {
+
+	private String stringValue = null;
+
+	private boolean hasIntValue = false;
+
+	private int intValue = 0;
+
+	private boolean hasFloatValue = false;
+
+	private float floatValue = 0f;
+
+	private boolean hasDoubleValue = false;
+
+	private double doubleValue = 0d;
+
+	TypedValue(String value) {
+		this.stringValue = value;
+
+		if (value == null) {
+			return;
+		}
+
+		// Parse the constant the same way as ParameterUtil#cast(DataType, Object) does.
+		// Constants that can not be parsed are left to ParameterUtil
+		try {
+			this.intValue = Integer.parseInt(value);
+			this.hasIntValue = true;
+		} catch (NumberFormatException nfe) {
+			// Ignored
+		}
+
+		try {
+			this.floatValue = Float.parseFloat(value);
+			this.hasFloatValue = true;
+		} catch (NumberFormatException nfe) {
+			// Ignored
+		}
+
+		try {
+			this.doubleValue = Double.parseDouble(value);
+			this.hasDoubleValue = true;
+		} catch (NumberFormatException nfe) {
+			// Ignored
+		}
+	}
+
+	public String getStringValue() {
+		return this.stringValue;
+	}
+
+	/**
+	 * @see ParameterUtil#compare(Object, String)
+	 */
+	public int compareTo(Object value) throws EvaluationException {
+
+		if (value instanceof Double) {
+
+			if (this.hasDoubleValue) {
+				return Double.compare(((Double) value).doubleValue(), this.doubleValue);
+			}
+		} else
+
+		if (value instanceof Integer) {
+
+			if (this.hasIntValue) {
+				int intValue = ((Integer) value).intValue();
+
+				return (intValue < this.intValue ? -1 : (intValue == this.intValue ? 0 : 1));
+			}
+		} else
+
+		if (value instanceof Float) {
+
+			if (this.hasFloatValue) {
+				return Float.compare(((Float) value).floatValue(), this.floatValue);
+			}
+		} else
+
+		if (value instanceof String) {
+
+			if (this.stringValue != null) {
+				return ((String) value).compareTo(this.stringValue);
+			}
+		}
+
+		// Raise the same error as the interpreter
+		return ParameterUtil.compare(value, this.stringValue);
+	}
+
+	/**
+	 * @see ParameterUtil#equals(Object, String)
+	 */
+	public boolean equalTo(Object value) throws EvaluationException {
+
+		if (value instanceof Double) {
+
+			if (this.hasDoubleValue) {
+				return Double.compare(((Double) value).doubleValue(), this.doubleValue) == 0;
+			}
+		} else
+
+		if (value instanceof Integer) {
+
+			if (this.hasIntValue) {
+				return ((Integer) value).intValue() == this.intValue;
+			}
+		} else
+
+		if (value instanceof Float) {
+
+			if (this.hasFloatValue) {
+				return Float.compare(((Float) value).floatValue(), this.floatValue) == 0;
+			}
+		} else
+
+		if (value instanceof String) {
+
+			if (this.stringValue != null) {
+				return (value).equals(this.stringValue);
+			}
+		}
+
+		return ParameterUtil.equals(value, this.stringValue);
+	}
+}
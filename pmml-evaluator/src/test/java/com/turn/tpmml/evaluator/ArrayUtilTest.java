@@ -11,6 +11,8 @@ import java.util.List;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 
 public class ArrayUtilTest {
@@ -34,6 +36,50 @@ public class ArrayUtilTest {
 		assertEquals(Arrays.asList("\"a b c\""), tokenizeStringArray("\"\\\"a b c\\\"\""));
 	}
 
+	@Test
+	public void containsIntArray() throws EvaluationException {
+		Array array = new Array("1 2 3", Array.Type.INT);
+
+		assertContains(array, "1", 1, 1f, 1d);
+		assertNotContains(array, "1.0", 0, 1.5f, 1.5d);
+	}
+
+	@Test
+	public void containsRealArray() throws EvaluationException {
+		Array array = new Array("0.1 2 3.5", Array.Type.REAL);
+
+		assertContains(array, "0.1", 2, 0.1f, 0.1d, 3.5f, 3.5d);
+		assertNotContains(array, "2.0", 3, 0.2f, 0.2d);
+	}
+
+	@Test
+	public void containsStringArray() throws EvaluationException {
+		Array array = new Array("a 1 01 \"1.0\"", Array.Type.STRING);
+
+		assertContains(array, "a", "01", 1, 1d);
+		assertNotContains(array, "b", 2, 2f, 2d);
+	}
+
+	private static void assertContains(Array array, Object... values)
+			throws EvaluationException {
+		ArraySet set = ArraySet.create(array);
+
+		for (Object value : values) {
+			assertTrue(String.valueOf(value), ArrayUtil.contains(array, value));
+			assertTrue(String.valueOf(value), set.contains(value));
+		}
+	}
+
+	private static void assertNotContains(Array array, Object... values)
+			throws EvaluationException {
+		ArraySet set = ArraySet.create(array);
+
+		for (Object value : values) {
+			assertFalse(String.valueOf(value), ArrayUtil.contains(array, value));
+			assertFalse(String.valueOf(value), set.contains(value));
+		}
+	}
+
 	private static List<String> tokenizeIntArray(String content) throws EvaluationException {
 		return ArrayUtil.tokenize(new Array(content, Array.Type.INT));
 	}
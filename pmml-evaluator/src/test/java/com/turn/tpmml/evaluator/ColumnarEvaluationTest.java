@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.manager.IPMMLResult;
+import com.turn.tpmml.manager.RegressionModelManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ColumnarEvaluationTest {
+
+	@Test
+	public void evaluateBatch() throws Exception {
+		RegressionModelEvaluator evaluator = prepareModel();
+
+		FieldName x1 = new FieldName("x1");
+		FieldName x2 = new FieldName("x2");
+		FieldName y = new FieldName("y");
+
+		ColumnarInput input = new ColumnarInput(4);
+		input.putColumn(x1, new double[] { 1d, 2d, 3d, 4d });
+		input.putColumn(x2, new Object[] { 1d, null, 0.5d, -2d });
+
+		ColumnarOutput output = new ColumnarOutput(4);
+
+		evaluator.evaluateBatch(input, output);
+
+		Object[] column = output.getColumn(y);
+
+		assertEquals(4, column.length);
+
+		for (int row = 0; row < input.getSize(); row++) {
+			Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+			parameters.put(x1, input.getValue(x1, row));
+			parameters.put(x2, input.getValue(x2, row));
+
+			IPMMLResult result = evaluator.evaluate(parameters);
+
+			if (result == null) {
+				assertNull(column[row]);
+
+				continue;
+			}
+
+			assertEquals(result.getValue(y), column[row]);
+		}
+
+		assertEquals(6d, column[0]);
+		assertNull(column[1]);
+		assertEquals(3d, column[3]);
+	}
+
+	@Test
+	public void evaluatePrimitiveBatch() throws Exception {
+		RegressionModelEvaluator evaluator = prepareModel();
+
+		FieldName x1 = new FieldName("x1");
+		FieldName x2 = new FieldName("x2");
+		FieldName y = new FieldName("y");
+
+		ColumnarInput input = new ColumnarInput(4);
+		input.putColumn(x1, new double[] { 1d, 2d, 3d, 4d });
+		input.putColumn(x2, new double[] { 1d, Double.NaN, 0.5d, -2d });
+
+		ColumnarOutput output = new ColumnarOutput(4);
+
+		// The slice is evaluated column by column
+		evaluator.evaluateBatch(input.slice(1, 4), output.slice(1, 4));
+
+		Object[] column = output.getColumn(y);
+
+		assertNull(column[0]);
+
+		for (int row = 1; row < input.getSize(); row++) {
+			Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+			parameters.put(x1, input.getValue(x1, row));
+			parameters.put(x2, input.getValue(x2, row));
+
+			IPMMLResult result = evaluator.evaluate(parameters);
+
+			assertEquals(result.getValue(y), column[row]);
+		}
+
+		assertEquals(8.5d, column[2]);
+	}
+
+	@Test
+	public void evaluateEmptyBatch() throws Exception {
+		RegressionModelEvaluator evaluator = prepareModel();
+
+		ColumnarInput input = new ColumnarInput(0);
+		input.putColumn(new FieldName("x1"), new double[0]);
+
+		ColumnarOutput output = new ColumnarOutput(0);
+
+		evaluator.evaluateBatch(input, output);
+
+		assertEquals(0, (output.getColumn(new FieldName("y"))).length);
+	}
+
+	static RegressionModelEvaluator prepareModel() throws Exception {
+		RegressionModelManager regressionModelManager = new RegressionModelManager();
+		regressionModelManager.createRegressionModel();
+
+		FieldName x1 = new FieldName("x1");
+		regressionModelManager.addField(x1, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName x2 = new FieldName("x2");
+		regressionModelManager.addField(x2, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName y = new FieldName("y");
+		regressionModelManager.addField(y, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.PREDICTED);
+
+		regressionModelManager.addRegressionTable(1d);
+		regressionModelManager.addNumericPredictor(x1, 2d);
+		regressionModelManager.addNumericPredictor(x2, 3d);
+
+		return new RegressionModelEvaluator(regressionModelManager);
+	}
+}
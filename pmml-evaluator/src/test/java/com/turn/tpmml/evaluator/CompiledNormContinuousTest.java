@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.LinearNorm;
+import com.turn.tpmml.NormContinuous;
+import com.turn.tpmml.OutlierTreatmentMethodType;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CompiledNormContinuousTest {
+
+	@Test
+	public void normalize() throws EvaluationException {
+		NormContinuous norm = createNorm(new double[][] { { 0.01, 0.0 }, { 3.07897, 0.5 },
+				{ 6.0, 0.6 }, { 11.44, 1.0 } });
+
+		double[] values = { -1.0, 0.01, 1.212, 3.07897, 5.0, 6.0, 6.5, 11.44, 12.2, Double.NaN };
+
+		OutlierTreatmentMethodType[] outliers = { OutlierTreatmentMethodType.AS_IS,
+				OutlierTreatmentMethodType.AS_MISSING_VALUES,
+				OutlierTreatmentMethodType.AS_EXTREME_VALUES };
+
+		norm.setMapMissingTo(0.5);
+
+		for (OutlierTreatmentMethodType outlier : outliers) {
+			norm.setOutliers(outlier);
+
+			CompiledNormContinuous normalization = CompiledNormContinuous.create(norm);
+
+			for (double value : values) {
+				assertEquals(outlier + " " + value, NormalizationUtil.normalize(norm, value),
+						normalization.normalize(value), 0d);
+			}
+		}
+	}
+
+	@Test
+	public void denormalize() throws EvaluationException {
+		double[] values = { -0.5, 0.0, 0.047247, 0.5, 0.741838, 1.0, 1.5, Double.NaN };
+
+		NormContinuous ascending = createNorm(new double[][] { { 0.01, 0.0 }, { 3.07897, 0.5 },
+				{ 6.0, 0.6 }, { 11.44, 1.0 } });
+
+		NormContinuous descending = createNorm(new double[][] { { 0.01, 1.0 }, { 3.07897, 0.5 },
+				{ 6.0, 0.4 }, { 11.44, 0.0 } });
+
+		for (NormContinuous norm : new NormContinuous[] { ascending, descending }) {
+			CompiledNormContinuous normalization = CompiledNormContinuous.create(norm);
+
+			for (double value : values) {
+				assertEquals(String.valueOf(value), NormalizationUtil.denormalize(norm, value),
+						normalization.denormalize(value), 0d);
+			}
+		}
+	}
+
+	private static NormContinuous createNorm(double[][] linearNorms) {
+		NormContinuous norm = new NormContinuous(new FieldName("x"));
+
+		for (double[] linearNorm : linearNorms) {
+			norm.getLinearNorms().add(new LinearNorm(linearNorm[0], linearNorm[1]));
+		}
+
+		return norm;
+	}
+}
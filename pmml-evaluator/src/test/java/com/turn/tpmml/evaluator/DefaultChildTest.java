@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.MissingValueStrategyType;
+import com.turn.tpmml.Node;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.TreeModel;
+import com.turn.tpmml.manager.TreeModelManager;
+import com.turn.tpmml.manager.TreePMMLResult;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class DefaultChildTest {
+
+	@Test
+	public void resolve() throws Exception {
+		TreeModelEvaluator evaluator = prepareModel();
+
+		CompiledNode root = CompiledNode.compile(evaluator.getOrCreateRoot(),
+				evaluator.getOrCreateEvaluationPlan());
+
+		CompiledNode[] children = root.getChildren();
+
+		assertSame(children[1], root.getDefaultChild());
+		assertSame(children[1], (children[0]).getDefaultSibling());
+
+		assertNull(root.getDefaultSibling());
+		assertNull((children[1]).getDefaultSibling());
+
+		// Reordered copies refer to the copies of their children
+		NodeStatistics nodeStatistics = new NodeStatistics(evaluator.getOrCreateRoot());
+
+		CompiledNode reorderedRoot = root.reorder(nodeStatistics, evaluator,
+				evaluator.getOrCreateEvaluationPlan());
+
+		assertSame((reorderedRoot.getChildren())[1], reorderedRoot.getDefaultChild());
+	}
+
+	@Test
+	public void evaluate() throws Exception {
+		TreeModelEvaluator evaluator = prepareModel();
+
+		// The predicate of the root node is unknown, because the field "y" is missing
+		TreePMMLResult result = (TreePMMLResult) evaluator.evaluate(Collections.singletonMap(
+				new FieldName("x"), 5d));
+
+		assertEquals("B", result.getNodeId());
+
+		TreeModelEvaluator2 alternateEvaluator = new TreeModelEvaluator2(evaluator);
+
+		result = (TreePMMLResult) alternateEvaluator.evaluate(Collections.singletonMap(
+				new FieldName("x"), 5d));
+
+		assertEquals("B", result.getNodeId());
+	}
+
+	private static TreeModelEvaluator prepareModel() throws Exception {
+		TreeModelManager treeModelManager = new TreeModelManager();
+
+		TreeModel treeModel = treeModelManager.createClassificationModel();
+		treeModel.setMissingValueStrategy(MissingValueStrategyType.DEFAULT_CHILD);
+
+		FieldName x = new FieldName("x");
+		treeModelManager.addField(x, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName y = new FieldName("y");
+		treeModelManager.addField(y, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName target = new FieldName("target");
+		treeModelManager.addField(target, null, OpType.CATEGORICAL, DataType.STRING,
+				FieldUsageType.PREDICTED);
+
+		Node root = treeModelManager.getOrCreateRoot();
+		root.setId("Root");
+		root.setPredicate(createPredicate(y, SimplePredicate.Operator.GREATER_THAN, "0"));
+		root.setDefaultChild("B");
+
+		Node a = treeModelManager.addNode(root,
+				createPredicate(y, SimplePredicate.Operator.GREATER_THAN, "1"));
+		a.setId("A");
+		a.setScore("a");
+		a.setDefaultChild("B");
+
+		Node b = treeModelManager.addNode(root,
+				createPredicate(x, SimplePredicate.Operator.GREATER_THAN, "1"));
+		b.setId("B");
+		b.setScore("b");
+
+		return new TreeModelEvaluator(treeModelManager);
+	}
+
+	private static SimplePredicate createPredicate(FieldName name,
+			SimplePredicate.Operator operator, String value) {
+		SimplePredicate simplePredicate = new SimplePredicate(name, operator);
+		simplePredicate.setValue(value);
+
+		return simplePredicate;
+	}
+}
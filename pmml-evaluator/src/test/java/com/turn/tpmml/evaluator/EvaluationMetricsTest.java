@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.DerivedField;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldRef;
+import com.turn.tpmml.MiningFunctionType;
+import com.turn.tpmml.MiningModel;
+import com.turn.tpmml.MultipleModelMethodType;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.OutputField;
+import com.turn.tpmml.ResultFeatureType;
+import com.turn.tpmml.Segment;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class EvaluationMetricsTest {
+
+	@Test
+	public void evaluate() throws Exception {
+		RegressionModelEvaluator evaluator = ColumnarEvaluationTest.prepareModel();
+
+		DefaultMetricsRegistry metricsRegistry = new DefaultMetricsRegistry();
+
+		evaluator.setMetricsRegistry(metricsRegistry, "regression");
+
+		Map<FieldName, Object> parameters = createParameters(evaluator);
+
+		for (int i = 0; i < 3; i++) {
+			evaluator.evaluate(parameters);
+		}
+
+		EvaluationMetrics metrics = metricsRegistry.getMetrics("regression");
+
+		assertEquals(2, metrics.getCount(EvaluationStage.PREPARE));
+		assertEquals(3, metrics.getCount(EvaluationStage.MODEL));
+		assertEquals(0, metrics.getErrorCount(EvaluationStage.MODEL));
+
+		// There are no output fields
+		assertEquals(0, metrics.getCount(EvaluationStage.OUTPUT));
+
+		OutputField diagnostic = new OutputField(new FieldName("diagnostic"));
+		diagnostic.setFeature(ResultFeatureType.TRANSFORMED_VALUE);
+
+		((evaluator.getOrCreateOutput()).getOutputFields()).add(diagnostic);
+
+		evaluator.invalidateIndexes();
+
+		try {
+			evaluator.evaluate(parameters);
+
+			throw new AssertionError();
+		} catch (EvaluationException ee) {
+			// Ignored
+		}
+
+		// The failure is counted by the stage where it started, and not by the enclosing stage
+		assertEquals(4, metrics.getCount(EvaluationStage.MODEL));
+		assertEquals(0, metrics.getErrorCount(EvaluationStage.MODEL));
+		assertEquals(1, metrics.getErrorCount(EvaluationStage.OUTPUT));
+
+		evaluator.setMetricsRegistry(null, null);
+
+		assertNull(evaluator.getEvaluationListener());
+	}
+
+	@Test
+	public void sample() throws Exception {
+		RegressionModelEvaluator evaluator = ColumnarEvaluationTest.prepareModel();
+
+		DefaultMetricsRegistry metricsRegistry = new DefaultMetricsRegistry(4);
+
+		evaluator.setMetricsRegistry(metricsRegistry, "regression");
+
+		Map<FieldName, Object> parameters = createParameters(evaluator);
+
+		for (int i = 0; i < 8; i++) {
+			evaluator.evaluate(parameters);
+		}
+
+		EvaluationMetrics metrics = metricsRegistry.getMetrics("regression");
+
+		// Every evaluation is counted, but only one in four is measured
+		assertEquals(8, metrics.getCount(EvaluationStage.MODEL));
+		assertEquals(2, (metrics.getLatencies(EvaluationStage.MODEL)).getCount());
+
+		assertEquals(4, metrics.getSampleInterval());
+	}
+
+	@Test
+	public void evaluateTransformations() throws Exception {
+		RegressionModelEvaluator evaluator = ColumnarEvaluationTest.prepareModel();
+
+		List<DerivedField> derivedFields =
+				(evaluator.getOrCreateLocalTransformations()).getDerivedFields();
+		derivedFields.add(createDerivedField(new FieldName("w"), new FieldName("x1")));
+		derivedFields.add(createDerivedField(new FieldName("v"), new FieldName("w")));
+
+		evaluator.addNumericPredictor(new FieldName("v"), 1d);
+
+		DefaultMetricsRegistry metricsRegistry = new DefaultMetricsRegistry();
+
+		evaluator.setMetricsRegistry(metricsRegistry, "regression");
+
+		assertEquals(7d, (evaluator.evaluate(createParameters(evaluator))).getResult());
+
+		EvaluationMetrics metrics = metricsRegistry.getMetrics("regression");
+
+		// Derived fields are reported once per evaluation, together with the fields they refer to
+		assertEquals(1, metrics.getCount(EvaluationStage.TRANSFORMATIONS));
+		assertEquals(1, metrics.getCount(EvaluationStage.MODEL));
+	}
+
+	@Test
+	public void evaluateSegments() throws Exception {
+		RegressionModelEvaluator regressionEvaluator = ColumnarEvaluationTest.prepareModel();
+
+		MiningModel miningModel =
+				new MiningModel(regressionEvaluator.getMiningSchema(),
+						MiningFunctionType.REGRESSION);
+
+		MiningModelEvaluator2 evaluator =
+				new MiningModelEvaluator2(regressionEvaluator.getPmml(), miningModel);
+		evaluator.createSegmentation(MultipleModelMethodType.SELECT_FIRST);
+
+		Segment segment = evaluator.addSegment(regressionEvaluator.getModel());
+		segment.setId("first");
+
+		DefaultMetricsRegistry metricsRegistry = new DefaultMetricsRegistry();
+
+		evaluator.setMetricsRegistry(metricsRegistry, "mining");
+
+		assertEquals(6d, (evaluator.evaluate(createParameters(evaluator))).getResult());
+
+		assertEquals(1, (metricsRegistry.getMetrics("mining")).getCount(EvaluationStage.MODEL));
+
+		// Segments are not registered by default
+		assertNull(metricsRegistry.getMetrics("mining/first"));
+
+		evaluator.setSegmentMetrics(true);
+
+		assertEquals(6d, (evaluator.evaluate(createParameters(evaluator))).getResult());
+
+		assertEquals(2, (metricsRegistry.getMetrics("mining")).getCount(EvaluationStage.MODEL));
+		assertEquals(1, (metricsRegistry.getMetrics("mining/first"))
+				.getCount(EvaluationStage.MODEL));
+
+		// Segment evaluators that exist already are moved to the new registry
+		metricsRegistry = new DefaultMetricsRegistry();
+
+		evaluator.setMetricsRegistry(metricsRegistry, "mining");
+
+		evaluator.evaluate(createParameters(evaluator));
+
+		assertNotNull(metricsRegistry.getMetrics("mining/first"));
+	}
+
+	@Test
+	public void recordLatencies() {
+		LatencyHistogram histogram = new LatencyHistogram(1);
+
+		assertEquals(0L, histogram.getValueAtQuantile(0.5d));
+
+		histogram.record(0L);
+		histogram.record(1L);
+		histogram.record(1000L);
+		histogram.record(-1L);
+
+		assertEquals(4, histogram.getCount());
+		assertEquals(1001L, histogram.getSum());
+
+		assertEquals(2, histogram.getCount(0));
+		assertEquals(1, histogram.getCount(1));
+		assertEquals(1, histogram.getCount(10));
+
+		assertEquals(0L, histogram.getValueAtQuantile(0.5d));
+		assertEquals(1L, histogram.getValueAtQuantile(0.75d));
+		assertEquals(1023L, histogram.getValueAtQuantile(1d));
+
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.getUpperBound(LatencyHistogram.BUCKETS - 1));
+	}
+
+	@Test
+	public void countConcurrently() throws Exception {
+		final StripedCounter counter = new StripedCounter(4);
+
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+
+				@Override
+				public void run() {
+
+					for (int j = 0; j < 10000; j++) {
+						counter.increment();
+					}
+				}
+			};
+
+			threads[i].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(40000L, counter.sum());
+	}
+
+	private static DerivedField createDerivedField(FieldName name, FieldName field) {
+		DerivedField derivedField = new DerivedField(OpType.CONTINUOUS, DataType.DOUBLE);
+		derivedField.setName(name);
+		derivedField.setExpression(new FieldRef(field));
+
+		return derivedField;
+	}
+
+	private static Map<FieldName, Object> createParameters(Evaluator evaluator)
+			throws EvaluationException {
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x1"), evaluator.prepare(new FieldName("x1"), 1d));
+		parameters.put(new FieldName("x2"), evaluator.prepare(new FieldName("x2"), 1d));
+
+		return parameters;
+	}
+}
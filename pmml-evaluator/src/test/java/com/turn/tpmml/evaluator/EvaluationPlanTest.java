@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.DerivedField;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldRef;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.OutputField;
+import com.turn.tpmml.manager.ModelManagerException;
+import com.turn.tpmml.manager.TreeModelManager;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EvaluationPlanTest {
+
+	@Test
+	public void compile() throws EvaluationException, ModelManagerException {
+		TreeModelEvaluator evaluator = prepareModel();
+
+		EvaluationPlan plan = evaluator.getOrCreateEvaluationPlan();
+
+		assertSame(plan, evaluator.getOrCreateEvaluationPlan());
+
+		assertEquals(3, plan.size());
+		assertEquals(1, plan.getDataFieldCount());
+		assertEquals(2, plan.getGlobalCount());
+		assertEquals(2, plan.getOutputOffset());
+
+		int x = plan.getSlot(new FieldName("x"));
+		assertEquals(0, x);
+		assertTrue(plan.isDataField(x));
+		assertNull(plan.getDerivedField(x));
+
+		int y = plan.getSlot(new FieldName("y"));
+		assertEquals(1, y);
+		assertFalse(plan.isDataField(y));
+		assertEquals(new FieldName("y"), (plan.getDerivedField(y)).getName());
+
+		int z = plan.getSlot(new FieldName("z"));
+		assertEquals(2, z);
+		assertTrue(plan.isOutputField(z));
+
+		assertEquals(-1, plan.getSlot(new FieldName("unknown")));
+	}
+
+	@Test
+	public void getParameterSlot() throws EvaluationException, ModelManagerException {
+		TreeModelEvaluator evaluator = prepareModel();
+
+		EvaluationPlan plan = evaluator.getOrCreateEvaluationPlan();
+
+		FieldName x = (evaluator.getActiveFields()).get(0);
+
+		assertEquals(0, plan.getParameterSlot(x));
+		assertEquals(0, plan.getParameterSlot(new FieldName("x")));
+
+		// Derived fields are not loaded from the parameters
+		assertEquals(-1, plan.getParameterSlot(new FieldName("y")));
+		assertEquals(-1, plan.getParameterSlot(new FieldName("unknown")));
+	}
+
+	@Test
+	public void compileWithoutOptionalElements() throws Exception {
+		TreeModelManager treeModelManager = new TreeModelManager();
+		treeModelManager.createClassificationModel();
+
+		TreeModelEvaluator evaluator = new TreeModelEvaluator(treeModelManager);
+
+		assertEquals(0, (evaluator.getOrCreateEvaluationPlan()).size());
+
+		assertNull((evaluator.getPmml()).getTransformationDictionary());
+		assertNull((evaluator.getModel()).getLocalTransformations());
+		assertNull((evaluator.getModel()).getOutput());
+	}
+
+	@Test
+	public void evaluate() throws EvaluationException, ModelManagerException {
+		TreeModelEvaluator evaluator = prepareModel();
+
+		EvaluationPlan plan = evaluator.getOrCreateEvaluationPlan();
+
+		Map<FieldName, ?> parameters = Collections.singletonMap(new FieldName("x"), 1d);
+
+		EvaluationContext context =
+				new ModelManagerEvaluationContext(evaluator, plan, parameters);
+
+		assertEquals(1d, context.getParameter(new FieldName("x")));
+		assertEquals(1d, context.getValue(plan.getSlot(new FieldName("x"))));
+
+		assertEquals(1d, ExpressionUtil.evaluate(new FieldName("y"), context));
+		assertEquals(1d, ExpressionUtil.evaluate(plan.getSlot(new FieldName("y")), context));
+
+		assertNull(ExpressionUtil.evaluate(new FieldName("unknown"), context));
+	}
+
+	@Test
+	public void memoize() throws EvaluationException, ModelManagerException {
+		TreeModelEvaluator evaluator = prepareModel();
+
+		EvaluationPlan plan = evaluator.getOrCreateEvaluationPlan();
+
+		Map<FieldName, ?> parameters = Collections.singletonMap(new FieldName("x"), 1d);
+
+		EvaluationContext context =
+				new ModelManagerEvaluationContext(evaluator, plan, parameters);
+
+		int x = plan.getSlot(new FieldName("x"));
+		int y = plan.getSlot(new FieldName("y"));
+
+		assertEquals(1d, ExpressionUtil.evaluate(y, context));
+
+		context.putValue(x, 2d);
+
+		assertEquals(1d, ExpressionUtil.evaluate(y, context));
+
+		EvaluationContext child =
+				new ModelManagerEvaluationContext(evaluator, plan, context);
+
+		assertEquals(2d, child.getValue(x));
+		assertEquals(1d, ExpressionUtil.evaluate(y, child));
+
+		context.clearDerivedValues();
+
+		assertEquals(2d, ExpressionUtil.evaluate(y, context));
+		assertEquals(2d, ExpressionUtil.evaluate(y, child));
+	}
+
+	@Test
+	public void memoizeLocal() throws EvaluationException, ModelManagerException {
+		TreeModelEvaluator evaluator = prepareModel();
+
+		DerivedField derivedField = new DerivedField(OpType.CONTINUOUS, DataType.DOUBLE);
+		derivedField.setName(new FieldName("w"));
+		derivedField.setExpression(new FieldRef(new FieldName("x")));
+
+		(evaluator.getOrCreateLocalTransformations()).getDerivedFields().add(derivedField);
+		evaluator.invalidateIndexes();
+
+		EvaluationPlan plan = evaluator.getOrCreateEvaluationPlan();
+
+		Map<FieldName, ?> parameters = Collections.singletonMap(new FieldName("x"), 1d);
+
+		EvaluationContext context =
+				new ModelManagerEvaluationContext(evaluator, plan, parameters);
+
+		EvaluationContext child =
+				new ModelManagerEvaluationContext(evaluator, plan, context);
+
+		int x = plan.getSlot(new FieldName("x"));
+		int w = plan.getSlot(new FieldName("w"));
+
+		assertEquals(1d, ExpressionUtil.evaluate(w, child));
+
+		context.putValue(x, 2d);
+
+		assertEquals(1d, ExpressionUtil.evaluate(w, child));
+
+		// The local values of the child depend on the values that it shares with the parent
+		context.clearDerivedValues();
+
+		assertEquals(2d, ExpressionUtil.evaluate(w, child));
+
+		context.putValue(x, 3d);
+
+		child.clearLocalDerivedValues();
+
+		assertEquals(3d, ExpressionUtil.evaluate(w, child));
+		assertEquals(3d, ExpressionUtil.evaluate(w, context));
+	}
+
+	private static TreeModelEvaluator prepareModel() throws ModelManagerException {
+		TreeModelManager treeModelManager = new TreeModelManager();
+		treeModelManager.createClassificationModel();
+
+		FieldName x = new FieldName("x");
+		treeModelManager.addField(x, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		DerivedField y = new DerivedField(OpType.CONTINUOUS, DataType.DOUBLE);
+		y.setName(new FieldName("y"));
+		y.setExpression(new FieldRef(x));
+
+		(treeModelManager.getOrCreateTransformationDictionary()).getDerivedFields().add(y);
+
+		OutputField z = new OutputField(new FieldName("z"));
+
+		(treeModelManager.getOrCreateOutput()).getOutputFields().add(z);
+
+		return new TreeModelEvaluator(treeModelManager);
+	}
+}
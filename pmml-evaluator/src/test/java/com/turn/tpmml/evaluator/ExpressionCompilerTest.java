@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Apply;
+import com.turn.tpmml.Constant;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.DerivedField;
+import com.turn.tpmml.Expression;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldRef;
+import com.turn.tpmml.NormDiscrete;
+import com.turn.tpmml.OpType;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ExpressionCompilerTest {
+
+	@Test
+	public void evaluateConstant() throws EvaluationException {
+		Constant integerThree = new Constant("3");
+		integerThree.setDataType(DataType.INTEGER);
+		assertEquals(3, evaluate(integerThree, new LocalEvaluationContext()));
+
+		Constant floatThree = new Constant("3.0");
+		assertEquals(3f, evaluate(floatThree, new LocalEvaluationContext()));
+
+		Constant invalidThree = new Constant("three");
+		invalidThree.setDataType(DataType.INTEGER);
+
+		// Parse errors are deferred to evaluation time
+		CompiledExpression expression = ExpressionCompiler.compile(invalidThree, null);
+
+		try {
+			expression.evaluate(new LocalEvaluationContext());
+
+			fail();
+		} catch (NumberFormatException nfe) {
+			// Ignored
+		}
+	}
+
+	@Test
+	public void evaluateApply() throws EvaluationException {
+		FieldName name = new FieldName("x");
+
+		Apply sqrt = createApply("sqrt", new FieldRef(name));
+		assertEquals(2d, evaluate(sqrt, new LocalEvaluationContext(name, 4d)));
+
+		Apply plus = createApply("+", new FieldRef(name), new Constant("1"));
+		assertEquals(5, evaluate(plus, new LocalEvaluationContext(name, 4)));
+		assertEquals(null, evaluate(plus, new LocalEvaluationContext(name, null)));
+		plus.setMapMissingTo("Missing");
+		assertEquals("Missing", evaluate(plus, new LocalEvaluationContext(name, null)));
+
+		Apply greaterThan = createApply("greaterThan", new FieldRef(name), new Constant("1"));
+		Apply ifThen = createApply("if", greaterThan, new Constant("yes"), new Constant("no"));
+		assertEquals("yes", evaluate(ifThen, new LocalEvaluationContext(name, 2)));
+		assertEquals("no", evaluate(ifThen, new LocalEvaluationContext(name, 0)));
+
+		Apply sum = createApply("sum", new FieldRef(name), new Constant("1"), new Constant("2"),
+				new Constant("3"));
+		assertEquals(10, evaluate(sum, new LocalEvaluationContext(name, 4)));
+	}
+
+	@Test
+	public void evaluateNestedApply() throws EvaluationException {
+		FieldName name = new FieldName("x");
+
+		Constant two = new Constant("2");
+		two.setDataType(DataType.DOUBLE);
+
+		Constant one = new Constant("1");
+		one.setDataType(DataType.DOUBLE);
+
+		Apply times = createApply("*", new FieldRef(name), two);
+		Apply plus = createApply("+", times, one);
+		Apply ln = createApply("ln", plus);
+
+		assertEquals(Math.log(9d), evaluate(ln, new LocalEvaluationContext(name, 4d)));
+		assertEquals(Math.log(9d), evaluate(ln, new LocalEvaluationContext(name, 4)));
+		assertEquals(Double.NaN, evaluate(ln, new LocalEvaluationContext(name, Double.NaN)));
+
+		CompiledExpression expression = ExpressionCompiler.compile(ln, null);
+		assertEquals(Math.log(9d),
+				expression.evaluateDouble(new LocalEvaluationContext(name, 4d)), 0d);
+
+		plus.setMapMissingTo("Missing");
+		assertEquals("Missing", evaluate(plus, new LocalEvaluationContext(name, null)));
+
+		Apply max = createApply("max", times, one, new FieldRef(name));
+		assertEquals(8d, evaluate(max, new LocalEvaluationContext(name, 4d)));
+		assertEquals(1d, evaluate(max, new LocalEvaluationContext(name, null)));
+	}
+
+	@Test
+	public void evaluateMissingNestedApply() throws EvaluationException {
+		FieldName name = new FieldName("x");
+
+		Expression expression = new FieldRef(name);
+
+		assertEquals(1, countLookups(expression, name));
+
+		for (int i = 0; i < 8; i++) {
+			expression = createApply("*", createApply("+", expression, new Constant("1")),
+					new Constant("2"));
+		}
+
+		// Missing values do not make the arguments be evaluated again
+		assertEquals(1, countLookups(expression, name));
+	}
+
+	@Test
+	public void evaluateNormDiscrete() throws EvaluationException {
+		FieldName name = new FieldName("x");
+
+		NormDiscrete floatThree = new NormDiscrete(name, "3.0");
+		assertEquals(1d, evaluate(floatThree, new LocalEvaluationContext(name, 3f)));
+		assertEquals(1d, evaluate(floatThree, new LocalEvaluationContext(name, 3d)));
+		assertEquals(0d, evaluate(floatThree, new LocalEvaluationContext(name, "3")));
+	}
+
+	@Test
+	public void evaluateDerivedField() throws EvaluationException {
+		FieldName name = new FieldName("x");
+
+		DerivedField derivedField = new DerivedField(OpType.CONTINUOUS, DataType.DOUBLE);
+		derivedField.setExpression(createApply("*", new FieldRef(name), new Constant("2")));
+
+		CompiledExpression expression = ExpressionCompiler.compile(derivedField, null);
+
+		assertEquals(6d, expression.evaluate(new LocalEvaluationContext(name, 3)));
+	}
+
+	private static Object evaluate(Expression expression, EvaluationContext context)
+			throws EvaluationException {
+		Object expected = ExpressionUtil.evaluate(expression, context);
+
+		CompiledExpression compiledExpression = ExpressionCompiler.compile(expression, null);
+
+		Object value = compiledExpression.evaluate(context);
+
+		assertEquals(expected, value);
+
+		return value;
+	}
+
+	private static int countLookups(Expression expression, FieldName name)
+			throws EvaluationException {
+		final AtomicInteger count = new AtomicInteger();
+
+		Map<FieldName, Object> parameters = new HashMap<FieldName, Object>() {
+
+			@Override
+			public Object get(Object key) {
+				count.incrementAndGet();
+
+				return super.get(key);
+			}
+		};
+		parameters.put(name, null);
+
+		CompiledExpression compiledExpression = ExpressionCompiler.compile(expression, null);
+
+		assertNull(compiledExpression.evaluate(new LocalEvaluationContext(parameters)));
+
+		return count.get();
+	}
+
+	private static Apply createApply(String function, Expression... expressions) {
+		Apply apply = new Apply(function);
+
+		for (Expression expression : expressions) {
+			(apply.getExpressions()).add(expression);
+		}
+
+		return apply;
+	}
+}
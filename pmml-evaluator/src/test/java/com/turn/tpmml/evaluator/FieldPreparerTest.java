@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataField;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.Interval;
+import com.turn.tpmml.Interval.Closure;
+import com.turn.tpmml.InvalidValueTreatmentMethodType;
+import com.turn.tpmml.MiningField;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.OutlierTreatmentMethodType;
+import com.turn.tpmml.Value;
+import com.turn.tpmml.Value.Property;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FieldPreparerTest {
+
+	@Test
+	public void prepareContinuous() throws EvaluationException {
+		FieldName name = new FieldName("x");
+
+		DataField dataField = new DataField(name, OpType.CONTINUOUS, DataType.DOUBLE);
+
+		List<Value> fieldValues = dataField.getValues();
+		List<Interval> fieldIntervals = dataField.getIntervals();
+
+		MiningField miningField = new MiningField(name);
+		miningField.setLowValue(1d);
+		miningField.setHighValue(3d);
+		miningField.setMissingValueReplacement("0");
+
+		fieldValues.add(createValue("N/A", Property.MISSING));
+
+		assertEquals(1d, prepare(dataField, miningField, "1"));
+		assertEquals(1d, prepare(dataField, miningField, 1));
+		assertEquals(0d, prepare(dataField, miningField, null));
+		assertEquals(0d, prepare(dataField, miningField, "N/A"));
+
+		Interval validInterval = new Interval(Closure.CLOSED_CLOSED);
+		validInterval.setLeftMargin(1d);
+		validInterval.setRightMargin(3d);
+
+		fieldIntervals.add(validInterval);
+
+		miningField.setOutlierTreatment(OutlierTreatmentMethodType.AS_EXTREME_VALUES);
+		miningField.setInvalidValueTreatment(InvalidValueTreatmentMethodType.AS_IS);
+
+		assertEquals(1d, prepare(dataField, miningField, -1d));
+		assertEquals(2d, prepare(dataField, miningField, 2));
+		assertEquals(3d, prepare(dataField, miningField, 5f));
+
+		miningField.setOutlierTreatment(OutlierTreatmentMethodType.AS_MISSING_VALUES);
+
+		assertEquals(0d, prepare(dataField, miningField, 5d));
+
+		miningField.setOutlierTreatment(OutlierTreatmentMethodType.AS_IS);
+		miningField.setInvalidValueTreatment(InvalidValueTreatmentMethodType.AS_MISSING);
+
+		assertEquals(0d, prepare(dataField, miningField, 5d));
+
+		miningField.setInvalidValueTreatment(InvalidValueTreatmentMethodType.RETURN_INVALID);
+
+		try {
+			FieldPreparer.create(dataField, miningField).prepare(5d);
+
+			fail();
+		} catch (EvaluationException ee) {
+			// Invalid values are reported without capturing a stack trace
+			assertEquals(0, (ee.getStackTrace()).length);
+
+			assertEquals("Invalid evaluation", ee.getMessage());
+		}
+	}
+
+	@Test
+	public void prepareCategorical() throws EvaluationException {
+		FieldName name = new FieldName("x");
+
+		DataField dataField = new DataField(name, OpType.CATEGORICAL, DataType.STRING);
+
+		List<Value> fieldValues = dataField.getValues();
+		fieldValues.add(createValue("a", Property.VALID));
+		fieldValues.add(createValue("b", Property.INVALID));
+		fieldValues.add(createValue("b", Property.VALID));
+
+		MiningField miningField = new MiningField(name);
+		miningField.setInvalidValueTreatment(InvalidValueTreatmentMethodType.AS_MISSING);
+		miningField.setMissingValueReplacement("a");
+
+		assertEquals("a", prepare(dataField, miningField, "a"));
+		assertEquals("a", prepare(dataField, miningField, "b"));
+		assertEquals("a", prepare(dataField, miningField, "c"));
+
+		miningField.setInvalidValueTreatment(InvalidValueTreatmentMethodType.AS_IS);
+
+		assertEquals("b", prepare(dataField, miningField, "b"));
+		assertEquals("1", prepare(dataField, miningField, 1));
+	}
+
+	private static Object prepare(DataField dataField, MiningField miningField, Object value)
+			throws EvaluationException {
+		Object expected = ParameterUtil.prepare(dataField, miningField, value);
+
+		FieldPreparer fieldPreparer = FieldPreparer.create(dataField, miningField);
+
+		Object prepared = fieldPreparer.prepare(value);
+
+		assertEquals(expected, prepared);
+
+		return prepared;
+	}
+
+	private static Value createValue(String value, Value.Property property) {
+		Value result = new Value(value);
+		result.setProperty(property);
+
+		return result;
+	}
+}
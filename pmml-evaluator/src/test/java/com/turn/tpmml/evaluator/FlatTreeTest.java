@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.MissingValueStrategyType;
+import com.turn.tpmml.NoTrueChildStrategyType;
+import com.turn.tpmml.Node;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.manager.TreeModelManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FlatTreeTest {
+
+	@Test
+	public void layout() throws Exception {
+		TreeModelEvaluator2 evaluator = prepareModel();
+
+		EvaluationPlan plan = evaluator.getOrCreateEvaluationPlan();
+
+		FlatTree tree = FlatTree.compile(CompiledNode.compile(evaluator.getOrCreateRoot(), plan),
+				plan, MissingValueStrategyType.NONE,
+				NoTrueChildStrategyType.RETURN_NULL_PREDICTION);
+
+		assertEquals(5, tree.size());
+
+		// Root, "Small", "Red", "Medium" and "Large" in pre-order
+		assertEquals(5, tree.getEnd(0));
+		assertEquals(4, tree.getEnd(1));
+		assertEquals(3, tree.getEnd(2));
+		assertEquals(4, tree.getEnd(3));
+		assertEquals(5, tree.getEnd(4));
+
+		assertEquals("Red", tree.getScore(2));
+		assertTrue(Double.isNaN(tree.getRecordCount(2)));
+
+		// The descent stops at the root node only if the no true child strategy says so
+		assertNull(tree.getClassification(0));
+		assertEquals("Small", (tree.getClassification(1)).getResult());
+		assertEquals("Red", (tree.getClassification(2)).getResult());
+	}
+
+	@Test
+	public void classifications() throws Exception {
+		TreeModelEvaluator2 evaluator = prepareModel();
+
+		EvaluationPlan plan = evaluator.getOrCreateEvaluationPlan();
+
+		CompiledNode root = CompiledNode.compile(evaluator.getOrCreateRoot(), plan);
+
+		FlatTree tree = FlatTree.compile(root, plan, MissingValueStrategyType.NONE,
+				NoTrueChildStrategyType.RETURN_LAST_PREDICTION);
+
+		assertEquals("Root", ((tree.getClassification(0)).getNode()).getId());
+
+		tree = FlatTree.compile(root, plan, MissingValueStrategyType.LAST_PREDICTION,
+				NoTrueChildStrategyType.RETURN_NULL_PREDICTION);
+
+		for (int position = 0; position < tree.size(); position++) {
+			assertNotNull(tree.getClassification(position));
+		}
+	}
+
+	@Test
+	public void evaluateTree() throws Exception {
+		TreeModelEvaluator2 evaluator = prepareModel();
+
+		assertEquals("Red", evaluateTree(evaluator, 1d, "red"));
+		assertEquals("Medium", evaluateTree(evaluator, 2d, "blue"));
+		assertEquals("Small", evaluateTree(evaluator, 0.5d, "blue"));
+		assertEquals("Large", evaluateTree(evaluator, 2.6d, "blue"));
+		assertEquals("Large", evaluateTree(evaluator, Double.NaN, "blue"));
+
+		// Values that are not Double are compared by the compiled predicate
+		assertEquals("Medium", evaluateTree(evaluator, "2", "blue"));
+
+		// Unknown predicates are the same as false, because the missing value strategy is "none"
+		assertNull(evaluateTree(evaluator, null, "blue"));
+	}
+
+	@Test
+	public void evaluateBatch() throws Exception {
+		TreeModelEvaluator2 evaluator = prepareModel();
+
+		FieldName x = new FieldName("x");
+		FieldName color = new FieldName("color");
+		FieldName target = new FieldName("target");
+
+		ColumnarInput input = new ColumnarInput(4);
+		input.putColumn(x, new double[] { 1d, 2d, 2.6d, Double.NaN });
+		input.putColumn(color, new Object[] { "red", "blue", null, "blue" });
+
+		ColumnarOutput output = new ColumnarOutput(4);
+
+		evaluator.evaluateBatch(input, output);
+
+		Object[] column = output.getColumn(target);
+
+		for (int row = 0; row < input.getSize(); row++) {
+			Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+			parameters.put(x, input.getValue(x, row));
+			parameters.put(color, input.getValue(color, row));
+
+			// The classification of a node is shared between evaluations
+			assertSame((evaluator.evaluate(parameters)).getValue(target), column[row]);
+		}
+
+		assertEquals("Red", ((NodeClassificationMap) column[0]).getResult());
+	}
+
+	private static String evaluateTree(TreeModelEvaluator2 evaluator, Object x, String color)
+			throws EvaluationException {
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x"), x);
+		parameters.put(new FieldName("color"), color);
+
+		Node node = evaluator.evaluateTree(new ModelManagerEvaluationContext(evaluator,
+				evaluator.getOrCreateEvaluationPlan(), parameters));
+
+		// The tree evaluates to the same node in a context that is not backed by the plan
+		Node interpretedNode = evaluator.evaluateTree(new LocalEvaluationContext(parameters));
+
+		if (node == null) {
+			assertNull(interpretedNode);
+
+			return null;
+		}
+
+		assertEquals(interpretedNode.getId(), node.getId());
+
+		return node.getId();
+	}
+
+	private static TreeModelEvaluator2 prepareModel() throws Exception {
+		TreeModelManager treeModelManager = new TreeModelManager();
+		treeModelManager.createClassificationModel();
+
+		FieldName x = new FieldName("x");
+		treeModelManager.addField(x, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName color = new FieldName("color");
+		treeModelManager.addField(color, null, OpType.CATEGORICAL, DataType.STRING,
+				FieldUsageType.ACTIVE);
+
+		FieldName target = new FieldName("target");
+		treeModelManager.addField(target, null, OpType.CATEGORICAL, DataType.STRING,
+				FieldUsageType.PREDICTED);
+
+		Node root = treeModelManager.getOrCreateRoot();
+		root.setId("Root");
+
+		Node small = addNode(treeModelManager, root, "Small",
+				createPredicate(x, SimplePredicate.Operator.LESS_OR_EQUAL, "2.5"));
+
+		addNode(treeModelManager, small, "Red",
+				createPredicate(color, SimplePredicate.Operator.EQUAL, "red"));
+		addNode(treeModelManager, small, "Medium",
+				createPredicate(x, SimplePredicate.Operator.GREATER_THAN, "1"));
+
+		addNode(treeModelManager, root, "Large",
+				createPredicate(x, SimplePredicate.Operator.GREATER_THAN, "2.5"));
+
+		return new TreeModelEvaluator2(treeModelManager);
+	}
+
+	private static Node addNode(TreeModelManager treeModelManager, Node parent, String id,
+			SimplePredicate predicate) {
+		Node node = treeModelManager.addNode(parent, predicate);
+		node.setId(id);
+		node.setScore(id);
+
+		return node;
+	}
+
+	private static SimplePredicate createPredicate(FieldName name,
+			SimplePredicate.Operator operator, String value) {
+		SimplePredicate simplePredicate = new SimplePredicate(name, operator);
+		simplePredicate.setValue(value);
+
+		return simplePredicate;
+	}
+}
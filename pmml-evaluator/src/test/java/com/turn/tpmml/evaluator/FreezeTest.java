@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Attribute;
+import com.turn.tpmml.Characteristic;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.MiningFunctionType;
+import com.turn.tpmml.MiningModel;
+import com.turn.tpmml.MultipleModelMethodType;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.Predicate;
+import com.turn.tpmml.Scorecard;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.True;
+import com.turn.tpmml.manager.IPMMLResult;
+import com.turn.tpmml.manager.ScoreCardModelManager;
+import com.turn.tpmml.manager.ScoreCardPMMLResult;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FreezeTest {
+
+	@Test
+	public void freeze() throws Exception {
+		RegressionModelEvaluator evaluator = ColumnarEvaluationTest.prepareModel();
+
+		assertFalse(evaluator.isFrozen());
+
+		evaluator.freeze();
+
+		assertTrue(evaluator.isFrozen());
+
+		try {
+			evaluator.addField(new FieldName("x3"), null, OpType.CONTINUOUS, DataType.DOUBLE,
+					FieldUsageType.ACTIVE);
+
+			fail();
+		} catch (IllegalStateException ise) {
+			// Ignored
+		}
+
+		try {
+			evaluator.invalidateIndexes();
+
+			fail();
+		} catch (IllegalStateException ise) {
+			// Ignored
+		}
+
+		assertEquals(2, (evaluator.getActiveFields()).size());
+		assertEquals(6d, evaluate(evaluator, 1d, 1d));
+	}
+
+	@Test
+	public void modify() throws Exception {
+		RegressionModelEvaluator evaluator = ColumnarEvaluationTest.prepareModel();
+
+		assertEquals(6d, evaluate(evaluator, 1d, 1d));
+
+		// The compiled regression table is invalidated
+		evaluator.addNumericPredictor(new FieldName("x1"), 4d);
+
+		assertEquals(10d, evaluate(evaluator, 1d, 1d));
+
+		evaluator.freeze();
+
+		try {
+			evaluator.addNumericPredictor(new FieldName("x2"), 4d);
+
+			fail();
+		} catch (IllegalStateException ise) {
+			// Ignored
+		}
+
+		assertEquals(10d, evaluate(evaluator, 1d, 1d));
+	}
+
+	@Test
+	public void freezeWithoutOptionalElements() throws Exception {
+		RegressionModelEvaluator evaluator = ColumnarEvaluationTest.prepareModel();
+		evaluator.freeze();
+
+		assertNull((evaluator.getPmml()).getTransformationDictionary());
+		assertNull((evaluator.getModel()).getLocalTransformations());
+		assertNull((evaluator.getModel()).getOutput());
+
+		assertTrue((evaluator.getOutputFields()).isEmpty());
+	}
+
+	@Test
+	public void setMetricsRegistry() throws Exception {
+		RegressionModelEvaluator evaluator = ColumnarEvaluationTest.prepareModel();
+		evaluator.freeze();
+
+		try {
+			evaluator.setMetricsRegistry(new DefaultMetricsRegistry(), "regression");
+
+			fail();
+		} catch (IllegalStateException ise) {
+			// Ignored
+		}
+
+		assertNull(evaluator.getEvaluationListener());
+	}
+
+	@Test
+	public void evaluateConcurrently() throws Exception {
+		final RegressionModelEvaluator evaluator = ColumnarEvaluationTest.prepareModel();
+		evaluator.freeze();
+
+		runConcurrently(new Check() {
+
+			public boolean check(double x1, double x2) throws Exception {
+				Object y = evaluate(evaluator, x1, x2);
+
+				return Double.valueOf(1d + 2d * x1 + 3d * x2).equals(y);
+			}
+		});
+	}
+
+	@Test
+	public void evaluateScorecardConcurrently() throws Exception {
+		final ScorecardEvaluator evaluator = prepareScorecard();
+		evaluator.freeze();
+
+		runConcurrently(new Check() {
+
+			public boolean check(double x1, double x2) throws Exception {
+				ScoreCardPMMLResult result = (ScoreCardPMMLResult) evaluator.evaluate(
+						createParameters(x1, x2));
+
+				double score = (x1 <= 0 ? 10d : 20d) + (x2 <= 0 ? 5d : 1d);
+
+				// The reason code of the lowest partial score
+				String reasonCode = (x2 <= 0 ? "X2LOW" : "X2HIGH");
+
+				return Double.valueOf(score).equals(result.getValue(new FieldName("score"))) &&
+						reasonCode.equals(result.getLastReasonCode());
+			}
+		});
+
+		// A frozen evaluator does not remember the last evaluation
+		assertNull(evaluator.getLastReasonCode());
+	}
+
+	@Test
+	public void evaluateMiningModelConcurrently() throws Exception {
+		RegressionModelEvaluator regressionEvaluator = ColumnarEvaluationTest.prepareModel();
+
+		MiningModel miningModel = new MiningModel(regressionEvaluator.getMiningSchema(),
+				MiningFunctionType.REGRESSION);
+
+		MiningModelEvaluator2 segmentation =
+				new MiningModelEvaluator2(regressionEvaluator.getPmml(), miningModel);
+		segmentation.createSegmentation(MultipleModelMethodType.SELECT_FIRST);
+		segmentation.addSegment(regressionEvaluator.getModel());
+
+		final MiningModelEvaluator evaluator =
+				new MiningModelEvaluator(regressionEvaluator.getPmml(), miningModel);
+
+		// The segment evaluators and predicates are built by the freeze
+		evaluator.freeze();
+
+		runConcurrently(new Check() {
+
+			public boolean check(double x1, double x2) throws Exception {
+				Object y = evaluate(evaluator, x1, x2);
+
+				return Double.valueOf(1d + 2d * x1 + 3d * x2).equals(y);
+			}
+		});
+	}
+
+	/**
+	 * Runs a check on four threads, each with its own value of <code>x1</code> and a range of
+	 * values of <code>x2</code>.
+	 */
+	private static void runConcurrently(final Check check) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try {
+			List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+
+			for (int i = 0; i < 4; i++) {
+				final double x1 = i - 1;
+
+				futures.add(executor.submit(new Callable<Boolean>() {
+
+					public Boolean call() throws Exception {
+
+						for (int j = 0; j < 1000; j++) {
+							double x2 = j - 500;
+
+							if (!check.check(x1, x2)) {
+								return Boolean.FALSE;
+							}
+						}
+
+						return Boolean.TRUE;
+					}
+				}));
+			}
+
+			for (Future<Boolean> future : futures) {
+				assertTrue(future.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * A scorecard with two characteristics. The first one scores 10 points for
+	 * <code>x1 &lt;= 0</code> and 20 points otherwise, the second one scores 5 points for
+	 * <code>x2 &lt;= 0</code> and 1 point otherwise.
+	 */
+	private static ScorecardEvaluator prepareScorecard() throws Exception {
+		ScoreCardModelManager scorecardManager = new ScoreCardModelManager();
+		Scorecard scorecard = scorecardManager.createClassificationModel();
+
+		FieldName x1 = new FieldName("x1");
+		scorecardManager.addField(x1, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName x2 = new FieldName("x2");
+		scorecardManager.addField(x2, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName score = new FieldName("score");
+		scorecardManager.addField(score, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.PREDICTED);
+
+		List<Characteristic> characteristics =
+				(scorecard.getCharacteristics()).getCharacteristics();
+		characteristics.add(createCharacteristic(x1, 10d, "X1LOW", 20d, "X1HIGH"));
+		characteristics.add(createCharacteristic(x2, 5d, "X2LOW", 1d, "X2HIGH"));
+
+		return new ScorecardEvaluator(scorecardManager.getPmml(), scorecard);
+	}
+
+	private static Characteristic createCharacteristic(FieldName name, Double lowScore,
+			String lowReasonCode, Double highScore, String highReasonCode) {
+		SimplePredicate lowPredicate =
+				new SimplePredicate(name, SimplePredicate.Operator.LESS_OR_EQUAL);
+		lowPredicate.setValue("0");
+
+		Characteristic characteristic = new Characteristic();
+		characteristic.setName(name);
+		characteristic.setBaselineScore(0d);
+
+		(characteristic.getAttributes()).add(createAttribute(lowPredicate, lowScore,
+				lowReasonCode));
+		(characteristic.getAttributes()).add(createAttribute(new True(), highScore,
+				highReasonCode));
+
+		return characteristic;
+	}
+
+	private static Attribute createAttribute(Predicate predicate, Double partialScore,
+			String reasonCode) {
+		Attribute attribute = new Attribute();
+		attribute.setPredicate(predicate);
+		attribute.setPartialScore(partialScore);
+		attribute.setReasonCode(reasonCode);
+
+		return attribute;
+	}
+
+	private static Map<FieldName, Object> createParameters(double x1, double x2) {
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x1"), x1);
+		parameters.put(new FieldName("x2"), x2);
+
+		return parameters;
+	}
+
+	private static Object evaluate(Evaluator evaluator, double x1, double x2) throws Exception {
+		IPMMLResult result = evaluator.evaluate(createParameters(x1, x2));
+
+		return result.getValue(new FieldName("y"));
+	}
+
+	private interface Check {
+
+		boolean check(double x1, double x2) throws Exception;
+	}
+}
@@ -4,13 +4,19 @@
 package com.turn.tpmml.evaluator;
 
 import com.turn.tpmml.DataType;
+import com.turn.tpmml.evaluator.FunctionUtil.AbstractDoubleBinaryFunction;
+import com.turn.tpmml.evaluator.FunctionUtil.DoubleBinaryFunction;
+import com.turn.tpmml.evaluator.FunctionUtil.DoubleUnaryFunction;
 
 import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
 
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 
 public class FunctionUtilTest {
@@ -57,6 +63,10 @@ public class FunctionUtilTest {
 		Object product = evaluate("product", values);
 		assertEquals(6, product);
 		assertEquals(DataType.INTEGER, ParameterUtil.getDataType(product));
+
+		// Lists without fast random access are folded through an array
+		assertEquals(6, evaluate("sum", new LinkedList<Integer>(values)));
+		assertEquals(2, evaluate("sum", Arrays.asList(null, 2, null)));
 	}
 
 	@Test
@@ -183,6 +193,62 @@ public class FunctionUtilTest {
 		assertEquals("value", evaluate("trimBlanks", "\tvalue\t"));
 	}
 
+	@Test
+	public void evaluatePrimitiveFunctions() throws EvaluationException {
+		assertEquals(4d, evaluateDouble("+", 1d, 3d), 0d);
+		assertEquals((1d / 3d), evaluateDouble("/", 1d, 3d), 0d);
+
+		assertEquals(1d, evaluateDouble("min", 1d, 3d), 0d);
+		assertEquals(3d, evaluateDouble("max", 1d, 3d), 0d);
+		assertEquals(2d, evaluateDouble("avg", 1d, 3d), 0d);
+
+		assertEquals(8d, evaluateDouble("pow", 2d, 3d), 0d);
+		assertEquals(1d, evaluateDouble("threshold", 3d, 2d), 0d);
+
+		assertEquals(1d, evaluateDouble("abs", -1d), 0d);
+		assertEquals(2d, evaluateDouble("round", 1.99d), 0d);
+
+		// The primitive and the boxed signatures agree
+		assertEquals(evaluate("avg", 1d, 2d, 3d), evaluateDouble("avg", 1d, 2d) + 0.5d);
+		assertEquals(evaluate("min", Double.NaN, 1d), evaluateDouble("min", Double.NaN, 1d));
+	}
+
+	@Test
+	public void evaluateUserDefinedFunction() throws EvaluationException {
+		FunctionUtil.putFunction("hypot", new AbstractDoubleBinaryFunction() {
+
+			@Override
+			public double evaluate(double left, double right) {
+				return Math.hypot(left, right);
+			}
+		});
+
+		try {
+			assertEquals(5d, evaluate("hypot", 3, 4));
+			assertEquals(5d, evaluateDouble("hypot", 3d, 4d), 0d);
+
+			assertNull(evaluate("hypot", 3d, null));
+		} finally {
+			FunctionUtil.putFunction("hypot", null);
+		}
+
+		assertNull(FunctionUtil.getFunction("hypot"));
+	}
+
+	private static double evaluateDouble(String name, double value) {
+		Object function = FunctionUtil.getFunction(name);
+		assertTrue(function instanceof DoubleUnaryFunction);
+
+		return ((DoubleUnaryFunction) function).evaluate(value);
+	}
+
+	private static double evaluateDouble(String name, double left, double right) {
+		Object function = FunctionUtil.getFunction(name);
+		assertTrue(function instanceof DoubleBinaryFunction);
+
+		return ((DoubleBinaryFunction) function).evaluate(left, right);
+	}
+
 	private static Object evaluate(String name, Object... values) throws EvaluationException {
 		return evaluate(name, Arrays.asList(values));
 	}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Interval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class IntervalIndexTest {
+
+	@Test
+	public void indexOf() throws EvaluationException {
+		List<Interval> intervals = Arrays.asList(
+				createInterval(Interval.Closure.CLOSED_OPEN, 0.0, 1.0),
+				createInterval(Interval.Closure.OPEN_CLOSED, 1.0, 2.0),
+				createInterval(Interval.Closure.CLOSED_CLOSED, 0.5, 3.0),
+				createInterval(Interval.Closure.OPEN_OPEN, null, 0.0),
+				createInterval(Interval.Closure.OPEN_OPEN, 3.0, null));
+
+		IntervalIndex index = IntervalIndex.create(intervals);
+
+		assertEquals(3, index.indexOf(Double.NEGATIVE_INFINITY));
+		assertEquals(3, index.indexOf(-1.0));
+		assertEquals(0, index.indexOf(0.0));
+		assertEquals(0, index.indexOf(0.75));
+		assertEquals(2, index.indexOf(1.0));
+		assertEquals(1, index.indexOf(2.0));
+		assertEquals(2, index.indexOf(2.5));
+		assertEquals(2, index.indexOf(3.0));
+		assertEquals(4, index.indexOf(Double.POSITIVE_INFINITY));
+
+		double[] values = { -1.0, -0.0, 0.0, 0.25, 0.5, 1.0, 1.5, 2.0, 3.0, 3.5,
+				Double.NaN, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY };
+
+		for (double value : values) {
+			assertEquals(String.valueOf(value), indexOf(intervals, value), index.indexOf(value));
+		}
+	}
+
+	@Test
+	public void indexOfEmpty() throws EvaluationException {
+		IntervalIndex index = IntervalIndex.create(Arrays.<Interval>asList());
+
+		assertEquals(-1, index.indexOf(0.0));
+	}
+
+	@Test
+	public void indexOfRandom() throws EvaluationException {
+		Random random = new Random(42);
+
+		Interval.Closure[] closures = Interval.Closure.values();
+
+		List<Interval> intervals = new ArrayList<Interval>();
+
+		for (int i = 0; i < 200; i++) {
+			Double left = (random.nextInt(10) > 0 ? Double.valueOf(random.nextInt(50)) : null);
+			Double right = (random.nextInt(10) > 0 ? Double.valueOf(random.nextInt(50)) : null);
+
+			intervals.add(createInterval(closures[random.nextInt(closures.length)], left, right));
+		}
+
+		IntervalIndex index = IntervalIndex.create(intervals);
+
+		for (double value = -1.0; value <= 51.0; value += 0.5) {
+			assertEquals(String.valueOf(value), indexOf(intervals, value), index.indexOf(value));
+		}
+	}
+
+	private static int indexOf(List<Interval> intervals, double value)
+			throws EvaluationException {
+
+		for (int i = 0; i < intervals.size(); i++) {
+
+			if (DiscretizationUtil.contains(intervals.get(i), value)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private static Interval createInterval(Interval.Closure closure, Double left, Double right) {
+		Interval interval = new Interval(closure);
+		interval.setLeftMargin(left);
+		interval.setRightMargin(right);
+
+		return interval;
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.MissingValueStrategyType;
+import com.turn.tpmml.NoTrueChildStrategyType;
+import com.turn.tpmml.Node;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.TreeModel;
+import com.turn.tpmml.True;
+import com.turn.tpmml.manager.TreeModelManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MissingValueStrategyTest {
+
+	@Test
+	public void none() throws Exception {
+		TreeModelManager treeModelManager = prepareModel(MissingValueStrategyType.NONE);
+
+		// The predicate of "A" is unknown, and is the same as false
+		assertNull(evaluate(treeModelManager, 5d));
+		assertEquals("b", evaluate(treeModelManager, 20d));
+	}
+
+	@Test
+	public void lastPrediction() throws Exception {
+		TreeModelManager treeModelManager =
+				prepareModel(MissingValueStrategyType.LAST_PREDICTION);
+
+		assertEquals("root", evaluate(treeModelManager, 5d));
+
+		// The unknown predicate of "A" does not end the evaluation of "B"
+		assertEquals("b", evaluate(treeModelManager, 20d));
+	}
+
+	@Test
+	public void nullPrediction() throws Exception {
+		TreeModelManager treeModelManager =
+				prepareModel(MissingValueStrategyType.NULL_PREDICTION);
+
+		assertNull(evaluate(treeModelManager, 5d));
+		assertEquals("b", evaluate(treeModelManager, 20d));
+	}
+
+	@Test
+	public void defaultChild() throws Exception {
+		TreeModelManager treeModelManager = prepareModel(MissingValueStrategyType.DEFAULT_CHILD);
+
+		// The descent stops at the default child, where the no true child strategy applies
+		assertNull(evaluate(treeModelManager, 5d));
+		assertEquals("b", evaluate(treeModelManager, 20d));
+
+		treeModelManager = prepareModel(MissingValueStrategyType.DEFAULT_CHILD,
+				NoTrueChildStrategyType.RETURN_LAST_PREDICTION);
+
+		// The default child is selected even though its own predicate is false
+		assertEquals("b", evaluate(treeModelManager, 5d));
+		assertEquals("b", evaluate(treeModelManager, 20d));
+	}
+
+	/**
+	 * @return The score of {@link TreeModelEvaluator2}, after checking that it is the same as the
+	 *         score of {@link TreeModelEvaluator}.
+	 */
+	private static String evaluate(TreeModelManager treeModelManager, Double x)
+			throws Exception {
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x"), x);
+
+		TreeModelEvaluator evaluator = new TreeModelEvaluator(treeModelManager);
+
+		Object expected = (evaluator.evaluate(parameters)).getResult();
+
+		TreeModelEvaluator2 alternateEvaluator = new TreeModelEvaluator2(treeModelManager);
+
+		Node node = alternateEvaluator.evaluateTree(new ModelManagerEvaluationContext(
+				alternateEvaluator, alternateEvaluator.getOrCreateEvaluationPlan(), parameters));
+
+		String result = (node != null ? node.getScore() : null);
+
+		assertEquals(expected, result);
+
+		return result;
+	}
+
+	/**
+	 * The predicate of node "A" is unknown, because the field "y" is always missing.
+	 */
+	private static TreeModelManager prepareModel(MissingValueStrategyType missingValueStrategy)
+			throws Exception {
+		return prepareModel(missingValueStrategy, NoTrueChildStrategyType.RETURN_NULL_PREDICTION);
+	}
+
+	private static TreeModelManager prepareModel(MissingValueStrategyType missingValueStrategy,
+			NoTrueChildStrategyType noTrueChildStrategy) throws Exception {
+		TreeModelManager treeModelManager = new TreeModelManager();
+
+		TreeModel treeModel = treeModelManager.createClassificationModel();
+		treeModel.setMissingValueStrategy(missingValueStrategy);
+		treeModel.setNoTrueChildStrategy(noTrueChildStrategy);
+
+		FieldName x = new FieldName("x");
+		treeModelManager.addField(x, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName y = new FieldName("y");
+		treeModelManager.addField(y, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName target = new FieldName("target");
+		treeModelManager.addField(target, null, OpType.CATEGORICAL, DataType.STRING,
+				FieldUsageType.PREDICTED);
+
+		Node root = treeModelManager.getOrCreateRoot();
+		root.setId("Root");
+		root.setScore("root");
+		root.setPredicate(new True());
+
+		Node a = treeModelManager.addNode(root,
+				createPredicate(y, SimplePredicate.Operator.GREATER_THAN, "1"));
+		a.setId("A");
+		a.setScore("a");
+		a.setDefaultChild("B");
+
+		Node b = treeModelManager.addNode(root,
+				createPredicate(x, SimplePredicate.Operator.GREATER_THAN, "10"));
+		b.setId("B");
+		b.setScore("b");
+
+		return treeModelManager;
+	}
+
+	private static SimplePredicate createPredicate(FieldName name,
+			SimplePredicate.Operator operator, String value) {
+		SimplePredicate simplePredicate = new SimplePredicate(name, operator);
+		simplePredicate.setValue(value);
+
+		return simplePredicate;
+	}
+}
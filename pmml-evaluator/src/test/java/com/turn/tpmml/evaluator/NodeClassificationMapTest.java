@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.Node;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.OutputField;
+import com.turn.tpmml.ResultFeatureType;
+import com.turn.tpmml.ScoreDistribution;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.manager.TreeModelManager;
+import com.turn.tpmml.manager.TreePMMLResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NodeClassificationMapTest {
+
+	@Test
+	public void evaluate() throws Exception {
+		TreeModelEvaluator2 evaluator = prepareModel();
+
+		Map<FieldName, ?> parameters = Collections.singletonMap(new FieldName("x"), 0d);
+
+		TreePMMLResult result = (TreePMMLResult) evaluator.evaluate(parameters);
+
+		NodeClassificationMap classification =
+				(NodeClassificationMap) result.getValue(new FieldName("y"));
+
+		assertEquals("Low", result.getNodeId());
+		assertEquals("no", classification.getResult());
+		assertEquals(0.75d, classification.getProbability("no"), 1e-9);
+		assertEquals(0.25d, classification.getProbability("yes"), 1e-9);
+		assertEquals(0d, classification.getProbability("maybe"), 0d);
+
+		assertEquals(0.25d, result.getValue(new FieldName("probabilityYes")));
+
+		// The classification result is computed once per node
+		assertSame(classification, (evaluator.evaluate(parameters)).getValue(new FieldName("y")));
+
+		result = (TreePMMLResult) evaluator.evaluate(Collections.singletonMap(new FieldName("x"),
+				2d));
+
+		assertEquals("High", result.getNodeId());
+		assertEquals(0.9d, result.getValue(new FieldName("probabilityYes")));
+	}
+
+	@Test
+	public void evaluateSink() throws Exception {
+		TreeModelEvaluator2 evaluator = prepareModel();
+
+		Map<FieldName, ?> parameters = Collections.singletonMap(new FieldName("x"), 2d);
+
+		final Map<FieldName, Object> values = new LinkedHashMap<FieldName, Object>();
+
+		ResultSink sink = new ResultSink() {
+
+			public void put(FieldName name, Object value) {
+				values.put(name, value);
+			}
+
+			public void putDouble(FieldName name, double value) {
+				values.put(name, value);
+			}
+		};
+
+		ReusableEvaluationContext context = new ReusableEvaluationContext(evaluator);
+		context.reset(parameters);
+
+		assertTrue(evaluator.evaluate(context, sink));
+		assertEquals(0.9d, values.get(new FieldName("probabilityYes")));
+
+		values.clear();
+
+		// Without output fields, the classification of the node is passed to the sink as is
+		context.setOutputFields(Collections.<FieldName>emptySet());
+		context.reset(parameters);
+
+		assertTrue(evaluator.evaluate(context, sink));
+		assertEquals(Collections.singleton(new FieldName("y")), values.keySet());
+		assertSame((evaluator.evaluate(parameters)).getValue(new FieldName("y")),
+				values.get(new FieldName("y")));
+	}
+
+	@Test
+	public void classIndexes() throws Exception {
+		TreeModelEvaluator2 evaluator = prepareModel();
+
+		Map<String, Integer> classIndexes =
+				NodeClassificationMap.createClassIndexes(evaluator.getOrCreateRoot());
+
+		assertEquals(Arrays.asList("no", "yes"), new ArrayList<String>(classIndexes.keySet()));
+
+		NodeClassificationMap classification =
+				new NodeClassificationMap(evaluator.getOrCreateRoot(), classIndexes);
+
+		// The root node has a score, but no score distributions
+		assertEquals("no", classification.getResult());
+		assertEquals(0d, classification.getProbability(1), 0d);
+		assertEquals(0d, classification.getProbability(-1), 0d);
+
+		try {
+			classification.put("yes", 1d);
+
+			throw new AssertionError();
+		} catch (UnsupportedOperationException uoe) {
+			// Ignored
+		}
+	}
+
+	@Test
+	public void readOnlyViews() throws Exception {
+		TreeModelEvaluator2 evaluator = prepareModel();
+
+		Map<FieldName, ?> parameters = Collections.singletonMap(new FieldName("x"), 0d);
+
+		TreePMMLResult result = (TreePMMLResult) evaluator.evaluate(parameters);
+
+		NodeClassificationMap classification =
+				(NodeClassificationMap) result.getValue(new FieldName("y"));
+
+		// The Output element resolves class indexes against the same table
+		assertSame((evaluator.getOrCreateEvaluationPlan()).getClassIndexes(),
+				classification.getClassIndexes());
+
+		Map.Entry<String, Double> entry = ((classification.entrySet()).iterator()).next();
+
+		try {
+			entry.setValue(1d);
+
+			throw new AssertionError();
+		} catch (UnsupportedOperationException uoe) {
+			// Ignored
+		}
+
+		try {
+			(classification.entrySet()).clear();
+
+			throw new AssertionError();
+		} catch (UnsupportedOperationException uoe) {
+			// Ignored
+		}
+
+		try {
+			(classification.keySet()).remove("no");
+
+			throw new AssertionError();
+		} catch (UnsupportedOperationException uoe) {
+			// Ignored
+		}
+
+		try {
+			(classification.values()).clear();
+
+			throw new AssertionError();
+		} catch (UnsupportedOperationException uoe) {
+			// Ignored
+		}
+
+		// Newer Map methods, such as putIfAbsent or merge, are built on put, remove and entries
+		try {
+			classification.remove("no");
+
+			throw new AssertionError();
+		} catch (UnsupportedOperationException uoe) {
+			// Ignored
+		}
+
+		try {
+			classification.clear();
+
+			throw new AssertionError();
+		} catch (UnsupportedOperationException uoe) {
+			// Ignored
+		}
+
+		assertEquals(0.75d, classification.get("no"), 1e-9);
+		assertEquals(2, classification.size());
+	}
+
+	private static TreeModelEvaluator2 prepareModel() throws Exception {
+		TreeModelManager treeModelManager = new TreeModelManager();
+		treeModelManager.createClassificationModel();
+
+		FieldName x = new FieldName("x");
+		treeModelManager.addField(x, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName y = new FieldName("y");
+		treeModelManager.addField(y, null, OpType.CATEGORICAL, DataType.STRING,
+				FieldUsageType.PREDICTED);
+
+		Node root = treeModelManager.getOrCreateRoot();
+		root.setId("Root");
+		root.setScore("no");
+
+		SimplePredicate lowPredicate =
+				new SimplePredicate(x, SimplePredicate.Operator.LESS_OR_EQUAL);
+		lowPredicate.setValue("1");
+
+		Node low = treeModelManager.addNode(root, lowPredicate);
+		low.setId("Low");
+		(low.getScoreDistributions()).add(new ScoreDistribution("no", 30));
+		(low.getScoreDistributions()).add(new ScoreDistribution("yes", 10));
+
+		SimplePredicate highPredicate =
+				new SimplePredicate(x, SimplePredicate.Operator.GREATER_THAN);
+		highPredicate.setValue("1");
+
+		Node high = treeModelManager.addNode(root, highPredicate);
+		high.setId("High");
+
+		ScoreDistribution no = new ScoreDistribution("no", 5);
+		no.setProbability(0.1d);
+
+		ScoreDistribution yes = new ScoreDistribution("yes", 5);
+		yes.setProbability(0.9d);
+
+		(high.getScoreDistributions()).add(no);
+		(high.getScoreDistributions()).add(yes);
+
+		OutputField probabilityYes = new OutputField(new FieldName("probabilityYes"));
+		probabilityYes.setFeature(ResultFeatureType.PROBABILITY);
+		probabilityYes.setValue("yes");
+
+		((treeModelManager.getOrCreateOutput()).getOutputFields()).add(probabilityYes);
+
+		return new TreeModelEvaluator2(treeModelManager);
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.Node;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.Predicate;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.True;
+import com.turn.tpmml.manager.TreeModelManager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class NodeStatisticsTest {
+
+	@Test
+	public void reorderNodes() throws Exception {
+		TreeModelEvaluator2 evaluator = prepareModel();
+
+		NodeStatistics nodeStatistics = new NodeStatistics(evaluator.getOrCreateRoot());
+
+		assertEquals(6, nodeStatistics.size());
+
+		evaluator.setNodeStatistics(nodeStatistics);
+
+		assertEquals("Low", evaluateTree(evaluator, 0d));
+		assertEquals("High", evaluateTree(evaluator, 7d));
+		assertEquals("High", evaluateTree(evaluator, 8d));
+		assertEquals("Other", evaluateTree(evaluator, 3d));
+
+		// Root, "Low", "Medium", "High", "Other" and "Below" in document order
+		assertArrayEquals(new long[]{4, 1, 0, 2, 1, 0}, nodeStatistics.getCounts());
+
+		evaluator.reorderNodes();
+
+		assertEquals("Low", evaluateTree(evaluator, 0d));
+		assertEquals("Medium", evaluateTree(evaluator, 2d));
+		assertEquals("High", evaluateTree(evaluator, 7d));
+		assertEquals("Other", evaluateTree(evaluator, 3d));
+
+		CompiledNode root = CompiledNode.compile(evaluator.getOrCreateRoot(),
+				evaluator.getOrCreateEvaluationPlan());
+
+		CompiledNode reorderedRoot = root.reorder(nodeStatistics, evaluator,
+				evaluator.getOrCreateEvaluationPlan());
+
+		// "Other" overlaps with every node, and "Below" overlaps with "Low"
+		assertArrayEquals(new String[]{"Low", "Medium", "High", "Other", "Below"},
+				getChildIds(root));
+		assertArrayEquals(new String[]{"High", "Low", "Medium", "Other", "Below"},
+				getChildIds(reorderedRoot));
+	}
+
+	@Test
+	public void importCounts() throws Exception {
+		TreeModelEvaluator2 evaluator = prepareModel();
+
+		Node root = evaluator.getOrCreateRoot();
+
+		NodeStatistics nodeStatistics = new NodeStatistics(root, new long[]{3, 1, 2, 0, 0, 0});
+
+		evaluator.setNodeStatistics(nodeStatistics);
+		evaluator.reorderNodes();
+
+		assertEquals("Medium", evaluateTree(evaluator, 2d));
+
+		assertEquals(3L, nodeStatistics.getCount(2));
+
+		try {
+			new NodeStatistics(root, new long[]{3, 1, 2});
+
+			throw new AssertionError();
+		} catch (IllegalArgumentException iae) {
+			// Ignored
+		}
+	}
+
+	@Test
+	public void countStripes() throws Exception {
+		final TreeModelEvaluator2 evaluator = prepareModel();
+
+		NodeStatistics nodeStatistics = new NodeStatistics(evaluator.getOrCreateRoot(), 4);
+
+		evaluator.setNodeStatistics(nodeStatistics);
+
+		final Throwable[] failures = new Throwable[4];
+
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			final int thread = i;
+
+			threads[i] = new Thread() {
+
+				@Override
+				public void run() {
+
+					try {
+						for (int j = 0; j < 1000; j++) {
+							evaluateTree(evaluator, 7d);
+						}
+					} catch (Throwable t) {
+						failures[thread] = t;
+					}
+				}
+			};
+
+			threads[i].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		for (Throwable failure : failures) {
+
+			if (failure != null) {
+				throw new AssertionError(failure);
+			}
+		}
+
+		// Root and "High", summed up over all stripes
+		assertArrayEquals(new long[]{4000, 0, 0, 4000, 0, 0}, nodeStatistics.getCounts());
+	}
+
+	private static String evaluateTree(TreeModelEvaluator2 evaluator, Double value)
+			throws EvaluationException {
+		Node node = evaluator.evaluateTree(new LocalEvaluationContext(new FieldName("x"), value));
+
+		return node.getId();
+	}
+
+	private static String[] getChildIds(CompiledNode node) {
+		CompiledNode[] children = node.getChildren();
+
+		String[] result = new String[children.length];
+		for (int i = 0; i < children.length; i++) {
+			result[i] = ((children[i]).getNode()).getId();
+		}
+
+		return result;
+	}
+
+	private static TreeModelEvaluator2 prepareModel() throws Exception {
+		TreeModelManager treeModelManager = new TreeModelManager();
+		treeModelManager.createClassificationModel();
+
+		FieldName x = new FieldName("x");
+		treeModelManager.addField(x, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		Node root = treeModelManager.getOrCreateRoot();
+		root.setId("Root");
+
+		addNode(treeModelManager, "Low", createPredicate(SimplePredicate.Operator.LESS_THAN, "1"));
+		addNode(treeModelManager, "Medium",
+				createPredicate(SimplePredicate.Operator.EQUAL, "2"));
+		addNode(treeModelManager, "High",
+				createPredicate(SimplePredicate.Operator.GREATER_OR_EQUAL, "5"));
+		addNode(treeModelManager, "Other", new True());
+		addNode(treeModelManager, "Below",
+				createPredicate(SimplePredicate.Operator.LESS_OR_EQUAL, "1"));
+
+		return new TreeModelEvaluator2(treeModelManager);
+	}
+
+	private static void addNode(TreeModelManager treeModelManager, String id,
+			Predicate predicate) throws Exception {
+		Node node = treeModelManager.addNode(predicate);
+		node.setId(id);
+		node.setScore(id);
+	}
+
+	private static SimplePredicate createPredicate(SimplePredicate.Operator operator,
+			String value) {
+		SimplePredicate simplePredicate = new SimplePredicate(new FieldName("x"), operator);
+		simplePredicate.setValue(value);
+
+		return simplePredicate;
+	}
+}
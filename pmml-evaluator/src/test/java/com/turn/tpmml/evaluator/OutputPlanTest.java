@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Apply;
+import com.turn.tpmml.Constant;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldRef;
+import com.turn.tpmml.OutputField;
+import com.turn.tpmml.ResultFeatureType;
+import com.turn.tpmml.manager.IPMMLResult;
+import com.turn.tpmml.manager.PMMLResult;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OutputPlanTest {
+
+	@Test
+	public void evaluate() throws Exception {
+		RegressionModelEvaluator evaluator = prepareModel();
+
+		assertFalse(((evaluator.getOrCreateEvaluationPlan()).getOutputPlan()).isEmpty());
+
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x1"), 1d);
+		parameters.put(new FieldName("x2"), 1d);
+
+		IPMMLResult result = evaluator.evaluate(parameters);
+
+		assertEquals(6d, result.getValue(new FieldName("y")));
+		assertEquals(6d, result.getValue(new FieldName("prediction")));
+		assertEquals(12d, result.getValue(new FieldName("doublePrediction")));
+
+		// The parameters are not modified
+		assertEquals(2, parameters.size());
+
+		// The interpreter agrees with the plan
+		PMMLResult predictions = new PMMLResult();
+		predictions.put(new FieldName("y"), 6d);
+
+		PMMLResult interpretedResult = OutputUtil.evaluate(predictions,
+				new ModelManagerEvaluationContext(evaluator, parameters));
+
+		assertEquals(interpretedResult.getValue(new FieldName("prediction")),
+				result.getValue(new FieldName("prediction")));
+		assertEquals(interpretedResult.getValue(new FieldName("doublePrediction")),
+				result.getValue(new FieldName("doublePrediction")));
+
+		PMMLResult plannedResult = OutputUtil.evaluate(predictions,
+				new ModelManagerEvaluationContext(evaluator,
+						evaluator.getOrCreateEvaluationPlan(), parameters));
+
+		assertEquals(12d, plannedResult.getValue(new FieldName("doublePrediction")));
+
+		// The predictions are not modified
+		assertFalse(predictions.containsKey(new FieldName("prediction")));
+		assertFalse(predictions.containsKey(new FieldName("doublePrediction")));
+	}
+
+	@Test
+	public void evaluateWithoutOutput() throws Exception {
+		RegressionModelEvaluator evaluator = ColumnarEvaluationTest.prepareModel();
+
+		assertTrue(((evaluator.getOrCreateEvaluationPlan()).getOutputPlan()).isEmpty());
+	}
+
+	private static RegressionModelEvaluator prepareModel() throws Exception {
+		RegressionModelEvaluator evaluator = ColumnarEvaluationTest.prepareModel();
+
+		List<OutputField> outputFields = (evaluator.getOrCreateOutput()).getOutputFields();
+
+		OutputField prediction = new OutputField(new FieldName("prediction"));
+		prediction.setFeature(ResultFeatureType.PREDICTED_VALUE);
+
+		outputFields.add(prediction);
+
+		Constant two = new Constant("2");
+		two.setDataType(DataType.DOUBLE);
+
+		Apply apply = new Apply("*");
+		(apply.getExpressions()).add(new FieldRef(new FieldName("prediction")));
+		(apply.getExpressions()).add(two);
+
+		OutputField doublePrediction = new OutputField(new FieldName("doublePrediction"));
+		doublePrediction.setFeature(ResultFeatureType.TRANSFORMED_VALUE);
+		doublePrediction.setExpression(apply);
+		doublePrediction.setDataType(DataType.DOUBLE);
+
+		outputFields.add(doublePrediction);
+
+		evaluator.invalidateIndexes();
+
+		return evaluator;
+	}
+}
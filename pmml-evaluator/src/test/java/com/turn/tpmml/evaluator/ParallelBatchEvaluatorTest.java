@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+
+import jsr166y.ForkJoinPool;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ParallelBatchEvaluatorTest {
+
+	@Test
+	public void evaluateBatch() throws Exception {
+		RegressionModelEvaluator evaluator = ColumnarEvaluationTest.prepareModel();
+
+		FieldName x1 = new FieldName("x1");
+		FieldName x2 = new FieldName("x2");
+		FieldName y = new FieldName("y");
+
+		int size = 10000;
+
+		double[] x1Values = new double[size];
+		Object[] x2Values = new Object[size];
+
+		for (int i = 0; i < size; i++) {
+			x1Values[i] = i;
+			x2Values[i] = (i % 7 == 0 ? null : Double.valueOf(-i / 2d));
+		}
+
+		ColumnarInput input = new ColumnarInput(size);
+		input.putColumn(x1, x1Values);
+		input.putColumn(x2, x2Values);
+
+		ColumnarOutput expected = new ColumnarOutput(size);
+		evaluator.evaluateBatch(input, expected);
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+
+		try {
+			ParallelBatchEvaluator parallelEvaluator =
+					new ParallelBatchEvaluator(evaluator, pool);
+			parallelEvaluator.setChunkSize(97);
+
+			ColumnarOutput output = new ColumnarOutput(size);
+			parallelEvaluator.evaluateBatch(input, output);
+
+			assertArrayEquals(expected.getColumn(y), output.getColumn(y));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void evaluateInvalidBatch() throws Exception {
+		RegressionModelEvaluator evaluator = ColumnarEvaluationTest.prepareModel();
+
+		int size = 1000;
+
+		Object[] x1Values = new Object[size];
+		for (int i = 0; i < size; i++) {
+			x1Values[i] = (i == size - 1 ? "x" : Double.valueOf(i));
+		}
+
+		ColumnarInput input = new ColumnarInput(size);
+		input.putColumn(new FieldName("x1"), x1Values);
+		input.putColumn(new FieldName("x2"), new double[size]);
+
+		ForkJoinPool pool = new ForkJoinPool(2);
+
+		try {
+			ParallelBatchEvaluator parallelEvaluator =
+					new ParallelBatchEvaluator(evaluator, pool);
+			parallelEvaluator.setChunkSize(10);
+
+			parallelEvaluator.evaluateBatch(input, new ColumnarOutput(size));
+
+			fail();
+		} catch (EvaluationException ee) {
+			assertEquals("Can't cast [x] to a number", ee.getMessage());
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
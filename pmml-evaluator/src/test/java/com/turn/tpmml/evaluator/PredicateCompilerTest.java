@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Array;
+import com.turn.tpmml.CompoundPredicate;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.SimpleSetPredicate;
+import com.turn.tpmml.True;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+public class PredicateCompilerTest {
+
+	@Test
+	public void evaluateSimplePredicate() throws EvaluationException {
+		FieldName name = new FieldName("x");
+
+		SimplePredicate simplePredicate =
+				new SimplePredicate(name, SimplePredicate.Operator.LESS_THAN);
+		simplePredicate.setValue("3");
+
+		CompiledPredicate predicate = PredicateCompiler.compile(simplePredicate, null);
+
+		assertEquals(Boolean.TRUE, predicate.evaluate(new LocalEvaluationContext(name, 2)));
+		assertEquals(Boolean.FALSE, predicate.evaluate(new LocalEvaluationContext(name, 3)));
+		assertEquals(Boolean.TRUE, predicate.evaluate(new LocalEvaluationContext(name, 2.5f)));
+		assertEquals(Boolean.FALSE, predicate.evaluate(new LocalEvaluationContext(name, 3.5d)));
+		assertEquals(Boolean.FALSE, predicate.evaluate(new LocalEvaluationContext(name, "4")));
+		assertEquals(null, predicate.evaluate(new LocalEvaluationContext(name, null)));
+
+		simplePredicate.setOperator(SimplePredicate.Operator.IS_MISSING);
+
+		predicate = PredicateCompiler.compile(simplePredicate, null);
+
+		assertEquals(Boolean.TRUE, predicate.evaluate(new LocalEvaluationContext(name, null)));
+		assertEquals(Boolean.FALSE, predicate.evaluate(new LocalEvaluationContext(name, 1)));
+	}
+
+	@Test
+	public void evaluateSimpleSetPredicate() throws EvaluationException {
+		FieldName name = new FieldName("x");
+
+		SimpleSetPredicate simpleSetPredicate =
+				new SimpleSetPredicate(new Array("1 2 3", Array.Type.INT), name,
+						SimpleSetPredicate.BooleanOperator.IS_IN);
+
+		CompiledPredicate predicate = PredicateCompiler.compile(simpleSetPredicate, null);
+
+		assertEquals(Boolean.TRUE, predicate.evaluate(new LocalEvaluationContext(name, 2)));
+		assertEquals(Boolean.FALSE, predicate.evaluate(new LocalEvaluationContext(name, 4)));
+
+		EvaluationException exception = null;
+
+		for (int i = 0; i < 2; i++) {
+
+			try {
+				predicate.evaluate(new LocalEvaluationContext(name, null));
+
+				fail();
+			} catch (EvaluationException ee) {
+				assertEquals(0, (ee.getStackTrace()).length);
+
+				// Every failure has an exception of its own, which the caller may modify
+				if (exception != null) {
+					assertNotSame(exception, ee);
+					assertEquals(exception.getMessage(), ee.getMessage());
+				}
+
+				exception = ee;
+			}
+		}
+	}
+
+	@Test
+	public void evaluateCompoundPredicate() throws EvaluationException {
+		FieldName name = new FieldName("x");
+
+		SimplePredicate left = new SimplePredicate(name, SimplePredicate.Operator.GREATER_THAN);
+		left.setValue("0.5");
+
+		CompoundPredicate compoundPredicate =
+				new CompoundPredicate(CompoundPredicate.BooleanOperator.SURROGATE);
+		compoundPredicate.getContent().add(left);
+		compoundPredicate.getContent().add(new True());
+
+		CompiledPredicate predicate = PredicateCompiler.compile(compoundPredicate, null);
+
+		assertEquals(Boolean.FALSE, predicate.evaluate(new LocalEvaluationContext(name, 0.25d)));
+		assertEquals(Boolean.TRUE, predicate.evaluate(new LocalEvaluationContext(name, null)));
+
+		compoundPredicate.setBooleanOperator(CompoundPredicate.BooleanOperator.AND);
+
+		predicate = PredicateCompiler.compile(compoundPredicate, null);
+
+		assertEquals(Boolean.TRUE, predicate.evaluate(new LocalEvaluationContext(name, 0.75d)));
+		assertEquals(null, predicate.evaluate(new LocalEvaluationContext(name, null)));
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class ReusableEvaluationTest {
+
+	@Test
+	public void evaluate() throws Exception {
+		RegressionModelEvaluator evaluator = ColumnarEvaluationTest.prepareModel();
+
+		ReusableEvaluationContext context = new ReusableEvaluationContext(evaluator);
+		DoubleSink sink = new DoubleSink();
+
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x1"), 1d);
+		parameters.put(new FieldName("x2"), 1d);
+
+		context.reset(parameters);
+
+		assertTrue(evaluator.evaluate(context, sink));
+		assertEquals(6d, sink.value, 0d);
+
+		parameters.put(new FieldName("x2"), null);
+
+		context.reset(parameters);
+
+		sink.value = 0d;
+
+		assertFalse(evaluator.evaluate(context, sink));
+		assertEquals(0d, sink.value, 0d);
+
+		ReusableEvaluationContext boundContext =
+				new ReusableEvaluationContext(evaluator, evaluator.getActiveFields());
+
+		boundContext.reset(new Object[] { 2d, 1d });
+
+		assertTrue(evaluator.evaluate(boundContext, sink));
+		assertEquals(8d, sink.value, 0d);
+
+		boundContext.reset(new Object[] { 2d, null });
+
+		assertFalse(evaluator.evaluate(boundContext, sink));
+
+		// A NaN value is not a missing value
+		boundContext.reset(new Object[] { Double.NaN, 1d });
+
+		assertTrue(evaluator.evaluate(boundContext, sink));
+		assertTrue(Double.isNaN(sink.value));
+	}
+
+	@Test
+	public void evaluateWithoutAllocation() throws Exception {
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+
+		com.sun.management.ThreadMXBean allocationMXBean =
+				(com.sun.management.ThreadMXBean) threadMXBean;
+		assumeTrue(allocationMXBean.isThreadAllocatedMemorySupported());
+
+		allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+
+		RegressionModelEvaluator evaluator = ColumnarEvaluationTest.prepareModel();
+		evaluator.freeze();
+
+		ReusableEvaluationContext context = new ReusableEvaluationContext(evaluator);
+		DoubleSink sink = new DoubleSink();
+
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x1"), 1d);
+		parameters.put(new FieldName("x2"), 1d);
+
+		ReusableEvaluationContext boundContext =
+				new ReusableEvaluationContext(evaluator, evaluator.getActiveFields());
+
+		Object[] values = { 2d, 1d };
+
+		long threadId = Thread.currentThread().getId();
+
+		// Measure the measurement itself, which may allocate a few bytes
+		long overhead = allocationMXBean.getThreadAllocatedBytes(threadId);
+		overhead = allocationMXBean.getThreadAllocatedBytes(threadId) - overhead;
+
+		long allocatedBytes = Long.MAX_VALUE;
+
+		for (int attempt = 0; attempt < 10 && allocatedBytes > 0; attempt++) {
+			long begin = allocationMXBean.getThreadAllocatedBytes(threadId);
+
+			for (int i = 0; i < 10000; i++) {
+				boundContext.reset(values);
+
+				evaluator.evaluate(boundContext, sink);
+
+				context.reset(parameters);
+
+				evaluator.evaluate(context, sink);
+			}
+
+			allocatedBytes = allocationMXBean.getThreadAllocatedBytes(threadId) - begin - overhead;
+		}
+
+		assertEquals(6d, sink.value, 0d);
+		assertEquals(0L, allocatedBytes);
+	}
+
+	private static class DoubleSink implements ResultSink {
+
+		private double value = 0d;
+
+		public void put(FieldName name, Object value) {
+			this.value = ((Number) value).doubleValue();
+		}
+
+		public void putDouble(FieldName name, double value) {
+			this.value = value;
+		}
+	}
+}
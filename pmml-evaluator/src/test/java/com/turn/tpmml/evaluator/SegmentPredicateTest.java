@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.MiningFunctionType;
+import com.turn.tpmml.MiningModel;
+import com.turn.tpmml.MultipleModelMethodType;
+import com.turn.tpmml.Segment;
+import com.turn.tpmml.SimplePredicate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SegmentPredicateTest {
+
+	@Test
+	public void selectFirst() throws Exception {
+		RegressionModelEvaluator regressionEvaluator = ColumnarEvaluationTest.prepareModel();
+
+		MiningModel miningModel =
+				new MiningModel(regressionEvaluator.getMiningSchema(),
+						MiningFunctionType.REGRESSION);
+
+		MiningModelEvaluator2 evaluator =
+				new MiningModelEvaluator2(regressionEvaluator.getPmml(), miningModel);
+		evaluator.createSegmentation(MultipleModelMethodType.SELECT_FIRST);
+
+		Segment first = evaluator.addSegment(createPredicate(new FieldName("x1")),
+				regressionEvaluator.getModel());
+		evaluator.addSegment(createPredicate(new FieldName("x2")),
+				regressionEvaluator.getModel());
+
+		MiningModelEvaluator alternateEvaluator =
+				new MiningModelEvaluator(regressionEvaluator.getPmml(), miningModel);
+
+		CompiledPredicate predicate =
+				(evaluator.getOrCreateCompiledSegmentation()).getPredicate(first);
+		CompiledPredicate alternatePredicate =
+				(alternateEvaluator.getOrCreateCompiledSegmentation()).getPredicate(first);
+
+		assertEquals(6d, (evaluator.evaluate(createParameters(1d, 1d))).getResult());
+		assertEquals(6d, (alternateEvaluator.evaluate(createParameters(1d, 1d))).getResult());
+
+		assertEquals(2d, (evaluator.evaluate(createParameters(-1d, 1d))).getResult());
+		assertEquals(2d, (alternateEvaluator.evaluate(createParameters(-1d, 1d))).getResult());
+
+		// Neither segment is selected
+		try {
+			evaluator.evaluate(createParameters(-1d, -1d));
+
+			throw new AssertionError();
+		} catch (EvaluationException ee) {
+			// Ignored
+		}
+
+		// The predicates of segments are compiled once, and shared between evaluations
+		assertSame(predicate, (evaluator.getOrCreateCompiledSegmentation()).getPredicate(first));
+		assertSame(alternatePredicate,
+				(alternateEvaluator.getOrCreateCompiledSegmentation()).getPredicate(first));
+
+		evaluator.freeze();
+
+		assertEquals(6d, (evaluator.evaluate(createParameters(1d, 1d))).getResult());
+
+		assertSame(predicate, (evaluator.getOrCreateCompiledSegmentation()).getPredicate(first));
+	}
+
+	private static Map<FieldName, Object> createParameters(Object x1, Object x2) {
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x1"), x1);
+		parameters.put(new FieldName("x2"), x2);
+
+		return parameters;
+	}
+
+	private static SimplePredicate createPredicate(FieldName name) {
+		SimplePredicate simplePredicate =
+				new SimplePredicate(name, SimplePredicate.Operator.GREATER_THAN);
+		simplePredicate.setValue("0");
+
+		return simplePredicate;
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.Apply;
+import com.turn.tpmml.Constant;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.DerivedField;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldRef;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.OutputField;
+import com.turn.tpmml.ResultFeatureType;
+import com.turn.tpmml.manager.PMMLResult;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SelectiveOutputTest {
+
+	@Test
+	public void evaluate() throws Exception {
+		RegressionModelEvaluator evaluator = prepareModel();
+
+		Map<FieldName, Object> parameters = createParameters();
+
+		// The diagnostic output field fails
+		try {
+			evaluator.evaluate(parameters);
+
+			throw new AssertionError();
+		} catch (EvaluationException ee) {
+			// Ignored
+		}
+
+		PMMLResult result = (PMMLResult) evaluator.evaluate(parameters,
+				Collections.singleton(new FieldName("tripledPrediction")));
+
+		assertFalse(result.containsKey(new FieldName("diagnostic")));
+		assertEquals(6d, result.getValue(new FieldName("y")));
+		assertEquals(6d, result.getValue(new FieldName("prediction")));
+		assertEquals(18d, result.getValue(new FieldName("tripledPrediction")));
+
+		result = (PMMLResult) evaluator.evaluate(parameters, Collections.<FieldName>emptySet());
+
+		assertEquals(6d, result.getValue(new FieldName("y")));
+		assertFalse(result.containsKey(new FieldName("prediction")));
+	}
+
+	@Test
+	public void evaluateReusable() throws Exception {
+		RegressionModelEvaluator evaluator = prepareModel();
+		evaluator.freeze();
+
+		ReusableEvaluationContext context = new ReusableEvaluationContext(evaluator);
+		context.setOutputFields(Collections.<FieldName>emptySet());
+
+		final Set<FieldName> names = new HashSet<FieldName>();
+
+		ResultSink sink = new ResultSink() {
+
+			public void put(FieldName name, Object value) {
+				names.add(name);
+			}
+
+			public void putDouble(FieldName name, double value) {
+				names.add(name);
+			}
+		};
+
+		context.reset(createParameters());
+
+		assertTrue(evaluator.evaluate(context, sink));
+		assertEquals(Collections.singleton(new FieldName("y")), names);
+	}
+
+	@Test
+	public void select() throws Exception {
+		RegressionModelEvaluator evaluator = prepareModel();
+
+		OutputPlan outputPlan = (evaluator.getOrCreateEvaluationPlan()).getOutputPlan();
+
+		assertTrue(outputPlan == outputPlan.select(null));
+
+		assertTrue((outputPlan.select(Collections.<FieldName>emptySet())).isEmpty());
+		assertTrue((outputPlan.select(Collections.singleton(new FieldName("x1")))).isEmpty());
+
+		assertFalse((outputPlan.select(Collections.singleton(new FieldName("prediction"))))
+				.isEmpty());
+
+		// Selections are cached by the names of output fields
+		Set<FieldName> names = new HashSet<FieldName>();
+		names.add(new FieldName("prediction"));
+
+		OutputPlan selectedPlan = outputPlan.select(names);
+		assertTrue(selectedPlan == outputPlan.select(Collections.singleton(
+				new FieldName("prediction"))));
+
+		// Modifying the names later does not affect the cache
+		names.add(new FieldName("x1"));
+		assertTrue(selectedPlan == outputPlan.select(Collections.singleton(
+				new FieldName("prediction"))));
+	}
+
+	private static Map<FieldName, Object> createParameters() {
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x1"), 1d);
+		parameters.put(new FieldName("x2"), 1d);
+
+		return parameters;
+	}
+
+	private static RegressionModelEvaluator prepareModel() throws Exception {
+		RegressionModelEvaluator evaluator = ColumnarEvaluationTest.prepareModel();
+
+		Constant three = new Constant("3");
+		three.setDataType(DataType.DOUBLE);
+
+		Apply apply = new Apply("*");
+		(apply.getExpressions()).add(new FieldRef(new FieldName("prediction")));
+		(apply.getExpressions()).add(three);
+
+		// The output field "tripledPrediction" depends on the output field "prediction" through
+		// this derived field
+		DerivedField tripled = new DerivedField(OpType.CONTINUOUS, DataType.DOUBLE);
+		tripled.setName(new FieldName("tripled"));
+		tripled.setExpression(apply);
+
+		((evaluator.getOrCreateLocalTransformations()).getDerivedFields()).add(tripled);
+
+		List<OutputField> outputFields = (evaluator.getOrCreateOutput()).getOutputFields();
+
+		OutputField prediction = new OutputField(new FieldName("prediction"));
+		prediction.setFeature(ResultFeatureType.PREDICTED_VALUE);
+
+		outputFields.add(prediction);
+
+		OutputField diagnostic = new OutputField(new FieldName("diagnostic"));
+		diagnostic.setFeature(ResultFeatureType.TRANSFORMED_VALUE);
+
+		outputFields.add(diagnostic);
+
+		OutputField tripledPrediction = new OutputField(new FieldName("tripledPrediction"));
+		tripledPrediction.setFeature(ResultFeatureType.TRANSFORMED_VALUE);
+		tripledPrediction.setExpression(new FieldRef(new FieldName("tripled")));
+
+		outputFields.add(tripledPrediction);
+
+		evaluator.invalidateIndexes();
+
+		return evaluator;
+	}
+}
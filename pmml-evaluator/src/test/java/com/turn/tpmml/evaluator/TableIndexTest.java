@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.InlineTable;
+import com.turn.tpmml.Row;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TableIndexTest {
+
+	@Test
+	public void getSingleColumn() throws Exception {
+		InlineTable table = new InlineTable();
+		table.getRows().add(createRow(new String[][] { { "value", "1" }, { "output", "1.5" } }));
+		table.getRows().add(createRow(new String[][] { { "value", "01" }, { "output", "2.5" } }));
+		table.getRows().add(createRow(new String[][] { { "value", "a" }, { "output", "3.5" } }));
+
+		TableIndex index =
+				TableIndex.create(table, new String[] { "value" }, "output", DataType.DOUBLE);
+
+		assertEquals(1.5d, index.get(1));
+		assertEquals(1.5d, index.get(1d));
+		assertEquals(1.5d, index.get("1"));
+		assertEquals(2.5d, index.get("01"));
+		assertEquals(3.5d, index.get("a"));
+		assertEquals(null, index.get("b"));
+		assertEquals(null, index.get(2));
+	}
+
+	@Test
+	public void getMultipleColumns() throws Exception {
+		InlineTable table = new InlineTable();
+		table.getRows().add(createRow(new String[][] { { "value", "1" }, { "flag", "true" },
+				{ "output", "firstTrue" } }));
+		table.getRows().add(createRow(new String[][] { { "value", "1" }, { "flag", "false" },
+				{ "output", "firstFalse" } }));
+		table.getRows().add(createRow(new String[][] { { "value", "2" }, { "flag", "true" } }));
+
+		TableIndex index =
+				TableIndex.create(table, new String[] { "value", "flag" }, "output", null);
+
+		assertEquals("firstTrue", index.get(1, "true"));
+		assertEquals("firstFalse", index.get(new Object[] { 1f, "false" }));
+		assertEquals(null, index.get(3, "true"));
+
+		try {
+			index.get(2, "true");
+
+			fail();
+		} catch (EvaluationException ee) {
+			// Ignored
+		}
+	}
+
+	private static Row createRow(String[][] cells) throws Exception {
+		Document document = (DocumentBuilderFactory.newInstance()).newDocumentBuilder()
+				.newDocument();
+
+		Row row = new Row();
+
+		for (String[] cell : cells) {
+			Element element = document.createElement(cell[0]);
+			element.setTextContent(cell[1]);
+
+			(row.getContent()).add(element);
+		}
+
+		return row;
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataField;
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.MiningFunctionType;
+import com.turn.tpmml.MiningModel;
+import com.turn.tpmml.MultipleModelMethodType;
+import com.turn.tpmml.Node;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.PMML;
+import com.turn.tpmml.Predicate;
+import com.turn.tpmml.Segment;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.TreeModel;
+import com.turn.tpmml.True;
+import com.turn.tpmml.manager.TreeModelManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TreeEnsembleEvaluator2Test {
+
+	@Test
+	public void evaluateSum() throws Exception {
+		MiningModelEvaluator2 evaluator = prepareModel(MultipleModelMethodType.SUM);
+
+		assertEquals(12d, evaluate(evaluator, 0d, 1d));
+		assertEquals(21d, evaluate(evaluator, 0d, -1d));
+		assertEquals(35d, evaluate(evaluator, 2d, 1d));
+		assertEquals(31d, evaluate(evaluator, 1.5d, 0d));
+		assertEquals(32d, evaluate(evaluator, Double.NaN, Double.NaN));
+
+		// Values that are not Double are evaluated segment by segment
+		assertEquals(12d, evaluate(evaluator, "0", 1d));
+
+		// The second tree has no true child, which is left to the segment evaluator
+		try {
+			evaluate(evaluator, 0d, 0.5d);
+
+			throw new AssertionError();
+		} catch (EvaluationException ee) {
+			// Ignored
+		}
+	}
+
+	@Test
+	public void evaluateWeightedAverage() throws Exception {
+		MiningModelEvaluator2 evaluator = prepareModel(MultipleModelMethodType.WEIGHTED_AVERAGE);
+
+		assertEquals((0.5d * 10d + 2d * 2d) / 2, evaluate(evaluator, 0d, 1d));
+		assertEquals((0.5d * 30d + 2d * 5d) / 2, evaluate(evaluator, 2d, 1d));
+	}
+
+	@Test
+	public void evaluateLargeTree() throws Exception {
+		MiningModelEvaluator2 evaluator = prepareLargeModel();
+
+		// The tree has 302 nodes, and the subtrees of its nodes span several words
+		assertEquals(1d, evaluate(evaluator, 0.5d, -1d));
+		assertEquals(-1d, evaluate(evaluator, 0.5d, 1d));
+		assertEquals(64d, evaluate(evaluator, 63.5d, 0d));
+		assertEquals(-71d, evaluate(evaluator, 70d, 0.5d));
+		assertEquals(100d, evaluate(evaluator, 99.5d, -1d));
+		assertEquals(1000d, evaluate(evaluator, 150d, 0d));
+	}
+
+	@Test
+	public void evaluateFallback() throws Exception {
+		MiningModelEvaluator2 evaluator = prepareModel(MultipleModelMethodType.SUM);
+
+		TreeEnsembleEvaluator2 ensembleEvaluator =
+				new TreeEnsembleEvaluator2(evaluator.getPmml(), evaluator.getModel());
+
+		// Records that are scored by the quick scorer and records that are evaluated segment by
+		// segment can follow each other
+		assertEquals(35d, evaluate(ensembleEvaluator, 2d, 1d));
+		assertEquals(12d, evaluate(ensembleEvaluator, "0", 1d));
+		assertEquals(21d, evaluate(ensembleEvaluator, 0d, -1d));
+		assertEquals(35d, evaluate(ensembleEvaluator, "2", "1"));
+		assertEquals(31d, evaluate(ensembleEvaluator, 1.5d, 0d));
+	}
+
+	@Test
+	public void isSupported() throws Exception {
+		MiningModelEvaluator2 evaluator = prepareModel(MultipleModelMethodType.SUM);
+
+		MiningModel miningModel = evaluator.getModel();
+
+		PMML pmml = evaluator.getPmml();
+
+		ModelEvaluatorFactory factory = ModelEvaluatorFactory.getInstance();
+
+		assertTrue(TreeEnsembleEvaluator2.isSupported(pmml, miningModel));
+
+		// The default implementation does not support the SUM of segments
+		assertFalse(TreeEnsembleEvaluator.isSupported(pmml, miningModel));
+		assertFalse(factory.getModelManager(pmml, miningModel) instanceof TreeEnsembleEvaluator);
+
+		factory.setAlternateImplementation(false);
+
+		assertTrue(factory.getModelManager(pmml, miningModel) instanceof TreeEnsembleEvaluator2);
+
+		Segment segment = ((miningModel.getSegmentation()).getSegments()).get(0);
+
+		Node leaf = (((TreeModel) segment.getModel()).getNode()).getNodes().get(1);
+		leaf.setScore("high");
+
+		assertFalse(TreeEnsembleEvaluator2.isSupported(pmml, miningModel));
+		assertFalse(factory.getModelManager(pmml, miningModel) instanceof TreeEnsembleEvaluator2);
+	}
+
+	@Test
+	public void isSupportedDataField() throws Exception {
+		MiningModelEvaluator2 evaluator = prepareModel(MultipleModelMethodType.SUM);
+
+		MiningModel miningModel = evaluator.getModel();
+
+		PMML pmml = evaluator.getPmml();
+
+		DataField dataField = ((pmml.getDataDictionary()).getDataFields()).get(0);
+
+		assertEquals(new FieldName("x1"), dataField.getName());
+
+		// Integer values are not prepared to Double
+		dataField.setDataType(DataType.INTEGER);
+
+		assertFalse(TreeEnsembleEvaluator2.isSupported(pmml, miningModel));
+
+		dataField.setDataType(DataType.DOUBLE);
+		dataField.setOptype(OpType.CATEGORICAL);
+
+		assertFalse(TreeEnsembleEvaluator2.isSupported(pmml, miningModel));
+
+		dataField.setOptype(OpType.CONTINUOUS);
+
+		assertTrue(TreeEnsembleEvaluator2.isSupported(pmml, miningModel));
+	}
+
+	/**
+	 * @return The result of {@link TreeEnsembleEvaluator2}, after checking that it is the same as
+	 *         the result of {@link MiningModelEvaluator2}.
+	 */
+	private static Object evaluate(MiningModelEvaluator2 evaluator, Object x1, Object x2)
+			throws Exception {
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x1"), x1);
+		parameters.put(new FieldName("x2"), x2);
+
+		FieldName y = new FieldName("y");
+
+		Object expected;
+
+		try {
+			expected = (evaluator.evaluate(parameters)).getValue(y);
+		} catch (EvaluationException ee) {
+			expected = ee;
+		}
+
+		Object result;
+
+		try {
+			TreeEnsembleEvaluator2 ensembleEvaluator =
+					new TreeEnsembleEvaluator2(evaluator.getPmml(), evaluator.getModel());
+
+			result = (ensembleEvaluator.evaluate(parameters)).getValue(y);
+		} catch (EvaluationException ee) {
+			assertTrue(expected instanceof EvaluationException);
+
+			throw ee;
+		}
+
+		assertEquals(expected, result);
+
+		return result;
+	}
+
+	private static Object evaluate(TreeEnsembleEvaluator2 ensembleEvaluator, Object x1, Object x2)
+			throws Exception {
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x1"), x1);
+		parameters.put(new FieldName("x2"), x2);
+
+		return (ensembleEvaluator.evaluate(parameters)).getValue(new FieldName("y"));
+	}
+
+	private static MiningModelEvaluator2 prepareModel(MultipleModelMethodType multipleModelMethod)
+			throws Exception {
+		TreeModelManager treeModelManager = new TreeModelManager();
+		treeModelManager.createModel(MiningFunctionType.REGRESSION);
+
+		FieldName x1 = new FieldName("x1");
+		treeModelManager.addField(x1, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName x2 = new FieldName("x2");
+		treeModelManager.addField(x2, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName y = new FieldName("y");
+		treeModelManager.addField(y, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.PREDICTED);
+
+		Node firstRoot = treeModelManager.getOrCreateRoot();
+
+		Node low = addNode(firstRoot, createPredicate(x1, SimplePredicate.Operator.LESS_OR_EQUAL,
+				"1"), null);
+		addNode(low, createPredicate(x2, SimplePredicate.Operator.GREATER_THAN, "0"), "10");
+		addNode(low, new True(), "20");
+		addNode(firstRoot, new True(), "30");
+
+		Node secondRoot = new Node();
+		secondRoot.setPredicate(new True());
+
+		addNode(secondRoot, createPredicate(x1, SimplePredicate.Operator.EQUAL, "2"), "5");
+		addNode(secondRoot, createPredicate(x2, SimplePredicate.Operator.LESS_THAN, "0.5"), "1");
+		addNode(secondRoot, createPredicate(x2, SimplePredicate.Operator.GREATER_THAN, "0.5"),
+				"2");
+
+		TreeModel firstTree = treeModelManager.getModel();
+
+		TreeModel secondTree = new TreeModel(firstTree.getMiningSchema(), secondRoot,
+				MiningFunctionType.REGRESSION);
+
+		MiningModel miningModel =
+				new MiningModel(firstTree.getMiningSchema(), MiningFunctionType.REGRESSION);
+
+		MiningModelEvaluator2 evaluator =
+				new MiningModelEvaluator2(treeModelManager.getPmml(), miningModel);
+		evaluator.createSegmentation(multipleModelMethod);
+
+		(evaluator.addSegment(firstTree)).setWeight(0.5d);
+		(evaluator.addSegment(secondTree)).setWeight(2d);
+
+		return evaluator;
+	}
+
+	/**
+	 * A single tree, whose root node has 100 child nodes with two child nodes each, and a last
+	 * child node that is always <code>true</code>.
+	 */
+	private static MiningModelEvaluator2 prepareLargeModel() throws Exception {
+		TreeModelManager treeModelManager = new TreeModelManager();
+		treeModelManager.createModel(MiningFunctionType.REGRESSION);
+
+		FieldName x1 = new FieldName("x1");
+		treeModelManager.addField(x1, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName x2 = new FieldName("x2");
+		treeModelManager.addField(x2, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+
+		FieldName y = new FieldName("y");
+		treeModelManager.addField(y, null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.PREDICTED);
+
+		Node root = treeModelManager.getOrCreateRoot();
+
+		for (int i = 1; i <= 100; i++) {
+			Node node = addNode(root, createPredicate(x1, SimplePredicate.Operator.LESS_THAN,
+					String.valueOf(i)), null);
+
+			addNode(node, createPredicate(x2, SimplePredicate.Operator.LESS_OR_EQUAL, "0"),
+					String.valueOf(i));
+			addNode(node, new True(), String.valueOf(-i));
+		}
+
+		addNode(root, new True(), "1000");
+
+		TreeModel treeModel = treeModelManager.getModel();
+
+		MiningModel miningModel =
+				new MiningModel(treeModel.getMiningSchema(), MiningFunctionType.REGRESSION);
+
+		MiningModelEvaluator2 evaluator =
+				new MiningModelEvaluator2(treeModelManager.getPmml(), miningModel);
+		evaluator.createSegmentation(MultipleModelMethodType.SUM);
+		evaluator.addSegment(treeModel);
+
+		return evaluator;
+	}
+
+	private static Node addNode(Node parent, Predicate predicate, String score) {
+		Node node = new Node();
+		node.setPredicate(predicate);
+		node.setScore(score);
+
+		(parent.getNodes()).add(node);
+
+		return node;
+	}
+
+	private static SimplePredicate createPredicate(FieldName name,
+			SimplePredicate.Operator operator, String value) {
+		SimplePredicate simplePredicate = new SimplePredicate(name, operator);
+		simplePredicate.setValue(value);
+
+		return simplePredicate;
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2013 University of Tartu
+ */
+package com.turn.tpmml.evaluator;
+
+import com.turn.tpmml.DataType;
+import com.turn.tpmml.FieldName;
+import com.turn.tpmml.FieldUsageType;
+import com.turn.tpmml.MiningFunctionType;
+import com.turn.tpmml.MiningModel;
+import com.turn.tpmml.MultipleModelMethodType;
+import com.turn.tpmml.Node;
+import com.turn.tpmml.OpType;
+import com.turn.tpmml.PMML;
+import com.turn.tpmml.Predicate;
+import com.turn.tpmml.SimplePredicate;
+import com.turn.tpmml.TreeModel;
+import com.turn.tpmml.True;
+import com.turn.tpmml.manager.TreeModelManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TreeEnsembleEvaluatorTest {
+
+	@Test
+	public void evaluateAverage() throws Exception {
+		MiningModelEvaluator evaluator = prepareModel(MultipleModelMethodType.AVERAGE);
+
+		assertEquals((10d + 2d) / 2, evaluate(evaluator, 0d, 1d));
+		assertEquals((30d + 5d) / 2, evaluate(evaluator, 2d, 1d));
+		assertEquals((30d + 2d) / 2, evaluate(evaluator, Double.NaN, Double.NaN));
+
+		// Values that are not Double are evaluated segment by segment
+		evaluate(evaluator, "0", 1d);
+		evaluate(evaluator, "2", "1");
+	}
+
+	@Test
+	public void evaluateWeightedAverage() throws Exception {
+		MiningModelEvaluator evaluator = prepareModel(MultipleModelMethodType.WEIGHTED_AVERAGE);
+
+		assertEquals((0.5d * 10d + 2d * 2d) / 2.5d, evaluate(evaluator, 0d, 1d));
+		assertEquals((0.5d * 30d + 2d * 5d) / 2.5d, evaluate(evaluator, 2d, 1d));
+
+		evaluate(evaluator, "0", 1d);
+	}
+
+	@Test
+	public void evaluateMissing() throws Exception {
+		MultipleModelMethodType[] multipleModelMethods = {
+				MultipleModelMethodType.AVERAGE, MultipleModelMethodType.WEIGHTED_AVERAGE };
+
+		for (MultipleModelMethodType multipleModelMethod : multipleModelMethods) {
+			MiningModelEvaluator evaluator = prepareModel(multipleModelMethod);
+
+			// Missing values, and the second tree having no true child, are left to the
+			// segment evaluators, whose results are the same as those of the default
+			// implementation
+			evaluate(evaluator, null, null);
+			evaluate(evaluator, null, 1d);
+			evaluate(evaluator, 0d, null);
+			evaluate(evaluator, 2d, null);
+			evaluate(evaluator, 0d, 0.5d);
+			evaluate(evaluator, null, 0.5d);
+		}
+	}
+
+	@Test
+	public void evaluateOrder() throws Exception {
+		MiningModelEvaluator evaluator = prepareLargeModel();
+
+		// The default implementation sums up the scores of segments 0, 1, 10, 11, 2, ... in
+		// this order, so that the score of segment 2 is not lost
+		assertEquals(1d / 12, evaluate(evaluator, 0d, 0d));
+		assertEquals(12d / 12, evaluate(evaluator, 1d, 0d));
+	}
+
+	@Test
+	public void isSupported() throws Exception {
+		MiningModelEvaluator evaluator = prepareModel(MultipleModelMethodType.AVERAGE);
+
+		MiningModel miningModel = evaluator.getModel();
+
+		PMML pmml = evaluator.getPmml();
+
+		ModelEvaluatorFactory factory = ModelEvaluatorFactory.getInstance();
+
+		assertTrue(TreeEnsembleEvaluator.isSupported(pmml, miningModel));
+		assertTrue(factory.getModelManager(pmml, miningModel) instanceof TreeEnsembleEvaluator);
+
+		factory.setAlternateImplementation(false);
+
+		assertTrue(factory.getModelManager(pmml, miningModel) instanceof TreeEnsembleEvaluator2);
+
+		(miningModel.getSegmentation()).setMultipleModelMethod(MultipleModelMethodType.SUM);
+
+		assertFalse(TreeEnsembleEvaluator.isSupported(pmml, miningModel));
+		assertTrue(TreeEnsembleEvaluator2.isSupported(pmml, miningModel));
+	}
+
+	/**
+	 * @return The result of {@link TreeEnsembleEvaluator}, after checking that it is the same as
+	 *         the result of {@link MiningModelEvaluator}.
+	 */
+	private static Object evaluate(MiningModelEvaluator evaluator, Object x1, Object x2)
+			throws Exception {
+		Map<FieldName, Object> parameters = new LinkedHashMap<FieldName, Object>();
+		parameters.put(new FieldName("x1"), x1);
+		parameters.put(new FieldName("x2"), x2);
+
+		FieldName y = new FieldName("y");
+
+		Object expected;
+
+		try {
+			expected = (evaluator.evaluate(parameters)).getValue(y);
+		} catch (EvaluationException ee) {
+			expected = ee;
+		}
+
+		Object result;
+
+		try {
+			TreeEnsembleEvaluator ensembleEvaluator =
+					new TreeEnsembleEvaluator(evaluator.getPmml(), evaluator.getModel());
+
+			result = (ensembleEvaluator.evaluate(parameters)).getValue(y);
+		} catch (EvaluationException ee) {
+			assertTrue(expected instanceof EvaluationException);
+
+			return null;
+		}
+
+		assertEquals(expected, result);
+
+		return result;
+	}
+
+	private static MiningModelEvaluator prepareModel(MultipleModelMethodType multipleModelMethod)
+			throws Exception {
+		TreeModelManager treeModelManager = createTreeModelManager();
+
+		FieldName x1 = new FieldName("x1");
+		FieldName x2 = new FieldName("x2");
+
+		Node firstRoot = treeModelManager.getOrCreateRoot();
+
+		Node low = addNode(firstRoot, createPredicate(x1, SimplePredicate.Operator.LESS_OR_EQUAL,
+				"1"), null);
+		addNode(low, createPredicate(x2, SimplePredicate.Operator.GREATER_THAN, "0"), "10");
+		addNode(low, new True(), "20");
+		addNode(firstRoot, new True(), "30");
+
+		Node secondRoot = new Node();
+		secondRoot.setPredicate(new True());
+
+		addNode(secondRoot, createPredicate(x1, SimplePredicate.Operator.EQUAL, "2"), "5");
+		addNode(secondRoot, createPredicate(x2, SimplePredicate.Operator.LESS_THAN, "0.5"), "1");
+		addNode(secondRoot, createPredicate(x2, SimplePredicate.Operator.GREATER_THAN, "0.5"),
+				"2");
+
+		TreeModel firstTree = treeModelManager.getModel();
+
+		TreeModel secondTree = new TreeModel(firstTree.getMiningSchema(), secondRoot,
+				MiningFunctionType.REGRESSION);
+
+		MiningModel miningModel =
+				new MiningModel(firstTree.getMiningSchema(), MiningFunctionType.REGRESSION);
+
+		MiningModelEvaluator evaluator =
+				new MiningModelEvaluator(treeModelManager.getPmml(), miningModel);
+		evaluator.createSegmentation(multipleModelMethod);
+
+		(evaluator.addSegment(firstTree)).setWeight(0.5d);
+		(evaluator.addSegment(secondTree)).setWeight(2d);
+
+		return evaluator;
+	}
+
+	/**
+	 * An average of twelve trees. If <code>x1</code> is not greater than 0, then the scores of
+	 * segments 0, 2 and 10 are 1E16, 1 and -1E16, and the scores of the other segments are 0.
+	 * Otherwise, all scores are 1.
+	 */
+	private static MiningModelEvaluator prepareLargeModel() throws Exception {
+		TreeModelManager treeModelManager = createTreeModelManager();
+
+		FieldName x1 = new FieldName("x1");
+
+		TreeModel firstTree = treeModelManager.getModel();
+
+		MiningModel miningModel =
+				new MiningModel(firstTree.getMiningSchema(), MiningFunctionType.REGRESSION);
+
+		MiningModelEvaluator evaluator =
+				new MiningModelEvaluator(treeModelManager.getPmml(), miningModel);
+		evaluator.createSegmentation(MultipleModelMethodType.AVERAGE);
+
+		for (int i = 0; i < 12; i++) {
+			String score = (i == 0 ? "1E16" : (i == 2 ? "1" : (i == 10 ? "-1E16" : "0")));
+
+			Node root = new Node();
+			root.setPredicate(new True());
+
+			addNode(root, createPredicate(x1, SimplePredicate.Operator.LESS_OR_EQUAL, "0"),
+					score);
+			addNode(root, new True(), "1");
+
+			evaluator.addSegment(new TreeModel(firstTree.getMiningSchema(), root,
+					MiningFunctionType.REGRESSION));
+		}
+
+		return evaluator;
+	}
+
+	private static TreeModelManager createTreeModelManager() throws Exception {
+		TreeModelManager treeModelManager = new TreeModelManager();
+		treeModelManager.createModel(MiningFunctionType.REGRESSION);
+
+		treeModelManager.addField(new FieldName("x1"), null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+		treeModelManager.addField(new FieldName("x2"), null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.ACTIVE);
+		treeModelManager.addField(new FieldName("y"), null, OpType.CONTINUOUS, DataType.DOUBLE,
+				FieldUsageType.PREDICTED);
+
+		return treeModelManager;
+	}
+
+	private static Node addNode(Node parent, Predicate predicate, String score) {
+		Node node = new Node();
+		node.setPredicate(predicate);
+		node.setScore(score);
+
+		(parent.getNodes()).add(node);
+
+		return node;
+	}
+
+	private static SimplePredicate createPredicate(FieldName name,
+			SimplePredicate.Operator operator, String value) {
+		SimplePredicate simplePredicate = new SimplePredicate(name, operator);
+		simplePredicate.setValue(value);
+
+		return simplePredicate;
+	}
+}
@@ -27,6 +27,7 @@ public interface Consumer extends Serializable {
 
 	/**
 	 * Gets the independent (ie. input) fields of a {@link Model} from its {@link MiningSchema}.
+	 * @return A read-only list, which callers that want to modify it must copy first.
 	 * @throws ModelManagerException 
 	 *
 	 * @see ModelManager#getActiveFields()
@@ -35,6 +36,7 @@ public interface Consumer extends Serializable {
 
 	/**
 	 * Gets the dependent (ie. output) field(s) of a {@link Model} from its {@link MiningSchema}.
+	 * @return A read-only list, which callers that want to modify it must copy first.
 	 * @throws ModelManagerException 
 	 *
 	 * @see ModelManager#getPredictedFields()
@@ -54,6 +56,7 @@ public interface Consumer extends Serializable {
 
 	/**
 	 * Gets the output fields of a {@link Model} from its {@link Output}.
+	 * @return A read-only list, which callers that want to modify it must copy first.
 	 * @throws ModelManagerException 
 	 *
 	 * @see ModelManager#getOutputFields()
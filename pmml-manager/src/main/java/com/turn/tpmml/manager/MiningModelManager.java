@@ -51,12 +51,15 @@ public class MiningModelManager extends ModelManager<MiningModel> {
 	 * @see #getModel()
 	 */
 	public MiningModel createModel(MiningFunctionType miningFunction) throws ModelManagerException {
+		ensureNotFrozen();
 		ensureNull(this.miningModel);
 
 		this.miningModel = new MiningModel(new MiningSchema(), miningFunction);
 
 		getModels().add(this.miningModel);
 
+		invalidateIndexes();
+
 		return this.miningModel;
 	}
 
@@ -77,6 +80,8 @@ public class MiningModelManager extends ModelManager<MiningModel> {
 	 */
 	public Segmentation createSegmentation(MultipleModelMethodType multipleModelMethod)
 			throws ModelManagerException {
+		ensureNotFrozen();
+
 		MiningModel miningModel = getModel();
 
 		Segmentation segmentation = miningModel.getSegmentation();
@@ -93,12 +98,16 @@ public class MiningModelManager extends ModelManager<MiningModel> {
 	}
 
 	public Segment addSegment(Predicate predicate, Model model) throws ModelManagerException {
+		ensureNotFrozen();
+
 		Segment segment = new Segment();
 		segment.setPredicate(predicate);
 		segment.setModel(model);
 
 		getSegments().add(segment);
 
+		invalidateIndexes();
+
 		return segment;
 	}
 
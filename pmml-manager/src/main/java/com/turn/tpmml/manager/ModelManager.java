@@ -17,7 +17,11 @@ import com.turn.tpmml.OutputField;
 import com.turn.tpmml.PMML;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 public abstract class ModelManager<M extends Model> extends PMMLManager implements Consumer {
 
@@ -27,6 +31,16 @@ public abstract class ModelManager<M extends Model> extends PMMLManager implemen
 
 	private Output output = null;
 
+	private transient Map<FieldName, MiningField> miningFieldIndex = null;
+
+	private transient Map<FieldUsageType, List<FieldName>> miningFieldUsageIndex = null;
+
+	private transient Map<FieldName, DerivedField> localDerivedFieldIndex = null;
+
+	private transient Map<FieldName, OutputField> outputFieldIndex = null;
+
+	private transient List<FieldName> outputFieldNames = null;
+
 	public ModelManager() {
 	}
 
@@ -53,6 +67,10 @@ public abstract class ModelManager<M extends Model> extends PMMLManager implemen
 		addMiningField(name, fieldUsageType);
 	}
 
+	/**
+	 * @return A read-only list of the names of the active fields. The list is cached until
+	 *         {@link #invalidateIndexes()}, so callers that want to modify it must copy it first.
+	 */
 	public List<FieldName> getActiveFields() throws ModelManagerException {
 		return getMiningFields(FieldUsageType.ACTIVE);
 	}
@@ -68,70 +86,83 @@ public abstract class ModelManager<M extends Model> extends PMMLManager implemen
 		return fields.get(0);
 	}
 
+	/**
+	 * @return A read-only list of the names of the predicted fields.
+	 * 
+	 * @see #getActiveFields()
+	 */
 	public List<FieldName> getPredictedFields() throws ModelManagerException {
 		return getMiningFields(FieldUsageType.PREDICTED);
 	}
 
+	/**
+	 * @return A read-only list of the names of the mining fields that have the given usage.
+	 */
 	public List<FieldName> getMiningFields(FieldUsageType fieldUsageType)
 			throws ModelManagerException {
-		List<FieldName> result = new ArrayList<FieldName>();
+		Map<FieldUsageType, List<FieldName>> miningFieldUsages = getOrCreateMiningFieldUsageIndex();
 
-		List<MiningField> miningFields = getMiningSchema().getMiningFields();
-		for (MiningField miningField : miningFields) {
-
-			if ((miningField.getUsageType()).equals(fieldUsageType)) {
-				result.add(miningField.getName());
-			}
+		List<FieldName> result = miningFieldUsages.get(fieldUsageType);
+		if (result == null) {
+			return Collections.emptyList();
 		}
 
 		return result;
 	}
 
 	public MiningField getMiningField(FieldName name) throws ModelManagerException {
-		List<MiningField> miningFields = getMiningSchema().getMiningFields();
+		Map<FieldName, MiningField> miningFields = getOrCreateMiningFieldIndex();
 
-		return find(miningFields, name);
+		return miningFields.get(name);
 	}
 
 	public MiningField addMiningField(FieldName name, FieldUsageType usageType)
 			throws ModelManagerException {
+		ensureNotFrozen();
+
 		MiningField miningField = new MiningField(name);
 		miningField.setUsageType(usageType);
 
 		List<MiningField> miningFields = getMiningSchema().getMiningFields();
 		miningFields.add(miningField);
 
+		invalidateIndexes();
+
 		return miningField;
 	}
 
+	/**
+	 * @return A read-only list of the names of the output fields.
+	 * 
+	 * @see #getActiveFields()
+	 */
 	public List<FieldName> getOutputFields() throws ModelManagerException {
-		List<FieldName> result = new ArrayList<FieldName>();
 
-		Output output = getOrCreateOutput();
+		if (this.outputFieldNames == null) {
+			List<FieldName> result = new ArrayList<FieldName>();
 
-		List<OutputField> outputFields = output.getOutputFields();
-		for (OutputField outputField : outputFields) {
-			result.add(outputField.getName());
+			List<OutputField> outputFields = getOutputFieldList();
+			for (OutputField outputField : outputFields) {
+				result.add(outputField.getName());
+			}
+
+			this.outputFieldNames = Collections.unmodifiableList(result);
 		}
 
-		return result;
+		return this.outputFieldNames;
 	}
 
 	public OutputField getOutputField(FieldName name) throws ModelManagerException {
-		Output output = getOrCreateOutput();
+		Map<FieldName, OutputField> outputFields = getOrCreateOutputFieldIndex();
 
-		List<OutputField> outputFields = output.getOutputFields();
-
-		return find(outputFields, name);
+		return outputFields.get(name);
 	}
 
 	@Override
 	public DerivedField resolve(FieldName name) throws ModelManagerException {
-		LocalTransformations localTransformations = getOrCreateLocalTransformations();
-
-		List<DerivedField> derivedFields = localTransformations.getDerivedFields();
+		Map<FieldName, DerivedField> localDerivedFields = getOrCreateLocalDerivedFieldIndex();
 
-		DerivedField derivedField = find(derivedFields, name);
+		DerivedField derivedField = localDerivedFields.get(name);
 		if (derivedField == null) {
 			derivedField = super.resolve(name);
 		}
@@ -139,6 +170,111 @@ public abstract class ModelManager<M extends Model> extends PMMLManager implemen
 		return derivedField;
 	}
 
+	@Override
+	public void invalidateIndexes() {
+		super.invalidateIndexes();
+
+		this.miningFieldIndex = null;
+		this.miningFieldUsageIndex = null;
+		this.localDerivedFieldIndex = null;
+		this.outputFieldIndex = null;
+		this.outputFieldNames = null;
+	}
+
+	@Override
+	public void freeze() throws ModelManagerException {
+		getOrCreateMiningFieldIndex();
+		getOrCreateMiningFieldUsageIndex();
+		getOrCreateLocalDerivedFieldIndex();
+		getOrCreateOutputFieldIndex();
+		getOutputFields();
+
+		super.freeze();
+	}
+
+	private Map<FieldName, DerivedField> getOrCreateLocalDerivedFieldIndex()
+			throws ModelManagerException {
+
+		if (this.localDerivedFieldIndex == null) {
+			LocalTransformations localTransformations = getModel().getLocalTransformations();
+
+			if (localTransformations != null) {
+				this.localDerivedFieldIndex = index(localTransformations.getDerivedFields());
+			} else {
+				this.localDerivedFieldIndex = Collections.emptyMap();
+			}
+		}
+
+		return this.localDerivedFieldIndex;
+	}
+
+	private Map<FieldName, OutputField> getOrCreateOutputFieldIndex()
+			throws ModelManagerException {
+
+		if (this.outputFieldIndex == null) {
+			this.outputFieldIndex = index(getOutputFieldList());
+		}
+
+		return this.outputFieldIndex;
+	}
+
+	private Map<FieldName, MiningField> getOrCreateMiningFieldIndex()
+			throws ModelManagerException {
+
+		if (this.miningFieldIndex == null) {
+			List<MiningField> miningFields = getMiningSchema().getMiningFields();
+
+			this.miningFieldIndex = index(miningFields);
+		}
+
+		return this.miningFieldIndex;
+	}
+
+	private Map<FieldUsageType, List<FieldName>> getOrCreateMiningFieldUsageIndex()
+			throws ModelManagerException {
+
+		if (this.miningFieldUsageIndex == null) {
+			Map<FieldUsageType, List<FieldName>> result =
+					new EnumMap<FieldUsageType, List<FieldName>>(FieldUsageType.class);
+
+			List<MiningField> miningFields = getMiningSchema().getMiningFields();
+			for (MiningField miningField : miningFields) {
+				FieldUsageType fieldUsageType = miningField.getUsageType();
+
+				List<FieldName> names = result.get(fieldUsageType);
+				if (names == null) {
+					names = new ArrayList<FieldName>();
+
+					result.put(fieldUsageType, names);
+				}
+
+				names.add(miningField.getName());
+			}
+
+			Collection<Map.Entry<FieldUsageType, List<FieldName>>> entries = result.entrySet();
+			for (Map.Entry<FieldUsageType, List<FieldName>> entry : entries) {
+				entry.setValue(Collections.unmodifiableList(entry.getValue()));
+			}
+
+			this.miningFieldUsageIndex = result;
+		}
+
+		return this.miningFieldUsageIndex;
+	}
+
+	/**
+	 * Indexing must not create the optional Output element.
+	 */
+	private List<OutputField> getOutputFieldList() throws ModelManagerException {
+		Output output = getModel().getOutput();
+
+		if (output == null) {
+			return Collections.emptyList();
+		}
+
+		return output.getOutputFields();
+	}
+
 	public MiningSchema getMiningSchema() throws ModelManagerException {
 		return getModel().getMiningSchema();
 	}
@@ -66,6 +66,7 @@ public class NeuralNetworkManager extends ModelManager<NeuralNetwork> {
 	 */
 	public NeuralNetwork createModel(MiningFunctionType miningFunction,
 			ActivationFunctionType activationFunction) throws ModelManagerException {
+		ensureNotFrozen();
 		ensureNull(this.neuralNetwork);
 
 		this.neuralNetwork = new NeuralNetwork(new MiningSchema(), new NeuralInputs(),
@@ -73,6 +74,8 @@ public class NeuralNetworkManager extends ModelManager<NeuralNetwork> {
 
 		getModels().add(this.neuralNetwork);
 
+		invalidateIndexes();
+
 		return this.neuralNetwork;
 	}
 
@@ -83,6 +86,8 @@ public class NeuralNetworkManager extends ModelManager<NeuralNetwork> {
 	}
 
 	public NeuralInput addNeuralInput(NormContinuous normContinuous) throws ModelManagerException {
+		ensureNotFrozen();
+
 		DerivedField derivedField = new DerivedField(OpType.CONTINUOUS, DataType.DOUBLE);
 		derivedField.setExpression(normContinuous);
 
@@ -90,6 +95,8 @@ public class NeuralNetworkManager extends ModelManager<NeuralNetwork> {
 
 		getNeuralInputs().add(neuralInput);
 
+		invalidateIndexes();
+
 		return neuralInput;
 	}
 
@@ -100,6 +107,8 @@ public class NeuralNetworkManager extends ModelManager<NeuralNetwork> {
 	}
 
 	public NeuralLayer addNeuralLayer() throws ModelManagerException {
+		ensureNotFrozen();
+
 		NeuralLayer neuralLayer = new NeuralLayer();
 
 		getNeuralLayers().add(neuralLayer);
@@ -121,6 +130,8 @@ public class NeuralNetworkManager extends ModelManager<NeuralNetwork> {
 	}
 
 	public Neuron addNeuron(NeuralLayer neuralLayer, Double bias) {
+		ensureNotFrozen();
+
 		Neuron neuron = new Neuron(nextId());
 		neuron.setBias(bias);
 
@@ -156,6 +167,8 @@ public class NeuralNetworkManager extends ModelManager<NeuralNetwork> {
 
 	public NeuralOutput addNeuralOutput(Neuron neuron, NormContinuous normCountinuous)
 			throws ModelManagerException {
+		ensureNotFrozen();
+
 		DerivedField derivedField = new DerivedField(OpType.CONTINUOUS, DataType.DOUBLE);
 		derivedField.setExpression(normCountinuous);
 
@@ -163,9 +176,18 @@ public class NeuralNetworkManager extends ModelManager<NeuralNetwork> {
 
 		getOrCreateNeuralOutputs().add(output);
 
+		invalidateIndexes();
+
 		return output;
 	}
 
+	@Override
+	public void freeze() throws ModelManagerException {
+		getOrCreateNeuralOutputs();
+
+		super.freeze();
+	}
+
 	private String nextId() {
 		return String.valueOf(this.neuronCount++);
 	}
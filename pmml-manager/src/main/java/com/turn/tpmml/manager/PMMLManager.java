@@ -18,7 +18,10 @@ import com.turn.tpmml.TransformationDictionary;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * PMMLManager is the mother class of the project. It allows to work with the PMML at the lowest
@@ -30,6 +33,14 @@ import java.util.List;
  * <li><code>getOrCreateXXX()</code> - Optional schema elements. When <code>null</code> then a new
  * element instance is created. For example {@link #getOrCreateTransformationDictionary()}
  * </ul>
+ * 
+ * Field lookups by name are backed by read-only indexes, which are built on first use. The
+ * <code>addXXX()</code> methods discard indexes that they make stale. Modifying the PMML by other
+ * means must be followed by a call to {@link #invalidateIndexes()}.
+ * 
+ * A manager that is {@link #freeze() frozen} builds all its indexes eagerly, and rejects further
+ * modifications. Its read path does not modify any state, so it can be shared between threads
+ * without synchronization. Neither indexing nor freezing creates optional elements.
  */
 public class PMMLManager implements Serializable {
 
@@ -39,6 +50,12 @@ public class PMMLManager implements Serializable {
 
 	private TransformationDictionary transformationDictionary = null;
 
+	private transient Map<FieldName, DataField> dataFieldIndex = null;
+
+	private transient Map<FieldName, DerivedField> derivedFieldIndex = null;
+
+	private transient boolean frozen = false;
+
 	/**
 	 * Create a manager for an empty PMML that belongs to the version 4.1.
 	 */
@@ -62,9 +79,9 @@ public class PMMLManager implements Serializable {
 	 * @return The DataField or null if it is not found.
 	 */
 	public DataField getDataField(FieldName name) {
-		List<DataField> dataFields = getDataDictionary().getDataFields();
+		Map<FieldName, DataField> dataFields = getOrCreateDataFieldIndex();
 
-		return find(dataFields, name);
+		return dataFields.get(name);
 	}
 
 	/**
@@ -78,12 +95,16 @@ public class PMMLManager implements Serializable {
 	 */
 	public DataField addDataField(FieldName name, String displayName, OpType opType,
 			DataType dataType) {
+		ensureNotFrozen();
+
 		DataField dataField = new DataField(name, opType, dataType);
 		dataField.setDisplayName(displayName);
 
 		List<DataField> dataFields = getDataDictionary().getDataFields();
 		dataFields.add(dataField);
 
+		invalidateIndexes();
+
 		return dataField;
 	}
 
@@ -96,11 +117,81 @@ public class PMMLManager implements Serializable {
 	 */
 	// FIXME: Check that this function handles the transformation as it looks like.
 	public DerivedField resolve(FieldName name) throws ModelManagerException {
-		TransformationDictionary transformationDictionary = getOrCreateTransformationDictionary();
+		Map<FieldName, DerivedField> derivedFields = getOrCreateDerivedFieldIndex();
+
+		return derivedFields.get(name);
+	}
+
+	/**
+	 * Discards all indexes. They are rebuilt on next use.
+	 * 
+	 * Subclasses that maintain indexes of their own must override this method and call the
+	 * superclass method.
+	 */
+	public void invalidateIndexes() {
+		ensureNotFrozen();
+
+		this.dataFieldIndex = null;
+		this.derivedFieldIndex = null;
+	}
+
+	/**
+	 * Builds all indexes, and forbids further modifications. After that, the
+	 * manager can be shared between threads, provided that it is published safely (eg. through a
+	 * final field or a concurrent collection).
+	 * 
+	 * Subclasses that create state lazily must override this method, build their state and then
+	 * call the superclass method. The frozen state is not serialized.
+	 * 
+	 * @throws ModelManagerException If the state cannot be built
+	 */
+	public void freeze() throws ModelManagerException {
+		getOrCreateDataFieldIndex();
+		getOrCreateDerivedFieldIndex();
+
+		this.frozen = true;
+	}
+
+	public boolean isFrozen() {
+		return this.frozen;
+	}
+
+	/**
+	 * @throws IllegalStateException If the manager is frozen
+	 */
+	protected void ensureNotFrozen() {
+
+		if (this.frozen) {
+			throw new IllegalStateException("The manager is frozen");
+		}
+	}
+
+	private Map<FieldName, DataField> getOrCreateDataFieldIndex() {
+
+		if (this.dataFieldIndex == null) {
+			List<DataField> dataFields = getDataDictionary().getDataFields();
+
+			this.dataFieldIndex = index(dataFields);
+		}
+
+		return this.dataFieldIndex;
+	}
+
+	private Map<FieldName, DerivedField> getOrCreateDerivedFieldIndex() {
+
+		if (this.derivedFieldIndex == null) {
+			// Indexing must not create the optional TransformationDictionary element
+			TransformationDictionary transformationDictionary =
+					getPmml().getTransformationDictionary();
 
-		List<DerivedField> derivedFields = transformationDictionary.getDerivedFields();
+			if (transformationDictionary != null) {
+				this.derivedFieldIndex = index(transformationDictionary.getDerivedFields());
+			} else {
+				this.derivedFieldIndex = Collections.emptyMap();
+			}
+		}
 
-		return find(derivedFields, name);
+		return this.derivedFieldIndex;
 	}
 
 	/**
@@ -153,22 +244,22 @@ public class PMMLManager implements Serializable {
 	 * @throws Exception
 	 */
 	public static DataField getOutputField(ModelManager<?> model) throws ModelManagerException {
-		String outputVariableName = null;
+		FieldName outputVariableName = null;
 		List<FieldName> predictedFields = model.getPredictedFields();
 
 		// Get the predicted field. If there is none, it is an error.
 		if (predictedFields != null && predictedFields.size() > 0) {
-			outputVariableName = predictedFields.get(0).getValue();
+			outputVariableName = predictedFields.get(0);
 		}
 
 		if (outputVariableName == null) {
 			throw new ModelManagerException("Predicted variable is not defined");
 		}
 
-		DataField outputField = model.getDataField(new FieldName(outputVariableName));
+		DataField outputField = model.getDataField(outputVariableName);
 		if (outputField == null || outputField.getDataType() == null) {
-			throw new ModelManagerException("Predicted variable [" + outputVariableName +
-					"] does not have type defined");
+			throw new ModelManagerException("Predicted variable [" +
+					outputVariableName.getValue() + "] does not have type defined");
 		}
 
 		return outputField;
@@ -272,4 +363,25 @@ public class PMMLManager implements Serializable {
 
 		return null;
 	}
+
+	/**
+	 * Return a read-only mapping from names to the elements of the list 'objects'. When several
+	 * elements have the same name, the first one is kept, consistently with
+	 * {@link #find(Collection, FieldName)}.
+	 * 
+	 * @param objects The list to index.
+	 */
+	public static <E extends PMMLObject & HasName> Map<FieldName, E> index(Collection<E> objects) {
+		Map<FieldName, E> result = new HashMap<FieldName, E>(2 * objects.size());
+
+		for (E object : objects) {
+			FieldName name = object.getName();
+
+			if (!result.containsKey(name)) {
+				result.put(name, object);
+			}
+		}
+
+		return Collections.unmodifiableMap(result);
+	}
 }
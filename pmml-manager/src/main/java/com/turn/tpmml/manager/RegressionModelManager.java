@@ -70,12 +70,15 @@ public class RegressionModelManager extends ModelManager<RegressionModel> {
 	 */
 	public RegressionModel createModel(MiningFunctionType miningFunction)
 			throws ModelManagerException {
+		ensureNotFrozen();
 		ensureNull(this.regressionModel);
 
 		this.regressionModel = new RegressionModel(new MiningSchema(), miningFunction);
 
 		getModels().add(this.regressionModel);
 
+		invalidateIndexes();
+
 		return this.regressionModel;
 	}
 
@@ -92,9 +95,13 @@ public class RegressionModelManager extends ModelManager<RegressionModel> {
 	}
 
 	public RegressionModel setTarget(FieldName name) throws ModelManagerException {
+		ensureNotFrozen();
+
 		RegressionModel regressionModel = getModel();
 		regressionModel.setTargetFieldName(name);
 
+		invalidateIndexes();
+
 		return regressionModel;
 	}
 
@@ -103,11 +110,86 @@ public class RegressionModelManager extends ModelManager<RegressionModel> {
 		return model.getRegressionTables();
 	}
 
+	/**
+	 * @return The first regressionTable.
+	 * @throws ModelManagerException If the model has no regressionTable
+	 */
+	public RegressionTable getRegressionTable() throws ModelManagerException {
+		List<RegressionTable> regressionTables = getRegressionTables();
+		if (regressionTables.isEmpty()) {
+			throw new ModelManagerException("No regressionTable");
+		}
+
+		return regressionTables.get(0);
+	}
+
+	public RegressionTable addRegressionTable(Double intercept) throws ModelManagerException {
+		ensureNotFrozen();
+
+		RegressionTable regressionTable = new RegressionTable(intercept.doubleValue());
+		(getRegressionTables()).add(regressionTable);
+
+		invalidateIndexes();
+
+		return regressionTable;
+	}
+
+	/**
+	 * Add a new numeric predictor to the first regressionTable.
+	 * 
+	 * @param name The name of the variable.
+	 * @param coefficient The corresponding coefficient.
+	 * @return The numeric predictor.
+	 * 
+	 * @see #getRegressionTable()
+	 */
+	public NumericPredictor addNumericPredictor(FieldName name, Double coefficient)
+			throws ModelManagerException {
+		ensureNotFrozen();
+
+		NumericPredictor numericPredictor =
+				addNumericPredictor(getRegressionTable(), name, coefficient);
+
+		invalidateIndexes();
+
+		return numericPredictor;
+	}
+
+	/**
+	 * Add a new categorical predictor to the first regressionTable.
+	 * 
+	 * @param name The name of the variable.
+	 * @param value The category.
+	 * @param coefficient The corresponding coefficient.
+	 * @return The categorical predictor.
+	 * 
+	 * @see #getRegressionTable()
+	 */
+	public CategoricalPredictor addCategoricalPredictor(FieldName name, String value,
+			Double coefficient) throws ModelManagerException {
+		ensureNotFrozen();
+
+		CategoricalPredictor categoricalPredictor =
+				addCategoricalPredictor(getRegressionTable(), name, value, coefficient);
+
+		invalidateIndexes();
+
+		return categoricalPredictor;
+	}
+
 	public static NumericPredictor getNumericPredictor(RegressionTable regressionTable,
 			FieldName name) {
 		return find(regressionTable.getNumericPredictors(), name);
 	}
 
+	/**
+	 * Add a new numeric predictor to a regressionTable.
+	 * 
+	 * This method has no manager to invalidate. If the regressionTable belongs to a model, then
+	 * {@link #invalidateIndexes()} must be called on its manager afterwards.
+	 * 
+	 * @see #addNumericPredictor(FieldName, Double)
+	 */
 	public static NumericPredictor addNumericPredictor(RegressionTable regressionTable,
 			FieldName name, Double coefficient) {
 		NumericPredictor numericPredictor = new NumericPredictor(name, coefficient.doubleValue());
@@ -129,11 +211,18 @@ public class RegressionModelManager extends ModelManager<RegressionModel> {
 	}
 
 	/**
-	 * Add a new categorical predictor to the first regressionTable.
+	 * Add a new categorical predictor to a regressionTable.
+	 * 
+	 * This method has no manager to invalidate. If the regressionTable belongs to a model, then
+	 * {@link #invalidateIndexes()} must be called on its manager afterwards.
 	 * 
+	 * @param regressionTable The regressionTable used.
 	 * @param name The name of the variable.
+	 * @param value The category.
 	 * @param coefficient The corresponding coefficient.
 	 * @return The categorical predictor.
+	 * 
+	 * @see #addCategoricalPredictor(FieldName, String, Double)
 	 */
 	public static CategoricalPredictor addCategoricalPredictor(RegressionTable regressionTable,
 			FieldName name, String value, Double coefficient) {
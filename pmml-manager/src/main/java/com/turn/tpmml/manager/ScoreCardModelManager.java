@@ -62,6 +62,7 @@ public class ScoreCardModelManager extends ModelManager<Scorecard> {
 	 * @see #getModel()
 	 */
 	public Scorecard createModel(MiningFunctionType miningFunction) throws ModelManagerException {
+		ensureNotFrozen();
 		ensureNull(scorecard);
 
 		scorecard = new Scorecard(new MiningSchema(), new Characteristics(), miningFunction);
@@ -69,6 +70,8 @@ public class ScoreCardModelManager extends ModelManager<Scorecard> {
 		List<Model> content = getPmml().getContent();
 		content.add(scorecard);
 
+		invalidateIndexes();
+
 		return scorecard;
 	}
 
@@ -107,6 +110,13 @@ public class ScoreCardModelManager extends ModelManager<Scorecard> {
 	
 	// Reason Code part of the manager.
 
+	/**
+	 * @return The reason code of the last evaluation, or <code>null</code> if the manager is
+	 *         {@link #isFrozen() frozen}. A frozen manager returns the reason code only with the
+	 *         result of the evaluation.
+	 * 
+	 * @see ScoreCardPMMLResult#getLastReasonCode()
+	 */
 	public String getLastReasonCode() {
 		return lastReasonCode;
 	}
@@ -116,6 +126,8 @@ public class ScoreCardModelManager extends ModelManager<Scorecard> {
 	}
 
 	public void setUseReasonCodes(boolean useReasonCodes) {
+		ensureNotFrozen();
+
 		this.useReasonCodes = useReasonCodes;
 	}
 
@@ -124,6 +136,8 @@ public class ScoreCardModelManager extends ModelManager<Scorecard> {
 	}
 
 	public void setReasonCodeAlgorithm(ReasonCodeAlgorithm reasonCodeAlgorithm) {
+		ensureNotFrozen();
+
 		this.reasonCodeAlgorithm = reasonCodeAlgorithm;
 	}
 
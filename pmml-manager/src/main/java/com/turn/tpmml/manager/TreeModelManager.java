@@ -60,12 +60,15 @@ public class TreeModelManager extends ModelManager<TreeModel> {
 	 * @see #getModel()
 	 */
 	public TreeModel createModel(MiningFunctionType miningFunction) throws ModelManagerException {
+		ensureNotFrozen();
 		ensureNull(this.treeModel);
 
 		this.treeModel = new TreeModel(new MiningSchema(), new Node(), miningFunction);
 
 		getModels().add(this.treeModel);
 
+		invalidateIndexes();
+
 		return this.treeModel;
 	}
 
@@ -112,11 +115,15 @@ public class TreeModelManager extends ModelManager<TreeModel> {
 	 * @return The newly added Node
 	 */
 	public Node addNode(Node parentNode, Predicate predicate) {
+		ensureNotFrozen();
+
 		Node node = new Node();
 		node.setPredicate(predicate);
 
 		parentNode.getNodes().add(node);
 
+		invalidateIndexes();
+
 		return node;
 	}
 
@@ -130,9 +137,13 @@ public class TreeModelManager extends ModelManager<TreeModel> {
 			}
 		}
 
+		ensureNotFrozen();
+
 		ScoreDistribution scoreDistribution = new ScoreDistribution(value, 0);
 		scoreDistributions.add(scoreDistribution);
 
+		invalidateIndexes();
+
 		return scoreDistribution;
 	}
 
@@ -148,6 +159,14 @@ public class TreeModelManager extends ModelManager<TreeModel> {
 		return ids;
 	}
 
+	@Override
+	public void freeze() throws ModelManagerException {
+		getOrCreateRoot();
+		getAllNodesId();
+
+		super.freeze();
+	}
+
 	private void getAllNodesIdFrom(Node current) {
 		if (current != null) {
 			if (current.getId() != null) {